@@ -0,0 +1,161 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.benchmark;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tikv.common.codec.Codec.BytesCodec;
+import org.tikv.common.codec.Codec.DateTimeCodec;
+import org.tikv.common.codec.Codec.DecimalCodec;
+import org.tikv.common.codec.Codec.IntegerCodec;
+import org.tikv.common.codec.Codec.RealCodec;
+import org.tikv.common.codec.CodecDataInput;
+import org.tikv.common.codec.CodecDataOutput;
+
+/** Encoding and decoding of the value types of Codec. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+  @Param({"8", "64", "1024"})
+  public int bytesLength;
+
+  private final CodecDataOutput cdo = new CodecDataOutput(4096);
+  private final DateTimeZone tz = DateTimeZone.UTC;
+
+  private byte[] bytes;
+  private byte[] encodedLong;
+  private byte[] encodedBytes;
+  private byte[] encodedDouble;
+  private byte[] encodedDecimal;
+  private byte[] encodedDateTime;
+  private BigDecimal decimal;
+  private DateTime dateTime;
+
+  @Setup
+  public void setup() {
+    bytes = new byte[bytesLength];
+    for (int i = 0; i < bytesLength; i++) {
+      bytes[i] = (byte) (i * 31);
+    }
+    decimal = new BigDecimal("-12345678901234.567890123");
+    dateTime = new DateTime(2018, 12, 31, 23, 59, 59, 999, tz);
+
+    cdo.reset();
+    IntegerCodec.writeLong(cdo, -123456789012345L);
+    encodedLong = cdo.toBytes();
+    encodedBytes = BytesCodec.encodeBytes(bytes);
+    cdo.reset();
+    RealCodec.writeDouble(cdo, -1234.5678e-9);
+    encodedDouble = cdo.toBytes();
+    cdo.reset();
+    DecimalCodec.writeDecimal(cdo, decimal);
+    encodedDecimal = cdo.toBytes();
+    cdo.reset();
+    DateTimeCodec.writeDateTimeProto(cdo, dateTime, tz);
+    encodedDateTime = cdo.toBytes();
+  }
+
+  @Benchmark
+  public int writeLong() {
+    cdo.reset();
+    IntegerCodec.writeLong(cdo, -123456789012345L);
+    return cdo.size();
+  }
+
+  @Benchmark
+  public long readLong() {
+    return IntegerCodec.readLong(new CodecDataInput(encodedLong));
+  }
+
+  @Benchmark
+  public int writeBytes() {
+    cdo.reset();
+    BytesCodec.writeBytes(cdo, bytes);
+    return cdo.size();
+  }
+
+  /** The group by group encoder this codec replaced, as a reference for writeBytes. */
+  @Benchmark
+  public int writeBytesLegacy() {
+    cdo.reset();
+    LegacyBytesCodec.writeBytes(cdo, bytes);
+    return cdo.size();
+  }
+
+  @Benchmark
+  public byte[] readBytes() {
+    return BytesCodec.readBytes(new CodecDataInput(encodedBytes));
+  }
+
+  /** The group by group decoder this codec replaced, as a reference for readBytes. */
+  @Benchmark
+  public byte[] readBytesLegacy() {
+    return LegacyBytesCodec.readBytes(new CodecDataInput(encodedBytes));
+  }
+
+  @Benchmark
+  public int writeDouble() {
+    cdo.reset();
+    RealCodec.writeDouble(cdo, -1234.5678e-9);
+    return cdo.size();
+  }
+
+  @Benchmark
+  public double readDouble() {
+    return RealCodec.readDouble(new CodecDataInput(encodedDouble));
+  }
+
+  @Benchmark
+  public int writeDecimal() {
+    cdo.reset();
+    DecimalCodec.writeDecimal(cdo, decimal);
+    return cdo.size();
+  }
+
+  @Benchmark
+  public BigDecimal readDecimal() {
+    return DecimalCodec.readDecimal(new CodecDataInput(encodedDecimal));
+  }
+
+  @Benchmark
+  public int writeDateTime() {
+    cdo.reset();
+    DateTimeCodec.writeDateTimeProto(cdo, dateTime, tz);
+    return cdo.size();
+  }
+
+  @Benchmark
+  public DateTime readDateTime() {
+    return DateTimeCodec.readFromUInt(new CodecDataInput(encodedDateTime), tz);
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.benchmark;
+
+import com.google.protobuf.ByteString;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tikv.common.TiConfiguration.KVMode;
+import org.tikv.common.operation.KVErrorHandler;
+import org.tikv.common.region.RegionErrorReceiver;
+import org.tikv.common.region.RegionManager;
+import org.tikv.common.region.TiRegion;
+import org.tikv.common.util.BackOffer;
+import org.tikv.common.util.ConcreteBackOffer;
+import org.tikv.kvproto.Kvrpcpb;
+import org.tikv.kvproto.Kvrpcpb.GetResponse;
+import org.tikv.kvproto.Metapb;
+
+/**
+ * What checking a successful response costs each call: a KVErrorHandler is created per request
+ * and asked whether to retry, compared to reading the region error directly.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KVErrorHandlerBenchmark {
+  private RegionManager regionManager;
+  private RegionErrorReceiver receiver;
+  private TiRegion region;
+  private BackOffer backOffer;
+  private GetResponse response;
+
+  @Setup
+  public void setup() {
+    // the region manager and the receiver are not called for a successful response
+    regionManager = new RegionManager(null);
+    receiver =
+        new RegionErrorReceiver() {
+          @Override
+          public boolean onNotLeader(Metapb.Store store) {
+            return false;
+          }
+
+          @Override
+          public void onStoreNotMatch(Metapb.Store store) {}
+        };
+    Metapb.Peer leader = Metapb.Peer.newBuilder().setId(1).setStoreId(1).build();
+    region =
+        new TiRegion(
+            Metapb.Region.newBuilder().setId(1).addPeers(leader).build(),
+            leader,
+            Kvrpcpb.IsolationLevel.SI,
+            Kvrpcpb.CommandPri.Normal,
+            KVMode.RAW);
+    backOffer = ConcreteBackOffer.newGetBackOff();
+    response = GetResponse.newBuilder().setValue(ByteString.copyFromUtf8("value")).build();
+  }
+
+  @Benchmark
+  public boolean handleResponse() {
+    KVErrorHandler<GetResponse> handler =
+        new KVErrorHandler<>(
+            regionManager,
+            receiver,
+            region,
+            resp -> resp.hasRegionError() ? resp.getRegionError() : null);
+    return handler.handleResponseError(backOffer, response);
+  }
+
+  /** The least a caller can do, as a reference for handleResponse. */
+  @Benchmark
+  public boolean checkRegionError() {
+    return response.hasRegionError();
+  }
+}
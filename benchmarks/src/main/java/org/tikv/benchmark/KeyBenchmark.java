@@ -0,0 +1,81 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tikv.common.key.Key;
+import org.tikv.common.util.FastByteComparisons;
+
+/** Key comparison and successor, and the byte comparison under them. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyBenchmark {
+  @Param({"16", "64", "256"})
+  public int keyLength;
+
+  private byte[] left;
+  private byte[] right;
+  private Key leftKey;
+  private Key rightKey;
+
+  @Setup
+  public void setup() {
+    left = new byte[keyLength];
+    for (int i = 0; i < keyLength; i++) {
+      left[i] = (byte) (i * 7);
+    }
+    // keys sharing all but their last byte, the worst case of a comparison
+    right = left.clone();
+    right[keyLength - 1]++;
+    leftKey = Key.toRawKey(left);
+    rightKey = Key.toRawKey(right);
+  }
+
+  @Benchmark
+  public int compareKeys() {
+    return leftKey.compareTo(rightKey);
+  }
+
+  @Benchmark
+  public Key nextKey() {
+    return leftKey.next();
+  }
+
+  @Benchmark
+  public int compareBytes() {
+    return FastByteComparisons.compareTo(left, right);
+  }
+
+  @Benchmark
+  public int compareByteRanges() {
+    return FastByteComparisons.compareTo(left, 1, keyLength - 1, right, 1, keyLength - 1);
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.benchmark;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Arrays;
+import org.tikv.common.codec.CodecDataInput;
+import org.tikv.common.codec.CodecDataOutput;
+
+/**
+ * The memcomparable bytes codec as it was before Codec.BytesCodec copied whole groups in bulk,
+ * kept to compare the two in {@link CodecBenchmark}.
+ */
+final class LegacyBytesCodec {
+  private static final int GRP_SIZE = 8;
+  private static final byte[] PADS = new byte[GRP_SIZE];
+  private static final int MARKER = 0xFF;
+  private static final byte PAD = (byte) 0x0;
+
+  private LegacyBytesCodec() {}
+
+  static void writeBytes(CodecDataOutput cdo, byte[] data) {
+    for (int i = 0; i <= data.length; i += GRP_SIZE) {
+      int remain = data.length - i;
+      int padCount = 0;
+      if (remain >= GRP_SIZE) {
+        cdo.write(data, i, GRP_SIZE);
+      } else {
+        padCount = GRP_SIZE - remain;
+        cdo.write(data, i, data.length - i);
+        cdo.write(PADS, 0, padCount);
+      }
+      cdo.write((byte) (MARKER - padCount));
+    }
+  }
+
+  static byte[] readBytes(CodecDataInput cdi) {
+    CodecDataOutput cdo = new CodecDataOutput();
+    while (true) {
+      byte[] groupBytes = new byte[GRP_SIZE + 1];
+
+      cdi.readFully(groupBytes, 0, GRP_SIZE + 1);
+      byte[] group = Arrays.copyOfRange(groupBytes, 0, GRP_SIZE);
+
+      int padCount = MARKER - Byte.toUnsignedInt(groupBytes[GRP_SIZE]);
+      checkArgument(padCount <= GRP_SIZE);
+      int realGroupSize = GRP_SIZE - padCount;
+      cdo.write(group, 0, realGroupSize);
+
+      if (padCount != 0) {
+        for (int i = realGroupSize; i < group.length; i++) {
+          checkArgument(PAD == group[i]);
+        }
+        break;
+      }
+    }
+    return cdo.toBytes();
+  }
+}
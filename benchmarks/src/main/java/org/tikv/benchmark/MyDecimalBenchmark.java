@@ -0,0 +1,68 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tikv.common.codec.MyDecimal;
+
+/** Conversions of MyDecimal from and to its binary form. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MyDecimalBenchmark {
+  @Param({"3.14", "-12345678901234.567890123", "99999999999999999999999999999.999999999"})
+  public String value;
+
+  private MyDecimal decimal;
+  private int precision;
+  private int frac;
+  private int[] bin;
+
+  @Setup
+  public void setup() {
+    decimal = new MyDecimal();
+    decimal.fromString(value);
+    precision = decimal.precision();
+    frac = decimal.frac();
+    bin = decimal.toBin(precision, frac);
+  }
+
+  @Benchmark
+  public int[] toBin() {
+    return decimal.toBin(precision, frac);
+  }
+
+  @Benchmark
+  public MyDecimal fromBin() {
+    MyDecimal dec = new MyDecimal();
+    dec.fromBin(precision, frac, bin);
+    return dec;
+  }
+}
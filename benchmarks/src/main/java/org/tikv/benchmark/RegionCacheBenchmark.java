@@ -0,0 +1,163 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.benchmark;
+
+import com.google.protobuf.ByteString;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tikv.common.ReadOnlyPDClient;
+import org.tikv.common.TiConfiguration.KVMode;
+import org.tikv.common.meta.TiTimestamp;
+import org.tikv.common.region.RegionManager;
+import org.tikv.common.region.TiRegion;
+import org.tikv.common.util.BackOffer;
+import org.tikv.kvproto.Kvrpcpb;
+import org.tikv.kvproto.Metapb;
+
+/**
+ * Region lookups by key on a warm RegionManager cache shared by several threads, the lookup done
+ * before each request sent to TiKV.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegionCacheBenchmark {
+  private static final int KEYS_PER_REGION = 100;
+
+  @Param({"1000"})
+  public int regionCount;
+
+  private RegionManager regionManager;
+  private ByteString[] keys;
+
+  @Setup
+  public void setup() {
+    regionManager = new RegionManager(new StubPDClient(regionCount));
+    keys = new ByteString[regionCount * KEYS_PER_REGION];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = key(i);
+    }
+    // loads every region into the cache
+    for (int i = 0; i < regionCount; i++) {
+      regionManager.getRegionByKey(keys[i * KEYS_PER_REGION]);
+    }
+  }
+
+  private static ByteString key(int i) {
+    return ByteString.copyFromUtf8(String.format("k%08d", i));
+  }
+
+  @Benchmark
+  @Threads(1)
+  public TiRegion getRegionByKey() {
+    return lookup();
+  }
+
+  @Benchmark
+  @Threads(8)
+  public TiRegion getRegionByKeyContended() {
+    return lookup();
+  }
+
+  private TiRegion lookup() {
+    return regionManager.getRegionByKey(keys[ThreadLocalRandom.current().nextInt(keys.length)]);
+  }
+
+  /** Serves regions of KEYS_PER_REGION keys each, only needed to fill the cache. */
+  private static class StubPDClient implements ReadOnlyPDClient {
+    private final int regionCount;
+
+    StubPDClient(int regionCount) {
+      this.regionCount = regionCount;
+    }
+
+    @Override
+    public TiRegion getRegionByKey(BackOffer backOffer, ByteString key) {
+      int index = Integer.parseInt(key.substring(1).toStringUtf8()) / KEYS_PER_REGION;
+      return getRegionByID(backOffer, index + 1);
+    }
+
+    @Override
+    public TiRegion getRegionByID(BackOffer backOffer, long id) {
+      int index = (int) id - 1;
+      Metapb.Peer leader = Metapb.Peer.newBuilder().setId(id).setStoreId(1).build();
+      Metapb.Region.Builder region =
+          Metapb.Region.newBuilder()
+              .setId(id)
+              .setStartKey(index == 0 ? ByteString.EMPTY : key(index * KEYS_PER_REGION))
+              .setEndKey(
+                  index == regionCount - 1 ? ByteString.EMPTY : key((index + 1) * KEYS_PER_REGION))
+              .addPeers(leader);
+      return new TiRegion(
+          region.build(),
+          leader,
+          Kvrpcpb.IsolationLevel.SI,
+          Kvrpcpb.CommandPri.Normal,
+          KVMode.RAW);
+    }
+
+    @Override
+    public TiTimestamp getTimestamp(BackOffer backOffer) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Future<TiRegion> getRegionByKeyAsync(BackOffer backOffer, ByteString key) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public TiRegion getPrevRegion(BackOffer backOffer, ByteString key) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Future<TiRegion> getRegionByIDAsync(BackOffer backOffer, long id) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Metapb.Store getStore(BackOffer backOffer, long storeId) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Future<Metapb.Store> getStoreAsync(BackOffer backOffer, long storeId) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long getGCSafePoint(BackOffer backOffer) {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
@@ -18,18 +18,23 @@ package org.tikv.common;
 import static io.grpc.stub.ClientCalls.asyncBidiStreamingCall;
 import static io.grpc.stub.ClientCalls.blockingServerStreamingCall;
 
+import com.google.protobuf.MessageLite;
 import io.grpc.MethodDescriptor;
+import io.grpc.Status;
 import io.grpc.stub.AbstractStub;
 import io.grpc.stub.ClientCalls;
 import io.grpc.stub.StreamObserver;
 import java.util.function.Supplier;
 import org.apache.log4j.Logger;
+import org.tikv.common.metrics.ClientMetrics;
+import org.tikv.common.metrics.OperationTrace;
 import org.tikv.common.operation.ErrorHandler;
 import org.tikv.common.policy.RetryMaxMs.Builder;
 import org.tikv.common.policy.RetryPolicy;
 import org.tikv.common.streaming.StreamingResponse;
 import org.tikv.common.util.BackOffer;
 import org.tikv.common.util.ChannelFactory;
+import org.tikv.kvproto.Coprocessor;
 
 public abstract class AbstractGRPCClient<
         BlockingStubT extends AbstractStub<BlockingStubT>, StubT extends AbstractStub<StubT>>
@@ -56,15 +61,25 @@ public abstract class AbstractGRPCClient<
     if (logger.isTraceEnabled()) {
       logger.trace(String.format("Calling %s...", method.getFullMethodName()));
     }
+    CallMeter<RespT> meter = newMeter(method, handler, backOffer);
     RetryPolicy.Builder<RespT> builder = new Builder<>(backOffer);
     RespT resp =
         builder
-            .create(handler)
+            .create(meter == null ? handler : meter)
             .callWithRetry(
                 () -> {
                   BlockingStubT stub = getBlockingStub();
-                  return ClientCalls.blockingUnaryCall(
-                      stub.getChannel(), method, stub.getCallOptions(), requestFactory.get());
+                  ReqT request = requestFactory.get();
+                  if (meter == null) {
+                    return ClientCalls.blockingUnaryCall(
+                        stub.getChannel(), method, stub.getCallOptions(), request);
+                  }
+                  return meter.call(
+                      stub,
+                      request,
+                      () ->
+                          ClientCalls.blockingUnaryCall(
+                              stub.getChannel(), method, stub.getCallOptions(), request));
                 },
                 method.getFullMethodName());
 
@@ -82,16 +97,20 @@ public abstract class AbstractGRPCClient<
       ErrorHandler<RespT> handler) {
     logger.debug(String.format("Calling %s...", method.getFullMethodName()));
 
+    CallMeter<RespT> meter = newMeter(method, handler, backOffer);
     RetryPolicy.Builder<RespT> builder = new Builder<>(backOffer);
     builder
-        .create(handler)
+        .create(meter == null ? handler : meter)
         .callWithRetry(
             () -> {
               StubT stub = getAsyncStub();
+              ReqT request = requestFactory.get();
               ClientCalls.asyncUnaryCall(
                   stub.getChannel().newCall(method, stub.getCallOptions()),
-                  requestFactory.get(),
-                  responseObserver);
+                  request,
+                  meter == null
+                      ? responseObserver
+                      : meter.observe(stub, request, responseObserver));
               return null;
             },
             method.getFullMethodName());
@@ -105,15 +124,20 @@ public abstract class AbstractGRPCClient<
       ErrorHandler<StreamObserver<ReqT>> handler) {
     logger.debug(String.format("Calling %s...", method.getFullMethodName()));
 
+    CallMeter<StreamObserver<ReqT>> meter = newMeter(method, handler, backOffer);
     RetryPolicy.Builder<StreamObserver<ReqT>> builder = new Builder<>(backOffer);
     StreamObserver<ReqT> observer =
         builder
-            .create(handler)
+            .create(meter == null ? handler : meter)
             .callWithRetry(
                 () -> {
                   StubT stub = getAsyncStub();
+                  // the requests are sent later, only the responses are measured
                   return asyncBidiStreamingCall(
-                      stub.getChannel().newCall(method, stub.getCallOptions()), responseObserver);
+                      stub.getChannel().newCall(method, stub.getCallOptions()),
+                      meter == null
+                          ? responseObserver
+                          : meter.observe(stub, null, responseObserver));
                 },
                 method.getFullMethodName());
     logger.debug(String.format("leaving %s...", method.getFullMethodName()));
@@ -127,22 +151,167 @@ public abstract class AbstractGRPCClient<
       ErrorHandler<StreamingResponse> handler) {
     logger.debug(String.format("Calling %s...", method.getFullMethodName()));
 
+    CallMeter<StreamingResponse> meter = newMeter(method, handler, backOffer);
     RetryPolicy.Builder<StreamingResponse> builder = new Builder<>(backOffer);
     StreamingResponse response =
         builder
-            .create(handler)
+            .create(meter == null ? handler : meter)
             .callWithRetry(
                 () -> {
                   BlockingStubT stub = getBlockingStub();
-                  return new StreamingResponse(
-                      blockingServerStreamingCall(
-                          stub.getChannel(), method, stub.getCallOptions(), requestFactory.get()));
+                  ReqT request = requestFactory.get();
+                  if (meter == null) {
+                    return new StreamingResponse(
+                        blockingServerStreamingCall(
+                            stub.getChannel(), method, stub.getCallOptions(), request));
+                  }
+                  // measures the whole stream, the response reads all of it when created
+                  return meter.call(
+                      stub,
+                      request,
+                      () ->
+                          new StreamingResponse(
+                              blockingServerStreamingCall(
+                                  stub.getChannel(), method, stub.getCallOptions(), request)));
                 },
                 method.getFullMethodName());
     logger.debug(String.format("leaving %s...", method.getFullMethodName()));
     return response;
   }
 
+  // @return null if the metrics are disabled and the call is not traced, so nothing is measured
+  private <RespT> CallMeter<RespT> newMeter(
+      MethodDescriptor<?, ?> method, ErrorHandler<RespT> handler, BackOffer backOffer) {
+    ClientMetrics metrics = conf.getMetrics();
+    OperationTrace trace = backOffer == null ? null : backOffer.getTrace();
+    if (!metrics.isEnabled() && trace == null) {
+      return null;
+    }
+    return new CallMeter<>(metrics, trace, method.getFullMethodName(), handler);
+  }
+
+  private static long sizeOf(Object message) {
+    if (message instanceof StreamingResponse) {
+      long size = 0;
+      for (Coprocessor.Response response : (StreamingResponse) message) {
+        size += response.getSerializedSize();
+      }
+      return size;
+    }
+    return message instanceof MessageLite ? ((MessageLite) message).getSerializedSize() : 0;
+  }
+
+  /**
+   * Measures the attempts of a call for {@link ClientMetrics} and the {@link OperationTrace} of the
+   * call, and counts the errors of its attempts and of the responses its handler receives.
+   */
+  private static final class CallMeter<RespT> implements ErrorHandler<RespT> {
+    private final ClientMetrics metrics;
+    // sizes are only computed for enabled metrics
+    private final boolean metricsEnabled;
+    private final OperationTrace trace;
+    private final String method;
+    private final ErrorHandler<RespT> handler;
+    // target of the last attempt
+    private String target = "";
+    private int attempts;
+
+    CallMeter(
+        ClientMetrics metrics, OperationTrace trace, String method, ErrorHandler<RespT> handler) {
+      this.metrics = metrics;
+      this.metricsEnabled = metrics.isEnabled();
+      this.trace = trace;
+      this.method = method;
+      this.handler = handler;
+    }
+
+    private void onAttempt(AbstractStub<?> stub) {
+      target = stub.getChannel().authority();
+      if (attempts++ > 0) {
+        metrics.recordRetry(method, target);
+      }
+    }
+
+    private long sizeOf(Object message) {
+      return metricsEnabled ? AbstractGRPCClient.sizeOf(message) : 0;
+    }
+
+    private void record(
+        String callTarget, long nanos, long requestBytes, long responseBytes, boolean success) {
+      metrics.recordCall(method, callTarget, nanos, requestBytes, responseBytes, success);
+      if (trace != null) {
+        trace.recordRpc(method, nanos);
+      }
+    }
+
+    // makes a blocking call
+    <T> T call(AbstractStub<?> stub, Object request, Supplier<T> call) {
+      onAttempt(stub);
+      long start = System.nanoTime();
+      try {
+        T resp = call.get();
+        record(target, System.nanoTime() - start, sizeOf(request), sizeOf(resp), true);
+        return resp;
+      } catch (RuntimeException e) {
+        record(target, System.nanoTime() - start, sizeOf(request), 0, false);
+        // counted here since the retry policy rethrows unrecoverable statuses unhandled
+        metrics.recordError(method, target, Status.fromThrowable(e).getCode().name());
+        throw e;
+      }
+    }
+
+    // wraps the observer of an asynchronous call, which ends when the call completes
+    <T> StreamObserver<T> observe(
+        AbstractStub<?> stub, Object request, StreamObserver<T> responseObserver) {
+      onAttempt(stub);
+      String callTarget = target;
+      long requestBytes = sizeOf(request);
+      long start = System.nanoTime();
+      return new StreamObserver<T>() {
+        private long responseBytes;
+
+        @Override
+        public void onNext(T value) {
+          responseBytes += sizeOf(value);
+          responseObserver.onNext(value);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+          record(callTarget, System.nanoTime() - start, requestBytes, responseBytes, false);
+          metrics.recordError(method, callTarget, Status.fromThrowable(t).getCode().name());
+          responseObserver.onError(t);
+        }
+
+        @Override
+        public void onCompleted() {
+          record(callTarget, System.nanoTime() - start, requestBytes, responseBytes, true);
+          responseObserver.onCompleted();
+        }
+      };
+    }
+
+    @Override
+    public boolean handleResponseError(BackOffer backOffer, RespT resp) {
+      if (handler == null) {
+        return false;
+      }
+      if (resp != null) {
+        String errorType = handler.getErrorType(resp);
+        if (errorType != null) {
+          metrics.recordError(method, target, errorType);
+        }
+      }
+      return handler.handleResponseError(backOffer, resp);
+    }
+
+    @Override
+    public boolean handleRequestError(BackOffer backOffer, Exception e) {
+      // the error is counted by the attempt which failed
+      return handler.handleRequestError(backOffer, e);
+    }
+  }
+
   protected abstract BlockingStubT getBlockingStub();
 
   protected abstract StubT getAsyncStub();
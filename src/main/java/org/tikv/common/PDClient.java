@@ -34,7 +34,6 @@ import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 import org.tikv.common.TiConfiguration.KVMode;
 import org.tikv.common.codec.Codec.BytesCodec;
-import org.tikv.common.codec.CodecDataOutput;
 import org.tikv.common.exception.GrpcException;
 import org.tikv.common.exception.TiClientInternalException;
 import org.tikv.common.exception.TiKVException;
@@ -42,8 +41,10 @@ import org.tikv.common.meta.TiTimestamp;
 import org.tikv.common.operation.PDErrorHandler;
 import org.tikv.common.region.TiRegion;
 import org.tikv.common.util.BackOffer;
+import org.tikv.common.util.ByteStrings;
 import org.tikv.common.util.ChannelFactory;
 import org.tikv.common.util.FutureObserver;
+import org.tikv.kvproto.Metapb;
 import org.tikv.kvproto.Metapb.Store;
 import org.tikv.kvproto.PDGrpc;
 import org.tikv.kvproto.PDGrpc.PDBlockingStub;
@@ -79,9 +80,8 @@ public class PDClient extends AbstractGRPCClient<PDBlockingStub, PDStub>
     if (conf.getKvMode() == KVMode.RAW) {
       request = () -> GetRegionRequest.newBuilder().setHeader(header).setRegionKey(key).build();
     } else {
-      CodecDataOutput cdo = new CodecDataOutput();
-      BytesCodec.writeBytes(cdo, key.toByteArray());
-      ByteString encodedKey = cdo.toByteString();
+      ByteString encodedKey =
+          ByteStrings.wrap(BytesCodec.encodeBytes(ByteStrings.unsafeGetBytes(key)));
       request =
           () -> GetRegionRequest.newBuilder().setHeader(header).setRegionKey(encodedKey).build();
     }
@@ -98,6 +98,32 @@ public class PDClient extends AbstractGRPCClient<PDBlockingStub, PDStub>
         conf.getKvMode());
   }
 
+  @Override
+  public TiRegion getPrevRegion(BackOffer backOffer, ByteString key) {
+    ByteString regionKey = key;
+    if (conf.getKvMode() != KVMode.RAW) {
+      regionKey = ByteStrings.wrap(BytesCodec.encodeBytes(ByteStrings.unsafeGetBytes(key)));
+    }
+    final ByteString requestKey = regionKey;
+    Supplier<GetRegionRequest> request =
+        () -> GetRegionRequest.newBuilder().setHeader(header).setRegionKey(requestKey).build();
+
+    PDErrorHandler<GetRegionResponse> handler =
+        new PDErrorHandler<>(getRegionResponseErrorExtractor, this);
+
+    GetRegionResponse resp =
+        callWithRetry(backOffer, PDGrpc.METHOD_GET_PREV_REGION, request, handler);
+    if (!resp.hasRegion()) {
+      return null;
+    }
+    return new TiRegion(
+        resp.getRegion(),
+        resp.getLeader(),
+        conf.getIsolationLevel(),
+        conf.getCommandPriority(),
+        conf.getKvMode());
+  }
+
   @Override
   public Future<TiRegion> getRegionByKeyAsync(BackOffer backOffer, ByteString key) {
     FutureObserver<TiRegion, GetRegionResponse> responseObserver =
@@ -188,6 +214,66 @@ public class PDClient extends AbstractGRPCClient<PDBlockingStub, PDStub>
     return responseObserver.getFuture();
   }
 
+  @Override
+  public long getGCSafePoint(BackOffer backOffer) {
+    Supplier<GetGCSafePointRequest> request =
+        () -> GetGCSafePointRequest.newBuilder().setHeader(header).build();
+    PDErrorHandler<GetGCSafePointResponse> handler =
+        new PDErrorHandler<>(
+            r -> r.getHeader().hasError() ? buildFromPdpbError(r.getHeader().getError()) : null,
+            this);
+
+    GetGCSafePointResponse resp =
+        callWithRetry(backOffer, PDGrpc.METHOD_GET_GCSAFE_POINT, request, handler);
+    return resp.getSafePoint();
+  }
+
+  /**
+   * Update the GC safe point of the cluster, PD never moves it backward
+   *
+   * @param safePoint the new safe point
+   * @return the safe point after the update
+   */
+  public long updateGCSafePoint(BackOffer backOffer, long safePoint) {
+    Supplier<UpdateGCSafePointRequest> request =
+        () ->
+            UpdateGCSafePointRequest.newBuilder()
+                .setHeader(header)
+                .setSafePoint(safePoint)
+                .build();
+    PDErrorHandler<UpdateGCSafePointResponse> handler =
+        new PDErrorHandler<>(
+            r -> r.getHeader().hasError() ? buildFromPdpbError(r.getHeader().getError()) : null,
+            this);
+
+    UpdateGCSafePointResponse resp =
+        callWithRetry(backOffer, PDGrpc.METHOD_UPDATE_GCSAFE_POINT, request, handler);
+    return resp.getNewSafePoint();
+  }
+
+  /**
+   * Asks PD to scatter the peers and leader of a region across the stores
+   *
+   * @param region the region, as stored by TiKV, used if PD has not learnt of it yet
+   * @param leader the leader of the region
+   */
+  public void scatterRegion(BackOffer backOffer, Metapb.Region region, Metapb.Peer leader) {
+    Supplier<ScatterRegionRequest> request =
+        () ->
+            ScatterRegionRequest.newBuilder()
+                .setHeader(header)
+                .setRegionId(region.getId())
+                .setRegion(region)
+                .setLeader(leader)
+                .build();
+    PDErrorHandler<ScatterRegionResponse> handler =
+        new PDErrorHandler<>(
+            r -> r.getHeader().hasError() ? buildFromPdpbError(r.getHeader().getError()) : null,
+            this);
+
+    callWithRetry(backOffer, PDGrpc.METHOD_SCATTER_REGION, request, handler);
+  }
+
   @Override
   public void close() {
     if (service != null) {
@@ -41,6 +41,15 @@ public interface ReadOnlyPDClient {
 
   Future<TiRegion> getRegionByKeyAsync(BackOffer backOffer, ByteString key);
 
+  /**
+   * Get the Region right before the one covering the key specified
+   *
+   * @param key key in bytes for locating a region
+   * @return the region whose endKey is the startKey of the region covering the given key, or null
+   *     if that region is the first one
+   */
+  TiRegion getPrevRegion(BackOffer backOffer, ByteString key);
+
   /**
    * Get Region by Region Id
    *
@@ -60,4 +69,11 @@ public interface ReadOnlyPDClient {
   Store getStore(BackOffer backOffer, long storeId);
 
   Future<Store> getStoreAsync(BackOffer backOffer, long storeId);
+
+  /**
+   * Get the GC safe point of the cluster, versions older than it may have been garbage collected
+   *
+   * @return the safe point, 0 if it is never set
+   */
+  long getGCSafePoint(BackOffer backOffer);
 }
@@ -15,23 +15,33 @@
 
 package org.tikv.common;
 
-import com.google.common.collect.Range;
 import com.google.protobuf.ByteString;
+import org.tikv.common.exception.RegionException;
 import org.tikv.common.exception.TiClientInternalException;
-import org.tikv.common.key.Key;
+import org.tikv.common.exception.TiKVException;
 import org.tikv.common.meta.TiTimestamp;
+import org.tikv.common.metrics.OperationTrace;
 import org.tikv.common.operation.iterator.ConcreteScanIterator;
+import org.tikv.common.operation.iterator.ReverseScanIterator;
+import org.tikv.common.region.RegionManager;
 import org.tikv.common.region.RegionStoreClient;
 import org.tikv.common.region.TiRegion;
+import org.tikv.common.util.BackOffFunction;
 import org.tikv.common.util.BackOffer;
+import org.tikv.common.util.ByteStrings;
 import org.tikv.common.util.ConcreteBackOffer;
 import org.tikv.kvproto.Kvrpcpb.KvPair;
 
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-
-import static org.tikv.common.util.KeyRangeUtils.makeRange;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 public class Snapshot {
   private final TiTimestamp timestamp;
@@ -39,13 +49,24 @@ public class Snapshot {
   private final TiConfiguration conf;
   private final RegionStoreClient.RegionStoreClientBuilder clientBuilder;
   private ReadOnlyPDClient pdClient;
+  // runs the region batches of batchGet concurrently, they run one by one if it is null
+  private final ExecutorService executor;
+
+  private static final int BATCH_GET_SIZE = 5120;
 
   public Snapshot(TiConfiguration conf, ReadOnlyPDClient pdClient,
                   RegionStoreClient.RegionStoreClientBuilder builder, TiTimestamp timestamp) {
+    this(conf, pdClient, builder, timestamp, null);
+  }
+
+  public Snapshot(TiConfiguration conf, ReadOnlyPDClient pdClient,
+                  RegionStoreClient.RegionStoreClientBuilder builder, TiTimestamp timestamp,
+                  ExecutorService executor) {
     this.timestamp = timestamp;
     this.conf = conf;
     this.pdClient = pdClient;
     this.clientBuilder = builder;
+    this.executor = executor;
   }
 
   public long getVersion() {
@@ -56,50 +77,171 @@ public class Snapshot {
     return timestamp;
   }
 
+  /** @return the value, sharing the array of the response, which must not be modified */
   public byte[] get(byte[] key) {
-    ByteString keyString = ByteString.copyFrom(key);
-    ByteString value = get(keyString);
-    return value.toByteArray();
+    ByteString value = get(ByteStrings.wrap(key));
+    return ByteStrings.unsafeGetBytes(value);
   }
 
   public ByteString get(ByteString key) {
-    RegionStoreClient client = clientBuilder.build(key);
-    // TODO: Need to deal with lock error after grpc stable
-    return client.get(ConcreteBackOffer.newGetBackOff(), key, timestamp.getVersion());
+    try (OperationTrace ignored = OperationTrace.start("Snapshot.get", conf)) {
+      RegionStoreClient client = clientBuilder.build(key);
+      // TODO: Need to deal with lock error after grpc stable
+      return client.get(ConcreteBackOffer.newGetBackOff(), key, timestamp.getVersion());
+    }
   }
 
   public Iterator<KvPair> scan(ByteString startKey) {
-    BackOffer bo = ConcreteBackOffer.newTsoBackOff();
-    long version = pdClient.getTimestamp(bo).getVersion();
-    return new ConcreteScanIterator(conf, clientBuilder, startKey, version);
+    return scan(startKey, ByteString.EMPTY);
+  }
+
+  /**
+   * Scans [startKey, endKey) at the version of this snapshot, an empty endKey means +INF.
+   */
+  public Iterator<KvPair> scan(ByteString startKey, ByteString endKey) {
+    return new ConcreteScanIterator(conf, clientBuilder, startKey, endKey, timestamp.getVersion());
+  }
+
+  /**
+   * Scans [startKey, endKey) at the version of this snapshot in descending key order, an empty
+   * startKey means -INF while endKey must not be empty.
+   */
+  public Iterator<KvPair> reverseScan(ByteString startKey, ByteString endKey) {
+    return new ReverseScanIterator(conf, clientBuilder, startKey, endKey, timestamp.getVersion());
   }
 
-  // TODO: Need faster implementation, say concurrent version
-  // Assume keys sorted
+  /**
+   * Gets the keys at the version of this snapshot. Keys are grouped by region and each region batch
+   * is sent concurrently when the snapshot has an executor. Batches that hit a region error are
+   * grouped again and retried, locks met are resolved before their keys are read again.
+   *
+   * @return the pairs of the keys found, in no particular order
+   */
   public List<KvPair> batchGet(List<ByteString> keys) {
-    TiRegion curRegion = null;
-    Range<Key> curKeyRange = null;
-    List<ByteString> keyBuffer = new ArrayList<>();
+    try (OperationTrace ignored = OperationTrace.start("Snapshot.batchGet", conf)) {
+      return batchGet(ConcreteBackOffer.newBatchGetMaxBackOff(), keys);
+    }
+  }
+
+  private List<KvPair> batchGet(BackOffer backOffer, List<ByteString> keys) {
     List<KvPair> result = new ArrayList<>(keys.size());
-    BackOffer backOffer = ConcreteBackOffer.newBatchGetMaxBackOff();
-    for (ByteString key : keys) {
-      if (curRegion == null || !curKeyRange.contains(Key.toRawKey(key))) {
-        TiRegion region = pdClient.getRegionByKey(backOffer, key);
-        curRegion = region;
-        curKeyRange = makeRange(curRegion.getStartKey(), curRegion.getEndKey());
-
-        try (RegionStoreClient client = clientBuilder.build(key)) {
-          List<KvPair> partialResult =
-              client.batchGet(backOffer, keyBuffer, timestamp.getVersion());
-          // TODO: Add lock check
-          result.addAll(partialResult);
-        } catch (Exception e) {
-          throw new TiClientInternalException("Error Closing Store client.", e);
+    List<ByteString> pendingKeys = keys;
+    while (!pendingKeys.isEmpty()) {
+      List<Batch> batches = groupKeysIntoBatches(pendingKeys);
+      List<ByteString> failedKeys = new ArrayList<>();
+      RegionException lastError = null;
+      sendBatchGet(backOffer, batches);
+      for (Batch batch : batches) {
+        if (batch.error != null) {
+          failedKeys.addAll(batch.keys);
+          lastError = batch.error;
+        } else {
+          result.addAll(batch.pairs);
         }
-        keyBuffer = new ArrayList<>();
-        keyBuffer.add(key);
       }
+      if (lastError != null) {
+        // regions have changed, group the failed keys again with the refreshed cache
+        backOffer.doBackOff(BackOffFunction.BackOffFuncType.BoRegionMiss, lastError);
+      }
+      pendingKeys = failedKeys;
     }
     return result;
   }
+
+  /** A Batch containing the region and keys of a single batch get request, and its outcome */
+  private static final class Batch {
+    private final TiRegion region;
+    private final List<ByteString> keys;
+    private List<KvPair> pairs;
+    private RegionException error;
+
+    Batch(TiRegion region, List<ByteString> keys) {
+      this.region = region;
+      this.keys = keys;
+    }
+  }
+
+  private List<Batch> groupKeysIntoBatches(List<ByteString> keys) {
+    RegionManager regionManager = clientBuilder.getRegionManager();
+    Map<TiRegion, List<ByteString>> groups = new LinkedHashMap<>();
+    TiRegion lastRegion = null;
+    for (ByteString key : keys) {
+      if (lastRegion == null || !lastRegion.contains(key)) {
+        lastRegion = regionManager.getRegionByKey(key);
+      }
+      groups.computeIfAbsent(lastRegion, k -> new ArrayList<>()).add(key);
+    }
+    List<Batch> batches = new ArrayList<>();
+    for (Map.Entry<TiRegion, List<ByteString>> entry : groups.entrySet()) {
+      List<ByteString> regionKeys = entry.getValue();
+      for (int i = 0; i < regionKeys.size(); i += BATCH_GET_SIZE) {
+        batches.add(
+            new Batch(
+                entry.getKey(),
+                regionKeys.subList(i, Math.min(i + BATCH_GET_SIZE, regionKeys.size()))));
+      }
+    }
+    return batches;
+  }
+
+  private void sendBatchGet(BackOffer backOffer, List<Batch> batches) {
+    if (executor == null || batches.size() == 1) {
+      for (Batch batch : batches) {
+        doBatchGet(ConcreteBackOffer.create(backOffer), batch);
+      }
+      return;
+    }
+
+    ExecutorCompletionService<Object> completionService =
+        new ExecutorCompletionService<>(executor);
+    List<Future<Object>> futures = new ArrayList<>();
+    for (Batch batch : batches) {
+      BackOffer singleBatchBackOffer = ConcreteBackOffer.create(backOffer);
+      futures.add(
+          completionService.submit(
+              () -> {
+                doBatchGet(singleBatchBackOffer, batch);
+                return null;
+              }));
+    }
+    // all the batches share one deadline
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(BackOffer.batchGetMaxBackoff);
+    boolean completed = false;
+    try {
+      for (int i = 0; i < batches.size(); i++) {
+        Future<Object> future =
+            completionService.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        if (future == null) {
+          throw new TiKVException("TimeOut Exceeded for current operation. ");
+        }
+        future.get();
+      }
+      completed = true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new TiKVException("Current thread interrupted.", e);
+    } catch (ExecutionException e) {
+      throw new TiKVException("Execution exception met.", e.getCause());
+    } finally {
+      if (!completed) {
+        // the result is dropped, the batches still running are not needed
+        for (Future<Object> future : futures) {
+          future.cancel(true);
+        }
+      }
+    }
+  }
+
+  // a RegionException is kept in the batch so that its keys are grouped and sent again
+  private void doBatchGet(BackOffer backOffer, Batch batch) {
+    try (RegionStoreClient client = clientBuilder.build(batch.region)) {
+      batch.pairs = client.batchGet(backOffer, batch.keys, timestamp.getVersion());
+    } catch (RegionException e) {
+      batch.error = e;
+    } catch (TiKVException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new TiClientInternalException("Error Closing Store client.", e);
+    }
+  }
 }
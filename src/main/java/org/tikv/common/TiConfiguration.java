@@ -22,6 +22,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.TimeUnit;
+import org.tikv.common.metrics.ClientMetrics;
 import org.tikv.kvproto.Kvrpcpb.CommandPri;
 import org.tikv.kvproto.Kvrpcpb.IsolationLevel;
 
@@ -46,6 +47,26 @@ public class TiConfiguration implements Serializable {
   private static final String DEF_DB_PREFIX = "";
   private static final KVMode DEF_KV_MODE = KVMode.TXN;
   private static final int DEF_RAW_CLIENT_CONCURRENCY = 200;
+  // limits of a transaction write buffer, same as TiDB's defaults
+  private static final int DEF_TXN_ENTRY_SIZE_LIMIT = 6 * 1024 * 1024; // 6 MB
+  private static final int DEF_TXN_ENTRY_COUNT_LIMIT = 300000;
+  private static final long DEF_TXN_TOTAL_SIZE_LIMIT = 100 * 1024 * 1024; // 100 MB
+  private static final int DEF_TXN_BATCH_GET_CONCURRENCY = 16;
+  // a big transaction spills its write buffer to disk whenever it holds this many bytes
+  private static final long DEF_TXN_SPILL_SIZE = 64 * 1024 * 1024; // 64 MB
+  private static final String DEF_TXN_SPILL_DIR = System.getProperty("java.io.tmpdir");
+  private static final boolean DEF_TXN_LATCH_ENABLED = true;
+  private static final int DEF_TXN_LATCH_CAPACITY = 64 * 1024;
+  private static final int DEF_RESOLVE_LOCK_CONCURRENCY = 16;
+  private static final int DEF_GC_CONCURRENCY = 8;
+  private static final double DEF_GC_REGIONS_PER_SECOND = 100;
+  private static final int DEF_COPROCESSOR_CONCURRENCY = 16;
+  private static final int DEF_IMPORT_CONCURRENCY = 8;
+  private static final long DEF_IMPORT_SPILL_SIZE = 256 * 1024 * 1024; // 256 MB
+  private static final String DEF_IMPORT_DIR = System.getProperty("java.io.tmpdir");
+  private static final int DEF_SPLIT_CONCURRENCY = 8;
+  private static final int DEF_EXPORT_CONCURRENCY = 8;
+  private static final long DEF_SLOW_OPERATION_THRESHOLD_MS = 0;
 
   private int timeout = DEF_TIMEOUT;
   private TimeUnit timeoutUnit = DEF_TIMEOUT_UNIT;
@@ -65,6 +86,26 @@ public class TiConfiguration implements Serializable {
   private String dbPrefix = DEF_DB_PREFIX;
   private KVMode kvMode = DEF_KV_MODE;
   private int rawClientConcurrency = DEF_RAW_CLIENT_CONCURRENCY;
+  private int txnEntrySizeLimit = DEF_TXN_ENTRY_SIZE_LIMIT;
+  private int txnEntryCountLimit = DEF_TXN_ENTRY_COUNT_LIMIT;
+  private long txnTotalSizeLimit = DEF_TXN_TOTAL_SIZE_LIMIT;
+  private int txnBatchGetConcurrency = DEF_TXN_BATCH_GET_CONCURRENCY;
+  private long txnSpillSize = DEF_TXN_SPILL_SIZE;
+  private String txnSpillDir = DEF_TXN_SPILL_DIR;
+  private boolean txnLatchEnabled = DEF_TXN_LATCH_ENABLED;
+  private int txnLatchCapacity = DEF_TXN_LATCH_CAPACITY;
+  private int resolveLockConcurrency = DEF_RESOLVE_LOCK_CONCURRENCY;
+  private int gcConcurrency = DEF_GC_CONCURRENCY;
+  private double gcRegionsPerSecond = DEF_GC_REGIONS_PER_SECOND;
+  private int coprocessorConcurrency = DEF_COPROCESSOR_CONCURRENCY;
+  private int importConcurrency = DEF_IMPORT_CONCURRENCY;
+  private long importSpillSize = DEF_IMPORT_SPILL_SIZE;
+  private String importDir = DEF_IMPORT_DIR;
+  private int splitConcurrency = DEF_SPLIT_CONCURRENCY;
+  private int exportConcurrency = DEF_EXPORT_CONCURRENCY;
+  private long slowOperationThresholdMs = DEF_SLOW_OPERATION_THRESHOLD_MS;
+  // not serialized, a deserialized configuration has no metrics
+  private transient ClientMetrics metrics = ClientMetrics.NOOP;
 
   public enum KVMode {
     TXN,
@@ -249,4 +290,173 @@ public class TiConfiguration implements Serializable {
   public void setRawClientConcurrency(int rawClientConcurrency) {
     this.rawClientConcurrency = rawClientConcurrency;
   }
+
+  public int getTxnEntrySizeLimit() {
+    return txnEntrySizeLimit;
+  }
+
+  public void setTxnEntrySizeLimit(int txnEntrySizeLimit) {
+    this.txnEntrySizeLimit = txnEntrySizeLimit;
+  }
+
+  public int getTxnEntryCountLimit() {
+    return txnEntryCountLimit;
+  }
+
+  public void setTxnEntryCountLimit(int txnEntryCountLimit) {
+    this.txnEntryCountLimit = txnEntryCountLimit;
+  }
+
+  public long getTxnTotalSizeLimit() {
+    return txnTotalSizeLimit;
+  }
+
+  public void setTxnTotalSizeLimit(long txnTotalSizeLimit) {
+    this.txnTotalSizeLimit = txnTotalSizeLimit;
+  }
+
+  public int getTxnBatchGetConcurrency() {
+    return txnBatchGetConcurrency;
+  }
+
+  public void setTxnBatchGetConcurrency(int txnBatchGetConcurrency) {
+    this.txnBatchGetConcurrency = txnBatchGetConcurrency;
+  }
+
+  public long getTxnSpillSize() {
+    return txnSpillSize;
+  }
+
+  public void setTxnSpillSize(long txnSpillSize) {
+    this.txnSpillSize = txnSpillSize;
+  }
+
+  public String getTxnSpillDir() {
+    return txnSpillDir;
+  }
+
+  public void setTxnSpillDir(String txnSpillDir) {
+    this.txnSpillDir = txnSpillDir;
+  }
+
+  public boolean isTxnLatchEnabled() {
+    return txnLatchEnabled;
+  }
+
+  public void setTxnLatchEnabled(boolean txnLatchEnabled) {
+    this.txnLatchEnabled = txnLatchEnabled;
+  }
+
+  public int getTxnLatchCapacity() {
+    return txnLatchCapacity;
+  }
+
+  public void setTxnLatchCapacity(int txnLatchCapacity) {
+    this.txnLatchCapacity = txnLatchCapacity;
+  }
+
+  public int getResolveLockConcurrency() {
+    return resolveLockConcurrency;
+  }
+
+  /**
+   * @param resolveLockConcurrency max number of txn statuses checked or regions resolved at once
+   *     by the lock resolvers sharing this setting
+   */
+  public void setResolveLockConcurrency(int resolveLockConcurrency) {
+    this.resolveLockConcurrency = resolveLockConcurrency;
+  }
+
+  public int getGcConcurrency() {
+    return gcConcurrency;
+  }
+
+  public void setGcConcurrency(int gcConcurrency) {
+    this.gcConcurrency = gcConcurrency;
+  }
+
+  public double getGcRegionsPerSecond() {
+    return gcRegionsPerSecond;
+  }
+
+  /** @param gcRegionsPerSecond max number of regions GC works on per second, 0 for no limit */
+  public void setGcRegionsPerSecond(double gcRegionsPerSecond) {
+    this.gcRegionsPerSecond = gcRegionsPerSecond;
+  }
+
+  public int getCoprocessorConcurrency() {
+    return coprocessorConcurrency;
+  }
+
+  /** @param coprocessorConcurrency max number of regions a coprocessor request runs on at once */
+  public void setCoprocessorConcurrency(int coprocessorConcurrency) {
+    this.coprocessorConcurrency = coprocessorConcurrency;
+  }
+
+  public int getImportConcurrency() {
+    return importConcurrency;
+  }
+
+  /** @param importConcurrency max number of SST files uploaded and ingested at once */
+  public void setImportConcurrency(int importConcurrency) {
+    this.importConcurrency = importConcurrency;
+  }
+
+  public long getImportSpillSize() {
+    return importSpillSize;
+  }
+
+  /** @param importSpillSize size of the pairs to import buffered before they are spilled to disk */
+  public void setImportSpillSize(long importSpillSize) {
+    this.importSpillSize = importSpillSize;
+  }
+
+  public String getImportDir() {
+    return importDir;
+  }
+
+  /** @param importDir directory of the spilled pairs and SST files of an import */
+  public void setImportDir(String importDir) {
+    this.importDir = importDir;
+  }
+
+  public int getSplitConcurrency() {
+    return splitConcurrency;
+  }
+
+  /** @param splitConcurrency max number of regions split at once */
+  public void setSplitConcurrency(int splitConcurrency) {
+    this.splitConcurrency = splitConcurrency;
+  }
+
+  public int getExportConcurrency() {
+    return exportConcurrency;
+  }
+
+  /** @param exportConcurrency max number of regions exported at once */
+  public void setExportConcurrency(int exportConcurrency) {
+    this.exportConcurrency = exportConcurrency;
+  }
+
+  public ClientMetrics getMetrics() {
+    return metrics == null ? ClientMetrics.NOOP : metrics;
+  }
+
+  /** @param metrics receiver of the metrics of the RPCs, {@link ClientMetrics#NOOP} by default */
+  public void setMetrics(ClientMetrics metrics) {
+    this.metrics = Objects.requireNonNull(metrics, "metrics is null");
+  }
+
+  public long getSlowOperationThresholdMs() {
+    return slowOperationThresholdMs;
+  }
+
+  /**
+   * @param slowOperationThresholdMs operations taking at least this many milliseconds are logged
+   *     with the breakdown of their time, 0 (the default) disables tracing operations so their
+   *     RPCs are not measured
+   */
+  public void setSlowOperationThresholdMs(long slowOperationThresholdMs) {
+    this.slowOperationThresholdMs = slowOperationThresholdMs;
+  }
 }
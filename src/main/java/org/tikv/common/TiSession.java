@@ -16,10 +16,22 @@
 package org.tikv.common;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Joiner;
 import org.tikv.common.region.RegionManager;
+import org.tikv.common.region.RegionSplitter;
 import org.tikv.common.region.RegionStoreClient.RegionStoreClientBuilder;
 import org.tikv.common.util.ChannelFactory;
+import org.tikv.common.util.ConcreteBackOffer;
+import org.tikv.coprocessor.AnalyzeClient;
+import org.tikv.coprocessor.ChecksumClient;
+import org.tikv.coprocessor.CoprocessorClient;
+import org.tikv.importer.EngineImporter;
+import org.tikv.importer.SstImporter;
+import org.tikv.raw.RawExporter;
+import org.tikv.raw.RawImporter;
 import org.tikv.raw.RawKVClient;
+import org.tikv.txn.GCWorker;
+import org.tikv.txn.ResolvedTxnCache;
 import org.tikv.txn.TxnKVClient;
 
 /**
@@ -31,6 +43,8 @@ public class TiSession implements AutoCloseable {
   private final TiConfiguration conf;
   private final PDClient pdClient;
   private final ChannelFactory channelFactory;
+  // status of resolved transactions, shared by all the clients of this session
+  private final ResolvedTxnCache resolvedTxnCache = new ResolvedTxnCache();
 
   public TiSession(TiConfiguration conf) {
     this.conf = conf;
@@ -50,18 +64,75 @@ public class TiSession implements AutoCloseable {
     // Create new Region Manager avoiding thread contentions
     RegionManager regionMgr = new RegionManager(pdClient);
     RegionStoreClientBuilder builder =
-            new RegionStoreClientBuilder(conf, channelFactory, regionMgr);
+            new RegionStoreClientBuilder(conf, channelFactory, regionMgr, resolvedTxnCache);
     return new RawKVClient(conf, builder);
   }
 
+  public RawExporter createRawExporter() {
+    RegionManager regionMgr = new RegionManager(pdClient);
+    RegionStoreClientBuilder builder =
+            new RegionStoreClientBuilder(conf, channelFactory, regionMgr, resolvedTxnCache);
+    return new RawExporter(conf, builder);
+  }
+
+  public RawImporter createRawImporter() {
+    RegionManager regionMgr = new RegionManager(pdClient);
+    RegionStoreClientBuilder builder =
+            new RegionStoreClientBuilder(conf, channelFactory, regionMgr, resolvedTxnCache);
+    return new RawImporter(conf, builder);
+  }
+
   public TxnKVClient createTxnClient() {
     // Create new Region Manager avoiding thread contentions
     RegionManager regionMgr = new RegionManager(pdClient);
     RegionStoreClientBuilder builder =
-            new RegionStoreClientBuilder(conf, channelFactory, regionMgr);
+            new RegionStoreClientBuilder(conf, channelFactory, regionMgr, resolvedTxnCache);
     return new TxnKVClient(conf, builder, pdClient);
   }
 
+  public CoprocessorClient createCoprocessorClient() {
+    RegionManager regionMgr = new RegionManager(pdClient);
+    RegionStoreClientBuilder builder =
+            new RegionStoreClientBuilder(conf, channelFactory, regionMgr, resolvedTxnCache);
+    return new CoprocessorClient(conf, builder);
+  }
+
+  public AnalyzeClient createAnalyzeClient() {
+    return new AnalyzeClient(createCoprocessorClient());
+  }
+
+  public ChecksumClient createChecksumClient() {
+    return new ChecksumClient(createCoprocessorClient());
+  }
+
+  public SstImporter createSstImporter() {
+    return new SstImporter(conf, new RegionManager(pdClient), channelFactory);
+  }
+
+  /**
+   * Opens an engine of the tikv-importer at importerAddress, importing into the cluster of this
+   * session at a new timestamp.
+   */
+  public EngineImporter createEngineImporter(String importerAddress) {
+    long commitTs = pdClient.getTimestamp(ConcreteBackOffer.newTsoBackOff()).getVersion();
+    String pdAddr = Joiner.on(',').join(conf.getPdAddrs());
+    return new EngineImporter(conf, channelFactory, importerAddress, pdAddr, commitTs);
+  }
+
+  public RegionSplitter createRegionSplitter() {
+    RegionManager regionMgr = new RegionManager(pdClient);
+    RegionStoreClientBuilder builder =
+            new RegionStoreClientBuilder(conf, channelFactory, regionMgr, resolvedTxnCache);
+    return new RegionSplitter(conf, pdClient, builder);
+  }
+
+  public GCWorker createGCWorker() {
+    RegionManager regionMgr = new RegionManager(pdClient);
+    RegionStoreClientBuilder builder =
+            new RegionStoreClientBuilder(conf, channelFactory, regionMgr, resolvedTxnCache);
+    return new GCWorker(conf, pdClient, builder);
+  }
+
   @VisibleForTesting
   public PDClient getPDClient() {
     return pdClient;
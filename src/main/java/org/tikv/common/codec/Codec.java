@@ -127,7 +127,7 @@ public class Codec {
      * @param cdo For outputting data in bytes array
      * @param value The data to encode
      */
-    static void writeUVarLong(CodecDataOutput cdo, long value) {
+    public static void writeUVarLong(CodecDataOutput cdo, long value) {
       while ((value - 0x80) >= 0) {
         cdo.writeByte((byte) value | 0x80);
         value >>>= 7;
@@ -201,7 +201,6 @@ public class Codec {
   public static class BytesCodec {
 
     private static final int GRP_SIZE = 8;
-    private static final byte[] PADS = new byte[GRP_SIZE];
     private static final int MARKER = 0xFF;
     private static final byte PAD = (byte) 0x0;
 
@@ -226,18 +225,34 @@ public class Codec {
     //   [1, 2, 3, 4, 5, 6, 7, 8] -> [1, 2, 3, 4, 5, 6, 7, 8, 255, 0, 0, 0, 0, 0, 0, 0, 0, 247]
     // Refer: https://github.com/facebook/mysql-5.6/wiki/MyRocks-record-format#memcomparable-format
     public static void writeBytes(CodecDataOutput cdo, byte[] data) {
-      for (int i = 0; i <= data.length; i += GRP_SIZE) {
-        int remain = data.length - i;
-        int padCount = 0;
-        if (remain >= GRP_SIZE) {
-          cdo.write(data, i, GRP_SIZE);
-        } else {
-          padCount = GRP_SIZE - remain;
-          cdo.write(data, i, data.length - i);
-          cdo.write(PADS, 0, padCount);
-        }
-        cdo.write((byte) (MARKER - padCount));
+      int off = cdo.reserve(encodedLength(data.length));
+      encodeBytes(data, cdo.buffer(), off);
+    }
+
+    /** @return data encoded by {@link #writeBytes(CodecDataOutput, byte[])} */
+    public static byte[] encodeBytes(byte[] data) {
+      byte[] encoded = new byte[encodedLength(data.length)];
+      encodeBytes(data, encoded, 0);
+      return encoded;
+    }
+
+    /** @return length of data of the given length once encoded by writeBytes */
+    public static int encodedLength(int length) {
+      return (length / GRP_SIZE + 1) * (GRP_SIZE + 1);
+    }
+
+    // encodes data into dst from off, which has room for encodedLength(data.length) bytes
+    private static void encodeBytes(byte[] data, byte[] dst, int off) {
+      int fullGroups = data.length / GRP_SIZE;
+      for (int i = 0; i < fullGroups; i++, off += GRP_SIZE + 1) {
+        System.arraycopy(data, i * GRP_SIZE, dst, off, GRP_SIZE);
+        dst[off + GRP_SIZE] = (byte) MARKER;
       }
+      int remain = data.length - fullGroups * GRP_SIZE;
+      int padCount = GRP_SIZE - remain;
+      System.arraycopy(data, fullGroups * GRP_SIZE, dst, off, remain);
+      Arrays.fill(dst, off + remain, off + GRP_SIZE, PAD);
+      dst[off + GRP_SIZE] = (byte) (MARKER - padCount);
     }
 
     public static void writeCompactBytesFully(CodecDataOutput cdo, byte[] data) {
@@ -277,45 +292,38 @@ public class Codec {
     }
 
     private static byte[] readBytes(CodecDataInput cdi, boolean reverse) {
-      CodecDataOutput cdo = new CodecDataOutput();
-      while (true) {
-        byte[] groupBytes = new byte[GRP_SIZE + 1];
-
-        cdi.readFully(groupBytes, 0, GRP_SIZE + 1);
-        byte[] group = Arrays.copyOfRange(groupBytes, 0, GRP_SIZE);
-
-        int padCount;
-        int marker = Byte.toUnsignedInt(groupBytes[GRP_SIZE]);
-
-        if (reverse) {
-          padCount = marker;
-        } else {
-          padCount = MARKER - marker;
-        }
-
+      byte[] buf = cdi.buffer();
+      int start = cdi.position();
+      // finds the last group to size the result
+      int groups = 0;
+      int padCount;
+      do {
+        cdi.require((groups + 1) * (GRP_SIZE + 1));
+        int marker = Byte.toUnsignedInt(buf[start + groups * (GRP_SIZE + 1) + GRP_SIZE]);
+        padCount = reverse ? marker : MARKER - marker;
         checkArgument(padCount <= GRP_SIZE);
-        int realGroupSize = GRP_SIZE - padCount;
-        cdo.write(group, 0, realGroupSize);
+        groups++;
+      } while (padCount == 0);
+
+      int realGroupSize = GRP_SIZE - padCount;
+      // Check validity of padding bytes.
+      byte padByte = reverse ? (byte) MARKER : PAD;
+      int lastGroup = start + (groups - 1) * (GRP_SIZE + 1);
+      for (int i = lastGroup + realGroupSize; i < lastGroup + GRP_SIZE; i++) {
+        checkArgument(padByte == buf[i]);
+      }
 
-        if (padCount != 0) {
-          byte padByte = PAD;
-          if (reverse) {
-            padByte = (byte) MARKER;
-          }
-          // Check validity of padding bytes.
-          for (int i = realGroupSize; i < group.length; i++) {
-            byte b = group[i];
-            checkArgument(padByte == b);
-          }
-          break;
-        }
+      byte[] bytes = new byte[(groups - 1) * GRP_SIZE + realGroupSize];
+      for (int i = 0; i < groups; i++) {
+        int len = i == groups - 1 ? realGroupSize : GRP_SIZE;
+        System.arraycopy(buf, start + i * (GRP_SIZE + 1), bytes, i * GRP_SIZE, len);
       }
-      byte[] bytes = cdo.toBytes();
       if (reverse) {
         for (int i = 0; i < bytes.length; i++) {
           bytes[i] = (byte) ~bytes[i];
         }
       }
+      cdi.skipBytes(groups * (GRP_SIZE + 1));
       return bytes;
     }
   }
@@ -398,6 +406,11 @@ public class Codec {
       return dec.toDecimal();
     }
 
+    /** @return size of the binary format of a decimal after its precision and frac */
+    public static int binSize(int precision, int frac) {
+      return MyDecimal.decimalBinSize(precision, frac);
+    }
+
     /**
      * write a decimal value from CodecDataInput
      *
@@ -474,7 +487,7 @@ public class Codec {
      * @param tz timezone to interpret datetime parts
      * @return decoded DateTime using provided timezone
      */
-    static DateTime fromPackedLong(long packed, DateTimeZone tz) {
+    public static DateTime fromPackedLong(long packed, DateTimeZone tz) {
       // TODO: As for JDBC behavior, it can be configured to "round" or "toNull"
       // for now we didn't pass in session so we do a toNull behavior
       if (packed == 0) {
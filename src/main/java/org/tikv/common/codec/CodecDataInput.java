@@ -16,306 +16,324 @@
 package org.tikv.common.codec;
 
 import com.google.protobuf.ByteString;
-import java.io.*;
-
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import org.tikv.common.util.ByteStrings;
+
+/**
+ * Big-endian DataInput decoding a range of an array in place, in the same format as
+ * DataInputStream. ByteStrings and heap ByteBuffers are read without copying, other ones are copied
+ * once. Positions are relative to the start of the range. Reading past the end throws a
+ * RuntimeException caused by an EOFException.
+ *
+ * <p>Besides DataInput it provides little-endian and bulk reads for fixed-length data.
+ */
 public class CodecDataInput implements DataInput {
-  /**
-   * An copy of ByteArrayInputStream without synchronization for faster decode.
-   *
-   * @see ByteArrayInputStream
-   */
-  private class UnSyncByteArrayInputStream extends InputStream {
-    protected byte buf[];
-    protected int pos;
-    protected int mark = 0;
-    protected int count;
-
-    UnSyncByteArrayInputStream(byte buf[]) {
-      this.buf = buf;
-      this.pos = 0;
-      this.count = buf.length;
-    }
-
-    public UnSyncByteArrayInputStream(byte buf[], int offset, int length) {
-      this.buf = buf;
-      this.pos = offset;
-      this.count = Math.min(offset + length, buf.length);
-      this.mark = offset;
-    }
-
-    public int read() {
-      return (pos < count) ? (buf[pos++] & 0xff) : -1;
-    }
-
-    public int read(byte b[], int off, int len) {
-      if (b == null) {
-        throw new NullPointerException();
-      } else if (off < 0 || len < 0 || len > b.length - off) {
-        throw new IndexOutOfBoundsException();
-      }
-
-      if (pos >= count) {
-        return -1;
-      }
-
-      int avail = count - pos;
-      if (len > avail) {
-        len = avail;
-      }
-      if (len <= 0) {
-        return 0;
-      }
-      System.arraycopy(buf, pos, b, off, len);
-      pos += len;
-      return len;
-    }
-
-    public long skip(long n) {
-      long k = count - pos;
-      if (n < k) {
-        k = n < 0 ? 0 : n;
-      }
-
-      pos += k;
-      return k;
-    }
-
-    public int available() {
-      return count - pos;
-    }
-
-    public boolean markSupported() {
-      return true;
-    }
+  private final byte[] buf;
+  // start and end of the range in buf
+  private final int offset;
+  private final int limit;
+  private int pos;
+  private int mark;
 
-    public void mark(int readAheadLimit) {
-      mark = pos;
+  public CodecDataInput(ByteString data) {
+    ByteStrings.ArrayView view = ByteStrings.arrayView(data);
+    if (view != null) {
+      this.buf = view.array();
+      this.offset = view.offset();
+      this.limit = view.offset() + view.length();
+    } else {
+      this.buf = data.toByteArray();
+      this.offset = 0;
+      this.limit = buf.length;
     }
+    this.pos = offset;
+    this.mark = offset;
+  }
 
-    public void reset() {
-      pos = mark;
+  public CodecDataInput(ByteBuffer data) {
+    if (data.hasArray()) {
+      this.buf = data.array();
+      this.offset = data.arrayOffset() + data.position();
+    } else {
+      this.buf = new byte[data.remaining()];
+      data.duplicate().get(buf);
+      this.offset = 0;
     }
-
-    public void close() throws IOException {}
+    this.limit = offset + data.remaining();
+    this.pos = offset;
+    this.mark = offset;
   }
 
-  private final DataInputStream inputStream;
-  private final UnSyncByteArrayInputStream backingStream;
-  private final byte[] backingBuffer;
+  public CodecDataInput(byte[] buf) {
+    this(buf, 0, buf.length);
+  }
 
-  public CodecDataInput(ByteString data) {
-    this(data.toByteArray());
+  public CodecDataInput(byte[] buf, int offset, int length) {
+    if (offset < 0 || length < 0 || offset + length > buf.length) {
+      throw new IndexOutOfBoundsException();
+    }
+    this.buf = buf;
+    this.offset = offset;
+    this.limit = offset + length;
+    this.pos = offset;
+    this.mark = offset;
   }
 
-  public CodecDataInput(byte[] buf) {
-    backingBuffer = buf;
-    // MyDecimal usually will consume more bytes. If this happened,
-    // we need have a mechanism to reset backingStream.
-    // User mark first and then reset it later can do the trick.
-    backingStream =
-        new UnSyncByteArrayInputStream(buf) {
-          @Override
-          public void mark(int givenPos) {
-            mark = givenPos;
-          }
-        };
-    inputStream = new DataInputStream(backingStream);
+  // checks n more bytes can be read, the reads after it need no bounds check
+  void require(int n) {
+    if (n > limit - pos) {
+      int available = limit - pos;
+      pos = limit;
+      throw new RuntimeException(
+          new EOFException(String.format("need %d bytes, %d available", n, available)));
+    }
   }
 
   @Override
   public void readFully(byte[] b) {
-    try {
-      inputStream.readFully(b);
-    } catch (Exception e) {
-      throw new RuntimeException(e);
-    }
+    readFully(b, 0, b.length);
   }
 
   @Override
   public void readFully(byte[] b, int off, int len) {
-    try {
-      inputStream.readFully(b, off, len);
-    } catch (Exception e) {
-      throw new RuntimeException(e);
+    if (off < 0 || len < 0 || off + len > b.length) {
+      throw new IndexOutOfBoundsException();
     }
+    require(len);
+    System.arraycopy(buf, pos, b, off, len);
+    pos += len;
   }
 
   @Override
   public int skipBytes(int n) {
-    try {
-      return inputStream.skipBytes(n);
-    } catch (Exception e) {
-      throw new RuntimeException(e);
-    }
+    int skipped = Math.max(Math.min(n, limit - pos), 0);
+    pos += skipped;
+    return skipped;
   }
 
   @Override
   public boolean readBoolean() {
-    try {
-      return inputStream.readBoolean();
-    } catch (Exception e) {
-      throw new RuntimeException(e);
-    }
+    return readByte() != 0;
   }
 
   @Override
   public byte readByte() {
-    try {
-      return inputStream.readByte();
-    } catch (Exception e) {
-      throw new RuntimeException(e);
-    }
+    require(1);
+    return buf[pos++];
   }
 
   @Override
   public int readUnsignedByte() {
-    try {
-      return inputStream.readUnsignedByte();
-    } catch (Exception e) {
-      throw new RuntimeException(e);
-    }
+    return readByte() & 0xFF;
   }
 
   @Override
   public short readShort() {
-    try {
-      return inputStream.readShort();
-    } catch (Exception e) {
-      throw new RuntimeException(e);
-    }
+    return (short) readUnsignedShort();
   }
 
   @Override
   public int readUnsignedShort() {
-    try {
-      return inputStream.readUnsignedShort();
-    } catch (Exception e) {
-      throw new RuntimeException(e);
-    }
+    require(2);
+    int v = ((buf[pos] & 0xFF) << 8) | (buf[pos + 1] & 0xFF);
+    pos += 2;
+    return v;
   }
 
+  /** Reads an unsigned short from the bytes left, the missing bytes are taken as 0. */
   public int readPartialUnsignedShort() {
-    try {
-      byte readBuffer[] = new byte[2];
-      inputStream.read(readBuffer, 0, 2);
-      return ((readBuffer[0] & 0xff) << 8) + ((readBuffer[1] & 0xff) << 0);
-    } catch (IOException e) {
-      throw new RuntimeException(e);
-    }
+    int b0 = pos < limit ? buf[pos] & 0xFF : 0;
+    int b1 = pos + 1 < limit ? buf[pos + 1] & 0xFF : 0;
+    pos = Math.min(pos + 2, limit);
+    return (b0 << 8) | b1;
   }
 
   @Override
   public char readChar() {
-    try {
-      return inputStream.readChar();
-    } catch (Exception e) {
-      throw new RuntimeException(e);
-    }
+    return (char) readUnsignedShort();
   }
 
   @Override
   public int readInt() {
-    try {
-      return inputStream.readInt();
-    } catch (Exception e) {
-      throw new RuntimeException(e);
-    }
+    require(4);
+    int v = getInt(pos);
+    pos += 4;
+    return v;
   }
 
   @Override
   public long readLong() {
-    try {
-      return inputStream.readLong();
-    } catch (Exception e) {
-      throw new RuntimeException(e);
-    }
+    require(8);
+    long v = getLong(pos);
+    pos += 8;
+    return v;
   }
 
+  /** Reads a long from the bytes left, the missing bytes are taken as 0. */
   public final long readPartialLong() {
-    try {
-      byte readBuffer[] = new byte[8];
-      inputStream.read(readBuffer, 0, 8);
-      return (((long) readBuffer[0] << 56)
-          + ((long) (readBuffer[1] & 255) << 48)
-          + ((long) (readBuffer[2] & 255) << 40)
-          + ((long) (readBuffer[3] & 255) << 32)
-          + ((long) (readBuffer[4] & 255) << 24)
-          + ((readBuffer[5] & 255) << 16)
-          + ((readBuffer[6] & 255) << 8)
-          + ((readBuffer[7] & 255) << 0));
-    } catch (Exception e) {
-      throw new RuntimeException(e);
+    if (limit - pos >= 8) {
+      return readLong();
     }
+    long v = 0;
+    for (int i = 0; i < 8; i++) {
+      v = (v << 8) | (pos < limit ? buf[pos++] & 0xFF : 0);
+    }
+    return v;
   }
 
   @Override
   public float readFloat() {
-    try {
-      return inputStream.readFloat();
-    } catch (Exception e) {
-      throw new RuntimeException(e);
-    }
+    return Float.intBitsToFloat(readInt());
   }
 
   @Override
   public double readDouble() {
-    try {
-      return inputStream.readDouble();
-    } catch (Exception e) {
-      throw new RuntimeException(e);
+    return Double.longBitsToDouble(readLong());
+  }
+
+  public int readIntLE() {
+    return Integer.reverseBytes(readInt());
+  }
+
+  public long readLongLE() {
+    return Long.reverseBytes(readLong());
+  }
+
+  public float readFloatLE() {
+    return Float.intBitsToFloat(readIntLE());
+  }
+
+  public double readDoubleLE() {
+    return Double.longBitsToDouble(readLongLE());
+  }
+
+  /** Reads len ints into dst from off, in the given byte order. */
+  public void readInts(int[] dst, int off, int len, ByteOrder order) {
+    if (off < 0 || len < 0 || off + len > dst.length) {
+      throw new IndexOutOfBoundsException();
+    }
+    require(len * 4);
+    boolean littleEndian = order == ByteOrder.LITTLE_ENDIAN;
+    for (int i = off; i < off + len; i++, pos += 4) {
+      int v = getInt(pos);
+      dst[i] = littleEndian ? Integer.reverseBytes(v) : v;
+    }
+  }
+
+  /** Reads len longs into dst from off, in the given byte order. */
+  public void readLongs(long[] dst, int off, int len, ByteOrder order) {
+    if (off < 0 || len < 0 || off + len > dst.length) {
+      throw new IndexOutOfBoundsException();
     }
+    require(len * 8);
+    boolean littleEndian = order == ByteOrder.LITTLE_ENDIAN;
+    for (int i = off; i < off + len; i++, pos += 8) {
+      long v = getLong(pos);
+      dst[i] = littleEndian ? Long.reverseBytes(v) : v;
+    }
+  }
+
+  private int getInt(int i) {
+    return ((buf[i] & 0xFF) << 24)
+        | ((buf[i + 1] & 0xFF) << 16)
+        | ((buf[i + 2] & 0xFF) << 8)
+        | (buf[i + 3] & 0xFF);
+  }
+
+  private long getLong(int i) {
+    return ((long) getInt(i) << 32) | (getInt(i + 4) & 0xFFFFFFFFL);
   }
 
+  /** @see DataInputStream#readLine() */
   @Override
   public String readLine() {
-    try {
-      return inputStream.readLine();
-    } catch (Exception e) {
-      throw new RuntimeException(e);
+    if (pos >= limit) {
+      return null;
     }
+    StringBuilder sb = new StringBuilder();
+    while (pos < limit) {
+      int c = buf[pos++] & 0xFF;
+      if (c == '\n') {
+        break;
+      }
+      if (c == '\r') {
+        if (pos < limit && buf[pos] == '\n') {
+          pos++;
+        }
+        break;
+      }
+      sb.append((char) c);
+    }
+    return sb.toString();
   }
 
   @Override
   public String readUTF() {
     try {
-      return inputStream.readUTF();
-    } catch (Exception e) {
+      return DataInputStream.readUTF(this);
+    } catch (IOException e) {
       throw new RuntimeException(e);
     }
   }
 
+  /** @return a view of the next len bytes without copying them */
+  public ByteString readByteString(int len) {
+    require(len);
+    ByteString bytes = ByteStrings.wrap(buf, pos, len);
+    pos += len;
+    return bytes;
+  }
+
+  // the array and the absolute position, for the codecs of this package to decode in place
+  byte[] buffer() {
+    return buf;
+  }
+
+  int position() {
+    return pos;
+  }
+
   public int peekByte() {
-    mark(currentPos());
-    int b = readByte() & 0xFF;
-    reset();
-    return b;
+    require(1);
+    return buf[pos] & 0xFF;
   }
 
   public int currentPos() {
-    return size() - available();
+    return pos - offset;
   }
 
+  /** Sets the position {@link #reset()} goes back to. */
   public void mark(int givenPos) {
-    this.backingStream.mark(givenPos);
+    this.mark = offset + givenPos;
   }
 
   public void reset() {
-    this.backingStream.reset();
+    this.pos = mark;
   }
 
   public boolean eof() {
-    return backingStream.available() == 0;
+    return pos >= limit;
   }
 
   public int size() {
-    return backingBuffer.length;
+    return limit - offset;
   }
 
   public int available() {
-    return backingStream.available();
+    return limit - pos;
   }
 
+  /** @return the bytes of the range, the backing array itself if the range covers it */
   public byte[] toByteArray() {
-    return backingBuffer;
+    if (offset == 0 && limit == buf.length) {
+      return buf;
+    }
+    return Arrays.copyOfRange(buf, offset, limit);
   }
 }
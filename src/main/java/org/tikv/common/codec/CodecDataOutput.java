@@ -16,161 +16,215 @@
 package org.tikv.common.codec;
 
 import com.google.protobuf.ByteString;
-import java.io.ByteArrayOutputStream;
 import java.io.DataOutput;
-import java.io.DataOutputStream;
+import java.util.Arrays;
+import org.tikv.common.util.ByteStrings;
 
-// A trivial implementation supposed to be replaced
+/**
+ * Big-endian DataOutput over a growable byte array, in the same format as DataOutputStream.
+ *
+ * <p>{@link #toByteString()} hands the array over without copying when it is mostly filled, the
+ * array is then left to the ByteString and the next write after {@link #reset()} starts a new one.
+ * Not thread safe.
+ */
 public class CodecDataOutput implements DataOutput {
-  private DataOutputStream s;
-  // TODO: Switch to ByteBuffer if possible, or a chain of ByteBuffer
-  private ByteArrayOutputStream byteArray;
+  private static final int DEFAULT_CAPACITY = 32;
+
+  private byte[] buf;
+  private int count;
+  // whether buf is shared with a ByteString and must not be written any more
+  private boolean shared;
 
   public CodecDataOutput() {
-    byteArray = new ByteArrayOutputStream();
-    s = new DataOutputStream(byteArray);
+    this(DEFAULT_CAPACITY);
   }
 
   public CodecDataOutput(int size) {
-    byteArray = new ByteArrayOutputStream(size);
-    s = new DataOutputStream(byteArray);
+    buf = new byte[Math.max(size, 1)];
+  }
+
+  // makes room for n more bytes
+  private void ensureCapacity(int n) {
+    int minCapacity = count + n;
+    if (minCapacity < 0) {
+      throw new OutOfMemoryError("CodecDataOutput too large");
+    }
+    if (shared || minCapacity > buf.length) {
+      int newCapacity = Math.max(minCapacity, shared ? buf.length : buf.length << 1);
+      if (newCapacity < 0) {
+        newCapacity = Integer.MAX_VALUE - 8;
+      }
+      byte[] newBuf = new byte[newCapacity];
+      System.arraycopy(buf, 0, newBuf, 0, count);
+      buf = newBuf;
+      shared = false;
+    }
+  }
+
+  /**
+   * Makes room for n bytes written in place by the codecs of this package.
+   *
+   * @return the offset of the room in {@link #buffer()}
+   */
+  int reserve(int n) {
+    ensureCapacity(n);
+    int start = count;
+    count += n;
+    return start;
+  }
+
+  byte[] buffer() {
+    return buf;
   }
 
   @Override
   public void write(int b) {
-    try {
-      s.write(b);
-    } catch (Exception e) {
-      throw new RuntimeException(e);
-    }
+    ensureCapacity(1);
+    buf[count++] = (byte) b;
   }
 
   @Override
   public void write(byte b[]) {
-    try {
-      s.write(b);
-    } catch (Exception e) {
-      throw new RuntimeException(e);
-    }
+    write(b, 0, b.length);
   }
 
   @Override
   public void write(byte[] b, int off, int len) {
-    try {
-      s.write(b, off, len);
-    } catch (Exception e) {
-      throw new RuntimeException(e);
+    if (off < 0 || len < 0 || off + len > b.length) {
+      throw new IndexOutOfBoundsException();
     }
+    ensureCapacity(len);
+    System.arraycopy(b, off, buf, count, len);
+    count += len;
   }
 
   @Override
   public void writeBoolean(boolean v) {
-    try {
-      s.writeBoolean(v);
-    } catch (Exception e) {
-      throw new RuntimeException(e);
-    }
+    write(v ? 1 : 0);
   }
 
   @Override
   public void writeByte(int v) {
-    try {
-      s.writeByte(v);
-    } catch (Exception e) {
-      throw new RuntimeException(e);
-    }
+    write(v);
   }
 
   @Override
   public void writeShort(int v) {
-    try {
-      s.writeShort(v);
-    } catch (Exception e) {
-      throw new RuntimeException(e);
-    }
+    ensureCapacity(2);
+    buf[count] = (byte) (v >>> 8);
+    buf[count + 1] = (byte) v;
+    count += 2;
   }
 
   @Override
   public void writeChar(int v) {
-    try {
-      s.writeChar(v);
-    } catch (Exception e) {
-      throw new RuntimeException(e);
-    }
+    writeShort(v);
   }
 
   @Override
   public void writeInt(int v) {
-    try {
-      s.writeInt(v);
-    } catch (Exception e) {
-      throw new RuntimeException(e);
-    }
+    ensureCapacity(4);
+    buf[count] = (byte) (v >>> 24);
+    buf[count + 1] = (byte) (v >>> 16);
+    buf[count + 2] = (byte) (v >>> 8);
+    buf[count + 3] = (byte) v;
+    count += 4;
   }
 
   @Override
   public void writeLong(long v) {
-    try {
-      s.writeLong(v);
-    } catch (Exception e) {
-      throw new RuntimeException(e);
-    }
+    ensureCapacity(8);
+    buf[count] = (byte) (v >>> 56);
+    buf[count + 1] = (byte) (v >>> 48);
+    buf[count + 2] = (byte) (v >>> 40);
+    buf[count + 3] = (byte) (v >>> 32);
+    buf[count + 4] = (byte) (v >>> 24);
+    buf[count + 5] = (byte) (v >>> 16);
+    buf[count + 6] = (byte) (v >>> 8);
+    buf[count + 7] = (byte) v;
+    count += 8;
   }
 
   @Override
   public void writeFloat(float v) {
-    try {
-      s.writeFloat(v);
-    } catch (Exception e) {
-      throw new RuntimeException(e);
-    }
+    writeInt(Float.floatToIntBits(v));
   }
 
   @Override
   public void writeDouble(double v) {
-    try {
-      s.writeDouble(v);
-    } catch (Exception e) {
-      throw new RuntimeException(e);
-    }
+    writeLong(Double.doubleToLongBits(v));
   }
 
   @Override
   public void writeBytes(String v) {
-    try {
-      s.writeBytes(v);
-    } catch (Exception e) {
-      throw new RuntimeException(e);
+    int len = v.length();
+    ensureCapacity(len);
+    for (int i = 0; i < len; i++) {
+      buf[count++] = (byte) v.charAt(i);
     }
   }
 
   @Override
   public void writeChars(String v) {
-    try {
-      s.writeChars(v);
-    } catch (Exception e) {
-      throw new RuntimeException(e);
+    int len = v.length();
+    ensureCapacity(len * 2);
+    for (int i = 0; i < len; i++) {
+      char c = v.charAt(i);
+      buf[count++] = (byte) (c >>> 8);
+      buf[count++] = (byte) c;
     }
   }
 
+  /** Writes v in modified UTF-8 prefixed by its length, see {@link DataOutput#writeUTF(String)}. */
   @Override
   public void writeUTF(String v) {
-    try {
-      s.writeUTF(v);
-    } catch (Exception e) {
-      throw new RuntimeException(e);
+    int len = v.length();
+    int utfLen = 0;
+    for (int i = 0; i < len; i++) {
+      char c = v.charAt(i);
+      utfLen += (c >= 0x0001 && c <= 0x007F) ? 1 : (c > 0x07FF ? 3 : 2);
+    }
+    if (utfLen > 65535) {
+      throw new IllegalArgumentException("encoded string too long: " + utfLen + " bytes");
+    }
+    writeShort(utfLen);
+    ensureCapacity(utfLen);
+    for (int i = 0; i < len; i++) {
+      char c = v.charAt(i);
+      if (c >= 0x0001 && c <= 0x007F) {
+        buf[count++] = (byte) c;
+      } else if (c > 0x07FF) {
+        buf[count++] = (byte) (0xE0 | ((c >> 12) & 0x0F));
+        buf[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+        buf[count++] = (byte) (0x80 | (c & 0x3F));
+      } else {
+        buf[count++] = (byte) (0xC0 | ((c >> 6) & 0x1F));
+        buf[count++] = (byte) (0x80 | (c & 0x3F));
+      }
     }
   }
 
+  /** @return number of bytes written */
+  public int size() {
+    return count;
+  }
+
+  /** @return a copy of the bytes written */
   public byte[] toBytes() {
-    return byteArray.toByteArray();
+    return Arrays.copyOf(buf, count);
   }
 
+  /** @return the bytes written, sharing the buffer instead of copying it when it is mostly used */
   public ByteString toByteString() {
-    return ByteString.copyFrom(byteArray.toByteArray());
+    if (count < buf.length >> 1) {
+      // do not let a small ByteString hold a large buffer
+      return ByteString.copyFrom(buf, 0, count);
+    }
+    shared = true;
+    return ByteStrings.wrap(buf, 0, count);
   }
 
   public void reset() {
-    this.byteArray.reset();
+    count = 0;
   }
 }
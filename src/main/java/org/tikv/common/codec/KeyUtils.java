@@ -17,6 +17,7 @@ package org.tikv.common.codec;
 
 import com.google.common.primitives.UnsignedBytes;
 import com.google.protobuf.ByteString;
+import org.tikv.common.util.ByteStrings;
 import org.tikv.kvproto.Coprocessor;
 
 public class KeyUtils {
@@ -36,7 +37,7 @@ public class KeyUtils {
 
   public static String formatBytes(ByteString bytes) {
     if (bytes == null) return "null";
-    return formatBytes(bytes.toByteArray());
+    return formatBytes(ByteStrings.unsafeGetBytes(bytes));
   }
 
   public static String formatBytes(Coprocessor.KeyRange keyRange) {
@@ -599,7 +599,7 @@ public class MyDecimal {
   }
 
   // decimalBinSize returns the size of array to hold a binary representation of a decimal.
-  private int decimalBinSize(int precision, int frac) {
+  static int decimalBinSize(int precision, int frac) {
     int digitsInt = precision - frac;
     int wordsInt = digitsInt / digitsPerWord;
     int wordsFrac = frac / digitsPerWord;
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.common.codec;
+
+import com.google.protobuf.ByteString;
+import org.tikv.common.codec.Codec.IntegerCodec;
+import org.tikv.common.key.Key;
+import org.tikv.common.util.KeyRangeUtils;
+import org.tikv.kvproto.Coprocessor.KeyRange;
+
+/**
+ * Keys of the TiDB tables: a row is stored at t{tableId}_r{handle} and an index entry at
+ * t{tableId}_i{indexId}{indexed values}, ids and handles being memcomparable int64s.
+ */
+public class TableCodec {
+  private static final byte TABLE_PREFIX = 't';
+  private static final byte[] RECORD_PREFIX_SEP = {'_', 'r'};
+  private static final byte[] INDEX_PREFIX_SEP = {'_', 'i'};
+
+  private TableCodec() {}
+
+  /** @return the prefix of the row keys of a table */
+  public static ByteString recordPrefix(long tableId) {
+    CodecDataOutput cdo = new CodecDataOutput(11);
+    cdo.write(TABLE_PREFIX);
+    IntegerCodec.writeLong(cdo, tableId);
+    cdo.write(RECORD_PREFIX_SEP);
+    return cdo.toByteString();
+  }
+
+  /** @return the key of the row of a table with the given handle */
+  public static ByteString encodeRowKey(long tableId, long handle) {
+    CodecDataOutput cdo = new CodecDataOutput(19);
+    cdo.write(TABLE_PREFIX);
+    IntegerCodec.writeLong(cdo, tableId);
+    cdo.write(RECORD_PREFIX_SEP);
+    IntegerCodec.writeLong(cdo, handle);
+    return cdo.toByteString();
+  }
+
+  /** @return the prefix of the entries of an index */
+  public static ByteString indexPrefix(long tableId, long indexId) {
+    CodecDataOutput cdo = new CodecDataOutput(19);
+    cdo.write(TABLE_PREFIX);
+    IntegerCodec.writeLong(cdo, tableId);
+    cdo.write(INDEX_PREFIX_SEP);
+    IntegerCodec.writeLong(cdo, indexId);
+    return cdo.toByteString();
+  }
+
+  /** @return the key range of all the rows of a table */
+  public static KeyRange recordRange(long tableId) {
+    return prefixRange(recordPrefix(tableId));
+  }
+
+  /** @return the key range of all the entries of an index */
+  public static KeyRange indexRange(long tableId, long indexId) {
+    return prefixRange(indexPrefix(tableId, indexId));
+  }
+
+  private static KeyRange prefixRange(ByteString prefix) {
+    return KeyRangeUtils.makeCoprocRange(prefix, Key.toRawKey(prefix).next().toByteString());
+  }
+}
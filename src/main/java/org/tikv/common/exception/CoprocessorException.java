@@ -0,0 +1,26 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.common.exception;
+
+/** An error TiKV reported while executing a coprocessor request, it is not retryable. */
+public class CoprocessorException extends TiKVException {
+
+  private static final long serialVersionUID = 5472938214095768101L;
+
+  public CoprocessorException(String msg) {
+    super(msg);
+  }
+}
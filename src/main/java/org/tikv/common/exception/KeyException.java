@@ -33,6 +33,11 @@ public class KeyException extends TiKVException {
     this.keyErr = keyErr;
   }
 
+  public KeyException(Kvrpcpb.KeyError keyErr, String errMsg) {
+    super(errMsg);
+    this.keyErr = keyErr;
+  }
+
   public Kvrpcpb.KeyError getKeyErr() {
     return keyErr;
   }
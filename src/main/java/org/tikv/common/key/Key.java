@@ -20,10 +20,12 @@ import static org.tikv.common.codec.KeyUtils.formatBytes;
 
 import com.google.protobuf.ByteString;
 import java.util.Arrays;
+import org.tikv.common.util.ByteStrings;
 import org.tikv.common.util.FastByteComparisons;
 
 public class Key implements Comparable<Key> {
 
+  // never modified, it may be shared with the ByteStrings the key is converted from or to
   protected final byte[] value;
   protected final int infFlag;
 
@@ -39,11 +41,11 @@ public class Key implements Comparable<Key> {
   }
 
   public static Key toRawKey(ByteString bytes, boolean negative) {
-    return new Key(bytes.toByteArray(), negative);
+    return new Key(ByteStrings.unsafeGetBytes(bytes), negative);
   }
 
   public static Key toRawKey(ByteString bytes) {
-    return new Key(bytes.toByteArray());
+    return new Key(ByteStrings.unsafeGetBytes(bytes));
   }
 
   public static Key toRawKey(byte[] bytes, boolean negative) {
@@ -125,7 +127,7 @@ public class Key implements Comparable<Key> {
   }
 
   public ByteString toByteString() {
-    return ByteString.copyFrom(value);
+    return ByteStrings.wrap(value);
   }
 
   public int getInfFlag() {
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.common.metrics;
+
+/**
+ * Receives the metrics of the RPCs sent by the clients, set by {@link
+ * org.tikv.common.TiConfiguration#setMetrics(ClientMetrics)}.
+ *
+ * <p>The methods are called by the threads sending the RPCs, so implementations must be thread safe
+ * and cheap. The target of an RPC is the address of the store or PD server it is sent to. When
+ * {@link #isEnabled()} is false nothing is measured and no other method is called.
+ */
+public interface ClientMetrics {
+  /** Drops all the metrics, the default. */
+  ClientMetrics NOOP =
+      new ClientMetrics() {
+        @Override
+        public boolean isEnabled() {
+          return false;
+        }
+
+        @Override
+        public void recordCall(
+            String method,
+            String target,
+            long nanos,
+            long requestBytes,
+            long responseBytes,
+            boolean success) {}
+
+        @Override
+        public void recordRetry(String method, String target) {}
+
+        @Override
+        public void recordError(String method, String target, String errorType) {}
+      };
+
+  boolean isEnabled();
+
+  /**
+   * Records an attempt of an RPC.
+   *
+   * @param nanos time from sending the request to receiving the whole response
+   * @param requestBytes serialized size of the request
+   * @param responseBytes serialized size of the response, 0 if none was received
+   * @param success whether a response was received, it may still hold an error
+   */
+  void recordCall(
+      String method,
+      String target,
+      long nanos,
+      long requestBytes,
+      long responseBytes,
+      boolean success);
+
+  /** Records an attempt of an RPC after the first one. */
+  void recordRetry(String method, String target);
+
+  /**
+   * Records an error handled by the error handler of an RPC.
+   *
+   * @param errorType the status code of a failed RPC, or the type of the error in a response
+   */
+  void recordError(String method, String target, String errorType);
+}
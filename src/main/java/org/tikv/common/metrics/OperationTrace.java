@@ -0,0 +1,196 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.common.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import org.apache.log4j.Logger;
+import org.tikv.common.TiConfiguration;
+import org.tikv.common.util.BackOffFunction.BackOffFuncType;
+
+/**
+ * Breakdown of the time spent by a top-level operation of the client: the wall time of its RPCs by
+ * method, the PD lookups among them, its back off sleeps by type and the time spent resolving
+ * locks. An operation taking longer than {@link TiConfiguration#getSlowOperationThresholdMs()} is
+ * logged with its breakdown when it ends.
+ *
+ * <p>The trace is bound to the thread starting the operation. The back offers created on the thread
+ * until it ends carry it, so it follows them to the other threads of the operation and records the
+ * RPCs and the back offs made with them. Nested operations are part of the outer one.
+ */
+public final class OperationTrace implements AutoCloseable {
+  private static final Logger logger = Logger.getLogger(OperationTrace.class);
+  private static final ThreadLocal<OperationTrace> CURRENT = new ThreadLocal<>();
+  private static final String PD_METHOD_PREFIX = "pdpb.";
+
+  private final String name;
+  private final long thresholdMs;
+  private final long startNanos = System.nanoTime();
+  private final Thread owner = Thread.currentThread();
+  // number of operations started and not closed on the owner thread
+  private int depth = 1;
+  // count and nanoseconds by method
+  private final Map<String, long[]> rpcs = new TreeMap<>();
+  // count and milliseconds by type
+  private final Map<BackOffFuncType, long[]> backOffs = new EnumMap<>(BackOffFuncType.class);
+  private long lockResolveCount;
+  private long lockResolveNanos;
+
+  private OperationTrace(String name, long thresholdMs) {
+    this.name = name;
+    this.thresholdMs = thresholdMs;
+  }
+
+  /**
+   * Starts tracing an operation on the current thread, to be closed when it ends.
+   *
+   * @return the trace, that of the enclosing operation if there is one, null if slow operations
+   *     are not logged
+   */
+  public static OperationTrace start(String name, TiConfiguration conf) {
+    OperationTrace current = CURRENT.get();
+    if (current != null) {
+      current.depth++;
+      return current;
+    }
+    long thresholdMs = conf.getSlowOperationThresholdMs();
+    if (thresholdMs <= 0) {
+      return null;
+    }
+    OperationTrace trace = new OperationTrace(name, thresholdMs);
+    CURRENT.set(trace);
+    return trace;
+  }
+
+  /** @return the trace of the operation running on the current thread, null if there is none */
+  public static OperationTrace current() {
+    return CURRENT.get();
+  }
+
+  public synchronized void recordRpc(String method, long nanos) {
+    long[] stats = rpcs.computeIfAbsent(method, k -> new long[2]);
+    stats[0]++;
+    stats[1] += nanos;
+  }
+
+  public synchronized void recordBackOff(BackOffFuncType type, long millis) {
+    long[] stats = backOffs.computeIfAbsent(type, k -> new long[2]);
+    stats[0]++;
+    stats[1] += millis;
+  }
+
+  public synchronized void recordLockResolve(long nanos) {
+    lockResolveCount++;
+    lockResolveNanos += nanos;
+  }
+
+  public synchronized long getRpcCount(String method) {
+    long[] stats = rpcs.get(method);
+    return stats == null ? 0 : stats[0];
+  }
+
+  /** @return number of RPCs sent to PD */
+  public synchronized long getPdLookupCount() {
+    long count = 0;
+    for (Map.Entry<String, long[]> entry : rpcs.entrySet()) {
+      if (entry.getKey().startsWith(PD_METHOD_PREFIX)) {
+        count += entry.getValue()[0];
+      }
+    }
+    return count;
+  }
+
+  public synchronized long getBackOffCount(BackOffFuncType type) {
+    long[] stats = backOffs.get(type);
+    return stats == null ? 0 : stats[0];
+  }
+
+  public synchronized long getBackOffMillis(BackOffFuncType type) {
+    long[] stats = backOffs.get(type);
+    return stats == null ? 0 : stats[1];
+  }
+
+  public synchronized long getLockResolveCount() {
+    return lockResolveCount;
+  }
+
+  public long getElapsedMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+  }
+
+  /** Ends the operation if it is the outermost one, logging it if it is slow. */
+  @Override
+  public void close() {
+    if (Thread.currentThread() != owner || --depth > 0) {
+      return;
+    }
+    CURRENT.remove();
+    long elapsedMs = getElapsedMillis();
+    if (elapsedMs >= thresholdMs) {
+      logger.warn(String.format("Slow operation %s took %dms: %s", name, elapsedMs, this));
+    }
+  }
+
+  private static void appendRpcs(StringBuilder sb, String title, Map<String, long[]> rpcs) {
+    sb.append(title).append(" [");
+    String separator = "";
+    for (Map.Entry<String, long[]> entry : rpcs.entrySet()) {
+      sb.append(separator)
+          .append(entry.getKey())
+          .append(' ')
+          .append(entry.getValue()[0])
+          .append(" in ")
+          .append(TimeUnit.NANOSECONDS.toMillis(entry.getValue()[1]))
+          .append("ms");
+      separator = ", ";
+    }
+    sb.append("]");
+  }
+
+  /** @return the breakdown of the operation */
+  @Override
+  public synchronized String toString() {
+    Map<String, long[]> kvRpcs = new TreeMap<>();
+    Map<String, long[]> pdRpcs = new TreeMap<>();
+    for (Map.Entry<String, long[]> entry : rpcs.entrySet()) {
+      (entry.getKey().startsWith(PD_METHOD_PREFIX) ? pdRpcs : kvRpcs)
+          .put(entry.getKey(), entry.getValue());
+    }
+    StringBuilder sb = new StringBuilder();
+    appendRpcs(sb, "rpc", kvRpcs);
+    appendRpcs(sb.append(", "), "pd", pdRpcs);
+    sb.append(", backoff [");
+    String separator = "";
+    for (Map.Entry<BackOffFuncType, long[]> entry : backOffs.entrySet()) {
+      sb.append(separator)
+          .append(entry.getKey())
+          .append(' ')
+          .append(entry.getValue()[0])
+          .append(" for ")
+          .append(entry.getValue()[1])
+          .append("ms");
+      separator = ", ";
+    }
+    sb.append("], lock resolve ")
+        .append(lockResolveCount)
+        .append(" in ")
+        .append(TimeUnit.NANOSECONDS.toMillis(lockResolveNanos))
+        .append("ms");
+    return sb.toString();
+  }
+}
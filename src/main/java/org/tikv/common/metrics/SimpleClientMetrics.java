@@ -0,0 +1,222 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.common.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory {@link ClientMetrics}, keeping counters and a latency histogram per method and target.
+ *
+ * <p>The histogram has a bucket per power of two of microseconds, so percentiles are accurate
+ * within a factor of two, which is enough to tell a slow store. Recording only updates striped
+ * counters. {@link #toString()} reports all the metrics, e.g. to be logged periodically.
+ */
+public class SimpleClientMetrics implements ClientMetrics {
+  private final ConcurrentHashMap<String, CallStats> calls = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+  private static String key(String method, String target) {
+    return method + "@" + target;
+  }
+
+  private CallStats stats(String method, String target) {
+    return calls.computeIfAbsent(key(method, target), k -> new CallStats());
+  }
+
+  @Override
+  public boolean isEnabled() {
+    return true;
+  }
+
+  @Override
+  public void recordCall(
+      String method,
+      String target,
+      long nanos,
+      long requestBytes,
+      long responseBytes,
+      boolean success) {
+    CallStats stats = stats(method, target);
+    stats.latency.record(nanos);
+    stats.requestBytes.add(requestBytes);
+    stats.responseBytes.add(responseBytes);
+    if (!success) {
+      stats.failures.increment();
+    }
+  }
+
+  @Override
+  public void recordRetry(String method, String target) {
+    stats(method, target).retries.increment();
+  }
+
+  @Override
+  public void recordError(String method, String target, String errorType) {
+    errors.computeIfAbsent(key(method, target) + " " + errorType, k -> new LongAdder()).increment();
+  }
+
+  /** @return the metrics of the calls of method to target, null if there was none */
+  public CallStats getCallStats(String method, String target) {
+    return calls.get(key(method, target));
+  }
+
+  /** @return the number of errors of errorType of the calls of method to target */
+  public long getErrorCount(String method, String target, String errorType) {
+    LongAdder count = errors.get(key(method, target) + " " + errorType);
+    return count == null ? 0 : count.sum();
+  }
+
+  public void reset() {
+    calls.clear();
+    errors.clear();
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    for (Map.Entry<String, CallStats> entry : new TreeMap<>(calls).entrySet()) {
+      sb.append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+    }
+    for (Map.Entry<String, LongAdder> entry : new TreeMap<>(errors).entrySet()) {
+      sb.append(entry.getKey()).append(" errors=").append(entry.getValue().sum()).append('\n');
+    }
+    return sb.toString();
+  }
+
+  /** Metrics of the calls of a method to a target. */
+  public static final class CallStats {
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder requestBytes = new LongAdder();
+    private final LongAdder responseBytes = new LongAdder();
+
+    /** @return number of attempts, including the failed ones and the retries */
+    public long getCount() {
+      return latency.getCount();
+    }
+
+    public long getFailures() {
+      return failures.sum();
+    }
+
+    public long getRetries() {
+      return retries.sum();
+    }
+
+    public long getRequestBytes() {
+      return requestBytes.sum();
+    }
+
+    public long getResponseBytes() {
+      return responseBytes.sum();
+    }
+
+    public LatencyHistogram getLatency() {
+      return latency;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "count=%d failures=%d retries=%d requestBytes=%d responseBytes=%d "
+              + "p50=%dus p99=%dus max=%dus",
+          getCount(),
+          getFailures(),
+          getRetries(),
+          getRequestBytes(),
+          getResponseBytes(),
+          latency.getPercentileMicros(0.5),
+          latency.getPercentileMicros(0.99),
+          latency.getMaxMicros());
+    }
+  }
+
+  /** Histogram of latencies with a bucket per power of two of microseconds. */
+  public static final class LatencyHistogram {
+    // bucket i holds the latencies in [2^(i-1), 2^i) us, the last one the larger ones
+    private static final int BUCKETS = 40;
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder totalMicros = new LongAdder();
+
+    LatencyHistogram() {
+      for (int i = 0; i < BUCKETS; i++) {
+        buckets[i] = new LongAdder();
+      }
+    }
+
+    void record(long nanos) {
+      long micros = TimeUnit.NANOSECONDS.toMicros(Math.max(nanos, 0));
+      int bucket = Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKETS - 1);
+      buckets[bucket].increment();
+      totalMicros.add(micros);
+    }
+
+    public long getCount() {
+      long count = 0;
+      for (LongAdder bucket : buckets) {
+        count += bucket.sum();
+      }
+      return count;
+    }
+
+    public long getTotalMicros() {
+      return totalMicros.sum();
+    }
+
+    /**
+     * @param percentile in [0, 1]
+     * @return upper bound of the bucket holding the percentile, 0 if nothing was recorded
+     */
+    public long getPercentileMicros(double percentile) {
+      long[] counts = new long[BUCKETS];
+      long count = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+        counts[i] = buckets[i].sum();
+        count += counts[i];
+      }
+      if (count == 0) {
+        return 0;
+      }
+      long rank = Math.max((long) Math.ceil(percentile * count), 1);
+      for (int i = 0; i < BUCKETS; i++) {
+        rank -= counts[i];
+        if (rank <= 0) {
+          return upperBound(i);
+        }
+      }
+      return upperBound(BUCKETS - 1);
+    }
+
+    /** @return upper bound of the highest bucket holding a latency, 0 if nothing was recorded */
+    public long getMaxMicros() {
+      for (int i = BUCKETS - 1; i >= 0; i--) {
+        if (buckets[i].sum() > 0) {
+          return upperBound(i);
+        }
+      }
+      return 0;
+    }
+
+    private static long upperBound(int bucket) {
+      return bucket == BUCKETS - 1 ? Long.MAX_VALUE : 1L << bucket;
+    }
+  }
+}
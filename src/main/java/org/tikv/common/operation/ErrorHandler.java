@@ -37,4 +37,14 @@ public interface ErrorHandler<RespT> {
    * @return whether the caller should retry
    */
   boolean handleRequestError(BackOffer backOffer, Exception e);
+
+  /**
+   * Names the type of the error in a response, for the metrics.
+   *
+   * @param resp the response, not null
+   * @return the type of its error, null if it has none or the handler does not tell
+   */
+  default String getErrorType(RespT resp) {
+    return null;
+  }
 }
@@ -179,6 +179,31 @@ public class KVErrorHandler<RespT> implements ErrorHandler<RespT> {
     return false;
   }
 
+  @Override
+  public String getErrorType(RespT resp) {
+    Errorpb.Error error = getRegionError(resp);
+    if (error == null) {
+      return null;
+    } else if (error.hasNotLeader()) {
+      return "NotLeader";
+    } else if (error.hasStoreNotMatch()) {
+      return "StoreNotMatch";
+    } else if (error.hasStaleEpoch()) {
+      return "StaleEpoch";
+    } else if (error.hasServerIsBusy()) {
+      return "ServerIsBusy";
+    } else if (error.hasStaleCommand()) {
+      return "StaleCommand";
+    } else if (error.hasRaftEntryTooLarge()) {
+      return "RaftEntryTooLarge";
+    } else if (error.hasKeyNotInRegion()) {
+      return "KeyNotInRegion";
+    } else if (error.hasRegionNotFound()) {
+      return "RegionNotFound";
+    }
+    return "RegionError";
+  }
+
   @Override
   public boolean handleRequestError(BackOffer backOffer, Exception e) {
     regionManager.onRequestFail(ctxRegion);
@@ -70,6 +70,12 @@ public class PDErrorHandler<RespT> implements ErrorHandler<RespT> {
     return false;
   }
 
+  @Override
+  public String getErrorType(RespT resp) {
+    PDError error = getError.apply(resp);
+    return error == null ? null : error.getErrorType().name();
+  }
+
   @Override
   public boolean handleRequestError(BackOffer backOffer, Exception e) {
     backOffer.doBackOff(BackOffFunction.BackOffFuncType.BoPDRPC, e);
@@ -17,9 +17,11 @@ package org.tikv.common.operation.iterator;
 
 import com.google.protobuf.ByteString;
 import org.tikv.common.TiConfiguration;
+import org.tikv.common.exception.RegionException;
 import org.tikv.common.region.RegionStoreClient;
 import org.tikv.common.region.RegionStoreClient.RegionStoreClientBuilder;
 import org.tikv.common.region.TiRegion;
+import org.tikv.common.util.BackOffFunction;
 import org.tikv.common.util.BackOffer;
 import org.tikv.common.util.ConcreteBackOffer;
 
@@ -29,17 +31,30 @@ public class ConcreteScanIterator extends ScanIterator {
   public ConcreteScanIterator(
       TiConfiguration conf, RegionStoreClientBuilder builder, ByteString startKey, long version) {
     // Passing endKey as ByteString.EMPTY means that endKey is +INF by default,
-    super(conf, builder, startKey, ByteString.EMPTY, Integer.MAX_VALUE);
+    this(conf, builder, startKey, ByteString.EMPTY, version);
+  }
+
+  public ConcreteScanIterator(
+      TiConfiguration conf,
+      RegionStoreClientBuilder builder,
+      ByteString startKey,
+      ByteString endKey,
+      long version) {
+    super(conf, builder, startKey, endKey, Integer.MAX_VALUE);
     this.version = version;
   }
 
   TiRegion loadCurrentRegionToCache() throws Exception {
-    TiRegion region;
-    try (RegionStoreClient client = builder.build(startKey)) {
-      region = client.getRegion();
-      BackOffer backOffer = ConcreteBackOffer.newScannerNextMaxBackOff();
-      currentCache = client.scan(backOffer, startKey, version);
-      return region;
+    BackOffer backOffer = ConcreteBackOffer.newScannerNextMaxBackOff();
+    while (true) {
+      try (RegionStoreClient client = builder.build(startKey)) {
+        TiRegion region = client.getRegion();
+        currentCache =
+            client.scan(backOffer, startKey, endKey.toByteString(), version, false, false);
+        return region;
+      } catch (final RegionException e) {
+        backOffer.doBackOff(BackOffFunction.BackOffFuncType.BoRegionMiss, e);
+      }
     }
   }
 }
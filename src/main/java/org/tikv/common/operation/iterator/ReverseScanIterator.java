@@ -0,0 +1,121 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.common.operation.iterator;
+
+import static java.util.Objects.requireNonNull;
+
+import com.google.protobuf.ByteString;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import org.tikv.common.TiConfiguration;
+import org.tikv.common.exception.RegionException;
+import org.tikv.common.exception.TiClientInternalException;
+import org.tikv.common.key.Key;
+import org.tikv.common.region.RegionStoreClient;
+import org.tikv.common.region.RegionStoreClient.RegionStoreClientBuilder;
+import org.tikv.common.region.TiRegion;
+import org.tikv.common.util.BackOffFunction;
+import org.tikv.common.util.BackOffer;
+import org.tikv.common.util.ConcreteBackOffer;
+import org.tikv.kvproto.Kvrpcpb;
+
+/**
+ * Scans [startKey, endKey) at a version in descending key order, walking the regions backward
+ * from the one holding the keys right before endKey.
+ */
+public class ReverseScanIterator implements Iterator<Kvrpcpb.KvPair> {
+  private final TiConfiguration conf;
+  private final RegionStoreClientBuilder builder;
+  private final ByteString startKey;
+  private final long version;
+  // exclusive upper bound of the keys not scanned yet, null once the range is exhausted
+  private ByteString endKey;
+  private List<Kvrpcpb.KvPair> currentCache;
+  private int index;
+
+  /**
+   * @param startKey inclusive lower bound, empty means unbounded
+   * @param endKey exclusive upper bound, must not be empty
+   */
+  public ReverseScanIterator(
+      TiConfiguration conf,
+      RegionStoreClientBuilder builder,
+      ByteString startKey,
+      ByteString endKey,
+      long version) {
+    this.startKey = requireNonNull(startKey, "start key is null");
+    this.endKey = requireNonNull(endKey, "end key is null");
+    if (endKey.isEmpty()) {
+      throw new IllegalArgumentException("end key cannot be empty");
+    }
+    this.conf = conf;
+    this.builder = builder;
+    this.version = version;
+  }
+
+  // returns false if there is nothing left to scan
+  private boolean loadCache() {
+    BackOffer backOffer = ConcreteBackOffer.newScannerNextMaxBackOff();
+    while (endKey != null) {
+      TiRegion region = builder.getRegionManager().getRegionByEndKey(endKey);
+      if (region == null) {
+        endKey = null;
+        break;
+      }
+      boolean lastRegion =
+          Key.toRawKey(region.getStartKey()).compareTo(Key.toRawKey(startKey)) <= 0;
+      ByteString lowerBound = lastRegion ? startKey : region.getStartKey();
+      try (RegionStoreClient client = builder.build(region)) {
+        currentCache = client.scan(backOffer, endKey, lowerBound, version, false, true);
+      } catch (final RegionException e) {
+        backOffer.doBackOff(BackOffFunction.BackOffFuncType.BoRegionMiss, e);
+        continue;
+      } catch (Exception e) {
+        throw new TiClientInternalException("Error scanning data from region.", e);
+      }
+      index = 0;
+      if (currentCache.size() >= conf.getScanBatchSize()) {
+        // continue right below the smallest key of this batch
+        endKey = currentCache.get(currentCache.size() - 1).getKey();
+      } else if (lastRegion || region.getStartKey().isEmpty()) {
+        endKey = null;
+      } else {
+        endKey = region.getStartKey();
+      }
+      if (!currentCache.isEmpty()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (currentCache != null && index < currentCache.size()) {
+      return true;
+    }
+    return loadCache();
+  }
+
+  @Override
+  public Kvrpcpb.KvPair next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    return currentCache.get(index++);
+  }
+}
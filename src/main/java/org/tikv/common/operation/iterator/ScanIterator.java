@@ -20,6 +20,7 @@ import static java.util.Objects.requireNonNull;
 import com.google.protobuf.ByteString;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import org.tikv.common.TiConfiguration;
 import org.tikv.common.exception.TiClientInternalException;
 import org.tikv.common.key.Key;
@@ -46,10 +47,8 @@ public abstract class ScanIterator implements Iterator<Kvrpcpb.KvPair> {
       ByteString startKey,
       ByteString endKey,
       int limit) {
+    // an empty start key means -INF, the scan starts from the first region
     this.startKey = requireNonNull(startKey, "start key is null");
-    if (startKey.isEmpty()) {
-      throw new IllegalArgumentException("start key cannot be empty");
-    }
     this.endKey = Key.toRawKey(requireNonNull(endKey, "end key is null"));
     this.hasEndKey = !endKey.equals(ByteString.EMPTY);
     this.limit = limit;
@@ -64,9 +63,6 @@ public abstract class ScanIterator implements Iterator<Kvrpcpb.KvPair> {
     if (endOfScan || lastBatch) {
       return true;
     }
-    if (startKey.isEmpty()) {
-      return true;
-    }
     try {
       TiRegion region = loadCurrentRegionToCache();
       ByteString curRegionEndKey = region.getEndKey();
@@ -86,6 +82,13 @@ public abstract class ScanIterator implements Iterator<Kvrpcpb.KvPair> {
       // of a transaction. Otherwise below code might lose data
       if (currentCache.size() < conf.getScanBatchSize()) {
         startKey = curRegionEndKey;
+        // the range ends within the current region, or this is the last region (its end key is
+        // +INF), so nothing is left to scan
+        if (curRegionEndKey.isEmpty()
+            || (hasEndKey && Key.toRawKey(curRegionEndKey).compareTo(endKey) >= 0)) {
+          lastBatch = true;
+          startKey = null;
+        }
       } else {
         // Start new scan from exact next key in current region
         lastKey = Key.toRawKey(currentCache.get(currentCache.size() - 1).getKey());
@@ -108,9 +111,12 @@ public abstract class ScanIterator implements Iterator<Kvrpcpb.KvPair> {
 
   @Override
   public boolean hasNext() {
-    if (isCacheDrained() && cacheLoadFails()) {
-      endOfScan = true;
-      return false;
+    // regions without any key in range load an empty cache, move on to the next one
+    while (isCacheDrained()) {
+      if (limit <= 0 || cacheLoadFails()) {
+        endOfScan = true;
+        return false;
+      }
     }
     return true;
   }
@@ -128,14 +134,9 @@ public abstract class ScanIterator implements Iterator<Kvrpcpb.KvPair> {
 
   @Override
   public Kvrpcpb.KvPair next() {
-    Kvrpcpb.KvPair kv = getCurrent();
-    if (kv == null) {
-      // cache drained
-      if (cacheLoadFails()) {
-        return null;
-      }
-      return getCurrent();
+    if (!hasNext()) {
+      throw new NoSuchElementException();
     }
-    return kv;
+    return getCurrent();
   }
 }
@@ -64,7 +64,8 @@ public class RegionManager {
 
     synchronized TiRegion getRegionByKey(ByteString key) {
       Long regionId;
-      regionId = keyToRegionIdCache.get(Key.toRawKey(key));
+      // an empty key is the start of the key space rather than its end
+      regionId = keyToRegionIdCache.get(Key.toRawKey(key, true));
       if (logger.isDebugEnabled()) {
         logger.debug(String.format("getRegionByKey key[%s] -> ID[%s]", formatBytes(key), regionId));
       }
@@ -85,6 +86,19 @@ public class RegionManager {
       return region;
     }
 
+    synchronized TiRegion getRegionByEndKey(ByteString endKey) {
+      TiRegion region = getRegionByKey(endKey);
+      if (!region.getStartKey().equals(endKey)) {
+        return region;
+      }
+      // endKey is a region boundary, the keys before it are held by the previous region
+      region = pdClient.getPrevRegion(ConcreteBackOffer.newGetBackOff(), endKey);
+      if (region != null && !putRegion(region)) {
+        throw new TiClientInternalException("Invalid Region: " + region.toString());
+      }
+      return region;
+    }
+
     private synchronized boolean putRegion(TiRegion region) {
       if (logger.isDebugEnabled()) {
         logger.debug("putRegion: " + region);
@@ -168,6 +182,20 @@ public class RegionManager {
     return cache.getRegionByKey(key);
   }
 
+  /**
+   * Gets the region holding the keys right before endKey, that is startKey < endKey <= endKey of
+   * the region.
+   *
+   * @param endKey an exclusive upper bound, must not be empty
+   * @return the region, or null if endKey is the start key of the first region
+   */
+  public TiRegion getRegionByEndKey(ByteString endKey) {
+    if (endKey.isEmpty()) {
+      throw new IllegalArgumentException("end key cannot be empty");
+    }
+    return cache.getRegionByEndKey(endKey);
+  }
+
   public TiRegion getRegionById(long regionId) {
     return cache.getRegionById(regionId);
   }
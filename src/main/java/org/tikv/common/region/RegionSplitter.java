@@ -0,0 +1,291 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.common.region;
+
+import static org.tikv.common.util.BackOffFunction.BackOffFuncType.BoRegionMiss;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.protobuf.ByteString;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import org.apache.log4j.Logger;
+import org.tikv.common.PDClient;
+import org.tikv.common.TiConfiguration;
+import org.tikv.common.exception.GrpcException;
+import org.tikv.common.exception.RegionException;
+import org.tikv.common.exception.TiClientInternalException;
+import org.tikv.common.exception.TiKVException;
+import org.tikv.common.region.RegionStoreClient.RegionStoreClientBuilder;
+import org.tikv.common.util.BackOffer;
+import org.tikv.common.util.ByteStrings;
+import org.tikv.common.util.ConcreteBackOffer;
+import org.tikv.kvproto.Kvrpcpb;
+import org.tikv.kvproto.Metapb;
+
+/**
+ * Splits regions ahead of bulk writes, so that the writes into an empty key range are spread over
+ * the stores from the start instead of all landing on one region.
+ *
+ * <p>The keys of a region are split from the middle out: the region is split at its middle key,
+ * then both halves are split in parallel, at most {@link TiConfiguration#getSplitConcurrency()}
+ * regions at once. A region which has changed is located again. The regions split are then
+ * scattered by PD, and the splitter waits until PD has learnt of all of them.
+ */
+public class RegionSplitter implements AutoCloseable {
+  private static final Logger logger = Logger.getLogger(RegionSplitter.class);
+  private static final int SPLIT_MAX_BACKOFF = 60 * 1000;
+  private static final int WAIT_MAX_BACKOFF = 120 * 1000;
+
+  private final TiConfiguration conf;
+  private final PDClient pdClient;
+  private final RegionStoreClientBuilder clientBuilder;
+  private final RegionManager regionManager;
+  private final ForkJoinPool pool;
+
+  public RegionSplitter(
+      TiConfiguration conf, PDClient pdClient, RegionStoreClientBuilder clientBuilder) {
+    this.conf = Objects.requireNonNull(conf, "conf is null");
+    this.pdClient = Objects.requireNonNull(pdClient, "pdClient is null");
+    this.clientBuilder = Objects.requireNonNull(clientBuilder, "clientBuilder is null");
+    this.regionManager = clientBuilder.getRegionManager();
+    this.pool = new ForkJoinPool(conf.getSplitConcurrency());
+  }
+
+  /**
+   * Splits the regions so that each key of splitKeys starts a region, and scatters them.
+   *
+   * @param splitKeys keys in any order, the ones already starting a region are skipped
+   * @return the regions split, as reported by PD
+   */
+  public List<TiRegion> split(List<ByteString> splitKeys) {
+    TreeSet<ByteString> sorted = new TreeSet<>(ByteStrings::compare);
+    for (ByteString key : splitKeys) {
+      if (!key.isEmpty()) {
+        sorted.add(key);
+      }
+    }
+    Map<Long, Split> splits = new ConcurrentHashMap<>();
+    BackOffer bo = ConcreteBackOffer.newCustomBackOff(SPLIT_MAX_BACKOFF);
+    pool.invoke(new SplitTask(bo, new ArrayList<>(sorted), null, splits));
+
+    List<Split> sortedSplits = new ArrayList<>(splits.values());
+    sortedSplits.sort((a, b) -> Long.compare(a.region.getId(), b.region.getId()));
+    for (Split split : sortedSplits) {
+      pdClient.scatterRegion(bo, split.region, split.leader);
+    }
+    List<TiRegion> regions = new ArrayList<>(sortedSplits.size());
+    BackOffer waitBo = ConcreteBackOffer.newCustomBackOff(WAIT_MAX_BACKOFF);
+    for (Split split : sortedSplits) {
+      regions.add(waitForRegion(waitBo, split.region));
+    }
+    return regions;
+  }
+
+  /**
+   * Splits [startKey, endKey) into regionCount regions of about the same key space, and scatters
+   * them.
+   *
+   * @param endKey exclusive end of the range, empty means unbounded
+   * @return the regions split, as reported by PD
+   */
+  public List<TiRegion> split(ByteString startKey, ByteString endKey, int regionCount) {
+    return split(splitKeys(startKey, endKey, regionCount));
+  }
+
+  /**
+   * Cuts [startKey, endKey) into count parts of the same key space, taking the keys as fractions.
+   * The keys are two bytes longer than the bounds, which is enough to split the ranges of keys
+   * sharing a long prefix.
+   *
+   * @return the count - 1 keys between the parts, in increasing order
+   */
+  @VisibleForTesting
+  public static List<ByteString> splitKeys(ByteString startKey, ByteString endKey, int count) {
+    if (count < 1) {
+      throw new IllegalArgumentException("count must be positive");
+    }
+    if (!endKey.isEmpty() && ByteStrings.compare(startKey, endKey) >= 0) {
+      throw new IllegalArgumentException("empty range");
+    }
+    int length = Math.max(startKey.size(), endKey.size()) + 2;
+    BigInteger start = toNumber(startKey, length);
+    BigInteger end =
+        endKey.isEmpty() ? BigInteger.ONE.shiftLeft(length * 8) : toNumber(endKey, length);
+    BigInteger step = end.subtract(start).divide(BigInteger.valueOf(count));
+    List<ByteString> keys = new ArrayList<>(count - 1);
+    for (int i = 1; i < count; i++) {
+      BigInteger key = start.add(step.multiply(BigInteger.valueOf(i)));
+      if (key.equals(start)) {
+        continue;
+      }
+      ByteString bytes = toKey(key, length);
+      if (keys.isEmpty() || !keys.get(keys.size() - 1).equals(bytes)) {
+        keys.add(bytes);
+      }
+    }
+    return keys;
+  }
+
+  // the key padded with zeros to length bytes, as an unsigned number
+  private static BigInteger toNumber(ByteString key, int length) {
+    return new BigInteger(1, Arrays.copyOf(key.toByteArray(), length));
+  }
+
+  private static ByteString toKey(BigInteger number, int length) {
+    byte[] bytes = number.toByteArray();
+    byte[] key = new byte[length];
+    int n = Math.min(bytes.length, length);
+    System.arraycopy(bytes, bytes.length - n, key, length - n, n);
+    return ByteString.copyFrom(key);
+  }
+
+  // waits until PD reports the region at its epoch after the splits
+  private TiRegion waitForRegion(BackOffer bo, Metapb.Region region) {
+    while (true) {
+      try {
+        TiRegion reported = pdClient.getRegionByID(bo, region.getId());
+        if (reported.getId() == region.getId()
+            && reported.getRegionEpoch().getVersion() >= region.getRegionEpoch().getVersion()) {
+          return reported;
+        }
+      } catch (TiClientInternalException e) {
+        // PD does not know the region yet
+      }
+      bo.doBackOff(
+          BoRegionMiss, new GrpcException("Region " + region.getId() + " is not ready"));
+    }
+  }
+
+  @Override
+  public void close() {
+    pool.shutdownNow();
+  }
+
+  /** A region after a split, as stored by TiKV, and its leader. */
+  private static class Split {
+    private final Metapb.Region region;
+    private final Metapb.Peer leader;
+
+    Split(Metapb.Region region, Metapb.Peer leader) {
+      this.region = region;
+      this.leader = leader;
+    }
+  }
+
+  /** Splits the region holding sorted keys at them, or locates the regions of the keys first. */
+  private class SplitTask extends RecursiveAction {
+    private final BackOffer bo;
+    private final List<ByteString> keys;
+    private final TiRegion region;
+    private final Map<Long, Split> splits;
+
+    SplitTask(BackOffer bo, List<ByteString> keys, TiRegion region, Map<Long, Split> splits) {
+      this.bo = bo;
+      this.keys = keys;
+      this.region = region;
+      this.splits = splits;
+    }
+
+    @Override
+    protected void compute() {
+      if (keys.isEmpty()) {
+        return;
+      }
+      if (region == null) {
+        invokeAll(locate());
+        return;
+      }
+      int mid = keys.size() / 2;
+      Kvrpcpb.SplitRegionResponse resp;
+      try (RegionStoreClient client = clientBuilder.build(region)) {
+        resp = client.splitRegion(bo, keys.get(mid));
+      } catch (RegionException e) {
+        logger.warn(String.format("Failed to split region [%s], retrying", region), e);
+        regionManager.invalidateRegion(region.getId());
+        bo.doBackOff(BoRegionMiss, e);
+        invokeAll(new SplitTask(bo, keys, null, splits));
+        return;
+      } catch (TiKVException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new TiClientInternalException("Error Closing Store client.", e);
+      }
+      regionManager.invalidateRegion(region.getId());
+      long leaderStoreId = region.getLeader().getStoreId();
+      Split left = newSplit(resp.getLeft(), leaderStoreId);
+      Split right = newSplit(resp.getRight(), leaderStoreId);
+      splits.put(left.region.getId(), left);
+      splits.put(right.region.getId(), right);
+      invokeAll(
+          new SplitTask(
+              ConcreteBackOffer.create(bo), keys.subList(0, mid), toTiRegion(left), splits),
+          new SplitTask(
+              ConcreteBackOffer.create(bo),
+              keys.subList(mid + 1, keys.size()),
+              toTiRegion(right),
+              splits));
+    }
+
+    // a task for the keys of each region, skipping the keys starting a region
+    private List<SplitTask> locate() {
+      List<SplitTask> tasks = new ArrayList<>();
+      int i = 0;
+      while (i < keys.size()) {
+        TiRegion keyRegion = regionManager.getRegionByKey(keys.get(i));
+        if (!keyRegion.contains(keys.get(i))) {
+          throw new TiClientInternalException("Invalid Region: " + keyRegion);
+        }
+        List<ByteString> regionKeys = new ArrayList<>();
+        for (; i < keys.size() && keyRegion.contains(keys.get(i)); i++) {
+          if (!keys.get(i).equals(keyRegion.getStartKey())) {
+            regionKeys.add(keys.get(i));
+          }
+        }
+        tasks.add(new SplitTask(ConcreteBackOffer.create(bo), regionKeys, keyRegion, splits));
+      }
+      return tasks;
+    }
+
+    // the new region has its leader on the store of the leader of the region split
+    private Split newSplit(Metapb.Region region, long leaderStoreId) {
+      Metapb.Peer leader =
+          region
+              .getPeersList()
+              .stream()
+              .filter(peer -> peer.getStoreId() == leaderStoreId)
+              .findFirst()
+              .orElse(region.getPeers(0));
+      return new Split(region, leader);
+    }
+
+    private TiRegion toTiRegion(Split split) {
+      return new TiRegion(
+          split.region,
+          split.leader,
+          conf.getIsolationLevel(),
+          conf.getCommandPriority(),
+          conf.getKvMode());
+    }
+  }
+}
@@ -37,14 +37,17 @@ import org.tikv.common.exception.KeyException;
 import org.tikv.common.exception.RegionException;
 import org.tikv.common.exception.TiClientInternalException;
 import org.tikv.common.operation.KVErrorHandler;
+import org.tikv.common.streaming.StreamingResponse;
 import org.tikv.common.util.BackOffer;
 import org.tikv.common.util.ChannelFactory;
 import org.tikv.common.util.Pair;
+import org.tikv.kvproto.Coprocessor;
 import org.tikv.kvproto.Kvrpcpb;
 import org.tikv.kvproto.Kvrpcpb.BatchGetRequest;
 import org.tikv.kvproto.Kvrpcpb.BatchGetResponse;
 import org.tikv.kvproto.Kvrpcpb.GetRequest;
 import org.tikv.kvproto.Kvrpcpb.GetResponse;
+import org.tikv.kvproto.Kvrpcpb.KeyError;
 import org.tikv.kvproto.Kvrpcpb.KvPair;
 import org.tikv.kvproto.Kvrpcpb.RawBatchPutRequest;
 import org.tikv.kvproto.Kvrpcpb.RawBatchPutResponse;
@@ -64,6 +67,7 @@ import org.tikv.kvproto.TikvGrpc.TikvBlockingStub;
 import org.tikv.kvproto.TikvGrpc.TikvStub;
 import org.tikv.txn.Lock;
 import org.tikv.txn.LockResolverClient;
+import org.tikv.txn.ResolvedTxnCache;
 
 // RegionStore itself is not thread-safe
 public class RegionStoreClient extends AbstractGRPCClient<TikvBlockingStub, TikvStub>
@@ -80,6 +84,10 @@ public class RegionStoreClient extends AbstractGRPCClient<TikvBlockingStub, Tikv
     return region;
   }
 
+  public LockResolverClient getLockResolverClient() {
+    return lockResolverClient;
+  }
+
   // APIs for KV Scan/Put/Get/Delete
   public ByteString get(BackOffer backOffer, ByteString key, long version) {
     while (true) {
@@ -139,38 +147,68 @@ public class RegionStoreClient extends AbstractGRPCClient<TikvBlockingStub, Tikv
     return true;
   }
 
-  // TODO: batch get should consider key range split
+  /**
+   * Gets the keys of this region at version. Locks met are resolved and only the locked keys are
+   * read again. Keys not found are absent from the result.
+   *
+   * @throws RegionException if the region is outdated, the keys should be grouped by region again
+   */
   public List<KvPair> batchGet(BackOffer backOffer, Iterable<ByteString> keys, long version) {
-    Supplier<BatchGetRequest> request =
-            () ->
-                    BatchGetRequest.newBuilder()
-                            .setContext(region.getContext())
-                            .addAllKeys(keys)
-                            .setVersion(version)
-                            .build();
+    List<KvPair> result = new ArrayList<>();
+    Iterable<ByteString> pendingKeys = keys;
     KVErrorHandler<BatchGetResponse> handler =
             new KVErrorHandler<>(
                     regionManager,
                     this,
                     region,
                     resp -> resp.hasRegionError() ? resp.getRegionError() : null);
-    BatchGetResponse resp =
-            callWithRetry(backOffer, TikvGrpc.METHOD_KV_BATCH_GET, request, handler);
-    return batchGetHelper(resp, backOffer);
+    while (true) {
+      Iterable<ByteString> requestKeys = pendingKeys;
+      Supplier<BatchGetRequest> request =
+              () ->
+                      BatchGetRequest.newBuilder()
+                              .setContext(region.getContext())
+                              .addAllKeys(requestKeys)
+                              .setVersion(version)
+                              .build();
+      BatchGetResponse resp =
+              callWithRetry(backOffer, TikvGrpc.METHOD_KV_BATCH_GET, request, handler);
+      List<ByteString> lockedKeys = batchGetHelper(resp, backOffer, result);
+      if (lockedKeys.isEmpty()) {
+        return result;
+      }
+      pendingKeys = lockedKeys;
+    }
   }
 
-  // TODO: deal with resolve locks and region errors
-  private List<KvPair> batchGetHelper(BatchGetResponse resp, BackOffer bo) {
+  // adds the pairs read to result and returns the locked keys, which should be read again
+  private List<ByteString> batchGetHelper(
+          BatchGetResponse resp, BackOffer bo, List<KvPair> result) {
+    if (resp == null) {
+      this.regionManager.onRequestFail(region);
+      throw new TiClientInternalException("BatchGetResponse failed without a cause");
+    }
+
+    if (resp.hasRegionError()) {
+      throw new RegionException(resp.getRegionError());
+    }
+
     List<Lock> locks = new ArrayList<>();
+    List<ByteString> lockedKeys = new ArrayList<>();
+    KeyError lockError = null;
 
     for (KvPair pair : resp.getPairsList()) {
       if (pair.hasError()) {
         if (pair.getError().hasLocked()) {
           Lock lock = new Lock(pair.getError().getLocked());
           locks.add(lock);
+          lockedKeys.add(pair.getError().getLocked().getKey());
+          lockError = pair.getError();
         } else {
           throw new KeyException(pair.getError());
         }
+      } else {
+        result.add(pair);
       }
     }
 
@@ -178,29 +216,38 @@ public class RegionStoreClient extends AbstractGRPCClient<TikvBlockingStub, Tikv
       boolean ok = lockResolverClient.resolveLocks(bo, locks);
       if (!ok) {
         // if not resolve all locks, we wait and retry
-        bo.doBackOff(BoTxnLockFast, new KeyException((resp.getPairsList().get(0).getError())));
+        bo.doBackOff(BoTxnLockFast, new KeyException(lockError));
       }
-
-      // TODO: we should retry
-      // fix me
     }
-
-    if (resp.hasRegionError()) {
-      // TODO, we should redo the split and redo the batchGet
-      throw new RegionException(resp.getRegionError());
-    }
-    return resp.getPairsList();
+    return lockedKeys;
   }
 
   public List<KvPair> scan(
           BackOffer backOffer, ByteString startKey, long version, boolean keyOnly) {
+    return scan(backOffer, startKey, ByteString.EMPTY, version, keyOnly, false);
+  }
+
+  /**
+   * Scans at most scanBatchSize pairs of this region. When scanning forward the range is
+   * [startKey, endKey), when scanning in reverse it is [endKey, startKey) in descending order. An
+   * empty endKey means the range is not bounded on that side.
+   */
+  public List<KvPair> scan(
+          BackOffer backOffer,
+          ByteString startKey,
+          ByteString endKey,
+          long version,
+          boolean keyOnly,
+          boolean reverse) {
     Supplier<ScanRequest> request =
             () ->
                     ScanRequest.newBuilder()
                             .setContext(region.getContext())
                             .setStartKey(startKey)
+                            .setEndKey(endKey)
                             .setVersion(version)
                             .setKeyOnly(keyOnly)
+                            .setReverse(reverse)
                             .setLimit(getConf().getScanBatchSize())
                             .build();
 
@@ -210,27 +257,34 @@ public class RegionStoreClient extends AbstractGRPCClient<TikvBlockingStub, Tikv
                     this,
                     region,
                     resp -> resp.hasRegionError() ? resp.getRegionError() : null);
-    ScanResponse resp = callWithRetry(backOffer, TikvGrpc.METHOD_KV_SCAN, request, handler);
-    return scanHelper(resp, backOffer);
+    while (true) {
+      ScanResponse resp = callWithRetry(backOffer, TikvGrpc.METHOD_KV_SCAN, request, handler);
+      if (scanHelper(resp, backOffer)) {
+        return resp.getPairsList();
+      }
+    }
   }
 
-  // TODO: remove helper and change to while style
-  // needs to be fixed as batchGet
-  // which we shoule retry not throw
-  // exception
-  private List<KvPair> scanHelper(ScanResponse resp, BackOffer bo) {
+  // returns false if locks were met, the scan should be retried after they are resolved
+  private boolean scanHelper(ScanResponse resp, BackOffer bo) {
     if (resp == null) {
       this.regionManager.onRequestFail(region);
       throw new TiClientInternalException("ScanResponse failed without a cause");
     }
 
+    if (resp.hasRegionError()) {
+      throw new RegionException(resp.getRegionError());
+    }
+
     List<Lock> locks = new ArrayList<>();
+    KeyError lockError = null;
 
     for (KvPair pair : resp.getPairsList()) {
       if (pair.hasError()) {
         if (pair.getError().hasLocked()) {
           Lock lock = new Lock(pair.getError().getLocked());
           locks.add(lock);
+          lockError = pair.getError();
         } else {
           throw new KeyException(pair.getError());
         }
@@ -241,16 +295,11 @@ public class RegionStoreClient extends AbstractGRPCClient<TikvBlockingStub, Tikv
       boolean ok = lockResolverClient.resolveLocks(bo, locks);
       if (!ok) {
         // if not resolve all locks, we wait and retry
-        bo.doBackOff(BoTxnLockFast, new KeyException((resp.getPairsList().get(0).getError())));
+        bo.doBackOff(BoTxnLockFast, new KeyException(lockError));
       }
-
-      // TODO: we should retry
-      // fix me
-    }
-    if (resp.hasRegionError()) {
-      throw new RegionException(resp.getRegionError());
+      return false;
     }
-    return resp.getPairsList();
+    return true;
   }
 
   public List<KvPair> scan(BackOffer backOffer, ByteString startKey, long version) {
@@ -508,13 +557,13 @@ public class RegionStoreClient extends AbstractGRPCClient<TikvBlockingStub, Tikv
         Lock lock = new Lock(err.getLocked());
         boolean ok = lockResolverClient.resolveLocks(bo, new ArrayList<>(Arrays.asList(lock)));
         if(!ok){
-          bo.doBackOff(BoTxnLockFast, new KeyException((err.getLocked().toString())));
+          bo.doBackOff(BoTxnLockFast, new KeyException(err, err.getLocked().toString()));
         }
         //retry prewrite directly in current method
         return false;
       }
       else{
-        throw new KeyException(err.toString());
+        throw new KeyException(err, err.toString());
       }
     }
     return true;
@@ -686,6 +735,7 @@ public class RegionStoreClient extends AbstractGRPCClient<TikvBlockingStub, Tikv
    * Delete all expired history kv data which version less than specific safePoint
    * @param bo
    * @param safePoint
+   * @throws RegionException if the region is stale, the caller should locate it again
    */
   public void gc(BackOffer bo, long safePoint){
     while(true) {
@@ -710,8 +760,7 @@ public class RegionStoreClient extends AbstractGRPCClient<TikvBlockingStub, Tikv
       throw new TiClientInternalException("GCResponse failed without a cause");
     }
     if(resp.hasRegionError()){
-      bo.doBackOff(BoRegionMiss, new RegionException(resp.getRegionError()));
-      return false;
+      throw new RegionException(resp.getRegionError());
     }
     if(resp.hasError()) {
       if (resp.getError().hasLocked()) {
@@ -735,6 +784,7 @@ public class RegionStoreClient extends AbstractGRPCClient<TikvBlockingStub, Tikv
    * @param maxVersion
    * @param limit
    * @return
+   * @throws RegionException if the region is stale, the caller should locate it again
    */
   public List<Kvrpcpb.LockInfo> scanLock(BackOffer bo, ByteString startKey , long maxVersion, int limit){
     while(true) {
@@ -751,9 +801,6 @@ public class RegionStoreClient extends AbstractGRPCClient<TikvBlockingStub, Tikv
       if (scanLockHelper(bo, resp)) {
         return resp.getLocksList();
       }
-
-      // we should refresh region
-      region = regionManager.getRegionByKey(startKey);
     }
   }
 
@@ -763,8 +810,7 @@ public class RegionStoreClient extends AbstractGRPCClient<TikvBlockingStub, Tikv
       throw new TiClientInternalException("ScanLockResponse failed without a cause");
     }
     if(resp.hasRegionError()){
-      bo.doBackOff(BoRegionMiss, new RegionException(resp.getRegionError()));
-      return false;
+      throw new RegionException(resp.getRegionError());
     }
     if(resp.hasError()) {
       if (resp.getError().hasLocked()) {
@@ -781,19 +827,116 @@ public class RegionStoreClient extends AbstractGRPCClient<TikvBlockingStub, Tikv
     return true;
   }
 
+  /**
+   * Splits this region at splitKey
+   * @param splitKey the first key of the new region, it must be within this region
+   * @return the response holding the two regions, as stored by TiKV
+   * @throws RegionException if the region is stale, the caller should locate it again
+   */
+  public Kvrpcpb.SplitRegionResponse splitRegion(BackOffer bo, ByteString splitKey) {
+    Supplier<Kvrpcpb.SplitRegionRequest> factory =
+            () ->
+                    Kvrpcpb.SplitRegionRequest.newBuilder()
+                            .setContext(region.getContext())
+                            .setSplitKey(splitKey)
+                            .build();
+    KVErrorHandler<Kvrpcpb.SplitRegionResponse> handler =
+            new KVErrorHandler<>(
+                    regionManager,
+                    this,
+                    region,
+                    resp -> resp.hasRegionError() ? resp.getRegionError() : null);
+    Kvrpcpb.SplitRegionResponse resp =
+            callWithRetry(bo, TikvGrpc.METHOD_SPLIT_REGION, factory, handler);
+    if (resp == null) {
+      this.regionManager.onRequestFail(region);
+      throw new TiClientInternalException("SplitRegionResponse failed without a cause");
+    }
+    if (resp.hasRegionError()) {
+      throw new RegionException(resp.getRegionError());
+    }
+    return resp;
+  }
+
+  /**
+   * Sends a unary coprocessor request on ranges of this region. A region error, a lock or another
+   * error is set in the response.
+   *
+   * @param tp type of the request, such as a checksum request
+   * @param data the request encoded
+   * @param ranges key ranges within this region
+   */
+  public Coprocessor.Response coprocess(
+          BackOffer bo, long tp, ByteString data, List<Coprocessor.KeyRange> ranges) {
+    Supplier<Coprocessor.Request> factory =
+            () ->
+                    Coprocessor.Request.newBuilder()
+                            .setContext(region.getContext())
+                            .setTp(tp)
+                            .setData(data)
+                            .addAllRanges(ranges)
+                            .build();
+    KVErrorHandler<Coprocessor.Response> handler =
+            new KVErrorHandler<>(
+                    regionManager,
+                    this,
+                    region,
+                    resp -> resp.hasRegionError() ? resp.getRegionError() : null);
+    return callWithRetry(bo, TikvGrpc.METHOD_COPROCESSOR, factory, handler);
+  }
+
+  /**
+   * Sends a coprocessor request on ranges of this region, and collects the responses it streams
+   * back. A region error, a lock or another error ends the stream in the last response.
+   *
+   * @param tp type of the request, such as a DAG request
+   * @param data the request encoded
+   * @param ranges key ranges within this region
+   */
+  public StreamingResponse coprocessStreaming(
+          BackOffer bo, long tp, ByteString data, List<Coprocessor.KeyRange> ranges) {
+    Supplier<Coprocessor.Request> factory =
+            () ->
+                    Coprocessor.Request.newBuilder()
+                            .setContext(region.getContext())
+                            .setTp(tp)
+                            .setData(data)
+                            .addAllRanges(ranges)
+                            .build();
+    KVErrorHandler<StreamingResponse> handler =
+            new KVErrorHandler<>(
+                    regionManager, this, region, StreamingResponse::getFirstRegionError);
+    return callServerStreamingWithRetry(bo, TikvGrpc.METHOD_COPROCESSOR_STREAM, factory, handler);
+  }
+
   public static class RegionStoreClientBuilder {
     private final TiConfiguration conf;
     private final ChannelFactory channelFactory;
     private final RegionManager regionManager;
+    private final ResolvedTxnCache resolvedTxnCache;
 
     public RegionStoreClientBuilder(
             TiConfiguration conf, ChannelFactory channelFactory, RegionManager regionManager) {
+      this(conf, channelFactory, regionManager, new ResolvedTxnCache());
+    }
+
+    /**
+     * @param resolvedTxnCache status of resolved transactions, shared by the lock resolvers of
+     *     all the clients built
+     */
+    public RegionStoreClientBuilder(
+            TiConfiguration conf,
+            ChannelFactory channelFactory,
+            RegionManager regionManager,
+            ResolvedTxnCache resolvedTxnCache) {
       Objects.requireNonNull(conf, "conf is null");
       Objects.requireNonNull(channelFactory, "channelFactory is null");
       Objects.requireNonNull(regionManager, "regionManager is null");
+      Objects.requireNonNull(resolvedTxnCache, "resolvedTxnCache is null");
       this.conf = conf;
       this.channelFactory = channelFactory;
       this.regionManager = regionManager;
+      this.resolvedTxnCache = resolvedTxnCache;
     }
 
     public RegionStoreClient build(TiRegion region, Store store) {
@@ -810,7 +953,13 @@ public class RegionStoreClient extends AbstractGRPCClient<TikvBlockingStub, Tikv
       TikvStub asyncStub = TikvGrpc.newStub(channel);
 
       return new RegionStoreClient(
-              conf, region, channelFactory, blockingStub, asyncStub, regionManager);
+              conf,
+              region,
+              channelFactory,
+              blockingStub,
+              asyncStub,
+              regionManager,
+              resolvedTxnCache);
     }
 
     public RegionStoreClient build(ByteString key) {
@@ -826,6 +975,10 @@ public class RegionStoreClient extends AbstractGRPCClient<TikvBlockingStub, Tikv
     public RegionManager getRegionManager() {
       return regionManager;
     }
+
+    public ResolvedTxnCache getResolvedTxnCache() {
+      return resolvedTxnCache;
+    }
   }
 
   private RegionStoreClient(
@@ -834,7 +987,8 @@ public class RegionStoreClient extends AbstractGRPCClient<TikvBlockingStub, Tikv
           ChannelFactory channelFactory,
           TikvBlockingStub blockingStub,
           TikvStub asyncStub,
-          RegionManager regionManager) {
+          RegionManager regionManager,
+          ResolvedTxnCache resolvedTxnCache) {
     super(conf, channelFactory);
     checkNotNull(region, "Region is empty");
     checkNotNull(region.getLeader(), "Leader Peer is null");
@@ -845,7 +999,12 @@ public class RegionStoreClient extends AbstractGRPCClient<TikvBlockingStub, Tikv
     this.asyncStub = asyncStub;
     this.lockResolverClient =
             new LockResolverClient(
-                    conf, this.blockingStub, this.asyncStub, channelFactory, regionManager);
+                    conf,
+                    this.blockingStub,
+                    this.asyncStub,
+                    channelFactory,
+                    regionManager,
+                    resolvedTxnCache);
   }
 
   @Override
@@ -26,7 +26,7 @@ import org.tikv.common.codec.Codec.BytesCodec;
 import org.tikv.common.codec.CodecDataInput;
 import org.tikv.common.codec.KeyUtils;
 import org.tikv.common.exception.TiClientInternalException;
-import org.tikv.common.util.FastByteComparisons;
+import org.tikv.common.util.ByteStrings;
 import org.tikv.kvproto.Kvrpcpb;
 import org.tikv.kvproto.Kvrpcpb.IsolationLevel;
 import org.tikv.kvproto.Metapb;
@@ -83,14 +83,14 @@ public class TiRegion implements Serializable {
       builder.setStartKey(region.getStartKey());
     } else {
       byte[] decodecStartKey = BytesCodec.readBytes(new CodecDataInput(region.getStartKey()));
-      builder.setStartKey(ByteString.copyFrom(decodecStartKey));
+      builder.setStartKey(ByteStrings.wrap(decodecStartKey));
     }
 
     if (region.getEndKey().isEmpty() || isRawRegion) {
       builder.setEndKey(region.getEndKey());
     } else {
       byte[] decodecEndKey = BytesCodec.readBytes(new CodecDataInput(region.getEndKey()));
-      builder.setEndKey(ByteString.copyFrom(decodecEndKey));
+      builder.setEndKey(ByteStrings.wrap(decodecEndKey));
     }
 
     return builder.build();
@@ -137,6 +137,23 @@ public class TiRegion implements Serializable {
       this.confVer = confVer;
       this.ver = ver;
     }
+
+    @Override
+    public boolean equals(Object other) {
+      if (this == other) {
+        return true;
+      }
+      if (!(other instanceof RegionVerID)) {
+        return false;
+      }
+      RegionVerID that = (RegionVerID) other;
+      return id == that.id && confVer == that.confVer && ver == that.ver;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(id, confVer, ver);
+    }
   }
 
   // getVerID returns the Region's RegionVerID.
@@ -163,23 +180,8 @@ public class TiRegion implements Serializable {
   }
 
   public boolean contains(ByteString key) {
-    return (FastByteComparisons.compareTo(
-                meta.getStartKey().toByteArray(),
-                0,
-                meta.getStartKey().size(),
-                key.toByteArray(),
-                0,
-                key.size())
-            <= 0)
-        && (meta.getEndKey().isEmpty()
-            || FastByteComparisons.compareTo(
-                    meta.getEndKey().toByteArray(),
-                    0,
-                    meta.getEndKey().size(),
-                    key.toByteArray(),
-                    0,
-                    key.size())
-                > 0);
+    return ByteStrings.compare(meta.getStartKey(), key) <= 0
+        && (meta.getEndKey().isEmpty() || ByteStrings.compare(meta.getEndKey(), key) > 0);
   }
 
   public boolean isValid() {
@@ -19,6 +19,7 @@ import org.tikv.kvproto.Metapb;
 import org.tikv.kvproto.TikvGrpc;
 import org.tikv.txn.Lock;
 import org.tikv.txn.LockResolverClient;
+import org.tikv.txn.ResolvedTxnCache;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -50,15 +51,24 @@ public class TxnRegionStoreClient extends AbstractGRPCClient<TikvGrpc.TikvBlocki
         private final TiConfiguration conf;
         private final ChannelFactory channelFactory;
         private final RegionManager regionManager;
+        private final ResolvedTxnCache resolvedTxnCache;
 
         public TxnRegionStoreClientBuilder(
                 TiConfiguration conf, ChannelFactory channelFactory, RegionManager regionManager) {
+            this(conf, channelFactory, regionManager, new ResolvedTxnCache());
+        }
+
+        public TxnRegionStoreClientBuilder(
+                TiConfiguration conf, ChannelFactory channelFactory, RegionManager regionManager,
+                ResolvedTxnCache resolvedTxnCache) {
             Objects.requireNonNull(conf, "conf is null");
             Objects.requireNonNull(channelFactory, "channelFactory is null");
             Objects.requireNonNull(regionManager, "regionManager is null");
+            Objects.requireNonNull(resolvedTxnCache, "resolvedTxnCache is null");
             this.conf = conf;
             this.channelFactory = channelFactory;
             this.regionManager = regionManager;
+            this.resolvedTxnCache = resolvedTxnCache;
         }
 
         public TxnRegionStoreClient build(TiRegion region, Metapb.Store store) {
@@ -75,7 +85,7 @@ public class TxnRegionStoreClient extends AbstractGRPCClient<TikvGrpc.TikvBlocki
             TikvGrpc.TikvStub asyncStub = TikvGrpc.newStub(channel);
 
             return new TxnRegionStoreClient(
-                    conf, region, channelFactory, blockingStub, asyncStub, regionManager);
+                    conf, region, channelFactory, blockingStub, asyncStub, regionManager, resolvedTxnCache);
         }
 
         public TxnRegionStoreClient build(ByteString key) {
@@ -99,7 +109,8 @@ public class TxnRegionStoreClient extends AbstractGRPCClient<TikvGrpc.TikvBlocki
             ChannelFactory channelFactory,
             TikvGrpc.TikvBlockingStub blockingStub,
             TikvGrpc.TikvStub asyncStub,
-            RegionManager regionManager) {
+            RegionManager regionManager,
+            ResolvedTxnCache resolvedTxnCache) {
         super(conf, channelFactory);
         checkNotNull(region, "Region is empty");
         checkNotNull(region.getLeader(), "Leader Peer is null");
@@ -109,7 +120,7 @@ public class TxnRegionStoreClient extends AbstractGRPCClient<TikvGrpc.TikvBlocki
         this.blockingStub = blockingStub;
         this.asyncStub = asyncStub;
         this.lockResolverClient = new LockResolverClient(conf,
-                this.blockingStub, this.asyncStub, channelFactory, regionManager);
+                this.blockingStub, this.asyncStub, channelFactory, regionManager, resolvedTxnCache);
     }
 
     /*public static TxnRegionStoreClient create(TiRegion region, Metapb.Store store, TiSession session) {
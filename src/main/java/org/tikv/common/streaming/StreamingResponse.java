@@ -24,7 +24,7 @@ import javax.annotation.Nonnull;
 import org.tikv.kvproto.Coprocessor;
 import org.tikv.kvproto.Errorpb;
 
-public class StreamingResponse implements Iterable {
+public class StreamingResponse implements Iterable<Coprocessor.Response> {
   private Iterator<Coprocessor.Response> resultIterator;
   private List<Coprocessor.Response> responseList;
 
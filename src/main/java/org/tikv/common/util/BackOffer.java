@@ -17,6 +17,8 @@
 
 package org.tikv.common.util;
 
+import org.tikv.common.metrics.OperationTrace;
+
 public interface BackOffer {
   // Back off strategies
   enum BackOffStrategy {
@@ -51,4 +53,7 @@ public interface BackOffer {
    * max back off time exceeded and throw an exception to the caller.
    */
   void doBackOff(BackOffFunction.BackOffFuncType funcTypes, Exception err);
+
+  /** @return the trace of the operation this back offer is used by, null if it is not traced */
+  OperationTrace getTrace();
 }
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.common.util;
+
+import com.google.protobuf.ByteOutput;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Conversions between byte[] and ByteString without copying, for the internal calls passing keys
+ * and values across layers.
+ *
+ * <p>The arrays shared this way must never be modified afterwards, by either side: a wrapped array
+ * is a ByteString which is immutable, and the array behind a ByteString may be referenced by other
+ * ByteStrings.
+ */
+public final class ByteStrings {
+  private static final byte[] EMPTY_BYTES = new byte[0];
+
+  private ByteStrings() {}
+
+  /** @return a ByteString backed by bytes, which must not be modified afterwards */
+  public static ByteString wrap(byte[] bytes) {
+    return UnsafeByteOperations.unsafeWrap(bytes);
+  }
+
+  /** @return a ByteString backed by a range of bytes, which must not be modified afterwards */
+  public static ByteString wrap(byte[] bytes, int offset, int length) {
+    return UnsafeByteOperations.unsafeWrap(bytes, offset, length);
+  }
+
+  /**
+   * @return the array behind bytes if it is backed by a whole array, a copy otherwise. The result
+   *     must not be modified.
+   */
+  public static byte[] unsafeGetBytes(ByteString bytes) {
+    if (bytes.isEmpty()) {
+      return EMPTY_BYTES;
+    }
+    ArrayView view = arrayView(bytes);
+    if (view != null && view.offset == 0 && view.length == view.array.length) {
+      return view.array;
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * @return the range of the array behind bytes, null if it is not stored in a single array. The
+   *     array must not be modified.
+   */
+  public static ArrayView arrayView(ByteString bytes) {
+    ArrayCapture capture = new ArrayCapture();
+    try {
+      UnsafeByteOperations.unsafeWriteTo(bytes, capture);
+    } catch (IOException e) {
+      return null;
+    }
+    if (capture.scattered) {
+      return null;
+    }
+    if (capture.array == null) {
+      // empty
+      return new ArrayView(EMPTY_BYTES, 0, 0);
+    }
+    return new ArrayView(capture.array, capture.offset, capture.length);
+  }
+
+  /** Lexicographically compares two ByteStrings, without copying flat ones. */
+  public static int compare(ByteString left, ByteString right) {
+    ArrayView l = arrayView(left);
+    ArrayView r = arrayView(right);
+    if (l != null && r != null) {
+      return FastByteComparisons.compareTo(
+          l.array, l.offset, l.length, r.array, r.offset, r.length);
+    }
+    return FastByteComparisons.compareTo(unsafeGetBytes(left), unsafeGetBytes(right));
+  }
+
+  /** A range of an array. */
+  public static final class ArrayView {
+    private final byte[] array;
+    private final int offset;
+    private final int length;
+
+    private ArrayView(byte[] array, int offset, int length) {
+      this.array = array;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    public byte[] array() {
+      return array;
+    }
+
+    public int offset() {
+      return offset;
+    }
+
+    public int length() {
+      return length;
+    }
+  }
+
+  /** Captures the array behind a ByteString stored in a single array. */
+  private static final class ArrayCapture extends ByteOutput {
+    private byte[] array;
+    private int offset;
+    private int length;
+    // whether the ByteString is not stored in a single array
+    private boolean scattered;
+
+    @Override
+    public void write(byte value) {
+      scattered = true;
+    }
+
+    @Override
+    public void write(byte[] value, int offset, int length) {
+      scattered = true;
+    }
+
+    @Override
+    public void writeLazy(byte[] value, int offset, int length) {
+      if (array != null) {
+        scattered = true;
+        return;
+      }
+      this.array = value;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    @Override
+    public void write(ByteBuffer value) {
+      scattered = true;
+    }
+
+    @Override
+    public void writeLazy(ByteBuffer value) {
+      if (value.hasArray()) {
+        writeLazy(value.array(), value.arrayOffset() + value.position(), value.remaining());
+      } else {
+        scattered = true;
+      }
+    }
+  }
+}
@@ -19,17 +19,24 @@ package org.tikv.common.util;
 
 import com.google.common.base.Preconditions;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import org.apache.log4j.Logger;
 import org.tikv.common.exception.GrpcException;
+import org.tikv.common.metrics.OperationTrace;
 
 public class ConcreteBackOffer implements BackOffer {
   private final int maxSleep;
   private int totalSleep;
+  // part of totalSleep by back off type
+  private final Map<BackOffFunction.BackOffFuncType, Integer> sleepByType;
   private final Map<BackOffFunction.BackOffFuncType, BackOffFunction> backOffFunctionMap;
   private final List<Exception> errors;
+  // trace of the operation running on the thread creating the back offer, shared by its copies
+  private final OperationTrace trace;
   private static final Logger logger = Logger.getLogger(ConcreteBackOffer.class);
 
   public static ConcreteBackOffer newCustomBackOff(int maxSleep) {
@@ -69,6 +76,8 @@ public class ConcreteBackOffer implements BackOffer {
     this.maxSleep = maxSleep;
     this.errors = new ArrayList<>();
     this.backOffFunctionMap = new HashMap<>();
+    this.sleepByType = new EnumMap<>(BackOffFunction.BackOffFuncType.class);
+    this.trace = OperationTrace.current();
   }
 
   private ConcreteBackOffer(ConcreteBackOffer source) {
@@ -76,6 +85,8 @@ public class ConcreteBackOffer implements BackOffer {
     this.totalSleep = source.totalSleep;
     this.errors = source.errors;
     this.backOffFunctionMap = source.backOffFunctionMap;
+    this.sleepByType = new EnumMap<>(source.sleepByType);
+    this.trace = source.trace;
   }
 
   /**
@@ -124,7 +135,12 @@ public class ConcreteBackOffer implements BackOffer {
         backOffFunctionMap.computeIfAbsent(funcType, this::createBackOffFunc);
 
     // Back off will be done here
-    totalSleep += backOffFunction.doBackOff();
+    int sleep = backOffFunction.doBackOff();
+    totalSleep += sleep;
+    sleepByType.merge(funcType, sleep, Integer::sum);
+    if (trace != null) {
+      trace.recordBackOff(funcType, sleep);
+    }
     logger.debug(
         String.format(
             "%s, retry later(totalSleep %dms, maxSleep %dms)",
@@ -133,7 +149,9 @@ public class ConcreteBackOffer implements BackOffer {
     if (maxSleep > 0 && totalSleep >= maxSleep) {
       StringBuilder errMsg =
           new StringBuilder(
-              String.format("backoffer.maxSleep %dms is exceeded, errors:", maxSleep));
+              String.format(
+                  "backoffer.maxSleep %dms is exceeded, sleeps %s, errors:",
+                  maxSleep, sleepByType));
       for (int i = 0; i < errors.size(); i++) {
         Exception curErr = errors.get(i);
         // Print only last 3 errors for non-DEBUG log levels.
@@ -146,4 +164,24 @@ public class ConcreteBackOffer implements BackOffer {
       throw new GrpcException("retry is exhausted.", err);
     }
   }
+
+  /** @return milliseconds slept so far */
+  public int getTotalSleep() {
+    return totalSleep;
+  }
+
+  /** @return milliseconds slept so far by back off type */
+  public Map<BackOffFunction.BackOffFuncType, Integer> getSleepByType() {
+    return Collections.unmodifiableMap(sleepByType);
+  }
+
+  /** @return the errors backed off for so far, oldest first */
+  public List<Exception> getErrors() {
+    return Collections.unmodifiableList(errors);
+  }
+
+  @Override
+  public OperationTrace getTrace() {
+    return trace;
+  }
 }
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.common.util;
+
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import io.grpc.stub.StreamObserver;
+
+/**
+ * Response observer of a client streaming call which lets the sender wait until the call takes
+ * another request without buffering it. The responses are passed on to another observer.
+ */
+public class FlowControlObserver<ReqT, RespT> implements ClientResponseObserver<ReqT, RespT> {
+  private final StreamObserver<RespT> responseObserver;
+  private final Object lock = new Object();
+  private ClientCallStreamObserver<ReqT> requestStream;
+  private boolean done;
+
+  public FlowControlObserver(StreamObserver<RespT> responseObserver) {
+    this.responseObserver = responseObserver;
+  }
+
+  @Override
+  public void beforeStart(ClientCallStreamObserver<ReqT> requestStream) {
+    this.requestStream = requestStream;
+    requestStream.setOnReadyHandler(this::signal);
+  }
+
+  private void signal() {
+    synchronized (lock) {
+      lock.notifyAll();
+    }
+  }
+
+  /**
+   * Waits until the call is ready for another request.
+   *
+   * @return false if the call has ended, its result is given to the response observer
+   */
+  public boolean awaitReady() throws InterruptedException {
+    synchronized (lock) {
+      while (!done && !requestStream.isReady()) {
+        lock.wait();
+      }
+      return !done;
+    }
+  }
+
+  private void end() {
+    synchronized (lock) {
+      done = true;
+      lock.notifyAll();
+    }
+  }
+
+  @Override
+  public void onNext(RespT value) {
+    responseObserver.onNext(value);
+  }
+
+  @Override
+  public void onError(Throwable t) {
+    end();
+    responseObserver.onError(t);
+  }
+
+  @Override
+  public void onCompleted() {
+    end();
+    responseObserver.onCompleted();
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.coprocessor;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.pingcap.tidb.tipb.AnalyzeColumnsReq;
+import com.pingcap.tidb.tipb.AnalyzeColumnsResp;
+import com.pingcap.tidb.tipb.AnalyzeIndexReq;
+import com.pingcap.tidb.tipb.AnalyzeIndexResp;
+import com.pingcap.tidb.tipb.AnalyzeReq;
+import com.pingcap.tidb.tipb.AnalyzeType;
+import com.pingcap.tidb.tipb.Bucket;
+import com.pingcap.tidb.tipb.CMSketch;
+import com.pingcap.tidb.tipb.Histogram;
+import com.pingcap.tidb.tipb.SampleCollector;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import org.tikv.common.exception.TiClientInternalException;
+import org.tikv.kvproto.Coprocessor;
+import org.tikv.kvproto.Coprocessor.KeyRange;
+
+/**
+ * Collects statistics of key ranges where they are stored: histograms, Count-Min sketches and
+ * samples of an index or of columns. The regions covering the ranges are analyzed concurrently and
+ * their statistics merged, so the distribution of the keys is known without reading them.
+ */
+public class AnalyzeClient implements AutoCloseable {
+  private final CoprocessorClient client;
+  private final Random random = new Random();
+
+  /** @param client the client sending the requests, closed with this one */
+  public AnalyzeClient(CoprocessorClient client) {
+    this.client = Objects.requireNonNull(client, "client is null");
+  }
+
+  /**
+   * Analyzes the entries of an index.
+   *
+   * @param ranges sorted and disjoint ranges of index keys
+   * @return the histogram and sketch of the index values in ranges, at startTs
+   */
+  public AnalyzeIndexResp analyzeIndex(
+      long startTs, AnalyzeIndexReq request, List<KeyRange> ranges) {
+    AnalyzeReq req =
+        AnalyzeReq.newBuilder()
+            .setTp(AnalyzeType.TypeIndex)
+            .setStartTs(startTs)
+            .setIdxReq(request)
+            .build();
+    Histogram hist = Histogram.getDefaultInstance();
+    CMSketch cms = CMSketch.getDefaultInstance();
+    for (Coprocessor.Response response :
+        client.coprocess(CoprocessorClient.REQ_TYPE_ANALYZE, req.toByteString(), ranges)) {
+      AnalyzeIndexResp regionResp;
+      try {
+        regionResp = AnalyzeIndexResp.parseFrom(response.getData());
+      } catch (InvalidProtocolBufferException e) {
+        throw new TiClientInternalException("Invalid analyze response", e);
+      }
+      // the responses are in the order of their keys
+      hist = StatisticsMerger.mergeHistograms(hist, regionResp.getHist(), request.getBucketSize());
+      cms = StatisticsMerger.mergeCMSketches(cms, regionResp.getCms());
+    }
+    AnalyzeIndexResp.Builder builder = AnalyzeIndexResp.newBuilder().setHist(hist);
+    if (cms.getRowsCount() > 0) {
+      builder.setCms(cms);
+    }
+    return builder.build();
+  }
+
+  /**
+   * Analyzes the columns of table rows.
+   *
+   * @param ranges sorted and disjoint ranges of row keys
+   * @return a sample collector per column, and the histogram of the handles if the primary key is
+   *     the handle, of the rows in ranges at startTs
+   */
+  public AnalyzeColumnsResp analyzeColumns(
+      long startTs, AnalyzeColumnsReq request, List<KeyRange> ranges) {
+    AnalyzeReq req =
+        AnalyzeReq.newBuilder()
+            .setTp(AnalyzeType.TypeColumn)
+            .setStartTs(startTs)
+            .setColReq(request)
+            .build();
+    List<List<SampleCollector>> collectors = new ArrayList<>();
+    Histogram pkHist = null;
+    for (Coprocessor.Response response :
+        client.coprocess(CoprocessorClient.REQ_TYPE_ANALYZE, req.toByteString(), ranges)) {
+      AnalyzeColumnsResp regionResp;
+      try {
+        regionResp = AnalyzeColumnsResp.parseFrom(response.getData());
+      } catch (InvalidProtocolBufferException e) {
+        throw new TiClientInternalException("Invalid analyze response", e);
+      }
+      for (int i = 0; i < regionResp.getCollectorsCount(); i++) {
+        if (collectors.size() <= i) {
+          collectors.add(new ArrayList<>());
+        }
+        collectors.get(i).add(regionResp.getCollectors(i));
+      }
+      if (regionResp.hasPkHist()) {
+        pkHist =
+            pkHist == null
+                ? regionResp.getPkHist()
+                : StatisticsMerger.mergeHistograms(
+                    pkHist, regionResp.getPkHist(), request.getBucketSize());
+      }
+    }
+    AnalyzeColumnsResp.Builder builder = AnalyzeColumnsResp.newBuilder();
+    for (List<SampleCollector> columnCollectors : collectors) {
+      builder.addCollectors(
+          StatisticsMerger.mergeCollectors(
+              columnCollectors, request.getSampleSize(), request.getSketchSize(), random));
+    }
+    if (pkHist != null) {
+      builder.setPkHist(pkHist);
+    }
+    return builder.build();
+  }
+
+  /**
+   * Splits the values of a histogram into parts of about the same number of values, to scan them
+   * in balanced batches.
+   *
+   * @return the upper bounds of all the parts but the last one, at most parts - 1 of them
+   */
+  public static List<ByteString> splitBounds(Histogram histogram, int parts) {
+    List<ByteString> bounds = new ArrayList<>();
+    if (parts <= 1 || histogram.getBucketsCount() == 0) {
+      return bounds;
+    }
+    long total = histogram.getBuckets(histogram.getBucketsCount() - 1).getCount();
+    int part = 1;
+    for (int i = 0; i < histogram.getBucketsCount() - 1 && part < parts; i++) {
+      Bucket bucket = histogram.getBuckets(i);
+      if (bucket.getCount() >= total * part / parts) {
+        bounds.add(bucket.getUpperBound());
+        // a bucket larger than a part ends several of them
+        while (part < parts && bucket.getCount() >= total * part / parts) {
+          part++;
+        }
+      }
+    }
+    return bounds;
+  }
+
+  @Override
+  public void close() {
+    client.close();
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.coprocessor;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.pingcap.tidb.tipb.ChecksumAlgorithm;
+import com.pingcap.tidb.tipb.ChecksumRequest;
+import com.pingcap.tidb.tipb.ChecksumResponse;
+import com.pingcap.tidb.tipb.ChecksumScanOn;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import org.tikv.common.exception.TiClientInternalException;
+import org.tikv.kvproto.Coprocessor;
+import org.tikv.kvproto.Coprocessor.KeyRange;
+
+/**
+ * Computes checksums of key ranges where they are stored, so a copy can be verified without
+ * reading its data. Each region covering the ranges computes the CRC64 XOR of its key-value pairs
+ * at a snapshot, and the results of the regions, run concurrently, are combined.
+ */
+public class ChecksumClient implements AutoCloseable {
+  private final CoprocessorClient client;
+
+  /** @param client the client sending the requests, closed with this one */
+  public ChecksumClient(CoprocessorClient client) {
+    this.client = Objects.requireNonNull(client, "client is null");
+  }
+
+  /** @return checksum of the rows of a table in range, at startTs */
+  public ChecksumResponse checksum(long startTs, KeyRange range) {
+    return checksum(startTs, ChecksumScanOn.Table, Collections.singletonList(range));
+  }
+
+  /**
+   * @param scanOn whether ranges are ranges of table rows or of index entries
+   * @param ranges sorted and disjoint key ranges
+   * @return checksum of the key-value pairs in ranges, at startTs
+   */
+  public ChecksumResponse checksum(long startTs, ChecksumScanOn scanOn, List<KeyRange> ranges) {
+    ByteString data =
+        ChecksumRequest.newBuilder()
+            .setStartTs(startTs)
+            .setScanOn(scanOn)
+            .setAlgorithm(ChecksumAlgorithm.Crc64_Xor)
+            .build()
+            .toByteString();
+    long checksum = 0;
+    long totalKvs = 0;
+    long totalBytes = 0;
+    for (Coprocessor.Response response :
+        client.coprocess(CoprocessorClient.REQ_TYPE_CHECKSUM, data, ranges)) {
+      ChecksumResponse regionChecksum;
+      try {
+        regionChecksum = ChecksumResponse.parseFrom(response.getData());
+      } catch (InvalidProtocolBufferException e) {
+        throw new TiClientInternalException("Invalid checksum response", e);
+      }
+      checksum ^= regionChecksum.getChecksum();
+      totalKvs += regionChecksum.getTotalKvs();
+      totalBytes += regionChecksum.getTotalBytes();
+    }
+    return ChecksumResponse.newBuilder()
+        .setChecksum(checksum)
+        .setTotalKvs(totalKvs)
+        .setTotalBytes(totalBytes)
+        .build();
+  }
+
+  @Override
+  public void close() {
+    client.close();
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.coprocessor;
+
+import static org.tikv.common.codec.Codec.*;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.pingcap.tidb.tipb.Chunk;
+import com.pingcap.tidb.tipb.StreamResponse;
+import java.util.List;
+import org.tikv.common.codec.CodecDataInput;
+import org.tikv.common.exception.InvalidCodecFormatException;
+
+/**
+ * Decodes the rows of DAG results into {@link Column}s, one per output column, without creating an
+ * object per row or cell. The columns are appended to by each call until {@link #clear()}, which
+ * keeps their arrays for the next batch, so a scan of any size reuses the same arrays.
+ *
+ * <p>Not thread safe. When the responses are consumed as they arrive from {@link
+ * CoprocessorClient}, the regions run concurrently must go to different decoders.
+ */
+public class ChunkDecoder {
+  private final Column[] columns;
+  private int numRows;
+
+  public ChunkDecoder(List<ColumnType> types) {
+    this(types.toArray(new ColumnType[0]));
+  }
+
+  public ChunkDecoder(ColumnType... types) {
+    columns = new Column[types.length];
+    for (int i = 0; i < types.length; i++) {
+      columns[i] = new Column(types[i]);
+    }
+  }
+
+  /** Appends the rows of a streaming response, which holds a serialized Chunk. */
+  public void decode(StreamResponse response) {
+    try {
+      decode(Chunk.parseFrom(response.getData()));
+    } catch (InvalidProtocolBufferException e) {
+      throw new InvalidCodecFormatException("invalid chunk: " + e.getMessage());
+    }
+  }
+
+  public void decode(Chunk chunk) {
+    decodeRows(chunk.getRowsData());
+  }
+
+  /** Appends the rows of rowsData, each of them a datum per column. */
+  public void decodeRows(ByteString rowsData) {
+    CodecDataInput cdi = new CodecDataInput(rowsData);
+    while (!cdi.eof()) {
+      for (Column column : columns) {
+        decodeValue(cdi, column);
+      }
+      numRows++;
+    }
+  }
+
+  private static void decodeValue(CodecDataInput cdi, Column column) {
+    int flag = cdi.readUnsignedByte();
+    if (flag == NULL_FLAG) {
+      column.appendNull();
+      return;
+    }
+    switch (column.getType()) {
+      case INT:
+      case TIME:
+        column.appendLong(readLongValue(cdi, flag));
+        break;
+      case REAL:
+        checkFlag(flag, FLOATING_FLAG, column);
+        column.appendDouble(RealCodec.readDouble(cdi));
+        break;
+      case DECIMAL:
+        checkFlag(flag, DECIMAL_FLAG, column);
+        int start = cdi.currentPos();
+        int precision = cdi.readUnsignedByte();
+        int frac = cdi.readUnsignedByte();
+        cdi.mark(start);
+        cdi.reset();
+        column.appendBytes(cdi, 2 + DecimalCodec.binSize(precision, frac));
+        break;
+      case BYTES:
+        if (flag == COMPACT_BYTES_FLAG) {
+          column.appendBytes(cdi, (int) IntegerCodec.readVarLong(cdi));
+        } else {
+          checkFlag(flag, BYTES_FLAG, column);
+          // memcomparable bytes are rare in results, they are decoded into a copy
+          byte[] bytes = BytesCodec.readBytes(cdi);
+          column.appendBytes(new CodecDataInput(bytes), bytes.length);
+        }
+        break;
+      default:
+        throw new IllegalStateException("unknown column type " + column.getType());
+    }
+  }
+
+  private static long readLongValue(CodecDataInput cdi, int flag) {
+    switch (flag) {
+      case INT_FLAG:
+      case DURATION_FLAG:
+        return IntegerCodec.readLong(cdi);
+      case UINT_FLAG:
+        return IntegerCodec.readULong(cdi);
+      case VARINT_FLAG:
+        return IntegerCodec.readVarLong(cdi);
+      case UVARINT_FLAG:
+        return IntegerCodec.readUVarLong(cdi);
+      default:
+        throw new InvalidCodecFormatException("invalid flag " + flag + " of an integer value");
+    }
+  }
+
+  private static void checkFlag(int flag, int expected, Column column) {
+    if (flag != expected) {
+      throw new InvalidCodecFormatException(
+          "invalid flag " + flag + " of a " + column.getType() + " value");
+    }
+  }
+
+  public int numRows() {
+    return numRows;
+  }
+
+  public int numColumns() {
+    return columns.length;
+  }
+
+  public Column column(int i) {
+    return columns[i];
+  }
+
+  /** Removes all rows, keeping the arrays of the columns for the next ones. */
+  public void clear() {
+    for (Column column : columns) {
+      column.clear();
+    }
+    numRows = 0;
+  }
+}
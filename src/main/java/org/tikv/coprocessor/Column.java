@@ -0,0 +1,255 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.coprocessor;
+
+import com.google.protobuf.ByteString;
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.procedure.TDoubleProcedure;
+import gnu.trove.procedure.TLongProcedure;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.BitSet;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.tikv.common.codec.Codec.DateTimeCodec;
+import org.tikv.common.codec.Codec.DecimalCodec;
+import org.tikv.common.codec.CodecDataInput;
+
+/**
+ * The values of a result column decoded by {@link ChunkDecoder}, stored without an object per
+ * cell: INT and TIME values in a long array, REAL values in a double array, and BYTES and DECIMAL
+ * values one after another in a byte array indexed by their offsets.
+ *
+ * <p>A null cell is marked in the null bitmap and holds 0 or an empty value. The arrays are reused
+ * after {@link #clear()}, so the values read from them must not be kept across it.
+ */
+public class Column {
+  private static final int INITIAL_DATA_CAPACITY = 256;
+
+  private final ColumnType type;
+  private final BitSet nulls = new BitSet();
+  private int size;
+  // INT and TIME
+  private final TLongArrayList longs;
+  // REAL
+  private final TDoubleArrayList doubles;
+  // BYTES and DECIMAL, value i is data[offsets[i], offsets[i + 1])
+  private final TIntArrayList offsets;
+  private byte[] data;
+
+  Column(ColumnType type) {
+    this.type = type;
+    this.longs = type == ColumnType.INT || type == ColumnType.TIME ? new TLongArrayList() : null;
+    this.doubles = type == ColumnType.REAL ? new TDoubleArrayList() : null;
+    if (type == ColumnType.BYTES || type == ColumnType.DECIMAL) {
+      this.offsets = new TIntArrayList();
+      this.offsets.add(0);
+      this.data = new byte[INITIAL_DATA_CAPACITY];
+    } else {
+      this.offsets = null;
+    }
+  }
+
+  public ColumnType getType() {
+    return type;
+  }
+
+  /** @return number of values */
+  public int size() {
+    return size;
+  }
+
+  public boolean isNull(int i) {
+    return nulls.get(i);
+  }
+
+  public int nullCount() {
+    return nulls.cardinality();
+  }
+
+  /** @return value i of an INT or TIME column */
+  public long getLong(int i) {
+    checkType(longs != null);
+    checkIndex(i);
+    return longs.getQuick(i);
+  }
+
+  /** @return value i of a REAL column */
+  public double getDouble(int i) {
+    checkType(ColumnType.REAL);
+    checkIndex(i);
+    return doubles.getQuick(i);
+  }
+
+  /** @return value i of a DECIMAL column, null if it is null */
+  public BigDecimal getDecimal(int i) {
+    checkType(ColumnType.DECIMAL);
+    if (isNull(i)) {
+      return null;
+    }
+    return DecimalCodec.readDecimal(new CodecDataInput(data, valueOffset(i), valueLength(i)));
+  }
+
+  /** @return value i of a TIME column, null if it is null or zero */
+  public DateTime getDateTime(int i, DateTimeZone tz) {
+    return isNull(i) ? null : DateTimeCodec.fromPackedLong(getLong(i), tz);
+  }
+
+  /** @return a copy of value i of a BYTES column, null if it is null */
+  public byte[] getBytes(int i) {
+    checkType(ColumnType.BYTES);
+    if (isNull(i)) {
+      return null;
+    }
+    return Arrays.copyOfRange(data, valueOffset(i), valueOffset(i + 1));
+  }
+
+  /** @return a copy of value i of a BYTES column, null if it is null */
+  public ByteString getByteString(int i) {
+    checkType(ColumnType.BYTES);
+    if (isNull(i)) {
+      return null;
+    }
+    return ByteString.copyFrom(data, valueOffset(i), valueLength(i));
+  }
+
+  /**
+   * The array holding the values of a BYTES or DECIMAL column, value i is at {@link
+   * #valueOffset(int)} for {@link #valueLength(int)} bytes. It must not be modified.
+   */
+  public byte[] valueArray() {
+    checkVariableLength();
+    return data;
+  }
+
+  public int valueOffset(int i) {
+    checkVariableLength();
+    return offsets.get(i);
+  }
+
+  public int valueLength(int i) {
+    checkVariableLength();
+    checkIndex(i);
+    return offsets.getQuick(i + 1) - offsets.getQuick(i);
+  }
+
+  /** Copies len values of an INT or TIME column from value from to dst at off. */
+  public void getLongs(int from, long[] dst, int off, int len) {
+    checkType(longs != null);
+    longs.toArray(dst, from, off, len);
+  }
+
+  /** Copies len values of a REAL column from value from to dst at off. */
+  public void getDoubles(int from, double[] dst, int off, int len) {
+    checkType(ColumnType.REAL);
+    doubles.toArray(dst, from, off, len);
+  }
+
+  /**
+   * Passes the values of an INT or TIME column to procedure in order, until it returns false.
+   *
+   * @return whether all values were passed
+   */
+  public boolean forEachLong(TLongProcedure procedure) {
+    checkType(longs != null);
+    return longs.forEach(procedure);
+  }
+
+  /**
+   * Passes the values of a REAL column to procedure in order, until it returns false.
+   *
+   * @return whether all values were passed
+   */
+  public boolean forEachDouble(TDoubleProcedure procedure) {
+    checkType(ColumnType.REAL);
+    return doubles.forEach(procedure);
+  }
+
+  void appendNull() {
+    nulls.set(size);
+    switch (type) {
+      case INT:
+      case TIME:
+        longs.add(0);
+        break;
+      case REAL:
+        doubles.add(0);
+        break;
+      default:
+        offsets.add(offsets.getQuick(size));
+    }
+    size++;
+  }
+
+  void appendLong(long value) {
+    longs.add(value);
+    size++;
+  }
+
+  void appendDouble(double value) {
+    doubles.add(value);
+    size++;
+  }
+
+  /** Appends the next len bytes of cdi as a value. */
+  void appendBytes(CodecDataInput cdi, int len) {
+    int end = offsets.getQuick(size);
+    if (len > data.length - end) {
+      data = Arrays.copyOf(data, Math.max(end + len, data.length << 1));
+    }
+    cdi.readFully(data, end, len);
+    offsets.add(end + len);
+    size++;
+  }
+
+  /** Removes all values, keeping the arrays for the next ones. */
+  public void clear() {
+    nulls.clear();
+    size = 0;
+    if (longs != null) {
+      longs.resetQuick();
+    }
+    if (doubles != null) {
+      doubles.resetQuick();
+    }
+    if (offsets != null) {
+      offsets.resetQuick();
+      offsets.add(0);
+    }
+  }
+
+  private void checkIndex(int i) {
+    if (i < 0 || i >= size) {
+      throw new IndexOutOfBoundsException("index " + i + ", size " + size);
+    }
+  }
+
+  private void checkType(ColumnType expected) {
+    checkType(type == expected);
+  }
+
+  private void checkType(boolean expected) {
+    if (!expected) {
+      throw new IllegalStateException("not supported by a " + type + " column");
+    }
+  }
+
+  private void checkVariableLength() {
+    checkType(offsets != null);
+  }
+}
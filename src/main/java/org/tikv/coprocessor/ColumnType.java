@@ -0,0 +1,69 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.coprocessor;
+
+import com.pingcap.tidb.tipb.FieldType;
+
+/** How the values of a result column are decoded and stored by {@link ChunkDecoder}. */
+public enum ColumnType {
+  /** Signed or unsigned integers, durations in nanoseconds, bits, enums and sets, as longs. */
+  INT,
+  /** Floats and doubles, as doubles. */
+  REAL,
+  /** Decimals, kept in their binary format until read. */
+  DECIMAL,
+  /** Strings and blobs, as bytes. */
+  BYTES,
+  /** Dates, datetimes and timestamps, as packed longs. */
+  TIME;
+
+  /** @return the type storing values of the MySQL type of fieldType */
+  public static ColumnType of(FieldType fieldType) {
+    switch (fieldType.getTp()) {
+      case 1: // tinyint
+      case 2: // smallint
+      case 3: // int
+      case 8: // bigint
+      case 9: // mediumint
+      case 11: // time
+      case 13: // year
+      case 16: // bit
+      case 0xf7: // enum
+      case 0xf8: // set
+        return INT;
+      case 4: // float
+      case 5: // double
+        return REAL;
+      case 0xf6: // decimal
+        return DECIMAL;
+      case 7: // timestamp
+      case 10: // date
+      case 12: // datetime
+      case 14: // newdate
+        return TIME;
+      case 15: // varchar
+      case 0xf9: // tinyblob
+      case 0xfa: // mediumblob
+      case 0xfb: // longblob
+      case 0xfc: // blob
+      case 0xfd: // varstring
+      case 0xfe: // string
+        return BYTES;
+      default:
+        throw new IllegalArgumentException("unsupported field type " + fieldType.getTp());
+    }
+  }
+}
@@ -0,0 +1,347 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.coprocessor;
+
+import static org.tikv.common.util.BackOffFunction.BackOffFuncType.BoRegionMiss;
+import static org.tikv.common.util.BackOffFunction.BackOffFuncType.BoTxnLockFast;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.pingcap.tidb.tipb.DAGRequest;
+import com.pingcap.tidb.tipb.StreamResponse;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import org.apache.log4j.Logger;
+import org.tikv.common.TiConfiguration;
+import org.tikv.common.exception.CoprocessorException;
+import org.tikv.common.exception.KeyException;
+import org.tikv.common.exception.RegionException;
+import org.tikv.common.exception.TiClientInternalException;
+import org.tikv.common.exception.TiKVException;
+import org.tikv.common.key.Key;
+import org.tikv.common.region.RegionManager;
+import org.tikv.common.region.RegionStoreClient;
+import org.tikv.common.region.RegionStoreClient.RegionStoreClientBuilder;
+import org.tikv.common.region.TiRegion;
+import org.tikv.common.util.BackOffer;
+import org.tikv.common.util.ConcreteBackOffer;
+import org.tikv.common.util.KeyRangeUtils;
+import org.tikv.kvproto.Coprocessor;
+import org.tikv.kvproto.Coprocessor.KeyRange;
+import org.tikv.txn.Lock;
+
+/**
+ * Pushes DAG requests down to TiKV, so rows are filtered, aggregated and limited where they are
+ * stored instead of being sent to the client.
+ *
+ * <p>The key ranges of a request are split by region, and the regions are run concurrently, at
+ * most {@link TiConfiguration#getCoprocessorConcurrency()} at once. DAG requests use the
+ * coprocessor streaming API, other requests such as checksums the unary one. A region which has
+ * split or moved is split again and retried, and the locks met are resolved before its ranges are
+ * read again.
+ */
+public class CoprocessorClient implements AutoCloseable {
+  private static final Logger logger = Logger.getLogger(CoprocessorClient.class);
+  /** Request type of a DAG request. */
+  public static final long REQ_TYPE_DAG = 103;
+  /** Request type of an analyze request. */
+  public static final long REQ_TYPE_ANALYZE = 104;
+  /** Request type of a checksum request. */
+  public static final long REQ_TYPE_CHECKSUM = 105;
+
+  private final RegionStoreClientBuilder clientBuilder;
+  private final RegionManager regionManager;
+  private final ExecutorService executor;
+
+  public CoprocessorClient(TiConfiguration conf, RegionStoreClientBuilder clientBuilder) {
+    Objects.requireNonNull(conf, "conf is null");
+    Objects.requireNonNull(clientBuilder, "clientBuilder is null");
+    this.clientBuilder = clientBuilder;
+    this.regionManager = clientBuilder.getRegionManager();
+    this.executor =
+        Executors.newFixedThreadPool(
+            conf.getCoprocessorConcurrency(),
+            new ThreadFactoryBuilder().setNameFormat("coprocessor-%d").setDaemon(true).build());
+  }
+
+  /**
+   * Runs dag on the keys in ranges.
+   *
+   * @param ranges sorted and disjoint key ranges
+   * @return the responses of all the regions, in the order of their keys
+   */
+  public List<StreamResponse> execute(DAGRequest dag, List<KeyRange> ranges) {
+    ByteString data = dag.toByteString();
+    List<RegionTask> tasks = splitRangesByRegion(ranges);
+    List<Future<List<StreamResponse>>> futures = new ArrayList<>(tasks.size());
+    for (RegionTask task : tasks) {
+      futures.add(
+          executor.submit(
+              () -> {
+                List<StreamResponse> responses = new ArrayList<>();
+                execute(task, streaming(REQ_TYPE_DAG, data), dagConsumer(task, responses::add));
+                return responses;
+              }));
+    }
+    List<StreamResponse> responses = new ArrayList<>();
+    for (List<StreamResponse> taskResponses : getAll(futures)) {
+      responses.addAll(taskResponses);
+    }
+    return responses;
+  }
+
+  /**
+   * Runs dag on the keys in ranges, passing the responses to consumer as they arrive.
+   *
+   * @param ranges disjoint key ranges
+   * @param consumer called concurrently for the regions run at the same time
+   */
+  public void execute(DAGRequest dag, List<KeyRange> ranges, Consumer<StreamResponse> consumer) {
+    ByteString data = dag.toByteString();
+    List<Future<Void>> futures = new ArrayList<>();
+    for (RegionTask task : splitRangesByRegion(ranges)) {
+      futures.add(
+          executor.submit(
+              () -> {
+                execute(task, streaming(REQ_TYPE_DAG, data), dagConsumer(task, consumer));
+                return null;
+              }));
+    }
+    getAll(futures);
+  }
+
+  /**
+   * Sends a unary coprocessor request to each region of ranges.
+   *
+   * @param tp type of the request, such as {@link #REQ_TYPE_CHECKSUM}
+   * @param data the request encoded
+   * @param ranges sorted and disjoint key ranges
+   * @return the responses of all the regions, in the order of their keys
+   */
+  public List<Coprocessor.Response> coprocess(long tp, ByteString data, List<KeyRange> ranges) {
+    List<RegionTask> tasks = splitRangesByRegion(ranges);
+    List<Future<List<Coprocessor.Response>>> futures = new ArrayList<>(tasks.size());
+    for (RegionTask task : tasks) {
+      futures.add(
+          executor.submit(
+              () -> {
+                List<Coprocessor.Response> responses = new ArrayList<>();
+                execute(task, unary(tp, data), responses::add);
+                return responses;
+              }));
+    }
+    List<Coprocessor.Response> responses = new ArrayList<>();
+    for (List<Coprocessor.Response> taskResponses : getAll(futures)) {
+      responses.addAll(taskResponses);
+    }
+    return responses;
+  }
+
+  private static <T> List<T> getAll(List<Future<T>> futures) {
+    List<T> results = new ArrayList<>(futures.size());
+    try {
+      for (Future<T> future : futures) {
+        results.add(future.get());
+      }
+      return results;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new TiClientInternalException("Interrupted during coprocessor request", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new TiClientInternalException("Error during coprocessor request", e.getCause());
+    } finally {
+      for (Future<T> future : futures) {
+        future.cancel(true);
+      }
+    }
+  }
+
+  /** Sends the request of a task to its region. */
+  private interface Sender {
+    Iterable<Coprocessor.Response> send(RegionStoreClient client, BackOffer bo, RegionTask task);
+  }
+
+  private static Sender streaming(long tp, ByteString data) {
+    return (client, bo, task) -> client.coprocessStreaming(bo, tp, data, task.ranges);
+  }
+
+  private static Sender unary(long tp, ByteString data) {
+    return (client, bo, task) ->
+        Collections.singletonList(client.coprocess(bo, tp, data, task.ranges));
+  }
+
+  /**
+   * Runs a request on the ranges of a region, and on the regions they are in later on. The
+   * responses of a region are passed to consumer once all of them are received without error.
+   */
+  private void execute(RegionTask task, Sender sender, Consumer<Coprocessor.Response> consumer) {
+    BackOffer bo = ConcreteBackOffer.newCopNextMaxBackOff();
+    Deque<RegionTask> pending = new ArrayDeque<>();
+    pending.add(task);
+    while (!pending.isEmpty()) {
+      RegionTask current = pending.pollFirst();
+      List<Coprocessor.Response> responses = new ArrayList<>();
+      try (RegionStoreClient client = clientBuilder.build(current.region)) {
+        sender.send(client, bo, current).forEach(responses::add);
+        List<Lock> locks = new ArrayList<>();
+        for (Coprocessor.Response response : responses) {
+          if (response.hasRegionError()) {
+            throw new RegionException(response.getRegionError());
+          }
+          if (response.hasLocked()) {
+            locks.add(new Lock(response.getLocked()));
+          }
+        }
+        if (!locks.isEmpty()) {
+          if (!client.getLockResolverClient().resolveLocks(bo, locks)) {
+            bo.doBackOff(
+                BoTxnLockFast,
+                new KeyException(
+                    String.format("%d locks on region %s", locks.size(), current.region)));
+          }
+          pending.addFirst(current);
+          continue;
+        }
+        for (Coprocessor.Response response : responses) {
+          if (!response.getOtherError().isEmpty()) {
+            throw new CoprocessorException(
+                String.format(
+                    "coprocessor error on region %s: %s",
+                    current.region, response.getOtherError()));
+          }
+        }
+      } catch (final RegionException e) {
+        // the responses received before the error are dropped, the whole task is run again
+        bo.doBackOff(BoRegionMiss, e);
+        List<RegionTask> tasks = splitRangesByRegion(current.ranges);
+        for (int i = tasks.size() - 1; i >= 0; i--) {
+          pending.addFirst(tasks.get(i));
+        }
+        continue;
+      } catch (TiKVException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new TiClientInternalException(
+            "Error running coprocessor request on region " + current.region, e);
+      }
+      responses.forEach(consumer);
+    }
+  }
+
+  /** Parses the response of a DAG request, null if it carries no data. */
+  private static StreamResponse parse(RegionTask task, Coprocessor.Response response) {
+    if (response.getData().isEmpty()) {
+      return null;
+    }
+    StreamResponse streamResponse;
+    try {
+      streamResponse = StreamResponse.parseFrom(response.getData());
+    } catch (InvalidProtocolBufferException e) {
+      throw new TiClientInternalException("Invalid response on region " + task.region, e);
+    }
+    if (streamResponse.hasError()) {
+      throw new CoprocessorException(
+          String.format(
+              "coprocessor error on region %s: %s", task.region, streamResponse.getError()));
+    }
+    return streamResponse;
+  }
+
+  /** Passes the DAG results in the responses of task to consumer. */
+  private static Consumer<Coprocessor.Response> dagConsumer(
+      RegionTask task, Consumer<StreamResponse> consumer) {
+    return response -> {
+      StreamResponse streamResponse = parse(task, response);
+      if (streamResponse != null) {
+        consumer.accept(streamResponse);
+      }
+    };
+  }
+
+  /**
+   * Splits ranges at the region boundaries.
+   *
+   * @return the ranges of each region, a region has several tasks if its ranges are not adjacent
+   *     in ranges
+   */
+  @VisibleForTesting
+  public List<RegionTask> splitRangesByRegion(List<KeyRange> ranges) {
+    List<RegionTask> tasks = new ArrayList<>();
+    RegionTask last = null;
+    for (KeyRange range : ranges) {
+      ByteString start = range.getStart();
+      while (true) {
+        TiRegion region = regionManager.getRegionByKey(start);
+        ByteString regionEnd = region.getEndKey();
+        boolean inRegion =
+            regionEnd.isEmpty()
+                || (!range.getEnd().isEmpty()
+                    && Key.toRawKey(range.getEnd()).compareTo(Key.toRawKey(regionEnd)) <= 0);
+        ByteString end = inRegion ? range.getEnd() : regionEnd;
+        if (last == null || last.region.getId() != region.getId()) {
+          last = new RegionTask(region);
+          tasks.add(last);
+        }
+        last.ranges.add(KeyRangeUtils.makeCoprocRange(start, end));
+        if (inRegion) {
+          break;
+        }
+        start = regionEnd;
+      }
+    }
+    if (logger.isDebugEnabled()) {
+      logger.debug(String.format("split %d ranges into %d tasks", ranges.size(), tasks.size()));
+    }
+    return tasks;
+  }
+
+  @Override
+  public void close() {
+    executor.shutdownNow();
+  }
+
+  /** Ranges within a region. */
+  public static class RegionTask {
+    private final TiRegion region;
+    private final List<KeyRange> ranges = new ArrayList<>();
+
+    RegionTask(TiRegion region) {
+      this.region = region;
+    }
+
+    public TiRegion getRegion() {
+      return region;
+    }
+
+    public List<KeyRange> getRanges() {
+      return ranges;
+    }
+  }
+}
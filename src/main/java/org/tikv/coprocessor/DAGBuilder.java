@@ -0,0 +1,171 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.coprocessor;
+
+import com.google.protobuf.ByteString;
+import com.pingcap.tidb.tipb.Aggregation;
+import com.pingcap.tidb.tipb.ColumnInfo;
+import com.pingcap.tidb.tipb.DAGRequest;
+import com.pingcap.tidb.tipb.ExecType;
+import com.pingcap.tidb.tipb.Executor;
+import com.pingcap.tidb.tipb.Expr;
+import com.pingcap.tidb.tipb.ExprType;
+import com.pingcap.tidb.tipb.FieldType;
+import com.pingcap.tidb.tipb.Limit;
+import com.pingcap.tidb.tipb.ScalarFuncSig;
+import com.pingcap.tidb.tipb.Selection;
+import com.pingcap.tidb.tipb.TableScan;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.tikv.common.codec.Codec.IntegerCodec;
+import org.tikv.common.codec.CodecDataOutput;
+
+/**
+ * Builds the DAG request of a query on a table: a table scan followed by selections, an
+ * aggregation and a limit, executed by TiKV in the order they are added.
+ *
+ * <p>Expressions refer to the columns of the output of the previous executor by their offset, see
+ * {@link #columnRef(int)}.
+ */
+public class DAGBuilder {
+  private final List<Executor> executors = new ArrayList<>();
+  // number of columns output by the last executor
+  private int outputCount;
+  private List<Integer> outputOffsets;
+  private long flags;
+  private long timeZoneOffset;
+
+  private DAGBuilder() {}
+
+  /** Starts with a scan of the rows of a table, which outputs the given columns. */
+  public static DAGBuilder tableScan(long tableId, List<ColumnInfo> columns) {
+    DAGBuilder builder = new DAGBuilder();
+    builder.executors.add(
+        Executor.newBuilder()
+            .setTp(ExecType.TypeTableScan)
+            .setTblScan(TableScan.newBuilder().setTableId(tableId).addAllColumns(columns))
+            .build());
+    builder.outputCount = columns.size();
+    return builder;
+  }
+
+  /** Keeps the rows for which all the conditions are true. */
+  public DAGBuilder where(Expr... conditions) {
+    executors.add(
+        Executor.newBuilder()
+            .setTp(ExecType.TypeSelection)
+            .setSelection(Selection.newBuilder().addAllConditions(Arrays.asList(conditions)))
+            .build());
+    return this;
+  }
+
+  /**
+   * Aggregates the rows by groupBy. Each region outputs its partial results, the results of the
+   * aggregate functions followed by the group by columns, to be merged by the caller: an average
+   * is output as a count and a sum.
+   */
+  public DAGBuilder aggregate(List<Expr> groupBy, List<Expr> aggFuncs) {
+    executors.add(
+        Executor.newBuilder()
+            .setTp(ExecType.TypeAggregation)
+            .setAggregation(
+                Aggregation.newBuilder().addAllGroupBy(groupBy).addAllAggFunc(aggFuncs))
+            .build());
+    outputCount = groupBy.size();
+    for (Expr aggFunc : aggFuncs) {
+      outputCount += aggFunc.getTp() == ExprType.Avg ? 2 : 1;
+    }
+    return this;
+  }
+
+  /** Outputs at most limit rows per region. */
+  public DAGBuilder limit(long limit) {
+    executors.add(
+        Executor.newBuilder()
+            .setTp(ExecType.TypeLimit)
+            .setLimit(Limit.newBuilder().setLimit(limit))
+            .build());
+    return this;
+  }
+
+  /** Outputs only the given columns of the last executor, all of them by default. */
+  public DAGBuilder outputOffsets(Integer... offsets) {
+    this.outputOffsets = Arrays.asList(offsets);
+    return this;
+  }
+
+  /** @param flags flags changing how TiKV handles errors, such as truncation */
+  public DAGBuilder flags(long flags) {
+    this.flags = flags;
+    return this;
+  }
+
+  /** @param timeZoneOffset offset in seconds of the time zone the times are in */
+  public DAGBuilder timeZoneOffset(long timeZoneOffset) {
+    this.timeZoneOffset = timeZoneOffset;
+    return this;
+  }
+
+  /** @param startTs the snapshot to read */
+  public DAGRequest build(long startTs) {
+    DAGRequest.Builder builder =
+        DAGRequest.newBuilder()
+            .setStartTs(startTs)
+            .addAllExecutors(executors)
+            .setFlags(flags)
+            .setTimeZoneOffset(timeZoneOffset);
+    if (outputOffsets != null) {
+      builder.addAllOutputOffsets(outputOffsets);
+    } else {
+      for (int i = 0; i < outputCount; i++) {
+        builder.addOutputOffsets(i);
+      }
+    }
+    return builder.build();
+  }
+
+  /** @return the column at offset in the output of the previous executor */
+  public static Expr columnRef(int offset) {
+    return Expr.newBuilder().setTp(ExprType.ColumnRef).setVal(encodeInt(offset)).build();
+  }
+
+  /** @return an int64 constant */
+  public static Expr int64(long value) {
+    return Expr.newBuilder().setTp(ExprType.Int64).setVal(encodeInt(value)).build();
+  }
+
+  /** @return a call of the scalar function sig, which returns a value of type */
+  public static Expr scalarFunc(ScalarFuncSig sig, FieldType type, Expr... children) {
+    return Expr.newBuilder()
+        .setTp(ExprType.ScalarFunc)
+        .setSig(sig)
+        .setFieldType(type)
+        .addAllChildren(Arrays.asList(children))
+        .build();
+  }
+
+  /** @return an aggregate function, such as Count or Sum */
+  public static Expr aggFunc(ExprType tp, Expr... children) {
+    return Expr.newBuilder().setTp(tp).addAllChildren(Arrays.asList(children)).build();
+  }
+
+  private static ByteString encodeInt(long value) {
+    CodecDataOutput cdo = new CodecDataOutput(8);
+    IntegerCodec.writeLong(cdo, value);
+    return cdo.toByteString();
+  }
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.coprocessor;
+
+import com.google.protobuf.ByteString;
+import com.pingcap.tidb.tipb.Bucket;
+import com.pingcap.tidb.tipb.CMSketch;
+import com.pingcap.tidb.tipb.CMSketchRow;
+import com.pingcap.tidb.tipb.FMSketch;
+import com.pingcap.tidb.tipb.Histogram;
+import com.pingcap.tidb.tipb.SampleCollector;
+import gnu.trove.iterator.TLongIterator;
+import gnu.trove.set.hash.TLongHashSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Merges the statistics analyzed by several regions, in the same way as TiDB does, into the
+ * statistics of all their keys.
+ */
+final class StatisticsMerger {
+  private StatisticsMerger() {}
+
+  /**
+   * Merges the histograms of two adjacent key ranges, left before right. The counts of buckets
+   * are cumulative, a value split between left and right is merged into one bucket.
+   *
+   * @param bucketSize max number of buckets of the result, no limit if it is not positive
+   */
+  static Histogram mergeHistograms(Histogram left, Histogram right, long bucketSize) {
+    long maxBuckets = bucketSize > 0 ? bucketSize : Long.MAX_VALUE;
+    List<Bucket> lh = new ArrayList<>(left.getBucketsList());
+    List<Bucket> rh = new ArrayList<>(right.getBucketsList());
+    long ndv = left.getNdv() + right.getNdv();
+    if (lh.isEmpty() || rh.isEmpty()) {
+      List<Bucket> buckets = lh.isEmpty() ? rh : lh;
+      while (buckets.size() > maxBuckets) {
+        mergeBuckets(buckets);
+      }
+      return Histogram.newBuilder().setNdv(ndv).addAllBuckets(buckets).build();
+    }
+    long offset = 0;
+    Bucket last = lh.get(lh.size() - 1);
+    Bucket first = rh.get(0);
+    if (last.getUpperBound().equals(first.getLowerBound())) {
+      ndv--;
+      lh.set(
+          lh.size() - 1,
+          last.toBuilder()
+              .setUpperBound(first.getUpperBound())
+              .setCount(last.getCount() + first.getCount())
+              .setRepeats(first.getRepeats())
+              .build());
+      offset = first.getCount();
+      rh.remove(0);
+    }
+    while (lh.size() > maxBuckets) {
+      mergeBuckets(lh);
+    }
+    long lCount = lh.get(lh.size() - 1).getCount();
+    if (!rh.isEmpty()) {
+      while (rh.size() > maxBuckets) {
+        mergeBuckets(rh);
+      }
+      // buckets of about the same depth on both sides
+      long rCount = rh.get(rh.size() - 1).getCount() - offset;
+      double lAvg = (double) lCount / lh.size();
+      double rAvg = (double) rCount / rh.size();
+      while (lh.size() > 1 && lAvg * 2 <= rAvg) {
+        mergeBuckets(lh);
+        lAvg *= 2;
+      }
+      while (rh.size() > 1 && rAvg * 2 <= lAvg) {
+        mergeBuckets(rh);
+        rAvg *= 2;
+      }
+      for (Bucket bucket : rh) {
+        lh.add(bucket.toBuilder().setCount(bucket.getCount() + lCount - offset).build());
+      }
+      while (lh.size() > maxBuckets) {
+        mergeBuckets(lh);
+      }
+    }
+    return Histogram.newBuilder().setNdv(ndv).addAllBuckets(lh).build();
+  }
+
+  // merges each pair of adjacent buckets into one
+  private static void mergeBuckets(List<Bucket> buckets) {
+    List<Bucket> merged = new ArrayList<>((buckets.size() + 1) / 2);
+    for (int i = 0; i + 1 < buckets.size(); i += 2) {
+      merged.add(
+          buckets.get(i + 1).toBuilder().setLowerBound(buckets.get(i).getLowerBound()).build());
+    }
+    if (buckets.size() % 2 == 1) {
+      merged.add(buckets.get(buckets.size() - 1));
+    }
+    buckets.clear();
+    buckets.addAll(merged);
+  }
+
+  /** Adds up the counters of two sketches of the same size. */
+  static CMSketch mergeCMSketches(CMSketch left, CMSketch right) {
+    if (left.getRowsCount() == 0) {
+      return right;
+    }
+    if (right.getRowsCount() == 0) {
+      return left;
+    }
+    if (left.getRowsCount() != right.getRowsCount()) {
+      throw new IllegalArgumentException("CMSketches of different depths");
+    }
+    CMSketch.Builder builder = CMSketch.newBuilder();
+    for (int i = 0; i < left.getRowsCount(); i++) {
+      CMSketchRow l = left.getRows(i);
+      CMSketchRow r = right.getRows(i);
+      if (l.getCountersCount() != r.getCountersCount()) {
+        throw new IllegalArgumentException("CMSketches of different widths");
+      }
+      CMSketchRow.Builder row = CMSketchRow.newBuilder();
+      for (int j = 0; j < l.getCountersCount(); j++) {
+        row.addCounters(l.getCounters(j) + r.getCounters(j));
+      }
+      builder.addRows(row);
+    }
+    return builder.build();
+  }
+
+  /**
+   * Merges the sample collectors of a column.
+   *
+   * @param sampleSize max number of samples of the result, no limit if it is not positive
+   * @param sketchSize max number of hashes of the FMSketch, no limit if it is not positive
+   */
+  static SampleCollector mergeCollectors(
+      List<SampleCollector> collectors, long sampleSize, long sketchSize, Random random) {
+    SampleCollector.Builder builder = SampleCollector.newBuilder();
+    FMSketchMerger fmSketch = new FMSketchMerger(sketchSize);
+    CMSketch cmSketch = CMSketch.getDefaultInstance();
+    long totalSize = 0;
+    boolean hasTotalSize = false;
+    for (SampleCollector collector : collectors) {
+      builder.setNullCount(builder.getNullCount() + collector.getNullCount());
+      builder.setCount(builder.getCount() + collector.getCount());
+      if (collector.hasTotalSize()) {
+        totalSize += collector.getTotalSize();
+        hasTotalSize = true;
+      }
+      if (collector.hasFmSketch()) {
+        fmSketch.merge(collector.getFmSketch());
+      }
+      if (collector.hasCmSketch()) {
+        cmSketch = mergeCMSketches(cmSketch, collector.getCmSketch());
+      }
+    }
+    if (hasTotalSize) {
+      builder.setTotalSize(totalSize);
+    }
+    builder.setFmSketch(fmSketch.build());
+    if (cmSketch.getRowsCount() > 0) {
+      builder.setCmSketch(cmSketch);
+    }
+    return builder.addAllSamples(mergeSamples(collectors, sampleSize, random)).build();
+  }
+
+  /**
+   * Samples the samples of the collectors, weighting each by the number of values it stands for
+   * in its collector, so values of larger regions are sampled more.
+   */
+  private static List<ByteString> mergeSamples(
+      List<SampleCollector> collectors, long sampleSize, Random random) {
+    List<ByteString> all = new ArrayList<>();
+    collectors.forEach(collector -> all.addAll(collector.getSamplesList()));
+    if (sampleSize <= 0 || all.size() <= sampleSize) {
+      return all;
+    }
+    // weighted reservoir sampling, keeping the samples of the largest random keys
+    PriorityQueue<WeightedSample> reservoir = new PriorityQueue<>();
+    for (SampleCollector collector : collectors) {
+      if (collector.getSamplesCount() == 0) {
+        continue;
+      }
+      double weight = Math.max(collector.getCount(), 1) / (double) collector.getSamplesCount();
+      for (ByteString sample : collector.getSamplesList()) {
+        double key = Math.pow(random.nextDouble(), 1 / weight);
+        if (reservoir.size() < sampleSize) {
+          reservoir.add(new WeightedSample(key, sample));
+        } else if (reservoir.peek().key < key) {
+          reservoir.poll();
+          reservoir.add(new WeightedSample(key, sample));
+        }
+      }
+    }
+    List<ByteString> samples = new ArrayList<>(reservoir.size());
+    reservoir.forEach(sample -> samples.add(sample.value));
+    return samples;
+  }
+
+  private static final class WeightedSample implements Comparable<WeightedSample> {
+    private final double key;
+    private final ByteString value;
+
+    WeightedSample(double key, ByteString value) {
+      this.key = key;
+      this.value = value;
+    }
+
+    @Override
+    public int compareTo(WeightedSample other) {
+      return Double.compare(key, other.key);
+    }
+  }
+
+  /**
+   * Merges FMSketches: a hash is kept if none of the bits of the mask are set, and the mask grows
+   * by a bit whenever more than sketchSize hashes are kept.
+   */
+  private static final class FMSketchMerger {
+    private final long maxSize;
+    private final TLongHashSet hashset = new TLongHashSet();
+    private long mask;
+
+    FMSketchMerger(long sketchSize) {
+      this.maxSize = sketchSize > 0 ? sketchSize : Long.MAX_VALUE;
+    }
+
+    void merge(FMSketch sketch) {
+      if (Long.compareUnsigned(mask, sketch.getMask()) < 0) {
+        mask = sketch.getMask();
+        removeMasked();
+      }
+      for (long hash : sketch.getHashsetList()) {
+        if ((hash & mask) != 0) {
+          continue;
+        }
+        hashset.add(hash);
+        if (hashset.size() > maxSize) {
+          mask = mask * 2 + 1;
+          removeMasked();
+        }
+      }
+    }
+
+    private void removeMasked() {
+      for (TLongIterator it = hashset.iterator(); it.hasNext(); ) {
+        if ((it.next() & mask) != 0) {
+          it.remove();
+        }
+      }
+    }
+
+    FMSketch build() {
+      FMSketch.Builder builder = FMSketch.newBuilder().setMask(mask);
+      for (TLongIterator it = hashset.iterator(); it.hasNext(); ) {
+        builder.addHashset(it.next());
+      }
+      return builder.build();
+    }
+  }
+}
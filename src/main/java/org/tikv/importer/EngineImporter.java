@@ -0,0 +1,286 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.importer;
+
+import static org.tikv.common.util.BackOffFunction.BackOffFuncType.BoTiKVRPC;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.protobuf.ByteString;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.apache.log4j.Logger;
+import org.tikv.common.TiConfiguration;
+import org.tikv.common.exception.GrpcException;
+import org.tikv.common.exception.TiClientInternalException;
+import org.tikv.common.util.BackOffer;
+import org.tikv.common.util.ByteStrings;
+import org.tikv.common.util.ChannelFactory;
+import org.tikv.common.util.ConcreteBackOffer;
+import org.tikv.kvproto.ImportKvpb;
+import org.tikv.kvproto.ImportSstpb;
+
+/**
+ * Bulk loads key-value pairs into TiKV through an engine of a tikv-importer, which sorts them into
+ * SST files and ingests them.
+ *
+ * <p>The pairs put are grouped into batches sorted by key, which are written to the engine by
+ * {@link TiConfiguration#getImportConcurrency()} concurrent WriteEngine streams. At most twice as
+ * many batches wait for a stream, {@link #put} blocks when they are full. A stream is completed
+ * every few batches, its batches are kept until then and written again on a new stream if it
+ * fails. {@link #importEngine()} closes the engine, imports it with the stores in import mode and
+ * deletes it.
+ *
+ * <p>Pairs already in TiKV are overwritten, and all the pairs are committed at the same
+ * timestamp. Not thread safe.
+ */
+public class EngineImporter implements AutoCloseable {
+  private static final Logger logger = Logger.getLogger(EngineImporter.class);
+  private static final long WRITE_BATCH_SIZE = 1024 * 1024;
+  private static final int BATCHES_PER_STREAM = 16;
+  private static final int IMPORT_MAX_BACKOFF = 60 * 1000;
+  // tells a writer there are no batches left
+  private static final ImportKvpb.WriteBatch END_OF_BATCHES =
+      ImportKvpb.WriteBatch.newBuilder().build();
+
+  private final ImportKVClient client;
+  private final String pdAddr;
+  private final long commitTs;
+  private final ByteString uuid;
+  private final ExecutorService executor;
+  private final BlockingQueue<ImportKvpb.WriteBatch> batches;
+  private final List<Future<Void>> writers = new ArrayList<>();
+  private List<ImportKvpb.Mutation> mutations = new ArrayList<>();
+  private long mutationsSize;
+  private long numEntries;
+  private boolean finished;
+  private boolean cleanedUp;
+
+  /**
+   * Opens a new engine.
+   *
+   * @param importerAddress address of the tikv-importer
+   * @param pdAddr address of the PD of the cluster to import into
+   * @param commitTs commit timestamp of the pairs
+   */
+  public EngineImporter(
+      TiConfiguration conf,
+      ChannelFactory channelFactory,
+      String importerAddress,
+      String pdAddr,
+      long commitTs) {
+    Objects.requireNonNull(conf, "conf is null");
+    this.client = new ImportKVClient(conf, channelFactory, importerAddress);
+    this.pdAddr = Objects.requireNonNull(pdAddr, "pdAddr is null");
+    this.commitTs = commitTs;
+    this.uuid = SstImporter.uuid();
+    client.openEngine(newBackOffer(), uuid);
+    int concurrency = conf.getImportConcurrency();
+    this.batches = new ArrayBlockingQueue<>(concurrency * 2);
+    this.executor =
+        Executors.newFixedThreadPool(
+            concurrency,
+            new ThreadFactoryBuilder().setNameFormat("engine-writer-%d").setDaemon(true).build());
+    for (int i = 0; i < concurrency; i++) {
+      writers.add(executor.submit(this::writeBatches));
+    }
+  }
+
+  public ByteString getUuid() {
+    return uuid;
+  }
+
+  /** Adds a pair to import. */
+  public void put(ByteString key, ByteString value) {
+    if (finished) {
+      throw new IllegalStateException("engine already imported");
+    }
+    if (key.isEmpty()) {
+      throw new IllegalArgumentException("key is empty");
+    }
+    mutations.add(
+        ImportKvpb.Mutation.newBuilder()
+            .setOp(ImportKvpb.Mutation.OP.Put)
+            .setKey(key)
+            .setValue(value)
+            .build());
+    mutationsSize += key.size() + value.size();
+    numEntries++;
+    if (mutationsSize >= WRITE_BATCH_SIZE) {
+      flush();
+    }
+  }
+
+  /**
+   * Writes the pairs left, then imports the engine into TiKV and deletes it.
+   *
+   * @return the number of pairs imported
+   */
+  public long importEngine() {
+    if (finished) {
+      throw new IllegalStateException("engine already imported");
+    }
+    finished = true;
+    flush();
+    for (int i = 0; i < writers.size(); i++) {
+      enqueue(END_OF_BATCHES);
+    }
+    for (Future<Void> writer : writers) {
+      getUninterruptibly(writer);
+    }
+    ImportKvpb.CloseEngineResponse resp = client.closeEngine(newBackOffer(), uuid);
+    if (resp.hasError()) {
+      throw new TiClientInternalException("Failed to close engine: " + resp.getError());
+    }
+    client.switchMode(newBackOffer(), pdAddr, ImportSstpb.SwitchMode.Import);
+    try {
+      client.importEngine(newBackOffer(), uuid, pdAddr);
+    } finally {
+      client.switchMode(newBackOffer(), pdAddr, ImportSstpb.SwitchMode.Normal);
+    }
+    client.cleanupEngine(newBackOffer(), uuid);
+    cleanedUp = true;
+    return numEntries;
+  }
+
+  private void flush() {
+    if (mutations.isEmpty()) {
+      return;
+    }
+    mutations.sort((a, b) -> ByteStrings.compare(a.getKey(), b.getKey()));
+    enqueue(
+        ImportKvpb.WriteBatch.newBuilder()
+            .setCommitTs(commitTs)
+            .addAllMutations(mutations)
+            .build());
+    mutations = new ArrayList<>();
+    mutationsSize = 0;
+  }
+
+  // waits for room in the queue, failing if a writer has failed
+  private void enqueue(ImportKvpb.WriteBatch batch) {
+    try {
+      while (!batches.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+        for (Future<Void> writer : writers) {
+          if (writer.isDone()) {
+            getUninterruptibly(writer);
+            throw new TiClientInternalException("Engine writer stopped");
+          }
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new TiClientInternalException("Interrupted during import", e);
+    }
+  }
+
+  // writes the batches of the queue until its end, completing a stream every few batches
+  private Void writeBatches() throws InterruptedException {
+    List<ImportKvpb.WriteBatch> written = new ArrayList<>();
+    ImportKVClient.WriteStream stream = null;
+    try {
+      while (true) {
+        ImportKvpb.WriteBatch batch = batches.take();
+        if (batch == END_OF_BATCHES) {
+          if (stream != null) {
+            ImportKVClient.WriteStream last = stream;
+            stream = null;
+            finish(last, written);
+          }
+          return null;
+        }
+        if (stream == null) {
+          stream = client.writeEngine(uuid);
+        }
+        stream.write(batch);
+        written.add(batch);
+        if (written.size() >= BATCHES_PER_STREAM) {
+          ImportKVClient.WriteStream full = stream;
+          stream = null;
+          finish(full, written);
+          written.clear();
+        }
+      }
+    } catch (InterruptedException | RuntimeException e) {
+      // a stream left open would keep its engine writer busy on the importer
+      if (stream != null) {
+        stream.cancel(e);
+      }
+      throw e;
+    }
+  }
+
+  // completes stream, writing its batches again on new streams until one succeeds
+  private void finish(ImportKVClient.WriteStream stream, List<ImportKvpb.WriteBatch> written) {
+    BackOffer bo = newBackOffer();
+    while (true) {
+      ImportKvpb.WriteEngineResponse resp;
+      try {
+        resp = stream.finish();
+      } catch (GrpcException e) {
+        logger.warn("Failed to write engine " + uuid + ", retrying", e);
+        bo.doBackOff(BoTiKVRPC, e);
+        stream = client.writeEngine(uuid);
+        for (ImportKvpb.WriteBatch batch : written) {
+          stream.write(batch);
+        }
+        continue;
+      }
+      if (resp.hasError()) {
+        throw new TiClientInternalException("Failed to write engine: " + resp.getError());
+      }
+      return;
+    }
+  }
+
+  private static BackOffer newBackOffer() {
+    return ConcreteBackOffer.newCustomBackOff(IMPORT_MAX_BACKOFF);
+  }
+
+  private static void getUninterruptibly(Future<Void> future) {
+    try {
+      future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new TiClientInternalException("Interrupted during import", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new TiClientInternalException("Error during import", e.getCause());
+    }
+  }
+
+  /** Stops the writers, and deletes the engine unless it is imported. */
+  @Override
+  public void close() {
+    executor.shutdownNow();
+    if (!cleanedUp) {
+      try {
+        client.cleanupEngine(newBackOffer(), uuid);
+      } catch (Exception e) {
+        logger.warn("Failed to clean up engine " + uuid, e);
+      }
+    }
+  }
+}
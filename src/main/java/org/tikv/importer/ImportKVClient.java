@@ -0,0 +1,187 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.importer;
+
+import com.google.protobuf.ByteString;
+import io.grpc.ManagedChannel;
+import io.grpc.stub.StreamObserver;
+import java.util.concurrent.ExecutionException;
+import org.tikv.common.AbstractGRPCClient;
+import org.tikv.common.TiConfiguration;
+import org.tikv.common.exception.GrpcException;
+import org.tikv.common.exception.TiClientInternalException;
+import org.tikv.common.util.BackOffer;
+import org.tikv.common.util.ChannelFactory;
+import org.tikv.common.util.FlowControlObserver;
+import org.tikv.common.util.FutureObserver;
+import org.tikv.kvproto.ImportKVGrpc;
+import org.tikv.kvproto.ImportKVGrpc.ImportKVBlockingStub;
+import org.tikv.kvproto.ImportKVGrpc.ImportKVStub;
+import org.tikv.kvproto.ImportKvpb;
+import org.tikv.kvproto.ImportSstpb;
+
+/**
+ * Client of the ImportKV service of a tikv-importer, which sorts the pairs written to an engine
+ * into SST files and ingests them into TiKV.
+ */
+public class ImportKVClient extends AbstractGRPCClient<ImportKVBlockingStub, ImportKVStub> {
+  private final String address;
+  private final ImportKVBlockingStub blockingStub;
+  private final ImportKVStub asyncStub;
+
+  public ImportKVClient(TiConfiguration conf, ChannelFactory channelFactory, String address) {
+    super(conf, channelFactory);
+    this.address = address;
+    ManagedChannel channel = channelFactory.getChannel(address);
+    this.blockingStub = ImportKVGrpc.newBlockingStub(channel);
+    this.asyncStub = ImportKVGrpc.newStub(channel);
+  }
+
+  public String getAddress() {
+    return address;
+  }
+
+  /** Switches all the stores of the cluster of PD pdAddr to mode. */
+  public void switchMode(BackOffer bo, String pdAddr, ImportSstpb.SwitchMode mode) {
+    callWithRetry(
+        bo,
+        ImportKVGrpc.METHOD_SWITCH_MODE,
+        () ->
+            ImportKvpb.SwitchModeRequest.newBuilder()
+                .setPdAddr(pdAddr)
+                .setRequest(ImportSstpb.SwitchModeRequest.newBuilder().setMode(mode))
+                .build(),
+        new RequestErrorHandler<>());
+  }
+
+  public void openEngine(BackOffer bo, ByteString uuid) {
+    callWithRetry(
+        bo,
+        ImportKVGrpc.METHOD_OPEN_ENGINE,
+        () -> ImportKvpb.OpenEngineRequest.newBuilder().setUuid(uuid).build(),
+        new RequestErrorHandler<>());
+  }
+
+  /**
+   * Starts a stream writing batches to the engine uuid.
+   *
+   * @return the stream, its batches are lost if it fails
+   */
+  public WriteStream writeEngine(ByteString uuid) {
+    return new WriteStream(uuid);
+  }
+
+  /** @return the response, with an error if the engine is not open */
+  public ImportKvpb.CloseEngineResponse closeEngine(BackOffer bo, ByteString uuid) {
+    return callWithRetry(
+        bo,
+        ImportKVGrpc.METHOD_CLOSE_ENGINE,
+        () -> ImportKvpb.CloseEngineRequest.newBuilder().setUuid(uuid).build(),
+        new RequestErrorHandler<>());
+  }
+
+  /** Imports the pairs of the closed engine uuid into the cluster of PD pdAddr. */
+  public void importEngine(BackOffer bo, ByteString uuid, String pdAddr) {
+    callWithRetry(
+        bo,
+        ImportKVGrpc.METHOD_IMPORT_ENGINE,
+        () -> ImportKvpb.ImportEngineRequest.newBuilder().setUuid(uuid).setPdAddr(pdAddr).build(),
+        new RequestErrorHandler<>());
+  }
+
+  /** Deletes the engine uuid and its files. */
+  public void cleanupEngine(BackOffer bo, ByteString uuid) {
+    callWithRetry(
+        bo,
+        ImportKVGrpc.METHOD_CLEANUP_ENGINE,
+        () -> ImportKvpb.CleanupEngineRequest.newBuilder().setUuid(uuid).build(),
+        new RequestErrorHandler<>());
+  }
+
+  @Override
+  protected ImportKVBlockingStub getBlockingStub() {
+    return blockingStub.withDeadlineAfter(getConf().getTimeout(), getConf().getTimeoutUnit());
+  }
+
+  @Override
+  protected ImportKVStub getAsyncStub() {
+    return asyncStub.withDeadlineAfter(getConf().getTimeout(), getConf().getTimeoutUnit());
+  }
+
+  @Override
+  public void close() {}
+
+  /**
+   * A WriteEngine stream, the batches are sent as they are written once the stream is ready to
+   * take them. Not thread safe.
+   */
+  public class WriteStream {
+    private final FutureObserver<ImportKvpb.WriteEngineResponse, ImportKvpb.WriteEngineResponse>
+        responseObserver = new FutureObserver<>(resp -> resp);
+    private final FlowControlObserver<ImportKvpb.WriteEngineRequest, ImportKvpb.WriteEngineResponse>
+        flowControl = new FlowControlObserver<>(responseObserver);
+    private final StreamObserver<ImportKvpb.WriteEngineRequest> requestObserver;
+
+    private WriteStream(ByteString uuid) {
+      // the stream lives as long as its batches are written, it has no deadline
+      requestObserver = asyncStub.writeEngine(flowControl);
+      requestObserver.onNext(
+          ImportKvpb.WriteEngineRequest.newBuilder()
+              .setHead(ImportKvpb.WriteHead.newBuilder().setUuid(uuid))
+              .build());
+    }
+
+    /**
+     * Waits until the stream is ready and sends batch. A failed stream drops the batch, {@link
+     * #finish()} reports the failure.
+     */
+    public void write(ImportKvpb.WriteBatch batch) {
+      try {
+        if (flowControl.awaitReady()) {
+          requestObserver.onNext(
+              ImportKvpb.WriteEngineRequest.newBuilder().setBatch(batch).build());
+        }
+      } catch (InterruptedException e) {
+        cancel(e);
+        Thread.currentThread().interrupt();
+        throw new TiClientInternalException("Interrupted during write to " + address, e);
+      }
+    }
+
+    /**
+     * Completes the stream and waits for its response.
+     *
+     * @throws GrpcException if the stream failed
+     */
+    public ImportKvpb.WriteEngineResponse finish() {
+      requestObserver.onCompleted();
+      try {
+        return responseObserver.getFuture().get();
+      } catch (InterruptedException e) {
+        cancel(e);
+        Thread.currentThread().interrupt();
+        throw new TiClientInternalException("Interrupted during write to " + address, e);
+      } catch (ExecutionException e) {
+        throw new GrpcException(e.getCause());
+      }
+    }
+
+    /** Fails the stream, the batches written are dropped by the importer. */
+    public void cancel(Throwable cause) {
+      requestObserver.onError(cause);
+    }
+  }
+}
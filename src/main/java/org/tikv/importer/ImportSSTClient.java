@@ -0,0 +1,145 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.importer;
+
+import static org.tikv.common.util.BackOffFunction.BackOffFuncType.BoTiKVRPC;
+
+import com.google.protobuf.ByteString;
+import io.grpc.ManagedChannel;
+import io.grpc.stub.StreamObserver;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutionException;
+import org.tikv.common.AbstractGRPCClient;
+import org.tikv.common.TiConfiguration;
+import org.tikv.common.exception.GrpcException;
+import org.tikv.common.exception.TiClientInternalException;
+import org.tikv.common.util.BackOffer;
+import org.tikv.common.util.ChannelFactory;
+import org.tikv.common.util.FlowControlObserver;
+import org.tikv.common.util.FutureObserver;
+import org.tikv.kvproto.ImportSSTGrpc;
+import org.tikv.kvproto.ImportSSTGrpc.ImportSSTBlockingStub;
+import org.tikv.kvproto.ImportSSTGrpc.ImportSSTStub;
+import org.tikv.kvproto.ImportSstpb;
+import org.tikv.kvproto.Kvrpcpb;
+
+/** Client of the ImportSST service of a TiKV store, which ingests SST files into its regions. */
+public class ImportSSTClient extends AbstractGRPCClient<ImportSSTBlockingStub, ImportSSTStub> {
+  private static final int UPLOAD_CHUNK_SIZE = 1024 * 1024;
+
+  private final String address;
+  private final ImportSSTBlockingStub blockingStub;
+  private final ImportSSTStub asyncStub;
+
+  public ImportSSTClient(TiConfiguration conf, ChannelFactory channelFactory, String address) {
+    super(conf, channelFactory);
+    this.address = address;
+    ManagedChannel channel = channelFactory.getChannel(address);
+    this.blockingStub = ImportSSTGrpc.newBlockingStub(channel);
+    this.asyncStub = ImportSSTGrpc.newStub(channel);
+  }
+
+  public String getAddress() {
+    return address;
+  }
+
+  /** Switches the store to import mode, tuned for ingesting, or back to normal mode. */
+  public void switchMode(BackOffer bo, ImportSstpb.SwitchMode mode) {
+    callWithRetry(
+        bo,
+        ImportSSTGrpc.METHOD_SWITCH_MODE,
+        () -> ImportSstpb.SwitchModeRequest.newBuilder().setMode(mode).build(),
+        new RequestErrorHandler<>());
+  }
+
+  /** Uploads an SST file, to be ingested later as meta. */
+  public void upload(BackOffer bo, ImportSstpb.SSTMeta meta, File file) {
+    while (true) {
+      try {
+        uploadOnce(meta, file);
+        return;
+      } catch (GrpcException e) {
+        bo.doBackOff(BoTiKVRPC, e);
+      }
+    }
+  }
+
+  private void uploadOnce(ImportSstpb.SSTMeta meta, File file) {
+    FutureObserver<ImportSstpb.UploadResponse, ImportSstpb.UploadResponse> responseObserver =
+        new FutureObserver<>(resp -> resp);
+    FlowControlObserver<ImportSstpb.UploadRequest, ImportSstpb.UploadResponse> flowControl =
+        new FlowControlObserver<>(responseObserver);
+    StreamObserver<ImportSstpb.UploadRequest> requestObserver = getAsyncStub().upload(flowControl);
+    try (InputStream in = new BufferedInputStream(new FileInputStream(file), UPLOAD_CHUNK_SIZE)) {
+      requestObserver.onNext(ImportSstpb.UploadRequest.newBuilder().setMeta(meta).build());
+      byte[] chunk = new byte[UPLOAD_CHUNK_SIZE];
+      int n;
+      // a chunk is read only once the previous one is sent, a failed call ends the upload early
+      while (flowControl.awaitReady() && (n = in.read(chunk)) > 0) {
+        ByteString data = ByteString.copyFrom(chunk, 0, n);
+        requestObserver.onNext(ImportSstpb.UploadRequest.newBuilder().setData(data).build());
+      }
+    } catch (IOException e) {
+      requestObserver.onError(e);
+      throw new TiClientInternalException("Error reading SST file " + file, e);
+    } catch (InterruptedException e) {
+      requestObserver.onError(e);
+      Thread.currentThread().interrupt();
+      throw new TiClientInternalException("Interrupted during upload to " + address, e);
+    }
+    requestObserver.onCompleted();
+    try {
+      responseObserver.getFuture().get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new TiClientInternalException("Interrupted during upload to " + address, e);
+    } catch (ExecutionException e) {
+      throw new GrpcException(e.getCause());
+    }
+  }
+
+  /**
+   * Ingests an SST file uploaded to the stores of all the peers of its region.
+   *
+   * @param context context of the leader of the region
+   * @return the response, its error is the region error met if any
+   */
+  public ImportSstpb.IngestResponse ingest(
+      BackOffer bo, Kvrpcpb.Context context, ImportSstpb.SSTMeta meta) {
+    return callWithRetry(
+        bo,
+        ImportSSTGrpc.METHOD_INGEST,
+        () -> ImportSstpb.IngestRequest.newBuilder().setContext(context).setSst(meta).build(),
+        new RequestErrorHandler<>());
+  }
+
+  @Override
+  protected ImportSSTBlockingStub getBlockingStub() {
+    return blockingStub.withDeadlineAfter(getConf().getTimeout(), getConf().getTimeoutUnit());
+  }
+
+  @Override
+  protected ImportSSTStub getAsyncStub() {
+    return asyncStub.withDeadlineAfter(getConf().getTimeout(), getConf().getTimeoutUnit());
+  }
+
+  @Override
+  public void close() {}
+}
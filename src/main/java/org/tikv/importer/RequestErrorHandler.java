@@ -0,0 +1,35 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.importer;
+
+import static org.tikv.common.util.BackOffFunction.BackOffFuncType.BoTiKVRPC;
+
+import org.tikv.common.operation.ErrorHandler;
+import org.tikv.common.util.BackOffer;
+
+/** Retries failed calls of the import services, the errors in responses are left to the caller. */
+class RequestErrorHandler<RespT> implements ErrorHandler<RespT> {
+  @Override
+  public boolean handleResponseError(BackOffer backOffer, RespT resp) {
+    return false;
+  }
+
+  @Override
+  public boolean handleRequestError(BackOffer backOffer, Exception e) {
+    backOffer.doBackOff(BoTiKVRPC, e);
+    return true;
+  }
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.importer;
+
+import static org.tikv.common.codec.Codec.IntegerCodec.writeUVarLong;
+
+import com.google.common.hash.Hashing;
+import com.google.protobuf.ByteString;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import org.tikv.common.codec.CodecDataOutput;
+import org.tikv.common.util.ByteStrings;
+
+/**
+ * Writes sorted key-value pairs into an SST file that RocksDB, and so TiKV, can ingest: an
+ * uncompressed block-based table in the legacy format, with the table properties of an external
+ * file written by RocksDB's SstFileWriter.
+ *
+ * <p>The keys are written as they are given, at sequence number 0. Not thread safe.
+ */
+public class SstFileWriter implements AutoCloseable {
+  private static final int BLOCK_SIZE = 64 * 1024;
+  private static final int BLOCK_RESTART_INTERVAL = 16;
+  private static final long LEGACY_MAGIC = 0xdb4775248b80fb57L;
+  private static final int FOOTER_HANDLES_LENGTH = 40;
+  private static final int BLOCK_TRAILER_SIZE = 5;
+  private static final byte NO_COMPRESSION = 0;
+  // sequence number 0 and type value, little-endian
+  private static final byte[] VALUE_TAG = {1, 0, 0, 0, 0, 0, 0, 0};
+  private static final int MASK_DELTA = 0xa282ead8;
+
+  private final OutputStream out;
+  private final BlockBuilder dataBlock = new BlockBuilder(BLOCK_RESTART_INTERVAL);
+  private final BlockBuilder indexBlock = new BlockBuilder(1);
+  private long offset;
+  private ByteString firstKey;
+  private ByteString lastKey;
+  private byte[] lastInternalKey;
+  private long numEntries;
+  private long numDataBlocks;
+  private long rawKeySize;
+  private long rawValueSize;
+  private boolean finished;
+
+  /** @param out where the file is written, not closed by this writer */
+  public SstFileWriter(OutputStream out) {
+    this.out = out;
+  }
+
+  /** Adds a pair, its key must be larger than the keys added before. */
+  public void put(ByteString key, ByteString value) throws IOException {
+    if (finished) {
+      throw new IllegalStateException("SST file already finished");
+    }
+    if (lastKey != null && ByteStrings.compare(key, lastKey) <= 0) {
+      throw new IllegalArgumentException("keys must be added in increasing order");
+    }
+    byte[] internalKey = new byte[key.size() + VALUE_TAG.length];
+    key.copyTo(internalKey, 0);
+    System.arraycopy(VALUE_TAG, 0, internalKey, key.size(), VALUE_TAG.length);
+    dataBlock.add(internalKey, ByteStrings.unsafeGetBytes(value));
+    if (firstKey == null) {
+      firstKey = key;
+    }
+    lastKey = key;
+    lastInternalKey = internalKey;
+    numEntries++;
+    rawKeySize += internalKey.length;
+    rawValueSize += value.size();
+    if (dataBlock.size() >= BLOCK_SIZE) {
+      flushDataBlock();
+    }
+  }
+
+  // the index maps the last key of each data block to the block
+  private void flushDataBlock() throws IOException {
+    byte[] handle = writeBlock(dataBlock.finish());
+    indexBlock.add(lastInternalKey, handle);
+    dataBlock.reset();
+    numDataBlocks++;
+  }
+
+  /**
+   * Writes the blocks left and the footer.
+   *
+   * @return size of the file
+   */
+  public long finish() throws IOException {
+    if (finished) {
+      return offset;
+    }
+    if (numEntries == 0) {
+      throw new IllegalStateException("an SST file must not be empty");
+    }
+    if (!dataBlock.isEmpty()) {
+      flushDataBlock();
+    }
+    long dataSize = offset;
+    byte[] index = indexBlock.finish();
+
+    Map<String, byte[]> properties = new TreeMap<>();
+    properties.put("rocksdb.data.size", varint(dataSize));
+    properties.put("rocksdb.index.size", varint(index.length + BLOCK_TRAILER_SIZE));
+    properties.put("rocksdb.filter.size", varint(0));
+    properties.put("rocksdb.raw.key.size", varint(rawKeySize));
+    properties.put("rocksdb.raw.value.size", varint(rawValueSize));
+    properties.put("rocksdb.num.data.blocks", varint(numDataBlocks));
+    properties.put("rocksdb.num.entries", varint(numEntries));
+    properties.put("rocksdb.format.version", varint(0));
+    properties.put("rocksdb.fixed.key.length", varint(0));
+    properties.put(
+        "rocksdb.comparator", "leveldb.BytewiseComparator".getBytes(StandardCharsets.UTF_8));
+    properties.put("rocksdb.external_sst_file.version", fixed32(2));
+    properties.put("rocksdb.external_sst_file.global_seqno", fixed64(0));
+    BlockBuilder propertiesBlock = new BlockBuilder(1);
+    for (Map.Entry<String, byte[]> property : properties.entrySet()) {
+      propertiesBlock.add(property.getKey().getBytes(StandardCharsets.UTF_8), property.getValue());
+    }
+    byte[] propertiesHandle = writeBlock(propertiesBlock.finish());
+
+    BlockBuilder metaIndexBlock = new BlockBuilder(1);
+    metaIndexBlock.add("rocksdb.properties".getBytes(StandardCharsets.UTF_8), propertiesHandle);
+    byte[] metaIndexHandle = writeBlock(metaIndexBlock.finish());
+    byte[] indexHandle = writeBlock(index);
+
+    CodecDataOutput footer = new CodecDataOutput(FOOTER_HANDLES_LENGTH + 8);
+    footer.write(metaIndexHandle);
+    footer.write(indexHandle);
+    while (footer.size() < FOOTER_HANDLES_LENGTH) {
+      footer.writeByte(0);
+    }
+    writeFixed64(footer, LEGACY_MAGIC);
+    write(footer.toBytes());
+    finished = true;
+    return offset;
+  }
+
+  /** @return the first key added, null if there is none */
+  public ByteString getFirstKey() {
+    return firstKey;
+  }
+
+  /** @return the last key added, null if there is none */
+  public ByteString getLastKey() {
+    return lastKey;
+  }
+
+  public long getNumEntries() {
+    return numEntries;
+  }
+
+  /** Writes a block and its trailer, @return the handle of the block */
+  private byte[] writeBlock(byte[] contents) throws IOException {
+    long blockOffset = offset;
+    CodecDataOutput trailer = new CodecDataOutput(BLOCK_TRAILER_SIZE);
+    trailer.writeByte(NO_COMPRESSION);
+    int crc =
+        Hashing.crc32c().newHasher().putBytes(contents).putByte(NO_COMPRESSION).hash().asInt();
+    writeFixed32(trailer, mask(crc));
+    write(contents);
+    write(trailer.toBytes());
+    CodecDataOutput handle = new CodecDataOutput(20);
+    writeUVarLong(handle, blockOffset);
+    writeUVarLong(handle, contents.length);
+    return handle.toBytes();
+  }
+
+  private void write(byte[] bytes) throws IOException {
+    out.write(bytes);
+    offset += bytes.length;
+  }
+
+  // the masked checksum stored in block trailers
+  private static int mask(int crc) {
+    return ((crc >>> 15) | (crc << 17)) + MASK_DELTA;
+  }
+
+  private static byte[] varint(long value) {
+    CodecDataOutput cdo = new CodecDataOutput(10);
+    writeUVarLong(cdo, value);
+    return cdo.toBytes();
+  }
+
+  private static byte[] fixed32(int value) {
+    CodecDataOutput cdo = new CodecDataOutput(4);
+    writeFixed32(cdo, value);
+    return cdo.toBytes();
+  }
+
+  private static byte[] fixed64(long value) {
+    CodecDataOutput cdo = new CodecDataOutput(8);
+    writeFixed64(cdo, value);
+    return cdo.toBytes();
+  }
+
+  private static void writeFixed32(CodecDataOutput cdo, int value) {
+    cdo.writeInt(Integer.reverseBytes(value));
+  }
+
+  private static void writeFixed64(CodecDataOutput cdo, long value) {
+    cdo.writeLong(Long.reverseBytes(value));
+  }
+
+  @Override
+  public void close() throws IOException {
+    finish();
+  }
+
+  /**
+   * Builds a block of sorted entries, each key stored as the bytes it does not share with the
+   * previous one but at restart points, where it is stored whole.
+   */
+  private static final class BlockBuilder {
+    private final int restartInterval;
+    private final CodecDataOutput buffer = new CodecDataOutput(BLOCK_SIZE + 1024);
+    private final CodecDataOutput restarts = new CodecDataOutput();
+    private int numRestarts;
+    private int counter;
+    private byte[] lastKey = new byte[0];
+
+    BlockBuilder(int restartInterval) {
+      this.restartInterval = restartInterval;
+      reset();
+    }
+
+    void reset() {
+      buffer.reset();
+      restarts.reset();
+      writeFixed32(restarts, 0);
+      numRestarts = 1;
+      counter = 0;
+      lastKey = new byte[0];
+    }
+
+    void add(byte[] key, byte[] value) {
+      int shared = 0;
+      if (counter < restartInterval) {
+        int limit = Math.min(lastKey.length, key.length);
+        while (shared < limit && lastKey[shared] == key[shared]) {
+          shared++;
+        }
+      } else {
+        writeFixed32(restarts, buffer.size());
+        numRestarts++;
+        counter = 0;
+      }
+      writeUVarLong(buffer, shared);
+      writeUVarLong(buffer, key.length - shared);
+      writeUVarLong(buffer, value.length);
+      buffer.write(key, shared, key.length - shared);
+      buffer.write(value);
+      lastKey = key;
+      counter++;
+    }
+
+    boolean isEmpty() {
+      return buffer.size() == 0;
+    }
+
+    /** @return estimated size of the block */
+    int size() {
+      return buffer.size() + restarts.size() + 4;
+    }
+
+    byte[] finish() {
+      CodecDataOutput block = new CodecDataOutput(size());
+      block.write(buffer.toBytes());
+      block.write(restarts.toBytes());
+      writeFixed32(block, numRestarts);
+      return block.toBytes();
+    }
+  }
+}
@@ -0,0 +1,358 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.importer;
+
+import static org.tikv.common.util.BackOffFunction.BackOffFuncType.BoRegionMiss;
+import static org.tikv.common.util.BackOffFunction.BackOffFuncType.BoServerBusy;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.protobuf.ByteString;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import org.apache.log4j.Logger;
+import org.tikv.common.TiConfiguration;
+import org.tikv.common.exception.RegionException;
+import org.tikv.common.exception.TiClientInternalException;
+import org.tikv.common.region.RegionManager;
+import org.tikv.common.region.TiRegion;
+import org.tikv.common.util.BackOffer;
+import org.tikv.common.util.ByteStrings;
+import org.tikv.common.util.ChannelFactory;
+import org.tikv.common.util.ConcreteBackOffer;
+import org.tikv.common.util.Pair;
+import org.tikv.kvproto.Errorpb;
+import org.tikv.kvproto.ImportSstpb;
+import org.tikv.kvproto.Metapb;
+import org.tikv.txn.BigTxnBuffer;
+import org.tikv.txn.MemBuffer;
+
+/**
+ * Bulk loads raw key-value pairs into TiKV by ingesting SST files, bypassing the raft write path.
+ *
+ * <p>The pairs put are sorted through a {@link BigTxnBuffer}, which spills them to {@link
+ * TiConfiguration#getImportDir()}. {@link #importAll()} then cuts the sorted pairs by region into
+ * SST files, uploads each file to the stores of all the peers of its region and ingests it at the
+ * leader, at most {@link TiConfiguration#getImportConcurrency()} files at once. The stores are in
+ * import mode while the files are ingested. The ranges of files rejected because their region has
+ * changed are cut again with the new regions and imported again.
+ *
+ * <p>Pairs already in TiKV are overwritten. Not thread safe.
+ */
+public class SstImporter implements AutoCloseable {
+  private static final Logger logger = Logger.getLogger(SstImporter.class);
+  private static final long MAX_SST_SIZE = 96 * 1024 * 1024;
+  private static final int IO_BUFFER_SIZE = 64 * 1024;
+  private static final int IMPORT_MAX_BACKOFF = 60 * 1000;
+  private static final String CF_DEFAULT = "default";
+  // prefix of the data keys of the TiKV engine
+  private static final byte[] DATA_PREFIX = {'z'};
+
+  private final TiConfiguration conf;
+  private final RegionManager regionManager;
+  private final ChannelFactory channelFactory;
+  private final BigTxnBuffer buffer;
+  private final ExecutorService executor;
+  // clients of the stores switched to import mode, by address
+  private final Map<String, ImportSSTClient> importClients = new ConcurrentHashMap<>();
+
+  public SstImporter(
+      TiConfiguration conf, RegionManager regionManager, ChannelFactory channelFactory) {
+    this.conf = Objects.requireNonNull(conf, "conf is null");
+    this.regionManager = Objects.requireNonNull(regionManager, "regionManager is null");
+    this.channelFactory = Objects.requireNonNull(channelFactory, "channelFactory is null");
+    this.buffer =
+        new BigTxnBuffer(
+            new MemBuffer(conf.getTxnEntrySizeLimit(), Integer.MAX_VALUE, Long.MAX_VALUE),
+            new File(conf.getImportDir()),
+            conf.getImportSpillSize());
+    this.executor =
+        Executors.newFixedThreadPool(
+            conf.getImportConcurrency(),
+            new ThreadFactoryBuilder().setNameFormat("sst-importer-%d").setDaemon(true).build());
+  }
+
+  /** Adds a pair to import, a later put of the same key overwrites it. */
+  public void put(ByteString key, ByteString value) {
+    if (key.isEmpty()) {
+      throw new IllegalArgumentException("key is empty");
+    }
+    if (value.isEmpty()) {
+      throw new IllegalArgumentException("value is empty");
+    }
+    buffer.set(ByteStrings.unsafeGetBytes(key), ByteStrings.unsafeGetBytes(value));
+  }
+
+  /**
+   * Imports all the pairs put, then empties the importer.
+   *
+   * @return the number of pairs imported
+   */
+  public long importAll() {
+    List<Pair<ByteString, ByteString>> ranges = new ArrayList<>();
+    ranges.add(Pair.create(ByteString.EMPTY, ByteString.EMPTY));
+    long count = 0;
+    try {
+      while (!ranges.isEmpty()) {
+        Queue<Pair<ByteString, ByteString>> retryRanges = new ConcurrentLinkedQueue<>();
+        for (Pair<ByteString, ByteString> range : ranges) {
+          count += importRange(range.first, range.second, retryRanges);
+        }
+        ranges = new ArrayList<>(retryRanges);
+      }
+    } finally {
+      switchToNormalMode();
+      buffer.reset();
+    }
+    return count;
+  }
+
+  /**
+   * Imports the pairs in [startKey, endKey), adding the ranges of the files to import again to
+   * retryRanges.
+   *
+   * @return the number of pairs ingested
+   */
+  private long importRange(
+      ByteString startKey, ByteString endKey, Queue<Pair<ByteString, ByteString>> retryRanges) {
+    Semaphore inFlight = new Semaphore(conf.getImportConcurrency() * 2);
+    List<Future<Long>> futures = new ArrayList<>();
+    try (BigTxnBuffer.MergeIterator iterator =
+        buffer.iterator(ByteStrings.unsafeGetBytes(startKey), ByteStrings.unsafeGetBytes(endKey))) {
+      SstFile file = null;
+      while (iterator.hasNext()) {
+        Pair<byte[], byte[]> entry = iterator.next();
+        ByteString key = ByteStrings.wrap(entry.first);
+        if (file != null && (!file.region.contains(key) || file.size() >= MAX_SST_SIZE)) {
+          futures.add(submit(file.finish(), inFlight, retryRanges));
+          file = null;
+        }
+        if (file == null) {
+          file = new SstFile(regionManager.getRegionByKey(key));
+        }
+        file.put(key, ByteStrings.wrap(entry.second));
+      }
+      if (file != null) {
+        futures.add(submit(file.finish(), inFlight, retryRanges));
+      }
+    } catch (IOException e) {
+      throw new TiClientInternalException("Error writing SST file", e);
+    }
+    long count = 0;
+    try {
+      for (Future<Long> future : futures) {
+        count += getUninterruptibly(future);
+      }
+    } finally {
+      for (Future<Long> future : futures) {
+        future.cancel(true);
+      }
+    }
+    return count;
+  }
+
+  private Future<Long> submit(
+      SstFile file, Semaphore inFlight, Queue<Pair<ByteString, ByteString>> retryRanges) {
+    try {
+      inFlight.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      file.delete();
+      throw new TiClientInternalException("Interrupted during import", e);
+    }
+    return executor.submit(
+        () -> {
+          try {
+            if (ingest(file)) {
+              return file.numEntries;
+            }
+            retryRanges.add(Pair.create(file.firstKey, nextKey(file.lastKey)));
+            return 0L;
+          } finally {
+            file.delete();
+            inFlight.release();
+          }
+        });
+  }
+
+  /** @return whether the file is ingested, false if its region has changed */
+  private boolean ingest(SstFile file) {
+    TiRegion region = file.region;
+    ImportSstpb.SSTMeta meta =
+        ImportSstpb.SSTMeta.newBuilder()
+            .setUuid(uuid())
+            .setRange(
+                ImportSstpb.Range.newBuilder()
+                    .setStart(file.firstKey)
+                    .setEnd(file.lastKey)
+                    .build())
+            .setCrc32((int) file.crc32)
+            .setLength(file.length)
+            .setCfName(CF_DEFAULT)
+            .setRegionId(region.getId())
+            .setRegionEpoch(region.getRegionEpoch())
+            .build();
+    BackOffer bo = ConcreteBackOffer.newCustomBackOff(IMPORT_MAX_BACKOFF);
+    for (Metapb.Peer peer : region.getMeta().getPeersList()) {
+      Metapb.Store store = regionManager.getStoreById(peer.getStoreId());
+      getImportClient(bo, store.getAddress()).upload(bo, meta, file.file);
+    }
+    Metapb.Store leader = regionManager.getStoreById(region.getLeader().getStoreId());
+    while (true) {
+      ImportSstpb.IngestResponse resp =
+          getImportClient(bo, leader.getAddress()).ingest(bo, region.getContext(), meta);
+      if (!resp.hasError()) {
+        return true;
+      }
+      Errorpb.Error error = resp.getError();
+      if (error.hasServerIsBusy()) {
+        bo.doBackOff(BoServerBusy, new RegionException(error));
+        continue;
+      }
+      logger.warn(
+          String.format("Failed to ingest SST file to region [%s]: %s", region, error));
+      regionManager.invalidateRegion(region.getId());
+      bo.doBackOff(BoRegionMiss, new RegionException(error));
+      return false;
+    }
+  }
+
+  // the client of the store at address, switching the store to import mode on first use
+  private ImportSSTClient getImportClient(BackOffer bo, String address) {
+    return importClients.computeIfAbsent(
+        address,
+        addr -> {
+          ImportSSTClient client = new ImportSSTClient(conf, channelFactory, addr);
+          client.switchMode(bo, ImportSstpb.SwitchMode.Import);
+          return client;
+        });
+  }
+
+  private void switchToNormalMode() {
+    for (ImportSSTClient client : importClients.values()) {
+      try {
+        client.switchMode(
+            ConcreteBackOffer.newCustomBackOff(IMPORT_MAX_BACKOFF), ImportSstpb.SwitchMode.Normal);
+      } catch (Exception e) {
+        logger.warn("Failed to switch store " + client.getAddress() + " to normal mode", e);
+      }
+    }
+    importClients.clear();
+  }
+
+  // a random uuid of an SST file or an engine
+  static ByteString uuid() {
+    UUID uuid = UUID.randomUUID();
+    ByteBuffer bytes = ByteBuffer.allocate(16);
+    bytes.putLong(uuid.getMostSignificantBits());
+    bytes.putLong(uuid.getLeastSignificantBits());
+    return ByteString.copyFrom(bytes.array());
+  }
+
+  // the smallest key larger than key
+  private static ByteString nextKey(ByteString key) {
+    return key.concat(ByteString.copyFrom(new byte[] {0}));
+  }
+
+  private static long getUninterruptibly(Future<Long> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new TiClientInternalException("Interrupted during import", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new TiClientInternalException("Error during import", e.getCause());
+    }
+  }
+
+  @Override
+  public void close() {
+    executor.shutdownNow();
+    buffer.close();
+  }
+
+  /** An SST file of the pairs of a region, written to a temporary file of the import dir. */
+  private class SstFile {
+    private final TiRegion region;
+    private final File file;
+    private final CheckedOutputStream out;
+    private final SstFileWriter writer;
+    private ByteString firstKey;
+    private ByteString lastKey;
+    private long numEntries;
+    private long crc32;
+    private long length;
+    private long size;
+
+    SstFile(TiRegion region) throws IOException {
+      this.region = region;
+      this.file = File.createTempFile("import-", ".sst", new File(conf.getImportDir()));
+      this.out =
+          new CheckedOutputStream(
+              new BufferedOutputStream(new FileOutputStream(file), IO_BUFFER_SIZE), new CRC32());
+      this.writer = new SstFileWriter(out);
+    }
+
+    void put(ByteString key, ByteString value) throws IOException {
+      writer.put(ByteString.copyFrom(DATA_PREFIX).concat(key), value);
+      if (firstKey == null) {
+        firstKey = key;
+      }
+      lastKey = key;
+      numEntries++;
+      size += key.size() + value.size();
+    }
+
+    long size() {
+      return size;
+    }
+
+    SstFile finish() throws IOException {
+      try (OutputStream ignored = out) {
+        length = writer.finish();
+      }
+      crc32 = out.getChecksum().getValue();
+      return this;
+    }
+
+    void delete() {
+      if (!file.delete()) {
+        logger.warn("Failed to delete SST file " + file);
+      }
+    }
+  }
+}
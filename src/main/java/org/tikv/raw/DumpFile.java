@@ -0,0 +1,194 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.raw;
+
+import com.google.protobuf.ByteString;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import org.tikv.common.codec.CodecDataInput;
+import org.tikv.common.codec.CodecDataOutput;
+import org.tikv.common.util.ByteStrings;
+import org.tikv.kvproto.Kvrpcpb;
+
+/**
+ * A file of key-value pairs dumped by {@link RawExporter}. It is a sequence of blocks, each made of
+ * a header holding the length of the block, the length of its deflated bytes and their CRC32,
+ * followed by the deflated bytes. A block holds about BLOCK_SIZE bytes of pairs, each written as
+ * the length of the key, the key, the length of the value and the value.
+ */
+final class DumpFile {
+  private static final int BLOCK_SIZE = 64 * 1024;
+  private static final int BLOCK_HEADER_SIZE = 12;
+
+  private DumpFile() {}
+
+  /** Writes a dump file through its channel, a block at a time. Not thread safe. */
+  static final class Writer implements AutoCloseable {
+    private final FileChannel channel;
+    private final CodecDataOutput block = new CodecDataOutput(BLOCK_SIZE + 1024);
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+    private byte[] compressed = new byte[BLOCK_SIZE];
+    private long count;
+
+    Writer(Path path) throws IOException {
+      this.channel =
+          FileChannel.open(
+              path,
+              StandardOpenOption.CREATE,
+              StandardOpenOption.TRUNCATE_EXISTING,
+              StandardOpenOption.WRITE);
+    }
+
+    void write(ByteString key, ByteString value) throws IOException {
+      block.writeInt(key.size());
+      block.write(ByteStrings.unsafeGetBytes(key));
+      block.writeInt(value.size());
+      block.write(ByteStrings.unsafeGetBytes(value));
+      count++;
+      if (block.size() >= BLOCK_SIZE) {
+        flush();
+      }
+    }
+
+    long getCount() {
+      return count;
+    }
+
+    private void flush() throws IOException {
+      if (block.size() == 0) {
+        return;
+      }
+      byte[] raw = block.toBytes();
+      block.reset();
+      deflater.reset();
+      deflater.setInput(raw);
+      deflater.finish();
+      int length = 0;
+      while (!deflater.finished()) {
+        if (length == compressed.length) {
+          byte[] larger = new byte[compressed.length * 2];
+          System.arraycopy(compressed, 0, larger, 0, length);
+          compressed = larger;
+        }
+        length += deflater.deflate(compressed, length, compressed.length - length);
+      }
+      CRC32 crc32 = new CRC32();
+      crc32.update(compressed, 0, length);
+      header.clear();
+      header.putInt(raw.length).putInt(length).putInt((int) crc32.getValue());
+      header.flip();
+      ByteBuffer[] buffers = {header, ByteBuffer.wrap(compressed, 0, length)};
+      while (buffers[1].hasRemaining()) {
+        channel.write(buffers);
+      }
+    }
+
+    /** Writes the pairs left and syncs the file to disk. */
+    void finish() throws IOException {
+      flush();
+      channel.force(true);
+    }
+
+    @Override
+    public void close() throws IOException {
+      deflater.end();
+      channel.close();
+    }
+  }
+
+  /** Reads a dump file a block at a time, checking the checksum of each block. */
+  static final class Reader implements AutoCloseable {
+    private final Path path;
+    private final FileChannel channel;
+    private final Inflater inflater = new Inflater();
+    private final ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+
+    Reader(Path path) throws IOException {
+      this.path = path;
+      this.channel = FileChannel.open(path, StandardOpenOption.READ);
+    }
+
+    /** @return the pairs of the next block in order, null at the end of the file */
+    List<Kvrpcpb.KvPair> readBlock() throws IOException {
+      header.clear();
+      if (!readFully(header, true)) {
+        return null;
+      }
+      header.flip();
+      int rawLength = header.getInt();
+      int length = header.getInt();
+      int crc = header.getInt();
+      if (rawLength < 0 || length < 0) {
+        throw new IOException("Corrupted block in " + path);
+      }
+      ByteBuffer compressed = ByteBuffer.allocate(length);
+      readFully(compressed, false);
+      CRC32 crc32 = new CRC32();
+      crc32.update(compressed.array(), 0, length);
+      if ((int) crc32.getValue() != crc) {
+        throw new IOException("Checksum mismatch in " + path);
+      }
+      byte[] raw = new byte[rawLength];
+      inflater.reset();
+      inflater.setInput(compressed.array(), 0, length);
+      try {
+        if (inflater.inflate(raw) != rawLength || !inflater.finished()) {
+          throw new IOException("Corrupted block in " + path);
+        }
+      } catch (DataFormatException e) {
+        throw new IOException("Corrupted block in " + path, e);
+      }
+      CodecDataInput cdi = new CodecDataInput(raw);
+      List<Kvrpcpb.KvPair> pairs = new ArrayList<>();
+      while (!cdi.eof()) {
+        ByteString key = cdi.readByteString(cdi.readInt());
+        ByteString value = cdi.readByteString(cdi.readInt());
+        pairs.add(Kvrpcpb.KvPair.newBuilder().setKey(key).setValue(value).build());
+      }
+      return pairs;
+    }
+
+    // @return false if the file ends before any byte is read and that is allowed
+    private boolean readFully(ByteBuffer buffer, boolean eofAllowed) throws IOException {
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer) < 0) {
+          if (eofAllowed && buffer.position() == 0) {
+            return false;
+          }
+          throw new EOFException("Truncated block in " + path);
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+      inflater.end();
+      channel.close();
+    }
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.raw;
+
+import com.google.common.io.BaseEncoding;
+import com.google.protobuf.ByteString;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The MANIFEST of a dump directory, listing the ranges exported. Each line holds the start and end
+ * keys of a range in hex, the dump file of its pairs and their number, separated by tabs. A line is
+ * appended once its file is complete, so the ranges listed need not be exported again. A last line
+ * without its line feed was torn by a crash during its append, it is ignored and overwritten by
+ * the next append.
+ */
+final class DumpManifest {
+  static final String FILE_NAME = "MANIFEST";
+  private static final BaseEncoding HEX = BaseEncoding.base16().lowerCase();
+
+  private DumpManifest() {}
+
+  /** A range exported into a dump file. */
+  static final class Entry {
+    final ByteString startKey;
+    // empty means unbounded
+    final ByteString endKey;
+    final String fileName;
+    final long count;
+
+    Entry(ByteString startKey, ByteString endKey, String fileName, long count) {
+      this.startKey = startKey;
+      this.endKey = endKey;
+      this.fileName = fileName;
+      this.count = count;
+    }
+  }
+
+  /** @return the entries of the manifest of dir, empty if there is none */
+  static List<Entry> read(Path dir) throws IOException {
+    Path path = dir.resolve(FILE_NAME);
+    List<Entry> entries = new ArrayList<>();
+    if (!Files.exists(path)) {
+      return entries;
+    }
+    byte[] content = Files.readAllBytes(path);
+    String text = new String(content, 0, completeLength(content), StandardCharsets.UTF_8);
+    for (String line : text.split("\n")) {
+      if (line.isEmpty()) {
+        continue;
+      }
+      String[] fields = line.split("\t", -1);
+      if (fields.length != 4) {
+        throw new IOException("Invalid manifest line: " + line);
+      }
+      entries.add(
+          new Entry(
+              ByteString.copyFrom(HEX.decode(fields[0])),
+              ByteString.copyFrom(HEX.decode(fields[1])),
+              fields[2],
+              Long.parseLong(fields[3])));
+    }
+    return entries;
+  }
+
+  /** Appends entry to the manifest of dir and syncs it to disk. */
+  static void append(Path dir, Entry entry) throws IOException {
+    String line =
+        String.join(
+                "\t",
+                HEX.encode(entry.startKey.toByteArray()),
+                HEX.encode(entry.endKey.toByteArray()),
+                entry.fileName,
+                String.valueOf(entry.count))
+            + "\n";
+    Path path = dir.resolve(FILE_NAME);
+    try (FileChannel channel =
+        FileChannel.open(
+            path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      long size = channel.size();
+      if (size > 0) {
+        ByteBuffer last = ByteBuffer.allocate(1);
+        channel.read(last, size - 1);
+        if (last.get(0) != '\n') {
+          size = completeLength(Files.readAllBytes(path));
+          channel.truncate(size);
+        }
+      }
+      channel.position(size);
+      ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      channel.force(true);
+    }
+  }
+
+  // length of the complete lines of content
+  private static int completeLength(byte[] content) {
+    int length = content.length;
+    while (length > 0 && content[length - 1] != '\n') {
+      length--;
+    }
+    return length;
+  }
+}
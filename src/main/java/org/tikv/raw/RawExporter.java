@@ -0,0 +1,234 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.raw;
+
+import static org.tikv.common.util.BackOffFunction.BackOffFuncType.BoRegionMiss;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.protobuf.ByteString;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.log4j.Logger;
+import org.tikv.common.TiConfiguration;
+import org.tikv.common.exception.TiClientInternalException;
+import org.tikv.common.exception.TiKVException;
+import org.tikv.common.key.Key;
+import org.tikv.common.region.RegionManager;
+import org.tikv.common.region.RegionStoreClient;
+import org.tikv.common.region.RegionStoreClient.RegionStoreClientBuilder;
+import org.tikv.common.region.TiRegion;
+import org.tikv.common.util.BackOffer;
+import org.tikv.common.util.ByteStrings;
+import org.tikv.common.util.ConcreteBackOffer;
+import org.tikv.common.util.Pair;
+import org.tikv.kvproto.Kvrpcpb;
+
+/**
+ * Exports the raw key-value pairs of a key range into a directory, to be loaded back by {@link
+ * RawImporter}.
+ *
+ * <p>The range is cut by region, and the regions are scanned concurrently, at most {@link
+ * TiConfiguration#getExportConcurrency()} at once. The pairs of each region go to a dump file of
+ * their own, written to a temporary file first. Once it is complete, its range is recorded in the
+ * MANIFEST of the directory, so an export which has failed is resumed by running it again: the
+ * ranges already listed are skipped.
+ */
+public class RawExporter implements AutoCloseable {
+  private static final Logger logger = Logger.getLogger(RawExporter.class);
+  private static final int EXPORT_MAX_BACKOFF = 60 * 1000;
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  private final TiConfiguration conf;
+  private final RegionStoreClientBuilder clientBuilder;
+  private final RegionManager regionManager;
+  private final ExecutorService executor;
+
+  public RawExporter(TiConfiguration conf, RegionStoreClientBuilder clientBuilder) {
+    this.conf = Objects.requireNonNull(conf, "conf is null");
+    this.clientBuilder = Objects.requireNonNull(clientBuilder, "clientBuilder is null");
+    this.regionManager = clientBuilder.getRegionManager();
+    this.executor =
+        Executors.newFixedThreadPool(
+            conf.getExportConcurrency(),
+            new ThreadFactoryBuilder().setNameFormat("raw-exporter-%d").setDaemon(true).build());
+  }
+
+  /**
+   * Exports the pairs in [startKey, endKey) into dir, skipping the ranges its MANIFEST already
+   * lists.
+   *
+   * @param endKey exclusive end of the range, empty means unbounded
+   * @return the number of pairs exported by this call
+   */
+  public long export(ByteString startKey, ByteString endKey, File dir) {
+    Path path = dir.toPath();
+    List<Pair<ByteString, ByteString>> ranges = new ArrayList<>();
+    try {
+      Files.createDirectories(path);
+      // files left by a failed export
+      try (DirectoryStream<Path> files = Files.newDirectoryStream(path, "*" + TEMP_SUFFIX)) {
+        for (Path file : files) {
+          Files.delete(file);
+        }
+      }
+      for (Pair<ByteString, ByteString> gap : gaps(startKey, endKey, DumpManifest.read(path))) {
+        ranges.addAll(splitByRegion(gap.first, gap.second));
+      }
+    } catch (IOException e) {
+      throw new TiClientInternalException("Error reading dump directory " + dir, e);
+    }
+    List<Future<Long>> futures = new ArrayList<>(ranges.size());
+    for (Pair<ByteString, ByteString> range : ranges) {
+      futures.add(executor.submit(() -> exportRange(range.first, range.second, path)));
+    }
+    long count = 0;
+    try {
+      for (Future<Long> future : futures) {
+        count += future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new TiClientInternalException("Interrupted during export", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new TiClientInternalException("Error during export", e.getCause());
+    } finally {
+      for (Future<Long> future : futures) {
+        future.cancel(true);
+      }
+    }
+    return count;
+  }
+
+  // the ranges of [startKey, endKey) not covered by the entries, an empty end being unbounded
+  private static List<Pair<ByteString, ByteString>> gaps(
+      ByteString startKey, ByteString endKey, List<DumpManifest.Entry> entries) {
+    List<DumpManifest.Entry> sorted = new ArrayList<>(entries);
+    sorted.sort((a, b) -> ByteStrings.compare(a.startKey, b.startKey));
+    List<Pair<ByteString, ByteString>> gaps = new ArrayList<>();
+    ByteString cursor = startKey;
+    for (DumpManifest.Entry entry : sorted) {
+      if (!endKey.isEmpty() && ByteStrings.compare(entry.startKey, endKey) >= 0) {
+        break;
+      }
+      if (ByteStrings.compare(entry.startKey, cursor) > 0) {
+        gaps.add(Pair.create(cursor, entry.startKey));
+      }
+      if (entry.endKey.isEmpty()) {
+        return gaps;
+      }
+      if (ByteStrings.compare(entry.endKey, cursor) > 0) {
+        cursor = entry.endKey;
+      }
+    }
+    if (endKey.isEmpty() || ByteStrings.compare(cursor, endKey) < 0) {
+      gaps.add(Pair.create(cursor, endKey));
+    }
+    return gaps;
+  }
+
+  // cuts [startKey, endKey) at the boundaries of the regions
+  private List<Pair<ByteString, ByteString>> splitByRegion(ByteString startKey, ByteString endKey) {
+    List<Pair<ByteString, ByteString>> ranges = new ArrayList<>();
+    ByteString key = startKey;
+    while (true) {
+      ByteString regionEnd = regionManager.getRegionByKey(key).getEndKey();
+      if (regionEnd.isEmpty()
+          || (!endKey.isEmpty() && ByteStrings.compare(regionEnd, endKey) >= 0)) {
+        ranges.add(Pair.create(key, endKey));
+        return ranges;
+      }
+      ranges.add(Pair.create(key, regionEnd));
+      key = regionEnd;
+    }
+  }
+
+  // exports [startKey, endKey) into a new dump file, @return the number of pairs exported
+  private long exportRange(ByteString startKey, ByteString endKey, Path dir) {
+    String fileName = UUID.randomUUID() + ".dump";
+    Path tempFile = dir.resolve(fileName + TEMP_SUFFIX);
+    long count;
+    try {
+      try (DumpFile.Writer writer = new DumpFile.Writer(tempFile)) {
+        scan(startKey, endKey, writer);
+        writer.finish();
+        count = writer.getCount();
+      }
+      Files.move(tempFile, dir.resolve(fileName), StandardCopyOption.ATOMIC_MOVE);
+      synchronized (this) {
+        DumpManifest.append(dir, new DumpManifest.Entry(startKey, endKey, fileName, count));
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return count;
+  }
+
+  private void scan(ByteString startKey, ByteString endKey, DumpFile.Writer writer)
+      throws IOException {
+    BackOffer bo = ConcreteBackOffer.newCustomBackOff(EXPORT_MAX_BACKOFF);
+    int batchSize = conf.getScanBatchSize();
+    ByteString key = startKey;
+    while (true) {
+      RegionStoreClient client = clientBuilder.build(key);
+      TiRegion region = client.getRegion();
+      List<Kvrpcpb.KvPair> pairs;
+      try {
+        pairs = client.rawScan(bo, key, batchSize);
+      } catch (TiKVException e) {
+        logger.warn(String.format("Failed to scan region [%s], retrying", region), e);
+        regionManager.invalidateRegion(region.getId());
+        bo.doBackOff(BoRegionMiss, e);
+        continue;
+      }
+      for (Kvrpcpb.KvPair pair : pairs) {
+        if (!endKey.isEmpty() && ByteStrings.compare(pair.getKey(), endKey) >= 0) {
+          return;
+        }
+        writer.write(pair.getKey(), pair.getValue());
+      }
+      if (pairs.size() < batchSize) {
+        // the rest of the region is empty
+        key = region.getEndKey();
+        if (key.isEmpty() || (!endKey.isEmpty() && ByteStrings.compare(key, endKey) >= 0)) {
+          return;
+        }
+      } else {
+        key = Key.toRawKey(pairs.get(pairs.size() - 1).getKey()).next().toByteString();
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    executor.shutdownNow();
+  }
+}
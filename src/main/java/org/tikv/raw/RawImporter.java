@@ -0,0 +1,146 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.raw;
+
+import static org.tikv.common.util.BackOffFunction.BackOffFuncType.BoRegionMiss;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.log4j.Logger;
+import org.tikv.common.TiConfiguration;
+import org.tikv.common.exception.TiClientInternalException;
+import org.tikv.common.exception.TiKVException;
+import org.tikv.common.region.RegionManager;
+import org.tikv.common.region.RegionStoreClient.RegionStoreClientBuilder;
+import org.tikv.common.region.TiRegion;
+import org.tikv.common.util.BackOffer;
+import org.tikv.common.util.ConcreteBackOffer;
+import org.tikv.kvproto.Kvrpcpb;
+
+/**
+ * Loads the raw key-value pairs exported by {@link RawExporter} back into TiKV.
+ *
+ * <p>The dump files listed in the MANIFEST of the directory are replayed concurrently, at most
+ * {@link TiConfiguration#getImportConcurrency()} at once. Each block of a file is written with
+ * batch puts to the regions now holding its keys.
+ */
+public class RawImporter implements AutoCloseable {
+  private static final Logger logger = Logger.getLogger(RawImporter.class);
+  private static final int IMPORT_MAX_BACKOFF = 60 * 1000;
+
+  private final RegionStoreClientBuilder clientBuilder;
+  private final RegionManager regionManager;
+  private final ExecutorService executor;
+
+  public RawImporter(TiConfiguration conf, RegionStoreClientBuilder clientBuilder) {
+    Objects.requireNonNull(conf, "conf is null");
+    this.clientBuilder = Objects.requireNonNull(clientBuilder, "clientBuilder is null");
+    this.regionManager = clientBuilder.getRegionManager();
+    this.executor =
+        Executors.newFixedThreadPool(
+            conf.getImportConcurrency(),
+            new ThreadFactoryBuilder().setNameFormat("raw-importer-%d").setDaemon(true).build());
+  }
+
+  /**
+   * Puts the pairs of the dump files of dir.
+   *
+   * @return the number of pairs put
+   */
+  public long importFrom(File dir) {
+    Path path = dir.toPath();
+    List<DumpManifest.Entry> entries;
+    try {
+      entries = DumpManifest.read(path);
+    } catch (IOException e) {
+      throw new TiClientInternalException("Error reading dump directory " + dir, e);
+    }
+    List<Future<Long>> futures = new ArrayList<>(entries.size());
+    for (DumpManifest.Entry entry : entries) {
+      futures.add(executor.submit(() -> replay(path.resolve(entry.fileName))));
+    }
+    long count = 0;
+    try {
+      for (Future<Long> future : futures) {
+        count += future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new TiClientInternalException("Interrupted during import", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new TiClientInternalException("Error during import", e.getCause());
+    } finally {
+      for (Future<Long> future : futures) {
+        future.cancel(true);
+      }
+    }
+    return count;
+  }
+
+  private long replay(Path file) {
+    long count = 0;
+    try (DumpFile.Reader reader = new DumpFile.Reader(file)) {
+      List<Kvrpcpb.KvPair> pairs;
+      while ((pairs = reader.readBlock()) != null) {
+        put(ConcreteBackOffer.newCustomBackOff(IMPORT_MAX_BACKOFF), pairs);
+        count += pairs.size();
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return count;
+  }
+
+  // puts sorted pairs, a batch per region
+  private void put(BackOffer bo, List<Kvrpcpb.KvPair> pairs) {
+    int start = 0;
+    while (start < pairs.size()) {
+      TiRegion region = regionManager.getRegionByKey(pairs.get(start).getKey());
+      int end = start + 1;
+      while (end < pairs.size() && region.contains(pairs.get(end).getKey())) {
+        end++;
+      }
+      List<Kvrpcpb.KvPair> batch = pairs.subList(start, end);
+      try {
+        clientBuilder.build(region).rawBatchPut(bo, batch);
+      } catch (TiKVException e) {
+        logger.warn(String.format("Failed to put to region [%s], retrying", region), e);
+        regionManager.invalidateRegion(region.getId());
+        bo.doBackOff(BoRegionMiss, e);
+        put(bo, batch);
+      }
+      start = end;
+    }
+  }
+
+  @Override
+  public void close() {
+    executor.shutdownNow();
+  }
+}
@@ -33,6 +33,7 @@ import java.util.stream.Collectors;
 import org.apache.log4j.Logger;
 import org.tikv.common.TiConfiguration;
 import org.tikv.common.exception.TiKVException;
+import org.tikv.common.metrics.OperationTrace;
 import org.tikv.common.operation.iterator.RawScanIterator;
 import org.tikv.common.region.RegionStoreClient;
 import org.tikv.common.region.RegionStoreClient.RegionStoreClientBuilder;
@@ -69,14 +70,16 @@ public class RawKVClient implements AutoCloseable {
    * @param value raw value
    */
   public void put(ByteString key, ByteString value) {
-    BackOffer backOffer = defaultBackOff();
-    while (true) {
-      RegionStoreClient client = clientBuilder.build(key);
-      try {
-        client.rawPut(backOffer, key, value);
-        return;
-      } catch (final TiKVException e) {
-        backOffer.doBackOff(BackOffFunction.BackOffFuncType.BoRegionMiss, e);
+    try (OperationTrace ignored = OperationTrace.start("RawKVClient.put", conf)) {
+      BackOffer backOffer = defaultBackOff();
+      while (true) {
+        RegionStoreClient client = clientBuilder.build(key);
+        try {
+          client.rawPut(backOffer, key, value);
+          return;
+        } catch (final TiKVException e) {
+          backOffer.doBackOff(BackOffFunction.BackOffFuncType.BoRegionMiss, e);
+        }
       }
     }
   }
@@ -87,7 +90,9 @@ public class RawKVClient implements AutoCloseable {
    * @param kvPairs kvPairs
    */
   public void batchPut(Map<ByteString, ByteString> kvPairs) {
-    batchPut(ConcreteBackOffer.newRawKVBackOff(), kvPairs);
+    try (OperationTrace ignored = OperationTrace.start("RawKVClient.batchPut", conf)) {
+      batchPut(ConcreteBackOffer.newRawKVBackOff(), kvPairs);
+    }
   }
 
   private void batchPut(BackOffer backOffer, List<ByteString> keys, List<ByteString> values) {
@@ -117,13 +122,15 @@ public class RawKVClient implements AutoCloseable {
    * @return a ByteString value if key exists, ByteString.EMPTY if key does not exist
    */
   public ByteString get(ByteString key) {
-    BackOffer backOffer = defaultBackOff();
-    while (true) {
-      RegionStoreClient client = clientBuilder.build(key);
-      try {
-        return client.rawGet(defaultBackOff(), key);
-      } catch (final TiKVException e) {
-        backOffer.doBackOff(BackOffFunction.BackOffFuncType.BoRegionMiss, e);
+    try (OperationTrace ignored = OperationTrace.start("RawKVClient.get", conf)) {
+      BackOffer backOffer = defaultBackOff();
+      while (true) {
+        RegionStoreClient client = clientBuilder.build(key);
+        try {
+          return client.rawGet(defaultBackOff(), key);
+        } catch (final TiKVException e) {
+          backOffer.doBackOff(BackOffFunction.BackOffFuncType.BoRegionMiss, e);
+        }
       }
     }
   }
@@ -136,10 +143,12 @@ public class RawKVClient implements AutoCloseable {
    * @return list of key-value pairs in range
    */
   public List<Kvrpcpb.KvPair> scan(ByteString startKey, ByteString endKey) {
-    Iterator<Kvrpcpb.KvPair> iterator = rawScanIterator(conf, clientBuilder, startKey, endKey);
-    List<Kvrpcpb.KvPair> result = new ArrayList<>();
-    iterator.forEachRemaining(result::add);
-    return result;
+    try (OperationTrace ignored = OperationTrace.start("RawKVClient.scan", conf)) {
+      Iterator<Kvrpcpb.KvPair> iterator = rawScanIterator(conf, clientBuilder, startKey, endKey);
+      List<Kvrpcpb.KvPair> result = new ArrayList<>();
+      iterator.forEachRemaining(result::add);
+      return result;
+    }
   }
 
   /**
@@ -150,10 +159,12 @@ public class RawKVClient implements AutoCloseable {
    * @return list of key-value pairs in range
    */
   public List<Kvrpcpb.KvPair> scan(ByteString startKey, int limit) {
-    Iterator<Kvrpcpb.KvPair> iterator = rawScanIterator(conf, clientBuilder, startKey, limit);
-    List<Kvrpcpb.KvPair> result = new ArrayList<>();
-    iterator.forEachRemaining(result::add);
-    return result;
+    try (OperationTrace ignored = OperationTrace.start("RawKVClient.scan", conf)) {
+      Iterator<Kvrpcpb.KvPair> iterator = rawScanIterator(conf, clientBuilder, startKey, limit);
+      List<Kvrpcpb.KvPair> result = new ArrayList<>();
+      iterator.forEachRemaining(result::add);
+      return result;
+    }
   }
 
   /**
@@ -162,14 +173,16 @@ public class RawKVClient implements AutoCloseable {
    * @param key raw key to be deleted
    */
   public void delete(ByteString key) {
-    BackOffer backOffer = defaultBackOff();
-    while (true) {
-      RegionStoreClient client = clientBuilder.build(key);
-      try {
-        client.rawDelete(defaultBackOff(), key);
-        return;
-      } catch (final TiKVException e) {
-        backOffer.doBackOff(BackOffFunction.BackOffFuncType.BoRegionMiss, e);
+    try (OperationTrace ignored = OperationTrace.start("RawKVClient.delete", conf)) {
+      BackOffer backOffer = defaultBackOff();
+      while (true) {
+        RegionStoreClient client = clientBuilder.build(key);
+        try {
+          client.rawDelete(defaultBackOff(), key);
+          return;
+        } catch (final TiKVException e) {
+          backOffer.doBackOff(BackOffFunction.BackOffFuncType.BoRegionMiss, e);
+        }
       }
     }
   }
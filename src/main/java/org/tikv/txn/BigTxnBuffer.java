@@ -0,0 +1,525 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.txn;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import org.tikv.common.exception.TiClientInternalException;
+import org.tikv.common.util.FastByteComparisons;
+import org.tikv.common.util.Pair;
+
+/**
+ * BigTxnBuffer is the write buffer of a big transaction. Writes go to a {@link MemBuffer}, which is
+ * flushed to a sorted run file on disk whenever it holds spillSize bytes, so the heap only holds
+ * one MemBuffer and a sparse index of each run. Reads and iterators merge the runs and the
+ * MemBuffer, newer writes hiding older ones.
+ *
+ * <p>A run is a sequence of entries, each written as key length, key, value length and value. An
+ * empty value marks a deleted key. BigTxnBuffer is not thread-safe.
+ */
+public class BigTxnBuffer implements AutoCloseable {
+  // keys of every INDEX_INTERVAL-th entry of a run are kept in memory
+  private static final int INDEX_INTERVAL = 128;
+  private static final int IO_BUFFER_SIZE = 64 * 1024;
+
+  private final MemBuffer memBuffer;
+  private final File spillDir;
+  private final long spillSize;
+  // oldest run first
+  private final List<Run> runs = new ArrayList<>();
+  private long spilledSize;
+
+  public BigTxnBuffer(MemBuffer memBuffer, File spillDir, long spillSize) {
+    this.memBuffer = requireNonNull(memBuffer, "memBuffer is null");
+    this.spillDir = requireNonNull(spillDir, "spillDir is null");
+    this.spillSize = spillSize;
+  }
+
+  /**
+   * Sets the value of key, an empty value marks the key as deleted. The buffered writes are spilled
+   * to disk once they reach spillSize.
+   */
+  public void set(byte[] key, byte[] value) {
+    memBuffer.set(key, value);
+    if (memBuffer.size() >= spillSize) {
+      spill();
+    }
+  }
+
+  public void delete(byte[] key) {
+    set(key, new byte[0]);
+  }
+
+  /**
+   * @return a copy of the value, an empty array if the key is deleted, or null if the key is not
+   *     in the buffer
+   */
+  public byte[] get(byte[] key) {
+    byte[] value = memBuffer.get(key);
+    for (int i = runs.size() - 1; value == null && i >= 0; i--) {
+      value = runs.get(i).get(key);
+    }
+    return value;
+  }
+
+  /** Total size in bytes of the keys and values written, overwritten entries of runs included. */
+  public long size() {
+    return spilledSize + memBuffer.size();
+  }
+
+  public boolean isEmpty() {
+    return runs.isEmpty() && memBuffer.isEmpty();
+  }
+
+  public int runCount() {
+    return runs.size();
+  }
+
+  /** Writes the buffered entries to a new run and empties the MemBuffer. */
+  public void spill() {
+    if (memBuffer.isEmpty()) {
+      return;
+    }
+    Run run = null;
+    try {
+      run = new Run(File.createTempFile("tikv-txn-", ".run", spillDir));
+      try (DataOutputStream out =
+          new DataOutputStream(
+              new BufferedOutputStream(new FileOutputStream(run.file), IO_BUFFER_SIZE))) {
+        Iterator<Pair<byte[], byte[]>> iterator = memBuffer.iterator();
+        while (iterator.hasNext()) {
+          Pair<byte[], byte[]> entry = iterator.next();
+          if (run.count % INDEX_INTERVAL == 0) {
+            run.indexKeys.add(entry.first);
+            run.indexOffsets.add((long) out.size());
+          }
+          writeEntry(out, entry.first, entry.second);
+          run.count++;
+        }
+      }
+    } catch (IOException e) {
+      if (run != null) {
+        run.file.delete();
+      }
+      throw new TiClientInternalException("Error spilling transaction buffer to " + spillDir, e);
+    }
+    runs.add(run);
+    spilledSize += memBuffer.size();
+    memBuffer.reset();
+  }
+
+  /**
+   * Iterates entries in [startKey, endKey) in ascending key order, deletions included. The
+   * iterator holds open run files until it is exhausted or closed.
+   *
+   * @param startKey inclusive lower bound, null or empty means unbounded
+   * @param endKey exclusive upper bound, null or empty means unbounded
+   */
+  public MergeIterator iterator(byte[] startKey, byte[] endKey) {
+    return new MergeIterator(startKey, endKey, null, false);
+  }
+
+  /**
+   * Iterates entries in [startKey, endKey) in descending key order, deletions included. Runs are
+   * read backwards an index interval at a time, each interval opening its file only while it is
+   * read.
+   *
+   * @param startKey inclusive lower bound, null or empty means unbounded
+   * @param endKey exclusive upper bound, null or empty means unbounded
+   */
+  public MergeIterator reverseIterator(byte[] startKey, byte[] endKey) {
+    return new MergeIterator(startKey, endKey, null, true);
+  }
+
+  /**
+   * Iterates all entries in ascending key order, merged with lockKeys as entries with a null value.
+   * A written key hides the lock entry of the same key.
+   *
+   * @param lockKeys sorted keys to lock
+   */
+  public MergeIterator mutationIterator(List<byte[]> lockKeys) {
+    return new MergeIterator(null, null, lockKeys, false);
+  }
+
+  /** Drops all entries and deletes the runs. */
+  public void reset() {
+    for (Run run : runs) {
+      run.file.delete();
+    }
+    runs.clear();
+    spilledSize = 0;
+    memBuffer.reset();
+  }
+
+  @Override
+  public void close() {
+    reset();
+  }
+
+  private static void writeEntry(DataOutputStream out, byte[] key, byte[] value)
+      throws IOException {
+    out.writeInt(key.length);
+    out.write(key);
+    out.writeInt(value.length);
+    out.write(value);
+  }
+
+  private static byte[] readBytes(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return bytes;
+  }
+
+  private static DataInputStream openRun(File file, long offset) throws IOException {
+    FileInputStream in = new FileInputStream(file);
+    try {
+      in.getChannel().position(offset);
+      return new DataInputStream(new BufferedInputStream(in, IO_BUFFER_SIZE));
+    } catch (IOException e) {
+      in.close();
+      throw e;
+    }
+  }
+
+  private static int compare(byte[] left, byte[] right) {
+    return FastByteComparisons.compareTo(left, 0, left.length, right, 0, right.length);
+  }
+
+  /** A sorted run file with the keys and offsets of every INDEX_INTERVAL-th entry. */
+  private static final class Run {
+    private final File file;
+    private final List<byte[]> indexKeys = new ArrayList<>();
+    private final List<Long> indexOffsets = new ArrayList<>();
+    private long count;
+
+    Run(File file) {
+      this.file = file;
+    }
+
+    // index of the last sampled entry not greater than key, or -1 if key precedes the run
+    int floorIndex(byte[] key) {
+      int low = 0;
+      int high = indexKeys.size() - 1;
+      while (low <= high) {
+        int mid = (low + high) >>> 1;
+        if (compare(indexKeys.get(mid), key) <= 0) {
+          low = mid + 1;
+        } else {
+          high = mid - 1;
+        }
+      }
+      return high;
+    }
+
+    byte[] get(byte[] key) {
+      int index = floorIndex(key);
+      if (index < 0) {
+        return null;
+      }
+      try (DataInputStream in = openRun(file, indexOffsets.get(index))) {
+        long remaining = Math.min(INDEX_INTERVAL, count - (long) index * INDEX_INTERVAL);
+        for (; remaining > 0; remaining--) {
+          int cmp = compare(readBytes(in), key);
+          byte[] value = readBytes(in);
+          if (cmp == 0) {
+            return value;
+          }
+          if (cmp > 0) {
+            return null;
+          }
+        }
+        return null;
+      } catch (IOException e) {
+        throw new TiClientInternalException("Error reading transaction run " + file, e);
+      }
+    }
+  }
+
+  /** A source of the merge, positioned on its current entry. */
+  private abstract static class Cursor {
+    // higher priority wins on equal keys
+    final int priority;
+    byte[] key;
+    byte[] value;
+
+    Cursor(int priority) {
+      this.priority = priority;
+    }
+
+    // moves to the next entry, returns false when exhausted
+    abstract boolean advance() throws IOException;
+
+    void close() throws IOException {}
+  }
+
+  private static final class RunCursor extends Cursor {
+    private final DataInputStream in;
+    private long remaining;
+
+    RunCursor(Run run, int priority, byte[] startKey) throws IOException {
+      super(priority);
+      int index = startKey == null ? 0 : Math.max(run.floorIndex(startKey), 0);
+      this.remaining = run.count - (long) index * INDEX_INTERVAL;
+      this.in = openRun(run.file, run.indexOffsets.get(index));
+    }
+
+    @Override
+    boolean advance() throws IOException {
+      if (remaining <= 0) {
+        return false;
+      }
+      remaining--;
+      try {
+        key = readBytes(in);
+        value = readBytes(in);
+      } catch (EOFException e) {
+        throw new IOException("transaction run is truncated", e);
+      }
+      return true;
+    }
+
+    @Override
+    void close() throws IOException {
+      in.close();
+    }
+  }
+
+  /** Reads a run in descending key order, loading the entries of an index interval at a time. */
+  private static final class ReverseRunCursor extends Cursor {
+    private final Run run;
+    // index interval to load next, the loaded one is read from its end
+    private int interval;
+    private final List<byte[]> keys = new ArrayList<>();
+    private final List<byte[]> values = new ArrayList<>();
+    private int position;
+
+    ReverseRunCursor(Run run, int priority, byte[] endKey) {
+      super(priority);
+      this.run = run;
+      // the interval holding the entries just below endKey, -1 if they all follow it
+      this.interval = endKey == null ? run.indexKeys.size() - 1 : run.floorIndex(endKey);
+    }
+
+    private void load() throws IOException {
+      keys.clear();
+      values.clear();
+      try (DataInputStream in = openRun(run.file, run.indexOffsets.get(interval))) {
+        long remaining = Math.min(INDEX_INTERVAL, run.count - (long) interval * INDEX_INTERVAL);
+        for (; remaining > 0; remaining--) {
+          keys.add(readBytes(in));
+          values.add(readBytes(in));
+        }
+      } catch (EOFException e) {
+        throw new IOException("transaction run is truncated", e);
+      }
+      position = keys.size();
+      interval--;
+    }
+
+    @Override
+    boolean advance() throws IOException {
+      while (position == 0) {
+        if (interval < 0) {
+          return false;
+        }
+        load();
+      }
+      position--;
+      key = keys.get(position);
+      value = values.get(position);
+      return true;
+    }
+  }
+
+  private static final class IteratorCursor extends Cursor {
+    private final Iterator<Pair<byte[], byte[]>> iterator;
+
+    IteratorCursor(Iterator<Pair<byte[], byte[]>> iterator, int priority) {
+      super(priority);
+      this.iterator = iterator;
+    }
+
+    @Override
+    boolean advance() {
+      if (!iterator.hasNext()) {
+        return false;
+      }
+      Pair<byte[], byte[]> entry = iterator.next();
+      key = entry.first;
+      value = entry.second;
+      return true;
+    }
+  }
+
+  private static final class LockCursor extends Cursor {
+    private final Iterator<byte[]> iterator;
+
+    LockCursor(List<byte[]> lockKeys) {
+      super(-1);
+      this.iterator = lockKeys.iterator();
+    }
+
+    @Override
+    boolean advance() {
+      if (!iterator.hasNext()) {
+        return false;
+      }
+      key = iterator.next();
+      value = null;
+      return true;
+    }
+  }
+
+  /**
+   * Merges the runs, the MemBuffer and optional lock keys into one ascending or descending sequence
+   * with a single entry per key.
+   */
+  public final class MergeIterator implements Iterator<Pair<byte[], byte[]>>, AutoCloseable {
+    private final PriorityQueue<Cursor> queue =
+        new PriorityQueue<>(
+            (left, right) -> {
+              int cmp = compareInOrder(left.key, right.key);
+              return cmp != 0 ? cmp : Integer.compare(right.priority, left.priority);
+            });
+    private final List<Cursor> cursors = new ArrayList<>();
+    private final byte[] startKey;
+    private final byte[] endKey;
+    private final boolean reverse;
+    private Pair<byte[], byte[]> next;
+
+    private MergeIterator(byte[] startKey, byte[] endKey, List<byte[]> lockKeys, boolean reverse) {
+      this.startKey = startKey == null || startKey.length == 0 ? null : startKey;
+      this.endKey = endKey == null || endKey.length == 0 ? null : endKey;
+      this.reverse = reverse;
+      try {
+        for (int i = 0; i < runs.size(); i++) {
+          cursors.add(
+              reverse
+                  ? new ReverseRunCursor(runs.get(i), i, this.endKey)
+                  : new RunCursor(runs.get(i), i, this.startKey));
+        }
+        cursors.add(
+            new IteratorCursor(
+                reverse
+                    ? memBuffer.reverseIterator(startKey, endKey)
+                    : memBuffer.iterator(startKey, endKey),
+                runs.size()));
+        if (lockKeys != null) {
+          cursors.add(new LockCursor(lockKeys));
+        }
+        for (Cursor cursor : cursors) {
+          push(cursor);
+        }
+      } catch (IOException e) {
+        close();
+        throw new TiClientInternalException("Error reading transaction runs", e);
+      }
+    }
+
+    // compares keys in iteration order
+    private int compareInOrder(byte[] left, byte[] right) {
+      return reverse ? compare(right, left) : compare(left, right);
+    }
+
+    private boolean beforeRange(byte[] key) {
+      return reverse
+          ? endKey != null && compare(key, endKey) >= 0
+          : startKey != null && compare(key, startKey) < 0;
+    }
+
+    private boolean afterRange(byte[] key) {
+      return reverse
+          ? startKey != null && compare(key, startKey) < 0
+          : endKey != null && compare(key, endKey) >= 0;
+    }
+
+    // advances cursor to its next entry in range and queues it
+    private void push(Cursor cursor) throws IOException {
+      while (cursor.advance()) {
+        if (beforeRange(cursor.key)) {
+          continue;
+        }
+        if (!afterRange(cursor.key)) {
+          queue.add(cursor);
+        }
+        return;
+      }
+    }
+
+    private Pair<byte[], byte[]> advance() throws IOException {
+      Cursor top = queue.poll();
+      if (top == null) {
+        close();
+        return null;
+      }
+      Pair<byte[], byte[]> entry = Pair.create(top.key, top.value);
+      push(top);
+      // drop the older entries of the same key
+      while (!queue.isEmpty() && compare(queue.peek().key, entry.first) == 0) {
+        push(queue.poll());
+      }
+      return entry;
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (next == null) {
+        try {
+          next = advance();
+        } catch (IOException e) {
+          close();
+          throw new TiClientInternalException("Error reading transaction runs", e);
+        }
+      }
+      return next != null;
+    }
+
+    @Override
+    public Pair<byte[], byte[]> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      Pair<byte[], byte[]> result = next;
+      next = null;
+      return result;
+    }
+
+    @Override
+    public void close() {
+      for (Cursor cursor : cursors) {
+        try {
+          cursor.close();
+        } catch (IOException ignore) {
+        }
+      }
+      queue.clear();
+    }
+  }
+}
@@ -0,0 +1,376 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.txn;
+
+import com.google.protobuf.ByteString;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tikv.common.exception.GrpcException;
+import org.tikv.common.exception.TiClientInternalException;
+import org.tikv.common.region.RegionManager;
+import org.tikv.common.region.TiRegion;
+import org.tikv.common.util.BackOffFunction;
+import org.tikv.common.util.BackOffer;
+import org.tikv.common.util.ByteStrings;
+import org.tikv.common.util.ConcreteBackOffer;
+import org.tikv.common.util.FastByteComparisons;
+import org.tikv.common.util.Pair;
+import org.tikv.kvproto.Kvrpcpb;
+import org.tikv.txn.type.ClientRPCResult;
+import org.tikv.txn.type.TwoPhaseCommitType;
+
+/**
+ * 2PC of a big transaction whose writes are held by a {@link BigTxnBuffer}. Mutations are streamed
+ * out of the merged buffer in key order and prewritten region by region, so only one batch is in
+ * memory at a time. The prewritten keys are written to a key file, which is read back to commit the
+ * secondaries, or to roll back when prewrite fails.
+ */
+public class BigTxnCommitter {
+  private static final Logger LOG = LoggerFactory.getLogger(BigTxnCommitter.class);
+
+  // TiKV recommends each RPC packet should be less than ~1MB. We keep each packet's
+  // Key+Value size below 16KB.
+  private static final int txnCommitBatchSize = 16 * 1024;
+  private static final long defaultLockTTL = 3000;
+  private static final int bytesPerMiB = 1024 * 1024;
+  private static final int ttlFactor = 6000;
+  // a big transaction may prewrite for minutes, so its locks live longer than the 2PC ones
+  private static final long maxLockTTL = 10 * 60 * 1000;
+  private static final int IO_BUFFER_SIZE = 64 * 1024;
+
+  private final TxnKVClient kvClient;
+  private final RegionManager regionManager;
+  private final BigTxnBuffer buffer;
+  private final List<byte[]> lockKeys;
+  private final File spillDir;
+  private final long startTs;
+  private final long lockTTL;
+  private long commitTs;
+  private byte[] primaryKey;
+  // number of keys written to the key file
+  private long keyCount;
+  // key error which failed the prewrite, null if the prewrite failed for other reasons
+  private Kvrpcpb.KeyError prewriteKeyError;
+  // reason of the failed commit
+  private String error;
+
+  public BigTxnCommitter(ITransaction transaction, BigTxnBuffer buffer, File spillDir) {
+    this.kvClient = transaction.getKVClient();
+    this.regionManager = kvClient.getRegionManager();
+    this.buffer = buffer;
+    this.spillDir = spillDir;
+    this.startTs = transaction.getStartTS();
+
+    List<byte[]> sortedLockKeys = new ArrayList<>(transaction.getLockedKeys());
+    sortedLockKeys.sort(FastByteComparisons::compareTo);
+    this.lockKeys = sortedLockKeys;
+
+    long txnSize = buffer.size();
+    for (byte[] lockKey : lockKeys) {
+      txnSize += lockKey.length;
+    }
+    this.lockTTL = getTxnLockTTL(transaction.getStartTime(), txnSize);
+  }
+
+  private static long getTxnLockTTL(long startTime, long txnSize) {
+    // ttl = ttlFactor * sqrt(sizeInMiB), plus the time the transaction has taken so far
+    long ttl = (long) (ttlFactor * Math.sqrt(txnSize / bytesPerMiB));
+    ttl = Math.min(Math.max(ttl, defaultLockTTL), maxLockTTL);
+    return ttl + Math.max(System.currentTimeMillis() - startTime, 0);
+  }
+
+  /** @return commit timestamp of the transaction, 0 before it is committed */
+  public long getCommitTs() {
+    return commitTs;
+  }
+
+  /** @return the key error which failed the prewrite, such as a lock or a write conflict */
+  public Kvrpcpb.KeyError getPrewriteKeyError() {
+    return prewriteKeyError;
+  }
+
+  /** @return reason of the failed commit, null if it is committed */
+  public String getError() {
+    return error;
+  }
+
+  public boolean execute() {
+    File keyFile;
+    try {
+      keyFile = File.createTempFile("tikv-txn-", ".keys", spillDir);
+    } catch (IOException e) {
+      LOG.error("failed to create key file, startTs={}", startTs, e);
+      error = String.format("Txn failed to create key file, detail=%s", e.getMessage());
+      return false;
+    }
+    try {
+      BackOffer prewriteBackoff = ConcreteBackOffer.newCustomBackOff(BackOffer.prewriteMaxBackoff);
+      String prewriteError = prewrite(prewriteBackoff, keyFile);
+      if (prewriteError != null) {
+        LOG.error("failed on prewrite, startTs={}, detail={}", startTs, prewriteError);
+        error = prewriteError;
+        rollback(keyFile);
+        return false;
+      }
+      if (primaryKey == null) {
+        // nothing to write
+        return true;
+      }
+      this.commitTs = kvClient.getTimestamp().getVersion();
+      if (commitTs <= startTs) {
+        LOG.error("invalid transaction tso with startTs={}, commitTs={}", startTs, commitTs);
+        error = String.format("Txn invalid tso, startTs=%s, commitTs=%s", startTs, commitTs);
+        rollback(keyFile);
+        return false;
+      }
+
+      BackOffer commitBackoff = ConcreteBackOffer.newCustomBackOff(BackOffer.commitMaxBackoff);
+      String commitError =
+          doActionOnKeys(commitBackoff, TwoPhaseCommitType.actionCommit, wrap(primaryKey));
+      if (commitError != null) {
+        LOG.error("failed on commit primary, startTs={}, detail={}", startTs, commitError);
+        error = commitError;
+        rollback(keyFile);
+        return false;
+      }
+      // the transaction is committed once its primary is, failures below leave locks that
+      // readers resolve to committed
+      commitError =
+          streamKeys(
+              ConcreteBackOffer.newCustomBackOff(BackOffer.commitMaxBackoff),
+              TwoPhaseCommitType.actionCommit,
+              keyFile,
+              true);
+      if (commitError != null) {
+        LOG.warn("failed on commit secondaries, startTs={}, detail={}", startTs, commitError);
+      }
+      return true;
+    } finally {
+      keyFile.delete();
+    }
+  }
+
+  private static byte[][] wrap(byte[] key) {
+    return new byte[][] {key};
+  }
+
+  private static Kvrpcpb.Mutation toMutation(Pair<byte[], byte[]> entry) {
+    Kvrpcpb.Mutation.Builder builder =
+        Kvrpcpb.Mutation.newBuilder().setKey(ByteStrings.wrap(entry.first));
+    if (entry.second == null) {
+      builder.setOp(Kvrpcpb.Op.Lock);
+    } else if (entry.second.length > 0) {
+      builder.setOp(Kvrpcpb.Op.Put).setValue(ByteStrings.wrap(entry.second));
+    } else {
+      builder.setOp(Kvrpcpb.Op.Del);
+    }
+    return builder.build();
+  }
+
+  // streams the merged mutations to TiKV batch by batch, recording every key in keyFile
+  private String prewrite(BackOffer backOffer, File keyFile) {
+    try (BigTxnBuffer.MergeIterator iterator = buffer.mutationIterator(lockKeys);
+        DataOutputStream keyOut =
+            new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(keyFile), IO_BUFFER_SIZE))) {
+      List<Kvrpcpb.Mutation> batch = new ArrayList<>();
+      long batchSize = 0;
+      TiRegion region = null;
+      while (iterator.hasNext()) {
+        Pair<byte[], byte[]> entry = iterator.next();
+        if (primaryKey == null) {
+          primaryKey = entry.first;
+        }
+        Kvrpcpb.Mutation mutation = toMutation(entry);
+        boolean regionChanged = region == null || !region.contains(mutation.getKey());
+        if (regionChanged || batchSize >= txnCommitBatchSize) {
+          if (!batch.isEmpty()) {
+            // keys of a failed batch are already in keyFile, so they are rolled back as well
+            keyOut.flush();
+            String error = prewriteBatch(backOffer, region.getId(), batch);
+            if (error != null) {
+              return error;
+            }
+            batch = new ArrayList<>();
+            batchSize = 0;
+          }
+          if (regionChanged) {
+            region = regionManager.getRegionByKey(mutation.getKey());
+          }
+        }
+        keyOut.writeInt(entry.first.length);
+        keyOut.write(entry.first);
+        keyCount++;
+        batch.add(mutation);
+        batchSize += mutation.getKey().size() + mutation.getValue().size();
+      }
+      keyOut.flush();
+      if (!batch.isEmpty()) {
+        return prewriteBatch(backOffer, region.getId(), batch);
+      }
+      return null;
+    } catch (IOException e) {
+      return String.format("Txn prewrite error writing key file, detail=%s", e.getMessage());
+    }
+  }
+
+  private String prewriteBatch(BackOffer backOffer, long regionId, List<Kvrpcpb.Mutation> batch) {
+    ClientRPCResult result =
+        kvClient.prewrite(backOffer, batch, primaryKey, lockTTL, startTs, regionId);
+    if (result.isSuccess()) {
+      return null;
+    }
+    if (!result.isRetry()) {
+      if (result.getKeyError() != null) {
+        prewriteKeyError = result.getKeyError();
+      }
+      return result.getError();
+    }
+    try {
+      backOffer.doBackOff(
+          BackOffFunction.BackOffFuncType.BoRegionMiss,
+          new GrpcException(
+              String.format(
+                  "Txn prewriteBatch failed, regionId=%s, detail=%s",
+                  regionId, result.getError())));
+    } catch (GrpcException e) {
+      return e.getMessage();
+    }
+    // the region has changed, split the batch by the refreshed regions and send again
+    Map<Long, List<Kvrpcpb.Mutation>> groups = new LinkedHashMap<>();
+    TiRegion region = null;
+    for (Kvrpcpb.Mutation mutation : batch) {
+      if (region == null || !region.contains(mutation.getKey())) {
+        region = regionManager.getRegionByKey(mutation.getKey());
+      }
+      groups.computeIfAbsent(region.getId(), k -> new ArrayList<>()).add(mutation);
+    }
+    for (Map.Entry<Long, List<Kvrpcpb.Mutation>> group : groups.entrySet()) {
+      String error = prewriteBatch(backOffer, group.getKey(), group.getValue());
+      if (error != null) {
+        return error;
+      }
+    }
+    return null;
+  }
+
+  private void rollback(File keyFile) {
+    BackOffer backOffer = ConcreteBackOffer.newCustomBackOff(BackOffer.cleanupMaxBackoff);
+    String error = streamKeys(backOffer, TwoPhaseCommitType.actionCleanup, keyFile, false);
+    if (error != null) {
+      LOG.warn("failed on rollback, startTs={}, detail={}", startTs, error);
+    }
+  }
+
+  // reads keyFile back and sends the keys of each region in batches
+  private String streamKeys(
+      BackOffer backOffer, TwoPhaseCommitType actionType, File keyFile, boolean skipPrimary) {
+    try (DataInputStream in =
+        new DataInputStream(
+            new BufferedInputStream(new FileInputStream(keyFile), IO_BUFFER_SIZE))) {
+      List<byte[]> batch = new ArrayList<>();
+      long batchSize = 0;
+      TiRegion region = null;
+      for (long i = 0; i < keyCount; i++) {
+        byte[] key = new byte[in.readInt()];
+        in.readFully(key);
+        if (i == 0 && skipPrimary) {
+          continue;
+        }
+        ByteString byteKey = ByteStrings.wrap(key);
+        boolean regionChanged = region == null || !region.contains(byteKey);
+        if (regionChanged || batchSize >= txnCommitBatchSize) {
+          if (!batch.isEmpty()) {
+            String error = doActionOnKeys(backOffer, actionType, batch.toArray(new byte[0][]));
+            if (error != null) {
+              return error;
+            }
+            batch = new ArrayList<>();
+            batchSize = 0;
+          }
+          if (regionChanged) {
+            region = regionManager.getRegionByKey(byteKey);
+          }
+        }
+        batch.add(key);
+        batchSize += key.length;
+      }
+      if (!batch.isEmpty()) {
+        return doActionOnKeys(backOffer, actionType, batch.toArray(new byte[0][]));
+      }
+      return null;
+    } catch (IOException e) {
+      throw new TiClientInternalException("Error reading transaction key file " + keyFile, e);
+    }
+  }
+
+  // sends keys of a single region, splitting them again if the region has changed
+  private String doActionOnKeys(
+      BackOffer backOffer, TwoPhaseCommitType actionType, byte[][] keys) {
+    TiRegion region = regionManager.getRegionByKey(ByteStrings.wrap(keys[0]));
+    ClientRPCResult result;
+    if (actionType == TwoPhaseCommitType.actionCommit) {
+      result = kvClient.commit(backOffer, keys, startTs, commitTs, region.getId());
+    } else {
+      result = kvClient.batchRollbackReq(backOffer, keys, startTs, region.getId());
+    }
+    if (result.isSuccess()) {
+      return null;
+    }
+    if (!result.isRetry()) {
+      return result.getError();
+    }
+    try {
+      backOffer.doBackOff(
+          BackOffFunction.BackOffFuncType.BoRegionMiss,
+          new GrpcException(
+              String.format(
+                  "Txn %s failed, regionId=%s, detail=%s",
+                  actionType, region.getId(), result.getError())));
+    } catch (GrpcException e) {
+      return e.getMessage();
+    }
+    List<byte[]> group = new ArrayList<>();
+    region = null;
+    for (byte[] key : keys) {
+      ByteString byteKey = ByteStrings.wrap(key);
+      if (region != null && !region.contains(byteKey)) {
+        String error = doActionOnKeys(backOffer, actionType, group.toArray(new byte[0][]));
+        if (error != null) {
+          return error;
+        }
+        group.clear();
+      }
+      if (region == null || !region.contains(byteKey)) {
+        region = regionManager.getRegionByKey(byteKey);
+      }
+      group.add(key);
+    }
+    return doActionOnKeys(backOffer, actionType, group.toArray(new byte[0][]));
+  }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.txn;
+
+import com.google.protobuf.ByteString;
+import org.tikv.common.codec.KeyUtils;
+import org.tikv.kvproto.Kvrpcpb;
+
+/** Outcome of committing a transaction, including why it failed and the retries it took. */
+public class CommitResult {
+  public enum Status {
+    COMMITTED,
+    // a key is written by a transaction committed after this one started
+    WRITE_CONFLICT,
+    // a key is locked by a transaction which is still alive
+    LOCKED,
+    // the local latches found a key committed after this transaction started
+    STALE,
+    FAILED
+  }
+
+  private final Status status;
+  private final long commitTs;
+  private final ByteString conflictKey;
+  private final long conflictStartTs;
+  private final long conflictCommitTs;
+  private final long lockTtl;
+  private final String error;
+  private int attempts = 1;
+  private int conflicts;
+  private long backoffMs;
+
+  private CommitResult(
+      Status status,
+      long commitTs,
+      ByteString conflictKey,
+      long conflictStartTs,
+      long conflictCommitTs,
+      long lockTtl,
+      String error) {
+    this.status = status;
+    this.commitTs = commitTs;
+    this.conflictKey = conflictKey;
+    this.conflictStartTs = conflictStartTs;
+    this.conflictCommitTs = conflictCommitTs;
+    this.lockTtl = lockTtl;
+    this.error = error;
+  }
+
+  public static CommitResult committed(long commitTs) {
+    return new CommitResult(Status.COMMITTED, commitTs, null, 0, 0, 0, null);
+  }
+
+  public static CommitResult stale() {
+    return new CommitResult(
+        Status.STALE, 0, null, 0, 0, 0, "a key is committed after the transaction starts");
+  }
+
+  public static CommitResult failed(String error) {
+    return new CommitResult(Status.FAILED, 0, null, 0, 0, 0, error);
+  }
+
+  /** Classifies the key error which failed the prewrite of a transaction. */
+  public static CommitResult fromKeyError(Kvrpcpb.KeyError keyError) {
+    if (keyError.hasConflict()) {
+      Kvrpcpb.WriteConflict conflict = keyError.getConflict();
+      return new CommitResult(
+          Status.WRITE_CONFLICT,
+          0,
+          conflict.getKey(),
+          0,
+          conflict.getConflictTs(),
+          0,
+          keyError.toString());
+    }
+    if (keyError.hasLocked()) {
+      Kvrpcpb.LockInfo lock = keyError.getLocked();
+      return new CommitResult(
+          Status.LOCKED,
+          0,
+          lock.getKey(),
+          lock.getLockVersion(),
+          0,
+          lock.getLockTtl(),
+          keyError.toString());
+    }
+    if (!keyError.getRetryable().isEmpty()) {
+      // write conflicts of old TiKV versions only come with a message
+      return new CommitResult(Status.WRITE_CONFLICT, 0, null, 0, 0, 0, keyError.getRetryable());
+    }
+    return failed(keyError.toString());
+  }
+
+  public Status getStatus() {
+    return status;
+  }
+
+  public boolean isCommitted() {
+    return status == Status.COMMITTED;
+  }
+
+  /** @return whether the transaction lost to another one, re-running it may succeed */
+  public boolean isConflict() {
+    return status == Status.WRITE_CONFLICT || status == Status.LOCKED || status == Status.STALE;
+  }
+
+  /**
+   * @return commit ts of the transaction, 0 if it is not committed or commits without writing, like
+   *     read-only and lock-only transactions
+   */
+  public long getCommitTs() {
+    return commitTs;
+  }
+
+  /** @return the key the transaction conflicts on, null if unknown */
+  public ByteString getConflictKey() {
+    return conflictKey;
+  }
+
+  /** @return start ts of the transaction holding the lock on the conflict key, 0 if not LOCKED */
+  public long getConflictStartTs() {
+    return conflictStartTs;
+  }
+
+  /** @return commit ts of the write on the conflict key, 0 if unknown */
+  public long getConflictCommitTs() {
+    return conflictCommitTs;
+  }
+
+  /** @return ttl of the lock on the conflict key in milliseconds, 0 if not LOCKED */
+  public long getLockTtl() {
+    return lockTtl;
+  }
+
+  public String getError() {
+    return error;
+  }
+
+  /** @return number of times the transaction was committed, including the last one */
+  public int getAttempts() {
+    return attempts;
+  }
+
+  /** @return number of attempts lost to other transactions */
+  public int getConflicts() {
+    return conflicts;
+  }
+
+  /** @return total time slept between the attempts */
+  public long getBackoffMs() {
+    return backoffMs;
+  }
+
+  CommitResult withRetries(int attempts, int conflicts, long backoffMs) {
+    this.attempts = attempts;
+    this.conflicts = conflicts;
+    this.backoffMs = backoffMs;
+    return this;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("{").append(status);
+    if (conflictKey != null) {
+      sb.append(" key=").append(KeyUtils.formatBytes(conflictKey));
+    }
+    if (conflictStartTs != 0) {
+      sb.append(" conflictStartTs=").append(conflictStartTs);
+    }
+    if (conflictCommitTs != 0) {
+      sb.append(" conflictCommitTs=").append(conflictCommitTs);
+    }
+    if (error != null && status == Status.FAILED) {
+      sb.append(" error=").append(error);
+    }
+    return sb.append(" attempts=")
+        .append(attempts)
+        .append(" backoff=")
+        .append(backoffMs)
+        .append("ms}")
+        .toString();
+  }
+}
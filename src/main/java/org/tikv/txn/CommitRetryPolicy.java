@@ -0,0 +1,125 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.txn;
+
+import java.util.Random;
+import org.tikv.common.exception.TiClientInternalException;
+import org.tikv.common.meta.TiTimestamp;
+
+/**
+ * Decides whether and when a transaction is re-run after a failed commit. Conflicts back off
+ * exponentially with full jitter on the number of conflicts in a row, so contended keys are not
+ * flooded with prewrites doomed to fail. A transaction blocked by a lock sleeps until the lock
+ * expires instead, at most as long as a conflict backs off, and its next attempt resolves the
+ * expired lock. The owner of the lock is not polled meanwhile. Other failures are retried a few
+ * times only.
+ *
+ * <p>Not thread safe, a policy belongs to a single commit.
+ */
+class CommitRetryPolicy {
+  static final int MAX_ATTEMPTS = 100;
+  // max number of attempts failed for other reasons than conflicts
+  static final int MAX_FAILED_ATTEMPTS = 3;
+  private static final int BACKOFF_BASE = 1;
+  private static final int BACKOFF_CAP = 100;
+  private static final int CONFLICT_BACKOFF_BASE = 2;
+  private static final int CONFLICT_BACKOFF_CAP = 1000;
+
+  private final Random random;
+  private int attempts;
+  private int conflicts;
+  // conflicts since the last attempt not lost to other transactions
+  private int consecutiveConflicts;
+  private int failures;
+  private long backoffMs;
+
+  CommitRetryPolicy() {
+    this(new Random());
+  }
+
+  CommitRetryPolicy(Random random) {
+    this.random = random;
+  }
+
+  /**
+   * Records result of an attempt and waits before the next one.
+   *
+   * @return false if the transaction should give up
+   */
+  boolean backoff(CommitResult result) {
+    long sleep = nextSleep(result);
+    if (sleep < 0) {
+      return false;
+    }
+    sleep(sleep);
+    return true;
+  }
+
+  /** @return milliseconds to wait before the next attempt, -1 to give up */
+  long nextSleep(CommitResult result) {
+    attempts++;
+    if (attempts >= MAX_ATTEMPTS) {
+      return -1;
+    }
+    if (!result.isConflict()) {
+      consecutiveConflicts = 0;
+      return ++failures >= MAX_FAILED_ATTEMPTS ? -1 : jitter(BACKOFF_BASE, BACKOFF_CAP, failures);
+    }
+    conflicts++;
+    consecutiveConflicts++;
+    long sleep = jitter(CONFLICT_BACKOFF_BASE, CONFLICT_BACKOFF_CAP, consecutiveConflicts);
+    if (result.getStatus() == CommitResult.Status.LOCKED) {
+      // no need to wait longer than the lock lives
+      long expire =
+          TiTimestamp.extraPhysical(result.getConflictStartTs())
+              + result.getLockTtl()
+              - System.currentTimeMillis();
+      sleep = Math.max(sleep, Math.min(expire, CONFLICT_BACKOFF_CAP));
+    }
+    return Math.max(sleep, 0);
+  }
+
+  // exponential backoff with full jitter, see
+  // http://www.awsarchitectureblog.com/2015/03/backoff.html
+  private long jitter(int base, int cap, int attempts) {
+    int upper = (int) Math.min(cap, base * Math.pow(2.0, attempts));
+    return random.nextInt(upper);
+  }
+
+  private void sleep(long millis) {
+    long start = System.currentTimeMillis();
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new TiClientInternalException("Interrupted during commit backoff", e);
+    } finally {
+      backoffMs += System.currentTimeMillis() - start;
+    }
+  }
+
+  int getAttempts() {
+    return attempts;
+  }
+
+  int getConflicts() {
+    return conflicts;
+  }
+
+  long getBackoffMs() {
+    return backoffMs;
+  }
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.txn;
+
+import static org.tikv.common.util.BackOffFunction.BackOffFuncType.BoRegionMiss;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.protobuf.ByteString;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tikv.common.PDClient;
+import org.tikv.common.TiConfiguration;
+import org.tikv.common.exception.RegionException;
+import org.tikv.common.exception.TiClientInternalException;
+import org.tikv.common.exception.TiKVException;
+import org.tikv.common.key.Key;
+import org.tikv.common.meta.TiTimestamp;
+import org.tikv.common.region.RegionManager;
+import org.tikv.common.region.RegionStoreClient;
+import org.tikv.common.region.RegionStoreClient.RegionStoreClientBuilder;
+import org.tikv.common.region.TiRegion;
+import org.tikv.common.util.BackOffer;
+import org.tikv.common.util.ConcreteBackOffer;
+import org.tikv.common.util.TsoUtils;
+import org.tikv.kvproto.Kvrpcpb;
+
+/**
+ * Collects the MVCC garbage of a cluster from the client, for deployments without a TiDB doing it.
+ * A round of GC at a safe point:
+ *
+ * <ol>
+ *   <li>resolves the locks older than the safe point in every region, their txns would otherwise
+ *       lose the data they read or wrote. Locks of txns still alive are not waited for, the safe
+ *       point is moved right below the oldest of them instead;
+ *   <li>uploads the safe point to PD, so readers know the versions before it are gone;
+ *   <li>sends KvGC to every region to delete the versions before the safe point.
+ * </ol>
+ *
+ * <p>Regions are processed in parallel, bounded by {@link TiConfiguration#getGcConcurrency()} and
+ * {@link TiConfiguration#getGcRegionsPerSecond()}.
+ */
+public class GCWorker {
+  private static final Logger LOG = LoggerFactory.getLogger(GCWorker.class);
+  // max number of locks scanned by a request
+  private static final int SCAN_LOCK_LIMIT = 1024;
+
+  /** Phases of a GC round. */
+  public enum Phase {
+    RESOLVE_LOCKS,
+    GC
+  }
+
+  /** Notified whenever GC finishes a region. */
+  public interface ProgressListener {
+    void onProgress(Phase phase, int finishedRegions, int totalRegions);
+  }
+
+  private final TiConfiguration conf;
+  private final PDClient pdClient;
+  private final RegionStoreClientBuilder clientBuilder;
+  private final RegionManager regionManager;
+  private volatile ProgressListener progressListener = (phase, finished, total) -> {};
+
+  public GCWorker(TiConfiguration conf, PDClient pdClient, RegionStoreClientBuilder clientBuilder) {
+    this.conf = conf;
+    this.pdClient = pdClient;
+    this.clientBuilder = clientBuilder;
+    this.regionManager = clientBuilder.getRegionManager();
+  }
+
+  public void setProgressListener(ProgressListener progressListener) {
+    this.progressListener = progressListener;
+  }
+
+  /**
+   * Runs a round of GC which keeps the versions written in the last lifeTime
+   *
+   * @see #gc(long)
+   */
+  public long gc(long lifeTime, TimeUnit unit) {
+    TiTimestamp now = pdClient.getTimestamp(ConcreteBackOffer.newTsoBackOff());
+    long physical = now.getPhysical() - unit.toMillis(lifeTime);
+    if (physical <= 0) {
+      throw new IllegalArgumentException("GC life time is longer than the age of the cluster");
+    }
+    return gc(new TiTimestamp(physical, 0).getVersion());
+  }
+
+  /**
+   * Runs a round of GC at safePoint, it is skipped if safePoint is not newer than the safe point
+   * of the cluster. The round runs at an earlier safe point when a txn older than safePoint still
+   * holds locks, such as a big txn whose lock TTL is longer than the resolve backoff.
+   *
+   * @return the safe point of the cluster after the round
+   */
+  public long gc(long safePoint) {
+    BackOffer pdBackOffer = ConcreteBackOffer.newCustomBackOff(BackOffer.GcOneRegionMaxBackoff);
+    long currentSafePoint = pdClient.getGCSafePoint(pdBackOffer);
+    if (safePoint <= currentSafePoint) {
+      LOG.info("skip gc, safePoint={} is not newer than {}", safePoint, currentSafePoint);
+      return currentSafePoint;
+    }
+    long startTime = System.currentTimeMillis();
+    List<TiRegion> regions = listRegions();
+    LOG.info("start gc, safePoint={}, regions={}", safePoint, regions.size());
+
+    AtomicLong resolvedLocks = new AtomicLong();
+    AtomicLong oldestLiveLock = new AtomicLong(Long.MAX_VALUE);
+    forEachRegion(
+        Phase.RESOLVE_LOCKS,
+        regions,
+        BackOffer.GcResolveLockMaxBackoff,
+        (bo, region) ->
+            resolvedLocks.addAndGet(resolveLocks(bo, region, safePoint, oldestLiveLock)));
+    LOG.info("gc resolved {} locks, safePoint={}", resolvedLocks.get(), safePoint);
+
+    // the versions read by the txns still holding locks must survive this round
+    long gcSafePoint = Math.min(safePoint, oldestLiveLock.get() - 1);
+    if (gcSafePoint < safePoint) {
+      LOG.warn(
+          "gc safePoint={} is moved to {} below the locks of a live txn", safePoint, gcSafePoint);
+      if (gcSafePoint <= currentSafePoint) {
+        return currentSafePoint;
+      }
+    }
+
+    long newSafePoint = pdClient.updateGCSafePoint(pdBackOffer, gcSafePoint);
+
+    forEachRegion(
+        Phase.GC,
+        regions,
+        BackOffer.GcOneRegionMaxBackoff,
+        (bo, region) -> gc(bo, region, gcSafePoint));
+    LOG.info(
+        "finish gc, safePoint={}, spend {}ms",
+        newSafePoint,
+        System.currentTimeMillis() - startTime);
+    return newSafePoint;
+  }
+
+  private List<TiRegion> listRegions() {
+    List<TiRegion> regions = new ArrayList<>();
+    ByteString key = ByteString.EMPTY;
+    do {
+      TiRegion region = regionManager.getRegionByKey(key);
+      regions.add(region);
+      key = region.getEndKey();
+    } while (!key.isEmpty());
+    return regions;
+  }
+
+  /** Runs action on each region concurrently, with a backoffer of its own. */
+  private void forEachRegion(
+      Phase phase, List<TiRegion> regions, int maxBackoff, BiConsumer<BackOffer, TiRegion> action) {
+    ExecutorService executor =
+        Executors.newFixedThreadPool(
+            conf.getGcConcurrency(),
+            new ThreadFactoryBuilder().setNameFormat("gc-worker-%d").setDaemon(true).build());
+    RateLimiter rateLimiter =
+        conf.getGcRegionsPerSecond() > 0 ? RateLimiter.create(conf.getGcRegionsPerSecond()) : null;
+    AtomicInteger finished = new AtomicInteger();
+    List<Future<?>> futures = new ArrayList<>(regions.size());
+    try {
+      for (TiRegion region : regions) {
+        futures.add(
+            executor.submit(
+                () -> {
+                  if (rateLimiter != null) {
+                    rateLimiter.acquire();
+                  }
+                  action.accept(ConcreteBackOffer.newCustomBackOff(maxBackoff), region);
+                  progressListener.onProgress(phase, finished.incrementAndGet(), regions.size());
+                }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new TiClientInternalException("Interrupted during gc " + phase, e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new TiClientInternalException("Error during gc " + phase, e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  // whether the range from the start of region to its end has reached endKey
+  private static boolean reachEnd(TiRegion region, ByteString endKey) {
+    ByteString regionEnd = region.getEndKey();
+    return regionEnd.isEmpty()
+        || (!endKey.isEmpty() && Key.toRawKey(regionEnd).compareTo(Key.toRawKey(endKey)) >= 0);
+  }
+
+  /**
+   * Resolves the locks older than safePoint in the key range of task, which may have been split
+   * into several regions since it was listed. The locks not expired yet are left to their txns,
+   * the oldest start ts among them is kept in oldestLiveLock.
+   *
+   * @return number of the locks resolved
+   */
+  private long resolveLocks(
+      BackOffer bo, TiRegion task, long safePoint, AtomicLong oldestLiveLock) {
+    long count = 0;
+    ByteString key = task.getStartKey();
+    while (true) {
+      TiRegion region = regionManager.getRegionByKey(key);
+      List<Kvrpcpb.LockInfo> lockInfos;
+      try (RegionStoreClient client = clientBuilder.build(region)) {
+        lockInfos = client.scanLock(bo, key, safePoint, SCAN_LOCK_LIMIT);
+        if (!lockInfos.isEmpty()) {
+          List<Lock> locks = new ArrayList<>(lockInfos.size());
+          for (Kvrpcpb.LockInfo lockInfo : lockInfos) {
+            locks.add(new Lock(lockInfo));
+          }
+          if (!client.getLockResolverClient().resolveLocks(bo, locks)) {
+            // some txn is still alive, the expired locks are resolved and the rest are kept
+            for (Lock lock : locks) {
+              if (!TsoUtils.isExpired(lock.getTxnID(), lock.getTtl())) {
+                oldestLiveLock.accumulateAndGet(lock.getTxnID(), Math::min);
+              }
+            }
+          }
+        }
+      } catch (final RegionException e) {
+        bo.doBackOff(BoRegionMiss, e);
+        continue;
+      } catch (TiKVException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new TiClientInternalException("Error resolving locks of region " + region, e);
+      }
+      count += lockInfos.size();
+      if (lockInfos.size() >= SCAN_LOCK_LIMIT) {
+        // continue right after the last lock
+        ByteString lastKey = lockInfos.get(lockInfos.size() - 1).getKey();
+        key = lastKey.concat(ByteString.copyFrom(new byte[] {0}));
+      } else if (reachEnd(region, task.getEndKey())) {
+        return count;
+      } else {
+        key = region.getEndKey();
+      }
+    }
+  }
+
+  /** Sends KvGC to the regions covering the key range of task. */
+  private void gc(BackOffer bo, TiRegion task, long safePoint) {
+    ByteString key = task.getStartKey();
+    while (true) {
+      TiRegion region = regionManager.getRegionByKey(key);
+      try (RegionStoreClient client = clientBuilder.build(region)) {
+        client.gc(bo, safePoint);
+      } catch (final RegionException e) {
+        bo.doBackOff(BoRegionMiss, e);
+        continue;
+      } catch (TiKVException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new TiClientInternalException("Error doing gc on region " + region, e);
+      }
+      if (reachEnd(region, task.getEndKey())) {
+        return;
+      }
+      key = region.getEndKey();
+    }
+  }
+}
@@ -4,12 +4,14 @@ import org.tikv.common.Snapshot;
 import org.tikv.common.key.Key;
 import org.tikv.common.meta.TiTimestamp;
 
-import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 
 /**
  * definition of Transaction api
+ *
+ * <p>keys and values are not copied: the arrays passed to a transaction may be kept until it
+ * commits, and the arrays it returns, the pairs of its iterators included, may be shared with its
+ * buffer or with the responses of TiKV. Callers must not modify either of them.
  */
 public interface ITransaction {
 
@@ -19,9 +21,21 @@ public interface ITransaction {
 
     boolean delete(byte[] key);
 
-    //Iterator<byte[]> iterator(byte[] startKey, byte[] endKey);
+    /**
+     * iterate the pairs in [startKey, endKey) in ascending key order, including the uncommitted writes of this transaction
+     * @param startKey inclusive lower bound, null or empty means -INF
+     * @param endKey exclusive upper bound, null or empty means +INF
+     * @return an iterator to close when it is abandoned before the end, it may hold spill files open
+     */
+    UnionIterator iterator(byte[] startKey, byte[] endKey);
 
-    //Iterator<byte[]> iteratorReverse(byte[] startKey);
+    /**
+     * iterate the pairs less than endKey in descending key order, including the uncommitted writes of this transaction
+     * @param endKey exclusive upper bound, must not be null or empty
+     * @throws IllegalArgumentException if endKey is null or empty
+     * @return an iterator to close when it is abandoned before the end, it may hold spill files open
+     */
+    UnionIterator iteratorReverse(byte[] endKey);
 
     /**
      * create TwoPhaseCommitter, and call 2pc api
@@ -29,6 +43,12 @@ public interface ITransaction {
      */
     boolean commit();
 
+    /**
+     * @return outcome of the last commit, including the conflict which failed it and the retries it took,
+     * null before the transaction is committed
+     */
+    CommitResult getCommitResult();
+
     boolean rollback();
 
     boolean lockKeys(Key... lockedKeys);
@@ -42,13 +62,20 @@ public interface ITransaction {
 
     long getStartTime();
 
+    /**
+     * @return whether the transaction neither writes nor locks any key, such a transaction commits without any RPC
+     */
     boolean isReadOnly();
 
     Snapshot getSnapshot();
 
     TxnKVClient getKVClient();
 
-    Map<byte[], byte[]> getStoredKeys();
+    /**
+     * @return the write buffer of the transaction, ordered by key. For big transactions it only holds
+     * the writes not spilled to disk yet
+     */
+    MemBuffer getMemBuffer();
 
     List<byte[]> getLockedKeys();
 }
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.txn;
+
+import com.google.common.hash.Hashing;
+import com.google.protobuf.ByteString;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.tikv.common.exception.TiClientInternalException;
+import org.tikv.common.util.ByteStrings;
+
+/**
+ * Local latches of the transactions committed through one client. Keys are hashed into a fixed
+ * number of slots, a transaction holds the slots of all its keys while it commits, so conflicting
+ * commits in this process are serialized instead of racing each other in TiKV.
+ *
+ * <p>Each slot also remembers the commit timestamps of the keys recently committed through it. A
+ * transaction that started before one of its keys was committed is bound to hit a write conflict,
+ * it is reported as stale and can be retried without sending any prewrite.
+ *
+ * <p>Slots are acquired in ascending order, so transactions waiting on each other cannot deadlock.
+ */
+public class Latches {
+  // commit timestamps remembered per slot, older entries are forgotten
+  private static final int SLOT_HISTORY = 8;
+
+  private final Slot[] slots;
+
+  /** @param capacity number of slots, rounded up to a power of 2 */
+  public Latches(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("latch capacity must be positive");
+    }
+    int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+    this.slots = new Slot[size];
+    for (int i = 0; i < size; i++) {
+      slots[i] = new Slot();
+    }
+  }
+
+  private int slotId(byte[] key) {
+    return Hashing.murmur3_32().hashBytes(key).asInt() & (slots.length - 1);
+  }
+
+  /**
+   * Acquires the slots of keys, blocking until other transactions holding any of them release
+   * it. The returned latch must always be passed to {@link #release(Latch, long)}.
+   */
+  public Latch acquire(long startTs, Collection<byte[]> keys) {
+    Latch latch = new Latch(startTs, keys);
+    int acquired = 0;
+    try {
+      for (; acquired < latch.slotIds.length; acquired++) {
+        slots[latch.slotIds[acquired]].lock();
+      }
+    } catch (InterruptedException e) {
+      for (int i = acquired - 1; i >= 0; i--) {
+        slots[latch.slotIds[i]].unlock();
+      }
+      Thread.currentThread().interrupt();
+      throw new TiClientInternalException("interrupted while acquiring latches", e);
+    }
+    for (int i = 0; i < latch.keys.size(); i++) {
+      Long commitTs = slots[latch.keySlots[i]].getCommitTs(latch.keys.get(i));
+      if (commitTs != null && commitTs > startTs) {
+        latch.stale = true;
+        break;
+      }
+    }
+    return latch;
+  }
+
+  /**
+   * Releases the slots held by latch.
+   *
+   * @param commitTs commit timestamp of the transaction, 0 if it is not committed
+   */
+  public void release(Latch latch, long commitTs) {
+    if (commitTs > 0) {
+      for (int i = 0; i < latch.keys.size(); i++) {
+        slots[latch.keySlots[i]].setCommitTs(latch.keys.get(i), commitTs);
+      }
+    }
+    for (int i = latch.slotIds.length - 1; i >= 0; i--) {
+      slots[latch.slotIds[i]].unlock();
+    }
+  }
+
+  /** Slots acquired by a transaction. */
+  public final class Latch {
+    private final long startTs;
+    private final List<ByteString> keys;
+    // slot of each key
+    private final int[] keySlots;
+    // distinct slots in ascending order
+    private final int[] slotIds;
+    private boolean stale;
+
+    private Latch(long startTs, Collection<byte[]> keys) {
+      this.startTs = startTs;
+      this.keys = new ArrayList<>(keys.size());
+      this.keySlots = new int[keys.size()];
+      int i = 0;
+      for (byte[] key : keys) {
+        this.keys.add(ByteStrings.wrap(key));
+        keySlots[i++] = slotId(key);
+      }
+      this.slotIds = Arrays.stream(keySlots).distinct().sorted().toArray();
+    }
+
+    public long getStartTs() {
+      return startTs;
+    }
+
+    /** @return whether some key was committed after the transaction started */
+    public boolean isStale() {
+      return stale;
+    }
+  }
+
+  private static class Slot {
+    private boolean locked;
+    // only accessed by the holder of the slot
+    private Map<ByteString, Long> commits;
+
+    synchronized void lock() throws InterruptedException {
+      while (locked) {
+        wait();
+      }
+      locked = true;
+    }
+
+    synchronized void unlock() {
+      locked = false;
+      notify();
+    }
+
+    Long getCommitTs(ByteString key) {
+      return commits == null ? null : commits.get(key);
+    }
+
+    void setCommitTs(ByteString key, long commitTs) {
+      if (commits == null) {
+        commits =
+            new LinkedHashMap<ByteString, Long>() {
+              @Override
+              protected boolean removeEldestEntry(Map.Entry<ByteString, Long> eldest) {
+                return size() > SLOT_HISTORY;
+              }
+            };
+      }
+      // re-insert so the key becomes the newest entry
+      commits.remove(key);
+      commits.put(key, commitTs);
+    }
+  }
+}
@@ -19,24 +19,29 @@ package org.tikv.txn;
 
 import static org.tikv.common.util.BackOffFunction.BackOffFuncType.BoRegionMiss;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.protobuf.ByteString;
 import io.grpc.ManagedChannel;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
-import java.util.Set;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
 import java.util.function.Supplier;
 import org.apache.log4j.Logger;
 import org.tikv.common.AbstractGRPCClient;
 import org.tikv.common.TiConfiguration;
 import org.tikv.common.exception.KeyException;
 import org.tikv.common.exception.RegionException;
+import org.tikv.common.exception.TiClientInternalException;
+import org.tikv.common.metrics.OperationTrace;
 import org.tikv.common.operation.KVErrorHandler;
 import org.tikv.common.region.RegionErrorReceiver;
 import org.tikv.common.region.RegionManager;
@@ -44,11 +49,13 @@ import org.tikv.common.region.TiRegion;
 import org.tikv.common.region.TiRegion.RegionVerID;
 import org.tikv.common.util.BackOffer;
 import org.tikv.common.util.ChannelFactory;
+import org.tikv.common.util.ConcreteBackOffer;
 import org.tikv.common.util.TsoUtils;
 import org.tikv.kvproto.Kvrpcpb.CleanupRequest;
 import org.tikv.kvproto.Kvrpcpb.CleanupResponse;
 import org.tikv.kvproto.Kvrpcpb.ResolveLockRequest;
 import org.tikv.kvproto.Kvrpcpb.ResolveLockResponse;
+import org.tikv.kvproto.Kvrpcpb.TxnInfo;
 import org.tikv.kvproto.Metapb.Store;
 import org.tikv.kvproto.TikvGrpc;
 import org.tikv.kvproto.TikvGrpc.TikvBlockingStub;
@@ -57,8 +64,6 @@ import org.tikv.kvproto.TikvGrpc.TikvStub;
 // LockResolver resolves locks and also caches resolved txn status.
 public class LockResolverClient extends AbstractGRPCClient<TikvBlockingStub, TikvStub>
     implements RegionErrorReceiver {
-  // ResolvedCacheSize is max number of cached txn status.
-  private static final long RESOLVED_TXN_CACHE_SIZE = 2048;
   // By default, locks after 3000ms is considered unusual (the client created the
   // lock might be dead). Other client may cleanup this kind of lock.
   // For locks created recently, we will do backoff and retry.
@@ -68,64 +73,37 @@ public class LockResolverClient extends AbstractGRPCClient<TikvBlockingStub, Tik
   private static final long TTL_FACTOR = 6000;
   private static final Logger logger = Logger.getLogger(LockResolverClient.class);
 
-  private final ReadWriteLock readWriteLock;
   // Note: Because the internal of long is same as unsigned_long
   // and Txn id are never changed. Be careful to compare between two tso
-  // the `resolved` mapping is as {@code Map<TxnId, TxnStatus>}
   // TxnStatus represents a txn's final status. It should be Commit or Rollback.
   // if TxnStatus > 0, means the commit ts, otherwise abort
-  private final Map<Long, Long> resolved;
-  // the list is chain of txn for O(1) lru cache
-  private final Queue<Long> recentResolved;
+  // the cache is shared by all lock resolvers of a session
+  private final ResolvedTxnCache resolved;
   private TikvBlockingStub blockingStub;
   private TikvStub asyncStub;
   private TiRegion region;
   private final RegionManager regionManager;
+  // pools to check txn status and resolve locks concurrently, shared by all lock resolvers
+  // configured with the same concurrency
+  private static final ConcurrentMap<Integer, ExecutorService> resolvePools =
+      new ConcurrentHashMap<>();
 
   public LockResolverClient(
       TiConfiguration conf,
       TikvBlockingStub blockingStub,
       TikvStub asyncStub,
       ChannelFactory channelFactory,
-      RegionManager regionManager) {
+      RegionManager regionManager,
+      ResolvedTxnCache resolved) {
     super(conf, channelFactory);
-    resolved = new HashMap<>();
-    recentResolved = new LinkedList<>();
-    readWriteLock = new ReentrantReadWriteLock();
+    this.resolved = resolved;
     this.blockingStub = blockingStub;
     this.regionManager = regionManager;
     this.asyncStub = asyncStub;
   }
 
-  private void saveResolved(long txnID, long status) {
-    try {
-      readWriteLock.writeLock().lock();
-      if (resolved.containsKey(txnID)) {
-        return;
-      }
-
-      resolved.put(txnID, status);
-      recentResolved.add(txnID);
-      if (recentResolved.size() > RESOLVED_TXN_CACHE_SIZE) {
-        Long front = recentResolved.remove();
-        resolved.remove(front);
-      }
-    } finally {
-      readWriteLock.writeLock().unlock();
-    }
-  }
-
-  private Long getResolved(Long txnID) {
-    try {
-      readWriteLock.readLock().lock();
-      return resolved.get(txnID);
-    } finally {
-      readWriteLock.readLock().unlock();
-    }
-  }
-
   public Long getTxnStatus(BackOffer bo, Long txnID, ByteString primary) {
-    Long status = getResolved(txnID);
+    Long status = resolved.get(txnID);
 
     if (status != null) {
       return status;
@@ -133,7 +111,7 @@ public class LockResolverClient extends AbstractGRPCClient<TikvBlockingStub, Tik
 
     while (true) {
       // refresh region
-      region = regionManager.getRegionByKey(primary);
+      switchRegion(regionManager.getRegionByKey(primary));
 
       Supplier<CleanupRequest> factory =
           () ->
@@ -166,7 +144,7 @@ public class LockResolverClient extends AbstractGRPCClient<TikvBlockingStub, Tik
         status = resp.getCommitVersion();
       }
 
-      saveResolved(txnID, status);
+      resolved.put(txnID, status);
       return status;
     }
   }
@@ -176,19 +154,34 @@ public class LockResolverClient extends AbstractGRPCClient<TikvBlockingStub, Tik
   //    enough are considered orphan locks and will be handled later. If all locks
   //    are expired then all locks will be resolved so true will be returned, otherwise
   //    caller should sleep a while before retry.
-  // 2) For each lock, query the primary key to get txn(which left the lock)'s
-  //    commit status.
-  // 3) Send `ResolveLock` cmd to the lock's region to resolve all locks belong to
-  //    the same transaction.
+  // 2) Group the locks by txn, and query the primary key of each txn concurrently
+  //    to get its commit status.
+  // 3) Group the locks by region, and send one `ResolveLock` cmd to each region
+  //    concurrently to resolve all locks belong to those txns in the region.
   public boolean resolveLocks(BackOffer bo, List<Lock> locks) {
     if (locks.isEmpty()) {
       return true;
     }
+    OperationTrace trace = bo.getTrace();
+    if (trace == null) {
+      return resolveExpiredLocks(bo, locks);
+    }
+    long start = System.nanoTime();
+    try {
+      return resolveExpiredLocks(bo, locks);
+    } finally {
+      trace.recordLockResolve(System.nanoTime() - start);
+    }
+  }
+
+  private boolean resolveExpiredLocks(BackOffer bo, List<Lock> locks) {
 
     List<Lock> expiredLocks = new ArrayList<>();
+    Map<Long, ByteString> primaries = new LinkedHashMap<>();
     for (Lock lock : locks) {
       if (TsoUtils.isExpired(lock.getTxnID(), lock.getTtl())) {
         expiredLocks.add(lock);
+        primaries.putIfAbsent(lock.getTxnID(), lock.getPrimary());
       }
     }
 
@@ -196,72 +189,191 @@ public class LockResolverClient extends AbstractGRPCClient<TikvBlockingStub, Tik
       return false;
     }
 
-    // TxnID -> []Region, record resolved Regions.
-    // TODO: Maybe put it in all LockResolverClient and share by all txns.
-    Map<Long, Set<RegionVerID>> cleanTxns = new HashMap<>();
-    for (Lock l : expiredLocks) {
-      Long status = getTxnStatus(bo, l.getTxnID(), l.getPrimary());
-
-      Set<RegionVerID> cleanRegion = cleanTxns.computeIfAbsent(l.getTxnID(), k -> new HashSet<>());
-
-      resolveLock(bo, l, status, cleanRegion);
+    int expiredCount = expiredLocks.size();
+    Map<Long, Long> txnStatus = getTxnStatus(bo, primaries);
+    while (!expiredLocks.isEmpty()) {
+      List<LockGroup> groups = groupLocksByRegion(expiredLocks, txnStatus);
+      List<LockGroup> results =
+          runConcurrently(
+              bo,
+              groups,
+              (backOffer, group) -> {
+                try {
+                  fork().resolveLock(backOffer, group);
+                } catch (final RegionException e) {
+                  group.error = e;
+                }
+                return group;
+              });
+      expiredLocks = new ArrayList<>();
+      RegionException error = null;
+      for (LockGroup group : results) {
+        if (group.error != null) {
+          expiredLocks.addAll(group.locks);
+          error = group.error;
+        }
+      }
+      if (error != null) {
+        // the region is stale, group the locks again after refreshing it
+        bo.doBackOff(BoRegionMiss, error);
+      }
     }
 
-    return expiredLocks.size() == locks.size();
+    return expiredCount == locks.size();
   }
 
-  private void resolveLock(BackOffer bo, Lock lock, long txnStatus, Set<RegionVerID> cleanRegion) {
-
-    while (true) {
-      region = regionManager.getRegionByKey(lock.getKey());
-
-      if (cleanRegion.contains(region.getVerID())) {
-        return;
+  /** Gets the status of each txn in primaries, querying the uncached ones concurrently. */
+  private Map<Long, Long> getTxnStatus(BackOffer bo, Map<Long, ByteString> primaries) {
+    Map<Long, Long> txnStatus = new HashMap<>();
+    List<Long> unresolved = new ArrayList<>();
+    for (Long txnID : primaries.keySet()) {
+      Long status = resolved.get(txnID);
+      if (status != null) {
+        txnStatus.put(txnID, status);
+      } else {
+        unresolved.add(txnID);
       }
+    }
+    List<Long> statuses =
+        runConcurrently(
+            bo,
+            unresolved,
+            (backOffer, txnID) -> fork().getTxnStatus(backOffer, txnID, primaries.get(txnID)));
+    for (int i = 0; i < unresolved.size(); i++) {
+      txnStatus.put(unresolved.get(i), statuses.get(i));
+    }
+    return txnStatus;
+  }
 
-      Supplier<ResolveLockRequest> factory;
+  private List<LockGroup> groupLocksByRegion(List<Lock> locks, Map<Long, Long> txnStatus) {
+    Map<RegionVerID, LockGroup> groups = new LinkedHashMap<>();
+    for (Lock lock : locks) {
+      TiRegion lockRegion = regionManager.getRegionByKey(lock.getKey());
+      LockGroup group =
+          groups.computeIfAbsent(lockRegion.getVerID(), k -> new LockGroup(lockRegion));
+      group.locks.add(lock);
+      group.txnStatus.put(lock.getTxnID(), txnStatus.get(lock.getTxnID()));
+    }
+    return new ArrayList<>(groups.values());
+  }
 
-      if (txnStatus > 0) {
+  /**
+   * Resolves all locks of the txns of group in its region with a single request.
+   *
+   * @throws RegionException if the region is stale
+   */
+  private void resolveLock(BackOffer bo, LockGroup group) {
+    switchRegion(group.region);
+    ResolveLockRequest.Builder builder = ResolveLockRequest.newBuilder();
+    if (group.txnStatus.size() == 1) {
+      Map.Entry<Long, Long> txn = group.txnStatus.entrySet().iterator().next();
+      builder.setStartVersion(txn.getKey());
+      if (txn.getValue() > 0) {
         // txn is committed with commitTS txnStatus
-        factory =
-            () ->
-                ResolveLockRequest.newBuilder()
-                    .setContext(region.getContext())
-                    .setStartVersion(lock.getTxnID())
-                    .setCommitVersion(txnStatus)
-                    .build();
-      } else {
-        factory =
-            () ->
-                ResolveLockRequest.newBuilder()
-                    .setContext(region.getContext())
-                    .setStartVersion(lock.getTxnID())
-                    .build();
+        builder.setCommitVersion(txn.getValue());
       }
+    } else {
+      for (Map.Entry<Long, Long> txn : group.txnStatus.entrySet()) {
+        builder.addTxnInfos(TxnInfo.newBuilder().setTxn(txn.getKey()).setStatus(txn.getValue()));
+      }
+    }
+    Supplier<ResolveLockRequest> factory = () -> builder.setContext(region.getContext()).build();
+
+    KVErrorHandler<ResolveLockResponse> handler =
+        new KVErrorHandler<>(
+            regionManager,
+            this,
+            region,
+            resp -> resp.hasRegionError() ? resp.getRegionError() : null);
+
+    ResolveLockResponse resp = callWithRetry(bo, TikvGrpc.METHOD_KV_RESOLVE_LOCK, factory, handler);
+
+    if (resp.hasError()) {
+      logger.error(
+          String.format(
+              "unexpected resolveLock err: %s, region: %s, txns: %s",
+              resp.getError(), region, group.txnStatus.keySet()));
+      throw new KeyException(resp.getError());
+    }
 
-      KVErrorHandler<ResolveLockResponse> handler =
-          new KVErrorHandler<>(
-              regionManager,
-              this,
-              region,
-              resp -> resp.hasRegionError() ? resp.getRegionError() : null);
-
-      ResolveLockResponse resp =
-          callWithRetry(bo, TikvGrpc.METHOD_KV_RESOLVE_LOCK, factory, handler);
+    if (resp.hasRegionError()) {
+      throw new RegionException(resp.getRegionError());
+    }
+  }
 
-      if (resp.hasError()) {
-        logger.error(
-            String.format("unexpected resolveLock err: %s, lock: %s", resp.getError(), lock));
-        throw new KeyException(resp.getError());
+  /**
+   * Applies function to each of the inputs concurrently on the resolve pool of the configured
+   * concurrency, each with a copy of bo. A single input is handled in the caller thread with bo.
+   *
+   * @return results in the order of the inputs
+   */
+  private <T, R> List<R> runConcurrently(
+      BackOffer bo, List<T> inputs, BiFunction<BackOffer, T, R> function) {
+    List<R> results = new ArrayList<>(inputs.size());
+    if (inputs.size() == 1) {
+      results.add(function.apply(bo, inputs.get(0)));
+      return results;
+    }
+    ExecutorService resolvePool =
+        resolvePools.computeIfAbsent(
+            getConf().getResolveLockConcurrency(),
+            concurrency ->
+                Executors.newFixedThreadPool(
+                    concurrency,
+                    new ThreadFactoryBuilder()
+                        .setNameFormat("lock-resolver-%d")
+                        .setDaemon(true)
+                        .build()));
+    List<Future<R>> futures = new ArrayList<>(inputs.size());
+    for (T input : inputs) {
+      // backoffers are not thread-safe, each task gets its own copy of bo
+      BackOffer backOffer = ConcreteBackOffer.create(bo);
+      futures.add(resolvePool.submit(() -> function.apply(backOffer, input)));
+    }
+    try {
+      for (Future<R> future : futures) {
+        results.add(future.get());
       }
-
-      if (resp.hasRegionError()) {
-        bo.doBackOff(BoRegionMiss, new RegionException(resp.getRegionError()));
-        continue;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new TiClientInternalException("Interrupted while resolving locks", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new TiClientInternalException("Error resolving locks", e.getCause());
+    } finally {
+      for (Future<R> future : futures) {
+        future.cancel(true);
       }
+    }
+    return results;
+  }
+
+  // a resolver of its own for a concurrent task, since the region and stubs are per client
+  private LockResolverClient fork() {
+    return new LockResolverClient(
+        getConf(), blockingStub, asyncStub, channelFactory, regionManager, resolved);
+  }
+
+  // points the stubs to the leader of newRegion
+  private void switchRegion(TiRegion newRegion) {
+    region = newRegion;
+    Store store = regionManager.getStoreById(region.getLeader().getStoreId());
+    ManagedChannel channel = channelFactory.getChannel(store.getAddress());
+    blockingStub = TikvGrpc.newBlockingStub(channel);
+    asyncStub = TikvGrpc.newStub(channel);
+  }
+
+  // locks in one region and the status of their txns
+  private static class LockGroup {
+    private final TiRegion region;
+    private final List<Lock> locks = new ArrayList<>();
+    private final Map<Long, Long> txnStatus = new LinkedHashMap<>();
+    private RegionException error;
 
-      cleanRegion.add(region.getVerID());
-      return;
+    private LockGroup(TiRegion region) {
+      this.region = region;
     }
   }
 
@@ -0,0 +1,411 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.txn;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import org.tikv.common.util.FastByteComparisons;
+import org.tikv.common.util.Pair;
+import org.tikv.txn.exception.TxnTooLargeException;
+
+/**
+ * MemBuffer is the write buffer of a transaction. Entries are kept in byte-lexicographic key order
+ * in a skip list whose nodes live in primitive arrays, while key and value bytes are copied into a
+ * chunked arena, so buffering an entry allocates no per-entry objects. An empty value marks a
+ * deleted key. A new value is written over the old one when it fits in its slot, otherwise the old
+ * slot is left unused in the arena, so the size limit applies to all the bytes of the arena.
+ *
+ * <p>The buffer may be written while it is iterated: entries inserted ahead of an iterator become
+ * visible to it. MemBuffer is not thread-safe.
+ */
+public class MemBuffer {
+  private static final byte[] EMPTY = new byte[0];
+  private static final int MAX_HEIGHT = 16;
+  private static final int HEAD = 0;
+  private static final int NIL = -1;
+  private static final int INIT_BLOCK_SIZE = 4 * 1024;
+  private static final int MAX_BLOCK_SIZE = 1024 * 1024;
+  private static final int INIT_NODE_CAPACITY = 16;
+
+  private final int entrySizeLimit;
+  private final int entryCountLimit;
+  private final long totalSizeLimit;
+
+  // arena of key and value bytes, an address is (block index << 32 | offset)
+  private byte[][] blocks;
+  private int blockCount;
+  private int blockOffset;
+  private int nextBlockSize;
+
+  // skip list nodes, node HEAD is the sentinel and never holds an entry
+  private long[] keyAddrs;
+  private int[] keyLens;
+  private long[] valueAddrs;
+  private int[] valueLens;
+  // length of the arena slot of each value, at least its current length
+  private int[] valueCaps;
+  private int[] linkOffsets;
+  // links[linkOffsets[n]] is the height h of node n, followed by its h forward pointers
+  private int[] links;
+  private int nodeCount;
+  private int linkCount;
+  private int height;
+
+  private int len;
+  private long size;
+  // bytes allocated from the arena, including the slots of overwritten values
+  private long arenaSize;
+  // last node before the position of a new node per level, reused by each set
+  private final int[] prev = new int[MAX_HEIGHT];
+
+  public MemBuffer(int entrySizeLimit, int entryCountLimit, long totalSizeLimit) {
+    this.entrySizeLimit = entrySizeLimit;
+    this.entryCountLimit = entryCountLimit;
+    this.totalSizeLimit = totalSizeLimit;
+    reset();
+  }
+
+  /** Number of entries in the buffer, including deletions. */
+  public int len() {
+    return len;
+  }
+
+  /** Total size in bytes of the keys and values in the buffer. */
+  public long size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return len == 0;
+  }
+
+  /**
+   * Sets the value of key, replacing any previous value. An empty value marks the key as deleted.
+   *
+   * @throws TxnTooLargeException if the entry or the buffer would exceed its limits
+   */
+  public void set(byte[] key, byte[] value) {
+    requireNonNull(key, "key is null");
+    requireNonNull(value, "value is null");
+    if (key.length == 0) {
+      throw new IllegalArgumentException("key cannot be empty");
+    }
+    if (key.length + value.length > entrySizeLimit) {
+      throw new TxnTooLargeException(
+          String.format(
+              "entry too large, key size %d, value size %d, limit %d",
+              key.length, value.length, entrySizeLimit));
+    }
+
+    int node = findGreaterOrEqual(key, prev);
+    if (node != NIL && compareKey(node, key) == 0) {
+      if (value.length > valueCaps[node]) {
+        checkTotalSize(arenaSize + value.length);
+        valueAddrs[node] = allocate(value.length);
+        valueCaps[node] = value.length;
+      }
+      writeArena(valueAddrs[node], value);
+      size += value.length - valueLens[node];
+      valueLens[node] = value.length;
+      return;
+    }
+
+    if (len + 1 > entryCountLimit) {
+      throw new TxnTooLargeException(
+          String.format("transaction too large, entry count limit %d", entryCountLimit));
+    }
+    checkTotalSize(arenaSize + key.length + value.length);
+
+    int h = randomHeight();
+    if (h > height) {
+      for (int i = height; i < h; i++) {
+        prev[i] = HEAD;
+      }
+      height = h;
+    }
+    int n = newNode(h);
+    keyAddrs[n] = allocate(key.length);
+    keyLens[n] = key.length;
+    writeArena(keyAddrs[n], key);
+    valueAddrs[n] = allocate(value.length);
+    valueLens[n] = value.length;
+    valueCaps[n] = value.length;
+    writeArena(valueAddrs[n], value);
+    for (int i = 0; i < h; i++) {
+      setNext(n, i, next(prev[i], i));
+      setNext(prev[i], i, n);
+    }
+    len++;
+    size += key.length + value.length;
+  }
+
+  /** Marks key as deleted. */
+  public void delete(byte[] key) {
+    set(key, EMPTY);
+  }
+
+  /**
+   * Gets the buffered value of key.
+   *
+   * @return a copy of the value, an empty array if the key is deleted, or null if the key is not
+   *     in the buffer
+   */
+  public byte[] get(byte[] key) {
+    int node = find(key);
+    return node == NIL ? null : value(node);
+  }
+
+  /** @return the length of the buffered value of key, or -1 if the key is not in the buffer */
+  public int valueLength(byte[] key) {
+    int node = find(key);
+    return node == NIL ? -1 : valueLens[node];
+  }
+
+  public boolean contains(byte[] key) {
+    return find(key) != NIL;
+  }
+
+  /** Drops all entries but keeps the first arena block for reuse. */
+  public void reset() {
+    byte[] first = blocks == null ? new byte[INIT_BLOCK_SIZE] : blocks[0];
+    blocks = new byte[4][];
+    blocks[0] = first;
+    blockCount = 1;
+    blockOffset = 0;
+    nextBlockSize = first.length;
+
+    keyAddrs = new long[INIT_NODE_CAPACITY];
+    keyLens = new int[INIT_NODE_CAPACITY];
+    valueAddrs = new long[INIT_NODE_CAPACITY];
+    valueLens = new int[INIT_NODE_CAPACITY];
+    valueCaps = new int[INIT_NODE_CAPACITY];
+    linkOffsets = new int[INIT_NODE_CAPACITY];
+    links = new int[INIT_NODE_CAPACITY * 2 + MAX_HEIGHT];
+    nodeCount = 0;
+    linkCount = 0;
+    height = 1;
+    newNode(MAX_HEIGHT);
+
+    len = 0;
+    size = 0;
+    arenaSize = 0;
+  }
+
+  /**
+   * Iterates entries in [startKey, endKey) in ascending key order, deletions included.
+   *
+   * @param startKey inclusive lower bound, null or empty means unbounded
+   * @param endKey exclusive upper bound, null or empty means unbounded
+   */
+  public Iterator<Pair<byte[], byte[]>> iterator(byte[] startKey, byte[] endKey) {
+    int first =
+        startKey == null || startKey.length == 0
+            ? next(HEAD, 0)
+            : findGreaterOrEqual(startKey, null);
+    return new Itr(first, endKey, false);
+  }
+
+  /** Iterates all entries in ascending key order. */
+  public Iterator<Pair<byte[], byte[]>> iterator() {
+    return iterator(null, null);
+  }
+
+  /**
+   * Iterates entries in [startKey, endKey) in descending key order, deletions included.
+   *
+   * @param startKey inclusive lower bound, null or empty means unbounded
+   * @param endKey exclusive upper bound, null or empty means unbounded
+   */
+  public Iterator<Pair<byte[], byte[]>> reverseIterator(byte[] startKey, byte[] endKey) {
+    int first = endKey == null || endKey.length == 0 ? findLast() : findLessThan(endKey);
+    return new Itr(first, startKey, true);
+  }
+
+  private class Itr implements Iterator<Pair<byte[], byte[]>> {
+    private final byte[] bound;
+    private final boolean reverse;
+    private int node;
+
+    Itr(int node, byte[] bound, boolean reverse) {
+      this.bound = bound == null || bound.length == 0 ? null : bound;
+      this.reverse = reverse;
+      this.node = node;
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (node == NIL || node == HEAD) {
+        return false;
+      }
+      if (bound == null) {
+        return true;
+      }
+      int cmp = compareKey(node, bound);
+      return reverse ? cmp >= 0 : cmp < 0;
+    }
+
+    @Override
+    public Pair<byte[], byte[]> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      Pair<byte[], byte[]> entry = Pair.create(key(node), value(node));
+      node = reverse ? findLessThan(entry.first) : MemBuffer.this.next(node, 0);
+      return entry;
+    }
+  }
+
+  // newSize is the size of the arena after the allocation checked
+  private void checkTotalSize(long newSize) {
+    if (newSize > totalSizeLimit) {
+      throw new TxnTooLargeException(
+          String.format("transaction too large, size %d, limit %d", newSize, totalSizeLimit));
+    }
+  }
+
+  private int find(byte[] key) {
+    requireNonNull(key, "key is null");
+    int node = findGreaterOrEqual(key, null);
+    return node != NIL && compareKey(node, key) == 0 ? node : NIL;
+  }
+
+  // Returns the first node whose key >= key, filling prev with the last node before it per level
+  private int findGreaterOrEqual(byte[] key, int[] prev) {
+    int x = HEAD;
+    for (int level = height - 1; level >= 0; level--) {
+      int n = next(x, level);
+      while (n != NIL && compareKey(n, key) < 0) {
+        x = n;
+        n = next(x, level);
+      }
+      if (prev != null) {
+        prev[level] = x;
+      }
+      if (level == 0) {
+        return n;
+      }
+    }
+    return NIL;
+  }
+
+  // Returns the last node whose key < key, or HEAD if there is none
+  private int findLessThan(byte[] key) {
+    int x = HEAD;
+    for (int level = height - 1; level >= 0; level--) {
+      int n = next(x, level);
+      while (n != NIL && compareKey(n, key) < 0) {
+        x = n;
+        n = next(x, level);
+      }
+    }
+    return x;
+  }
+
+  private int findLast() {
+    int x = HEAD;
+    for (int level = height - 1; level >= 0; level--) {
+      int n = next(x, level);
+      while (n != NIL) {
+        x = n;
+        n = next(x, level);
+      }
+    }
+    return x;
+  }
+
+  private int compareKey(int node, byte[] key) {
+    long addr = keyAddrs[node];
+    return FastByteComparisons.compareTo(
+        blocks[(int) (addr >>> 32)], (int) addr, keyLens[node], key, 0, key.length);
+  }
+
+  private byte[] key(int node) {
+    return readArena(keyAddrs[node], keyLens[node]);
+  }
+
+  private byte[] value(int node) {
+    return valueLens[node] == 0 ? EMPTY : readArena(valueAddrs[node], valueLens[node]);
+  }
+
+  private int next(int node, int level) {
+    return links[linkOffsets[node] + 1 + level];
+  }
+
+  private void setNext(int node, int level, int next) {
+    links[linkOffsets[node] + 1 + level] = next;
+  }
+
+  private int randomHeight() {
+    int h = 1;
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    while (h < MAX_HEIGHT && random.nextInt(4) == 0) {
+      h++;
+    }
+    return h;
+  }
+
+  private int newNode(int h) {
+    if (nodeCount == keyAddrs.length) {
+      int capacity = nodeCount * 2;
+      keyAddrs = Arrays.copyOf(keyAddrs, capacity);
+      keyLens = Arrays.copyOf(keyLens, capacity);
+      valueAddrs = Arrays.copyOf(valueAddrs, capacity);
+      valueLens = Arrays.copyOf(valueLens, capacity);
+      valueCaps = Arrays.copyOf(valueCaps, capacity);
+      linkOffsets = Arrays.copyOf(linkOffsets, capacity);
+    }
+    if (linkCount + h + 1 > links.length) {
+      links = Arrays.copyOf(links, Math.max(links.length * 2, linkCount + h + 1));
+    }
+    int n = nodeCount++;
+    linkOffsets[n] = linkCount;
+    links[linkCount] = h;
+    Arrays.fill(links, linkCount + 1, linkCount + 1 + h, NIL);
+    linkCount += h + 1;
+    return n;
+  }
+
+  private long allocate(int length) {
+    byte[] current = blocks[blockCount - 1];
+    if (current.length - blockOffset < length) {
+      if (nextBlockSize < MAX_BLOCK_SIZE) {
+        nextBlockSize = Math.min(nextBlockSize * 2, MAX_BLOCK_SIZE);
+      }
+      if (blockCount == blocks.length) {
+        blocks = Arrays.copyOf(blocks, blockCount * 2);
+      }
+      blocks[blockCount++] = new byte[Math.max(nextBlockSize, length)];
+      blockOffset = 0;
+    }
+    long addr = ((long) (blockCount - 1) << 32) | blockOffset;
+    blockOffset += length;
+    arenaSize += length;
+    return addr;
+  }
+
+  private void writeArena(long addr, byte[] data) {
+    System.arraycopy(data, 0, blocks[(int) (addr >>> 32)], (int) addr, data.length);
+  }
+
+  private byte[] readArena(long addr, int length) {
+    return Arrays.copyOfRange(
+        blocks[(int) (addr >>> 32)], (int) addr, (int) addr + length);
+  }
+}
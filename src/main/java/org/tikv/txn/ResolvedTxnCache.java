@@ -0,0 +1,76 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.txn;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Final status of the transactions resolved in a session, shared by all its lock resolvers so a
+ * transaction leaving many locks behind is only checked once. Reads are lock-free, the oldest
+ * entries are evicted once the cache is full.
+ *
+ * <p>The status of a transaction never changes once it is committed or rolled back: a positive
+ * status is its commit ts, 0 means it is rolled back.
+ */
+public class ResolvedTxnCache {
+  // max number of cached txn status
+  public static final int DEFAULT_CAPACITY = 2048;
+
+  private final int capacity;
+  private final Map<Long, Long> resolved = new ConcurrentHashMap<>();
+  // txn ids in insertion order for eviction
+  private final Queue<Long> recentResolved = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger size = new AtomicInteger();
+
+  public ResolvedTxnCache() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  public ResolvedTxnCache(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity must be positive");
+    }
+    this.capacity = capacity;
+  }
+
+  /** @return status of the transaction started at txnID, null if it is not cached */
+  public Long get(long txnID) {
+    return resolved.get(txnID);
+  }
+
+  public void put(long txnID, long status) {
+    if (resolved.putIfAbsent(txnID, status) != null) {
+      return;
+    }
+    recentResolved.add(txnID);
+    // every insertion beyond capacity evicts exactly one entry
+    if (size.incrementAndGet() > capacity) {
+      Long front = recentResolved.poll();
+      if (front != null) {
+        resolved.remove(front);
+        size.decrementAndGet();
+      }
+    }
+  }
+
+  public int size() {
+    return resolved.size();
+  }
+}
@@ -1,16 +1,21 @@
 package org.tikv.txn;
 
 import com.google.common.collect.Lists;
+import com.google.protobuf.ByteString;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.tikv.common.Snapshot;
+import org.tikv.common.TiConfiguration;
 import org.tikv.common.key.Key;
 import org.tikv.common.meta.TiTimestamp;
+import org.tikv.common.metrics.OperationTrace;
+import org.tikv.common.util.Pair;
+import org.tikv.kvproto.Kvrpcpb;
+import org.tikv.txn.exception.TxnTooLargeException;
 
-import java.security.SecureRandom;
-import java.util.HashMap;
+import java.io.File;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.function.Function;
 
 /**
@@ -35,7 +40,11 @@ public class TikvTransaction implements ITransaction {
 
     //private ReentrantMutex mutex = new ReentrantMutex();
 
-    private Map<byte[], byte[]> memoryKvStore = new HashMap<>();
+    private final MemBuffer memBuffer;
+    /**
+     * spills memBuffer to disk for big transactions, null for normal ones
+     */
+    private final BigTxnBuffer bigTxnBuffer;
 
     private List<byte[]> lockKeys;
 
@@ -43,21 +52,36 @@ public class TikvTransaction implements ITransaction {
 
     private final Function<ITransaction, Boolean> transactionFunction;
 
-    private static final int retryBackOffCap = 100;
-    private static final int retryBackOffBase = 1;
-    private static final int maxRetryCnt = 100;
-
-    private SecureRandom random = new SecureRandom();
+    /**
+     * outcome of the last commit, null before the transaction is committed
+     */
+    private CommitResult commitResult;
 
     public TikvTransaction(TxnKVClient client) {
         this(client, null);
     }
 
     public TikvTransaction(TxnKVClient client, Function<ITransaction, Boolean> function) {
+        this(client, function, false);
+    }
+
+    /**
+     * @param bigTxn whether writes are spilled to disk, which lifts the count and total size limits
+     */
+    public TikvTransaction(TxnKVClient client, Function<ITransaction, Boolean> function, boolean bigTxn) {
         this.kvClient = client;
         this.startTime = System.currentTimeMillis();
         this.transactionFunction = function;
         this.lockKeys = Lists.newLinkedList();
+        TiConfiguration conf = client.getConf();
+        if(bigTxn) {
+            this.memBuffer = new MemBuffer(conf.getTxnEntrySizeLimit(), Integer.MAX_VALUE, Long.MAX_VALUE);
+            this.bigTxnBuffer = new BigTxnBuffer(memBuffer, new File(conf.getTxnSpillDir()), conf.getTxnSpillSize());
+        } else {
+            this.memBuffer = new MemBuffer(conf.getTxnEntrySizeLimit(), conf.getTxnEntryCountLimit(),
+                    conf.getTxnTotalSizeLimit());
+            this.bigTxnBuffer = null;
+        }
         this.init();
     }
 
@@ -65,69 +89,184 @@ public class TikvTransaction implements ITransaction {
         this.valid = true;
         TiTimestamp tiTimestamp = kvClient.getTimestamp();
         this.startTS = tiTimestamp.getVersion();
-        this.snapshot = new Snapshot(kvClient.getConf(), kvClient.getPdClient(), kvClient.getClientBuilder(), tiTimestamp);
+        this.snapshot = new Snapshot(kvClient.getConf(), kvClient.getPdClient(), kvClient.getClientBuilder(), tiTimestamp,
+                kvClient.getBatchGetExecutor());
     }
 
     @Override
     public boolean set(byte[] key, byte[] value) {
-        memoryKvStore.put(key, value);
-        return true;
+        try {
+            if(bigTxnBuffer != null) {
+                bigTxnBuffer.set(key, value);
+            } else {
+                memBuffer.set(key, value);
+            }
+            return true;
+        } catch (TxnTooLargeException e) {
+            LOG.warn("txn set failed, startTs={}, detail={}", this.startTS, e.getMessage());
+            return false;
+        }
     }
 
     @Override
     public byte[] get(byte[] key) {
-        if(memoryKvStore.get(key) != null) {
-            return memoryKvStore.get(key);
+        byte[] value = bigTxnBuffer != null ? bigTxnBuffer.get(key) : memBuffer.get(key);
+        if(value != null) {
+            return value;
         }
         return snapshot.get(key);
     }
 
+    @Override
+    public UnionIterator iterator(byte[] startKey, byte[] endKey) {
+        ByteString end = endKey == null ? ByteString.EMPTY : ByteString.copyFrom(endKey);
+        ByteString start = startKey == null ? ByteString.EMPTY : ByteString.copyFrom(startKey);
+        Iterator<Kvrpcpb.KvPair> snapshotIterator = snapshot.scan(start, end);
+        Iterator<Pair<byte[], byte[]>> bufferIterator = bigTxnBuffer != null ?
+                bigTxnBuffer.iterator(startKey, endKey) : memBuffer.iterator(startKey, endKey);
+        return new UnionIterator(bufferIterator, snapshotIterator, false);
+    }
+
+    @Override
+    public UnionIterator iteratorReverse(byte[] endKey) {
+        // the regions are walked backward from the one holding endKey, so it must be bounded
+        if (endKey == null || endKey.length == 0) {
+            throw new IllegalArgumentException("end key of a reverse iteration cannot be empty");
+        }
+        Iterator<Kvrpcpb.KvPair> snapshotIterator = snapshot.reverseScan(ByteString.EMPTY, ByteString.copyFrom(endKey));
+        Iterator<Pair<byte[], byte[]>> bufferIterator = bigTxnBuffer != null ?
+                bigTxnBuffer.reverseIterator(null, endKey) : memBuffer.reverseIterator(null, endKey);
+        return new UnionIterator(bufferIterator, snapshotIterator, true);
+    }
+
     @Override
     public boolean delete(byte[] key) {
-        memoryKvStore.put(key, new byte[0]);
-        return true;
+        try {
+            if(bigTxnBuffer != null) {
+                bigTxnBuffer.delete(key);
+            } else {
+                memBuffer.delete(key);
+            }
+            return true;
+        } catch (TxnTooLargeException e) {
+            LOG.warn("txn delete failed, startTs={}, detail={}", this.startTS, e.getMessage());
+            return false;
+        }
     }
 
     @Override
     public boolean commit() {
-        boolean result;
-        if(this.transactionFunction != null) {
-            //commit with restart execute txn when encountered write conflict;
-            result = this.commitWithRetry();
-        } else {
-            TwoPhaseCommitter committer = new TwoPhaseCommitter(this);
-            // latches enabled
-            // for transactions which need to acquire latchess
-            //TODO latch ??
-            result = committer.execute();
+        CommitResult result;
+        try (OperationTrace ignored = OperationTrace.start("TikvTransaction.commit", kvClient.getConf())) {
+            if(this.transactionFunction != null) {
+                //commit with restart execute txn when encountered write conflict;
+                result = this.commitWithRetry();
+            } else {
+                result = this.executeCommit();
+            }
+        }
+        this.commitResult = result;
+        if(bigTxnBuffer != null) {
+            // remove the spilled runs once the transaction is done
+            bigTxnBuffer.reset();
         }
         long endTime = System.currentTimeMillis();
-        LOG.debug("txn startTime at {}, endTime at {}, spend whole time {}s", this.startTime, (endTime - this.startTime) / 1000);
-        return result;
+        LOG.debug("txn startTime at {}, endTime at {}, spend whole time {}s, result={}", this.startTime, endTime,
+                (endTime - this.startTime) / 1000, result);
+        return result.isCommitted();
     }
 
-    private boolean commitWithRetry() {
-        for(int i = 0 ; i < maxRetryCnt; i++) {
+    @Override
+    public CommitResult getCommitResult() {
+        return commitResult;
+    }
+
+    private CommitResult commitWithRetry() {
+        CommitRetryPolicy retryPolicy = new CommitRetryPolicy();
+        CommitResult result = null;
+        int attempts = 0;
+        for(int i = 0 ; i < CommitRetryPolicy.MAX_ATTEMPTS; i++) {
             Function<ITransaction, Boolean> retryFunction = transactionFunction;
-            Boolean result = retryFunction.apply(this);
-            if(!result) {
+            Boolean ok = retryFunction.apply(this);
+            if(!ok) {
                 this.rollback();
                 continue;
             }
 
-            TwoPhaseCommitter committer = new TwoPhaseCommitter(this);
-            boolean commit = committer.execute();
-            if(commit) {
-                return true;
+            result = this.executeCommit();
+            attempts ++;
+            if(result.isCommitted()) {
+                break;
             }
             this.lockKeys.clear();
-            this.memoryKvStore.clear();
+            this.resetBuffer();
+            LOG.warn("txn commit failed with attempts {} times, startTs={}, result={}", attempts, startTS, result);
+            // wait before taking the new start ts, so it is after the conflicting transaction is resolved
+            if(!retryPolicy.backoff(result)) {
+                break;
+            }
             this.init();
-            LOG.warn("txn commit failed with attempts {} times, startTs={}", i + 1, startTime);
-            backoff(i);
         }
-        LOG.warn("txn commit failed at finally, startTs={}", startTime);
-        return false;
+        if(result == null) {
+            result = CommitResult.failed("transaction function failed");
+        }
+        if(!result.isCommitted()) {
+            LOG.warn("txn commit failed at finally, startTs={}, result={}", startTS, result);
+        }
+        return result.withRetries(attempts, retryPolicy.getConflicts(), retryPolicy.getBackoffMs());
+    }
+
+    private CommitResult executeCommit() {
+        if(isReadOnly()) {
+            // the reads are consistent at the start ts already, there is nothing to commit
+            return CommitResult.committed(0);
+        }
+        if(bigTxnBuffer != null) {
+            File spillDir = new File(kvClient.getConf().getTxnSpillDir());
+            // big transactions write too many keys to hold latches on them
+            BigTxnCommitter committer = new BigTxnCommitter(this, bigTxnBuffer, spillDir);
+            boolean committed = committer.execute();
+            return toCommitResult(committed, committer.getCommitTs(), committer.getPrewriteKeyError(), committer.getError());
+        }
+        TwoPhaseCommitter committer = new TwoPhaseCommitter(this);
+        Latches latches = kvClient.getLatches();
+        if(latches == null) {
+            return toCommitResult(committer, committer.execute());
+        }
+        Latches.Latch latch = latches.acquire(startTS, committer.getKeys());
+        boolean committed = false;
+        try {
+            if(latch.isStale()) {
+                LOG.warn("txn is stale in latches, a key is committed after it starts, startTs={}", startTS);
+                return CommitResult.stale();
+            }
+            committed = committer.execute();
+            return toCommitResult(committer, committed);
+        } finally {
+            latches.release(latch, committed ? committer.getCommitTs() : 0);
+        }
+    }
+
+    private static CommitResult toCommitResult(TwoPhaseCommitter committer, boolean committed) {
+        return toCommitResult(committed, committer.getCommitTs(), committer.getPrewriteKeyError(), committer.getError());
+    }
+
+    private static CommitResult toCommitResult(boolean committed, long commitTs, Kvrpcpb.KeyError prewriteKeyError, String error) {
+        if(committed) {
+            return CommitResult.committed(commitTs);
+        }
+        if(prewriteKeyError != null) {
+            return CommitResult.fromKeyError(prewriteKeyError);
+        }
+        return CommitResult.failed(error);
+    }
+
+    private void resetBuffer() {
+        if(bigTxnBuffer != null) {
+            bigTxnBuffer.reset();
+        } else {
+            memBuffer.reset();
+        }
     }
 
     @Override
@@ -144,7 +283,8 @@ public class TikvTransaction implements ITransaction {
     @Override
     public boolean lockKeys(Key... lockedKeys) {
         for(Key key : lockedKeys) {
-            this.lockKeys.add(key.toByteString().toByteArray());
+            // keys are kept until the commit, so they are copied off the caller's array
+            this.lockKeys.add(key.getBytes().clone());
         }
         return true;
     }
@@ -166,7 +306,8 @@ public class TikvTransaction implements ITransaction {
 
     @Override
     public boolean isReadOnly() {
-        return false;
+        boolean empty = bigTxnBuffer != null ? bigTxnBuffer.isEmpty() : memBuffer.isEmpty();
+        return empty && lockKeys.isEmpty();
     }
 
     @Override
@@ -180,8 +321,8 @@ public class TikvTransaction implements ITransaction {
     }
 
     @Override
-    public Map<byte[], byte[]> getStoredKeys() {
-        return memoryKvStore;
+    public MemBuffer getMemBuffer() {
+        return memBuffer;
     }
 
     @Override
@@ -192,30 +333,6 @@ public class TikvTransaction implements ITransaction {
     private void close() {
         this.valid = false;
         this.lockKeys.clear();
-        this.memoryKvStore.clear();
-    }
-
-    private byte[][] toKeys() {
-        byte[][] keys = new byte[memoryKvStore.size()][];
-        int i = 0;
-        for(byte[] key : memoryKvStore.keySet()) {
-            keys[i++] = key;
-        }
-        return keys;
-    }
-
-    // BackOff Implements exponential backoff with full jitter.
-    // Returns real back off time in microsecond.
-    // See http://www.awsarchitectureblog.com/2015/03/backoff.html.
-    private int backoff(int attempts) {
-        int upper = (int)(Math.min(retryBackOffCap, retryBackOffBase * Math.pow(2.0, attempts)));
-        int sleep = random.nextInt(upper);
-        try {
-            Thread.sleep(sleep);
-            LOG.debug("txn sleep {}s at attempts " , sleep, attempts);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
-        return sleep;
+        this.resetBuffer();
     }
 }
@@ -9,8 +9,10 @@ import org.tikv.common.region.RegionManager;
 import org.tikv.common.region.TiRegion;
 import org.tikv.common.util.BackOffFunction;
 import org.tikv.common.util.BackOffer;
+import org.tikv.common.util.ByteStrings;
 import org.tikv.common.util.ConcreteBackOffer;
 import org.tikv.common.util.FastByteComparisons;
+import org.tikv.common.util.Pair;
 import org.tikv.kvproto.Kvrpcpb;
 import org.tikv.txn.pool.SecondaryCommitTaskThreadPool;
 import org.tikv.txn.type.BatchKeys;
@@ -37,7 +39,10 @@ public class TwoPhaseCommitter {
     private static final int maxLockTTL = 12000;
     private static final SecondaryCommitTaskThreadPool secondaryCommitPool = new SecondaryCommitTaskThreadPool();
 
-    private Map<String, Kvrpcpb.Mutation> mutations = new LinkedHashMap<>();
+    private final MemBuffer memBuffer;
+    /**
+     * keys of the transaction in byte-lexicographic order, the first one is the primary key
+     */
     private List<byte[]> keysList;
     //private ReadOnlyPDClient pdClient;
     private TxnKVClient kvClient;
@@ -53,67 +58,107 @@ public class TwoPhaseCommitter {
      * commit timestamp of transaction which get from PD
      */
     private long commitTs = 0;
+    /**
+     * whether the transaction only locks keys without writing any
+     */
+    private final boolean lockOnly;
 
     private volatile boolean prewriteTaskError = false;
+    /**
+     * key error which failed the prewrite, null if the prewrite failed for other reasons
+     */
+    private volatile Kvrpcpb.KeyError prewriteKeyError;
+    /**
+     * reason of the failed commit
+     */
+    private String error;
     //private volatile AtomicInteger seondaryThreadIdGenerator = new AtomicInteger(0);
 
-    private TwoPhaseCommitter() {}
-
     public TwoPhaseCommitter(ITransaction transaction) {
         //this.pdClient = transaction.getKVClient().getSession().getPDClient();
         this.regionManager = transaction.getKVClient().getRegionManager();
-        this.keysList = new LinkedList<>();
         this.kvClient = transaction.getKVClient();
         this.startTs = transaction.getStartTS();
+        this.memBuffer = transaction.getMemBuffer();
+
+        // the buffer is already sorted, so only the lock-only keys need sorting before merge
+        List<byte[]> lockOnlyKeys = new ArrayList<>();
+        for(byte[] lockedKey : transaction.getLockedKeys()) {
+            if(!memBuffer.contains(lockedKey)) {
+                lockOnlyKeys.add(lockedKey);
+            }
+        }
+        lockOnlyKeys.sort(FastByteComparisons::compareTo);
 
-        Map<byte[], byte[]> storedKeys = transaction.getStoredKeys();
+        this.keysList = new ArrayList<>(memBuffer.len() + lockOnlyKeys.size());
         int putCount = 0, delCount = 0, lockCount = 0;
-        int txnSize = 0;
-        for(byte[] key : storedKeys.keySet()) {
-            byte[] value = storedKeys.get(key);
-            if(value.length > 0) {
-                Kvrpcpb.Mutation mutation = Kvrpcpb.Mutation.newBuilder()
-                        .setKey(ByteString.copyFrom(key))
-                        .setValue(ByteString.copyFrom(value))
-                        .setOp(Kvrpcpb.Op.Put)
-                        .build();
-                mutations.put(new String(key), mutation);
+        long txnSize = memBuffer.size();
+        int lockIndex = 0;
+        Iterator<Pair<byte[], byte[]>> iterator = memBuffer.iterator();
+        while(iterator.hasNext()) {
+            Pair<byte[], byte[]> entry = iterator.next();
+            while(lockIndex < lockOnlyKeys.size()
+                    && FastByteComparisons.compareTo(lockOnlyKeys.get(lockIndex), entry.first) < 0) {
+                lockIndex = this.addLockOnlyKey(lockOnlyKeys, lockIndex);
+                lockCount ++;
+            }
+            keysList.add(entry.first);
+            if(entry.second.length > 0) {
                 putCount++;
             } else {
-                Kvrpcpb.Mutation mutation = Kvrpcpb.Mutation.newBuilder()
-                        .setKey(ByteString.copyFrom(key))
-                        .setOp(Kvrpcpb.Op.Del)
-                        .build();
-                mutations.put(new String(key), mutation);
                 delCount ++;
             }
-            keysList.add(key);
-            txnSize += (key.length + value.length);
-            //TODO check transaction maxEntrySize
-        }
-        List<byte[]> lockedKeys = transaction.getLockedKeys();
-        for(byte[] lockedKey : lockedKeys) {
-            Kvrpcpb.Mutation mutation = Kvrpcpb.Mutation.newBuilder()
-                    .setKey(ByteString.copyFrom(lockedKey))
-                    .setOp(Kvrpcpb.Op.Lock)
-                    .build();
-            mutations.put(new String(lockedKey), mutation);
+        }
+        while(lockIndex < lockOnlyKeys.size()) {
+            lockIndex = this.addLockOnlyKey(lockOnlyKeys, lockIndex);
             lockCount ++;
-            keysList.add(lockedKey);
-            txnSize += (lockedKey.length);
         }
+        for(int i = 0; i < lockOnlyKeys.size(); i++) {
+            txnSize += lockOnlyKeys.get(i).length;
+        }
+        this.lockOnly = putCount + delCount == 0;
         this.lockTTL = getTxnLockTTL(transaction.getStartTime(), txnSize);
         LOG.debug("Txn info, startTs={}, putCount={}, delCount={}, lockCount={}, lockTTL={}", startTs, putCount, delCount, lockCount, lockTTL);
     }
 
-    private long getTxnLockTTL(long startTime, int txnSize) {
+    /**
+     * Appends lockOnlyKeys[index] to keysList, skipping its duplicates
+     * @return index of the next distinct lock-only key
+     */
+    private int addLockOnlyKey(List<byte[]> lockOnlyKeys, int index) {
+        byte[] key = lockOnlyKeys.get(index);
+        keysList.add(key);
+        index ++;
+        while(index < lockOnlyKeys.size() && FastByteComparisons.compareTo(lockOnlyKeys.get(index), key) == 0) {
+            index ++;
+        }
+        return index;
+    }
+
+    /**
+     * Builds the mutation of key from the write buffer, keys not in the buffer are lock-only keys
+     */
+    private Kvrpcpb.Mutation getMutation(byte[] key) {
+        byte[] value = memBuffer.get(key);
+        Kvrpcpb.Mutation.Builder builder = Kvrpcpb.Mutation.newBuilder().setKey(ByteStrings.wrap(key));
+        if(value == null) {
+            builder.setOp(Kvrpcpb.Op.Lock);
+        } else if(value.length > 0) {
+            builder.setOp(Kvrpcpb.Op.Put).setValue(ByteStrings.wrap(value));
+        } else {
+            builder.setOp(Kvrpcpb.Op.Del);
+        }
+        return builder.build();
+    }
+
+    private long getTxnLockTTL(long startTime, long txnSize) {
         // Increase lockTTL for large transactions.
         // The formula is `ttl = ttlFactor * sqrt(sizeInMiB)`.
         // When writeSize is less than 256KB, the base ttl is defaultTTL (3s);
         // When writeSize is 1MiB, 100MiB, or 400MiB, ttl is 6s, 60s, 120s correspondingly;
         long ttl = defaultLockTTL;
         if(txnSize >= txnCommitBatchSize) {
-            int sizeInMiB = txnSize / bytesPerMiB;
+            long sizeInMiB = txnSize / bytesPerMiB;
             ttl = (long)(ttlFactor* Math.sqrt(sizeInMiB));
             if(ttl < defaultLockTTL) {
                 ttl = defaultLockTTL;
@@ -133,20 +178,25 @@ public class TwoPhaseCommitter {
     }
 
     private GroupKeyResult groupKeysByRegion(BackOffer backOffer, byte[][] keys) {
-        Map<Long, List<byte[]>> groups = new HashMap<>();
+        // keys are sorted, so keys of a region are contiguous and keep their order in the group
+        Map<Long, List<byte[]>> groups = new LinkedHashMap<>();
         long first = 0;
         int index = 0;
         String error = null;
+        TiRegion tiRegion = null;
         try {
             for(; index < keys.length; index ++) {
                 byte[] key = keys[index];
-                TiRegion tiRegion = this.regionManager.getRegionByKey(ByteString.copyFrom(key));
+                ByteString byteKey = ByteStrings.wrap(key);
+                if(tiRegion == null || !tiRegion.contains(byteKey)) {
+                    tiRegion = this.regionManager.getRegionByKey(byteKey);
+                }
                 if(tiRegion != null){
                     Long regionId = tiRegion.getId();
                     if(index == 0) {
                         first = regionId;
                     }
-                    List<byte[]> groupItem = groups.computeIfAbsent(regionId, e -> new LinkedList<>());
+                    List<byte[]> groupItem = groups.computeIfAbsent(regionId, e -> new ArrayList<>());
                     /*List<byte[]> groupItem = groups.get(regionId);
                     if(groupItem != null) {
                         groupItem = new LinkedList<>();
@@ -318,12 +368,10 @@ public class TwoPhaseCommitter {
 
     public long keyValueSize(byte[] key) {
         long size = key.length;
-        String keyStr = new String(key);
-        Kvrpcpb.Mutation mutation = this.mutations.get(keyStr);
-        if(mutation != null) {
-            size += mutation.getValue().toByteArray().length;
+        int valueLength = this.memBuffer.valueLength(key);
+        if(valueLength > 0) {
+            size += valueLength;
         }
-
         return size;
     }
 
@@ -342,7 +390,7 @@ public class TwoPhaseCommitter {
         int index = 0;
         List<Kvrpcpb.Mutation> mutationList = new ArrayList<>(batchSize);
         for(byte[] key : keyList) {
-            mutationList.add(mutations.get(new String(key)));
+            mutationList.add(this.getMutation(key));
             keys[index++] = key;
         }
         //send rpc request to tikv server
@@ -350,6 +398,9 @@ public class TwoPhaseCommitter {
         ClientRPCResult prewriteResult = this.kvClient.prewrite(backOffer, mutationList, primaryKey(),
                 this.lockTTL, this.startTs, regionId);
         if(!prewriteResult.isSuccess() && !prewriteResult.isRetry()) {
+            if(prewriteResult.getKeyError() != null) {
+                this.prewriteKeyError = prewriteResult.getKeyError();
+            }
             return prewriteResult.getError();
         }
         if(!prewriteResult.isSuccess() && prewriteResult.isRetry()) {
@@ -472,6 +523,34 @@ public class TwoPhaseCommitter {
         return this.doActionOnKeys(backOffer, TwoPhaseCommitType.actionCleanup, keys);
     }
 
+    /**
+     * @return keys of the transaction in byte-lexicographic order
+     */
+    public List<byte[]> getKeys() {
+        return keysList;
+    }
+
+    /**
+     * @return commit timestamp of the transaction, 0 before it is committed
+     */
+    public long getCommitTs() {
+        return commitTs;
+    }
+
+    /**
+     * @return key error which failed the prewrite, null if the prewrite failed for other reasons
+     */
+    public Kvrpcpb.KeyError getPrewriteKeyError() {
+        return prewriteKeyError;
+    }
+
+    /**
+     * @return reason of the failed commit, null if it is committed
+     */
+    public String getError() {
+        return error;
+    }
+
     public boolean execute() {
         BackOffer prewriteBackoff = ConcreteBackOffer.newCustomBackOff(3000);//ConcreteBackOffer.prewriteMaxBackoff
         byte[][] keys = new byte[keysList.size()][];
@@ -479,23 +558,37 @@ public class TwoPhaseCommitter {
         String prewriteError = this.prewriteKeys(prewriteBackoff, keys);
         if(prewriteError != null) {
             LOG.error("failed on prewrite, startTs={}, detail={}", this.startTs, prewriteError);
+            this.error = prewriteError;
             return false;
         }
+        if(this.lockOnly) {
+            // the prewrite has checked the locked keys are not written since the transaction started, which is
+            // all a lock-only transaction needs, so its locks are rolled back without fetching a commit ts
+            String cleanupError = this.cleanupKeys(ConcreteBackOffer.newCustomBackOff(BackOffer.cleanupMaxBackoff), keys);
+            if(cleanupError != null) {
+                // readers roll the locks left back once they expire
+                LOG.warn("failed on cleanup lock-only transaction, startTs={}, detail={}", this.startTs, cleanupError);
+            }
+            return true;
+        }
         TiTimestamp commitTso = kvClient.getTimestamp();
         this.commitTs = commitTso.getVersion();
         // check commitTS
         if(this.commitTs <= this.startTs) {
             LOG.error("invalid transaction tso with startTs={}, commitTs={}", this.startTs, this.commitTs);
+            this.error = "invalid commit ts " + this.commitTs;
             return false;
         }
         if(isExpired(this.startTs, maxTxnTimeUse)) {
             LOG.error("transaction takes too much time, startTs={}, commitTs={}", this.startTs, commitTso.getVersion());
+            this.error = "transaction takes too much time";
             return false;
         }
         BackOffer commitBackoff = ConcreteBackOffer.newCustomBackOff(BackOffer.commitMaxBackoff);
         String commitError = this.commitKeys(commitBackoff, keys);
         if(commitError != null) {
             LOG.error("failed on commit, startTs={}, commitTs={}", this.startTs, commitError);
+            this.error = commitError;
             return false;
         }
 
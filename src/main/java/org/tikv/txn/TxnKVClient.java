@@ -1,6 +1,7 @@
 package org.tikv.txn;
 
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.protobuf.ByteString;
 import io.grpc.StatusRuntimeException;
 import org.slf4j.Logger;
@@ -9,6 +10,7 @@ import org.tikv.common.PDClient;
 import org.tikv.common.ReadOnlyPDClient;
 import org.tikv.common.TiConfiguration;
 import org.tikv.common.exception.GrpcException;
+import org.tikv.common.exception.KeyException;
 import org.tikv.common.exception.RegionException;
 import org.tikv.common.exception.TiKVException;
 import org.tikv.common.meta.TiTimestamp;
@@ -18,6 +20,7 @@ import org.tikv.common.region.RegionStoreClient;
 import org.tikv.common.region.TiRegion;
 import org.tikv.common.util.BackOffFunction;
 import org.tikv.common.util.BackOffer;
+import org.tikv.common.util.ByteStrings;
 import org.tikv.common.util.ConcreteBackOffer;
 import org.tikv.common.util.Pair;
 import org.tikv.kvproto.Kvrpcpb;
@@ -25,11 +28,16 @@ import org.tikv.txn.type.ClientRPCResult;
 
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Function;
 
 /**
  * KV client of transaction
  * APIs for GET/PUT/DELETE/SCAN
+ *
+ * <p>keys and values are not copied: the arrays passed in are wrapped as they are, and the arrays
+ * returned share the buffers of the responses. Callers must not modify either of them.
  */
 public class TxnKVClient implements AutoCloseable{
     private final static Logger LOG = LoggerFactory.getLogger(TxnKVClient.class);
@@ -38,6 +46,14 @@ public class TxnKVClient implements AutoCloseable{
     private final TiConfiguration conf;
     private final RegionManager regionManager;
     private ReadOnlyPDClient pdClient;
+    /**
+     * shared by the snapshots of this client to send batch get requests concurrently
+     */
+    private final ExecutorService batchGetExecutor;
+    /**
+     * serializes the conflicting commits of this client, null if disabled
+     */
+    private final Latches latches;
 
     public RegionStoreClient.RegionStoreClientBuilder getClientBuilder() {
         return clientBuilder;
@@ -59,6 +75,17 @@ public class TxnKVClient implements AutoCloseable{
         //this.session = TiSession.create(TiConfiguration.createRawDefault(addresses));
         //this.regionManager = new RegionManager(session.getPDClient());
         this.pdClient = pdClient;
+        this.batchGetExecutor = Executors.newFixedThreadPool(conf.getTxnBatchGetConcurrency(),
+                new ThreadFactoryBuilder().setNameFormat("txn-batch-get-%d").setDaemon(true).build());
+        this.latches = conf.isTxnLatchEnabled() ? new Latches(conf.getTxnLatchCapacity()) : null;
+    }
+
+    public ExecutorService getBatchGetExecutor() {
+        return batchGetExecutor;
+    }
+
+    public Latches getLatches() {
+        return latches;
     }
 
     /*public static TxnKVClient createClient(String addresses) {
@@ -95,6 +122,15 @@ public class TxnKVClient implements AutoCloseable{
         return new TikvTransaction(this, function);
     }
 
+    /**
+     * Begin a new big transaction, whose writes are spilled to disk instead of being held on heap,
+     * see {@link TiConfiguration#getTxnSpillSize()}
+     * @return
+     */
+    public ITransaction beginBigTxn() {
+        return new TikvTransaction(this, null, true);
+    }
+
     //add backoff logic when encountered region error,ErrBodyMissing, and other errors
     public ClientRPCResult prewrite(BackOffer backOffer, List<Kvrpcpb.Mutation> mutations, byte[] primary, long lockTTL, long startTs, long regionId) {
         ClientRPCResult result = new ClientRPCResult(true, false, null);
@@ -102,15 +138,29 @@ public class TxnKVClient implements AutoCloseable{
         TiRegion region = regionManager.getRegionById(regionId);
         RegionStoreClient client = clientBuilder.build(region);
         try {
-            client.prewrite(backOffer,  ByteString.copyFrom(primary), mutations, startTs, lockTTL);
+            client.prewrite(backOffer,  ByteStrings.wrap(primary), mutations, startTs, lockTTL);
         } catch (final TiKVException | StatusRuntimeException e) {
             result.setSuccess(false);
             result.setRetry(e instanceof RegionException);//mark retryable, region error, should retry prewrite again
             result.setError(e.getMessage());
+            result.setKeyError(getKeyError(e));
         }
         return result;
     }
 
+    /**
+     * @return the key error in the cause chain of e, null if there is none
+     */
+    private static Kvrpcpb.KeyError getKeyError(Throwable e) {
+        // key errors of locks not resolved in time come wrapped by the exhausted backoffer
+        for(Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if(cause instanceof KeyException && ((KeyException) cause).getKeyErr() != null) {
+                return ((KeyException) cause).getKeyErr();
+            }
+        }
+        return null;
+    }
+
     /**
      * Commit request of 2pc,
      * add backoff logic when encountered region error, ErrBodyMissing, and other errors
@@ -128,7 +178,7 @@ public class TxnKVClient implements AutoCloseable{
         RegionStoreClient client = clientBuilder.build(region);
         List<ByteString> byteList = Lists.newArrayList();
         for(byte[] key : keys) {
-            byteList.add(ByteString.copyFrom(key));
+            byteList.add(ByteStrings.wrap(key));
         }
         try {
             client.commit(backOffer, byteList, startTs, commitTs);
@@ -153,7 +203,7 @@ public class TxnKVClient implements AutoCloseable{
             TiRegion region = regionManager.getRegionById(regionId);
             RegionStoreClient client = clientBuilder.build(region);
             //send rpc request to tikv server
-            client.cleanup(backOffer, ByteString.copyFrom(key), startTs);
+            client.cleanup(backOffer, ByteStrings.wrap(key), startTs);
             return true;
         } catch (final TiKVException e) {
             LOG.error("Cleanup process error, retry end, key={}, startTs={}, regionId=%s", new String(key), startTs, regionId);
@@ -173,7 +223,7 @@ public class TxnKVClient implements AutoCloseable{
         ClientRPCResult result = new ClientRPCResult(true, false, null);
         List<ByteString> byteList = Lists.newArrayList();
         for(byte[] key : keys) {
-            byteList.add(ByteString.copyFrom(key));
+            byteList.add(ByteStrings.wrap(key));
         }
         try {
             TiRegion region = regionManager.getRegionById(regionId);
@@ -191,10 +241,10 @@ public class TxnKVClient implements AutoCloseable{
     /**
      * Get value of key from TiKV
      * @param key
-     * @return
+     * @return the value, shared with the response so it must not be modified
      */
     public byte[] get(byte[] key) {
-        ByteString byteKey = ByteString.copyFrom(key);
+        ByteString byteKey = ByteStrings.wrap(key);
         BackOffer bo = ConcreteBackOffer.newGetBackOff();
         long version = 0;
         ByteString value = null;
@@ -206,19 +256,19 @@ public class TxnKVClient implements AutoCloseable{
             LOG.error("Get process error, key={}, version={}", new String(key), version);
         }
 
-        return value != null ? value.toByteArray() : new byte[0];
+        return value != null ? ByteStrings.unsafeGetBytes(value) : new byte[0];
     }
 
     /**
      * Put a new key-value pair to TiKV
-     * @param key
-     * @param value
+     * @param key not copied, must not be modified afterwards
+     * @param value not copied, must not be modified afterwards
      * @return
      */
     public boolean put(byte[] key, byte[] value) {
         boolean putResult = false;
-        ByteString byteKey = ByteString.copyFrom(key);
-        ByteString byteValue = ByteString.copyFrom(value);
+        ByteString byteKey = ByteStrings.wrap(key);
+        ByteString byteValue = ByteStrings.wrap(value);
         BackOffer bo = ConcreteBackOffer.newCustomBackOff(BackOffer.prewriteMaxBackoff);
         List<Kvrpcpb.Mutation> mutations = Lists.newArrayList(
                 Kvrpcpb.Mutation.newBuilder()
@@ -276,7 +326,7 @@ public class TxnKVClient implements AutoCloseable{
      */
     public boolean delete(byte[] key) {
         boolean putResult = false;
-        ByteString byteKey = ByteString.copyFrom(key);
+        ByteString byteKey = ByteStrings.wrap(key);
         BackOffer bo = ConcreteBackOffer.newCustomBackOff(BackOffer.prewriteMaxBackoff);
         List<Kvrpcpb.Mutation> mutations = Lists.newArrayList(
                 Kvrpcpb.Mutation.newBuilder()
@@ -332,10 +382,10 @@ public class TxnKVClient implements AutoCloseable{
      * Scan key-value pair from TiKV
      * @param startKey start key
      * @param limit max limit count
-     * @return
+     * @return the pairs, their arrays are shared with the response so they must not be modified
      */
     public List<Pair<byte[], byte[]>> scan(byte[] startKey, int limit) {
-        ByteString byteKey = ByteString.copyFrom(startKey);
+        ByteString byteKey = ByteStrings.wrap(startKey);
         long version = getTimestamp().getVersion();
         ConcreteScanIterator iterator = new ConcreteScanIterator(this.conf,
                 clientBuilder, byteKey, version);
@@ -343,7 +393,7 @@ public class TxnKVClient implements AutoCloseable{
         int count = 0;
         while(iterator.hasNext() && count ++ < limit) {
             Kvrpcpb.KvPair pair = iterator.next();
-            result.add(Pair.create(pair.getKey().toByteArray(), pair.getValue().toByteArray()));
+            result.add(Pair.create(ByteStrings.unsafeGetBytes(pair.getKey()), ByteStrings.unsafeGetBytes(pair.getValue())));
         }
         return result;
     }
@@ -358,6 +408,6 @@ public class TxnKVClient implements AutoCloseable{
 
     @Override
     public void close() throws Exception {
-
+        batchGetExecutor.shutdownNow();
     }
 }
\ No newline at end of file
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.txn;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import org.tikv.common.util.ByteStrings;
+import org.tikv.common.util.FastByteComparisons;
+import org.tikv.common.util.Pair;
+import org.tikv.kvproto.Kvrpcpb;
+
+/**
+ * Merges the write buffer of a transaction into the pairs scanned from its snapshot. Both inputs
+ * must be in the same key order. A buffered entry hides the snapshot pair of the same key, and
+ * buffered deletions are skipped. Closing the iterator releases the spill files a big transaction
+ * buffer holds open while it is read.
+ */
+public class UnionIterator implements Iterator<Pair<byte[], byte[]>>, AutoCloseable {
+  private final Iterator<Pair<byte[], byte[]>> bufferIterator;
+  private final Iterator<Kvrpcpb.KvPair> snapshotIterator;
+  private final boolean reverse;
+
+  private Pair<byte[], byte[]> bufferEntry;
+  private Kvrpcpb.KvPair snapshotEntry;
+  private Pair<byte[], byte[]> next;
+
+  public UnionIterator(
+      Iterator<Pair<byte[], byte[]>> bufferIterator,
+      Iterator<Kvrpcpb.KvPair> snapshotIterator,
+      boolean reverse) {
+    this.bufferIterator = bufferIterator;
+    this.snapshotIterator = snapshotIterator;
+    this.reverse = reverse;
+  }
+
+  // compares keys in iteration order
+  private int compare(byte[] bufferKey, Kvrpcpb.KvPair pair) {
+    int cmp = FastByteComparisons.compareTo(bufferKey, ByteStrings.unsafeGetBytes(pair.getKey()));
+    return reverse ? -cmp : cmp;
+  }
+
+  private Pair<byte[], byte[]> advance() {
+    while (true) {
+      if (bufferEntry == null && bufferIterator.hasNext()) {
+        bufferEntry = bufferIterator.next();
+      }
+      if (snapshotEntry == null && snapshotIterator.hasNext()) {
+        snapshotEntry = snapshotIterator.next();
+      }
+      if (bufferEntry == null && snapshotEntry == null) {
+        return null;
+      }
+
+      int cmp;
+      if (bufferEntry == null) {
+        cmp = 1;
+      } else if (snapshotEntry == null) {
+        cmp = -1;
+      } else {
+        cmp = compare(bufferEntry.first, snapshotEntry);
+      }
+      if (cmp > 0) {
+        Kvrpcpb.KvPair pair = snapshotEntry;
+        snapshotEntry = null;
+        return Pair.create(
+            ByteStrings.unsafeGetBytes(pair.getKey()), ByteStrings.unsafeGetBytes(pair.getValue()));
+      }
+      if (cmp == 0) {
+        // the buffered write overrides the committed value
+        snapshotEntry = null;
+      }
+      Pair<byte[], byte[]> entry = bufferEntry;
+      bufferEntry = null;
+      if (entry.second.length > 0) {
+        return entry;
+      }
+    }
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (next == null) {
+      next = advance();
+    }
+    return next != null;
+  }
+
+  @Override
+  public Pair<byte[], byte[]> next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    Pair<byte[], byte[]> result = next;
+    next = null;
+    return result;
+  }
+
+  @Override
+  public void close() {
+    if (bufferIterator instanceof BigTxnBuffer.MergeIterator) {
+      ((BigTxnBuffer.MergeIterator) bufferIterator).close();
+    }
+  }
+}
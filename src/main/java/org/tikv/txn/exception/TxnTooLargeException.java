@@ -0,0 +1,27 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tikv.txn.exception;
+
+import org.tikv.common.exception.TiKVException;
+
+/** Thrown when a transaction entry or write buffer exceeds its configured limit. */
+public class TxnTooLargeException extends TiKVException {
+
+  private static final long serialVersionUID = 3361562342851402744L;
+
+  public TxnTooLargeException(String msg) {
+    super(msg);
+  }
+}
@@ -1,9 +1,15 @@
 package org.tikv.txn.type;
 
+import org.tikv.kvproto.Kvrpcpb;
+
 public class ClientRPCResult {
     boolean success;
     boolean retry;
     String error;
+    /**
+     * key error which failed the request, null if it failed for other reasons
+     */
+    Kvrpcpb.KeyError keyError;
 
     public ClientRPCResult(boolean success, boolean retry, String error) {
         this.success = success;
@@ -34,4 +40,12 @@ public class ClientRPCResult {
     public void setError(String error) {
         this.error = error;
     }
+
+    public Kvrpcpb.KeyError getKeyError() {
+        return keyError;
+    }
+
+    public void setKeyError(Kvrpcpb.KeyError keyError) {
+        this.keyError = keyError;
+    }
 }
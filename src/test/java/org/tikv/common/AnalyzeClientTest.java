@@ -0,0 +1,132 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.common;
+
+import static org.junit.Assert.*;
+
+import com.google.protobuf.ByteString;
+import com.pingcap.tidb.tipb.AnalyzeColumnsReq;
+import com.pingcap.tidb.tipb.AnalyzeColumnsResp;
+import com.pingcap.tidb.tipb.AnalyzeIndexReq;
+import com.pingcap.tidb.tipb.AnalyzeIndexResp;
+import com.pingcap.tidb.tipb.AnalyzeReq;
+import com.pingcap.tidb.tipb.AnalyzeType;
+import com.pingcap.tidb.tipb.Bucket;
+import com.pingcap.tidb.tipb.ColumnInfo;
+import com.pingcap.tidb.tipb.Histogram;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.Test;
+import org.tikv.coprocessor.AnalyzeClient;
+import org.tikv.coprocessor.CoprocessorClient;
+import org.tikv.kvproto.Coprocessor;
+import org.tikv.kvproto.Pdpb;
+
+public class AnalyzeClientTest extends MockServerTest {
+  private static Bucket bucket(String bound, long count) {
+    return Bucket.newBuilder()
+        .setLowerBound(ByteString.copyFromUtf8(bound))
+        .setUpperBound(ByteString.copyFromUtf8(bound))
+        .setCount(count)
+        .setRepeats(1)
+        .build();
+  }
+
+  private static List<ByteString> bounds(String... bounds) {
+    return Arrays.stream(bounds).map(ByteString::copyFromUtf8).collect(Collectors.toList());
+  }
+
+  @Test
+  public void analyzeIndexTest() throws Exception {
+    addStore();
+    server.put("a1", "v1");
+    server.put("a2", "v2");
+    server.put("b1", "v3");
+    server.putError("b", KVMockServer.STALE_EPOCH);
+    // the region and its store are loaded again after the error
+    pdServer.addGetRegionResp(
+        Pdpb.GetRegionResponse.newBuilder().setRegion(region.getMeta()).build());
+    addStore();
+    AnalyzeIndexReq request = AnalyzeIndexReq.newBuilder().setBucketSize(2).build();
+    try (AnalyzeClient client = session.createAnalyzeClient()) {
+      AnalyzeIndexResp resp =
+          client.analyzeIndex(START_TS, request, Arrays.asList(range("a", "b"), range("b", "c")));
+      // the 3 buckets of the region are merged into 2
+      assertEquals(3, resp.getHist().getNdv());
+      assertEquals(2, resp.getHist().getBucketsCount());
+      assertEquals(ByteString.copyFromUtf8("a2"), resp.getHist().getBuckets(0).getUpperBound());
+      assertEquals(3, resp.getHist().getBuckets(1).getCount());
+      assertEquals(3, resp.getCms().getRows(0).getCounters(0));
+    }
+    List<Coprocessor.Request> requests = server.getAnalyzeRequests();
+    assertEquals(2, requests.size());
+    assertEquals(CoprocessorClient.REQ_TYPE_ANALYZE, requests.get(1).getTp());
+    AnalyzeReq req = AnalyzeReq.parseFrom(requests.get(1).getData());
+    assertEquals(AnalyzeType.TypeIndex, req.getTp());
+    assertEquals(START_TS, req.getStartTs());
+    assertEquals(request, req.getIdxReq());
+    server.clearAllMap();
+  }
+
+  @Test
+  public void analyzeColumnsTest() {
+    addStore();
+    server.put("a1", "v1");
+    server.put("a2", "v2");
+    AnalyzeColumnsReq request =
+        AnalyzeColumnsReq.newBuilder()
+            .setSampleSize(10)
+            .addColumnsInfo(ColumnInfo.newBuilder().setColumnId(1))
+            .addColumnsInfo(ColumnInfo.newBuilder().setColumnId(2))
+            .build();
+    try (AnalyzeClient client = session.createAnalyzeClient()) {
+      AnalyzeColumnsResp resp =
+          client.analyzeColumns(START_TS, request, Collections.singletonList(range("a", "b")));
+      assertEquals(2, resp.getCollectorsCount());
+      assertEquals(2, resp.getCollectors(1).getCount());
+      assertEquals(
+          Arrays.asList(ByteString.copyFromUtf8("v1"), ByteString.copyFromUtf8("v2")),
+          resp.getCollectors(1).getSamplesList());
+      assertFalse(resp.hasPkHist());
+    }
+    server.clearAllMap();
+  }
+
+  @Test
+  public void splitBoundsTest() {
+    Histogram hist =
+        Histogram.newBuilder()
+            .addBuckets(bucket("a", 10))
+            .addBuckets(bucket("b", 20))
+            .addBuckets(bucket("c", 30))
+            .addBuckets(bucket("d", 40))
+            .build();
+    assertEquals(bounds("b"), AnalyzeClient.splitBounds(hist, 2));
+    assertEquals(bounds("a", "b", "c"), AnalyzeClient.splitBounds(hist, 4));
+    assertEquals(bounds(), AnalyzeClient.splitBounds(hist, 1));
+
+    // a bucket larger than several parts ends all of them
+    Histogram skewed =
+        Histogram.newBuilder()
+            .addBuckets(bucket("a", 1))
+            .addBuckets(bucket("b", 39))
+            .addBuckets(bucket("c", 40))
+            .build();
+    assertEquals(bounds("b"), AnalyzeClient.splitBounds(skewed, 4));
+  }
+}
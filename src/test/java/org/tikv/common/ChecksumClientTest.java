@@ -0,0 +1,90 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.common;
+
+import static org.junit.Assert.*;
+
+import com.pingcap.tidb.tipb.ChecksumRequest;
+import com.pingcap.tidb.tipb.ChecksumResponse;
+import com.pingcap.tidb.tipb.ChecksumScanOn;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import org.junit.Test;
+import org.tikv.coprocessor.ChecksumClient;
+import org.tikv.coprocessor.CoprocessorClient;
+import org.tikv.kvproto.Coprocessor;
+import org.tikv.kvproto.Pdpb;
+
+public class ChecksumClientTest extends MockServerTest {
+  // the checksum computed by the mock server
+  private static long checksum(String... kvs) {
+    long checksum = 0;
+    for (int i = 0; i < kvs.length; i += 2) {
+      CRC32 crc = new CRC32();
+      crc.update(kvs[i].getBytes());
+      crc.update(kvs[i + 1].getBytes());
+      checksum ^= crc.getValue();
+    }
+    return checksum;
+  }
+
+  private void putData() {
+    server.put("a1", "v1");
+    server.put("a2", "value2");
+    server.put("b1", "v3");
+    server.put("c1", "v4");
+  }
+
+  @Test
+  public void checksumTest() throws Exception {
+    addStore();
+    putData();
+    try (ChecksumClient client = session.createChecksumClient()) {
+      ChecksumResponse checksum = client.checksum(START_TS, range("a", "c"));
+      assertEquals(checksum("a1", "v1", "a2", "value2", "b1", "v3"), checksum.getChecksum());
+      assertEquals(3, checksum.getTotalKvs());
+      assertEquals(16, checksum.getTotalBytes());
+    }
+    assertEquals(1, server.getChecksumRequests().size());
+    Coprocessor.Request request = server.getChecksumRequests().get(0);
+    assertEquals(CoprocessorClient.REQ_TYPE_CHECKSUM, request.getTp());
+    ChecksumRequest checksumRequest = ChecksumRequest.parseFrom(request.getData());
+    assertEquals(START_TS, checksumRequest.getStartTs());
+    assertEquals(ChecksumScanOn.Table, checksumRequest.getScanOn());
+    server.clearAllMap();
+  }
+
+  @Test
+  public void regionErrorTest() {
+    addStore();
+    putData();
+    server.putError("b", KVMockServer.STALE_EPOCH);
+    // the region and its store are loaded again after the error
+    pdServer.addGetRegionResp(
+        Pdpb.GetRegionResponse.newBuilder().setRegion(region.getMeta()).build());
+    addStore();
+    try (ChecksumClient client = session.createChecksumClient()) {
+      ChecksumResponse checksum =
+          client.checksum(
+              START_TS, ChecksumScanOn.Index, Arrays.asList(range("a", "b"), range("b", "c")));
+      // the region is counted once
+      assertEquals(checksum("a1", "v1", "a2", "value2", "b1", "v3"), checksum.getChecksum());
+      assertEquals(3, checksum.getTotalKvs());
+    }
+    assertEquals(2, server.getChecksumRequests().size());
+    server.clearAllMap();
+  }
+}
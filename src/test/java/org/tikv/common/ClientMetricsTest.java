@@ -0,0 +1,190 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.common;
+
+import static org.junit.Assert.*;
+
+import com.google.common.collect.ImmutableList;
+import com.google.protobuf.ByteString;
+import com.pingcap.tidb.tipb.DAGRequest;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.tikv.common.exception.GrpcException;
+import org.tikv.common.exception.RegionException;
+import org.tikv.common.metrics.OperationTrace;
+import org.tikv.common.metrics.SimpleClientMetrics;
+import org.tikv.common.region.RegionManager;
+import org.tikv.common.region.RegionStoreClient;
+import org.tikv.common.region.RegionStoreClient.RegionStoreClientBuilder;
+import org.tikv.common.streaming.StreamingResponse;
+import org.tikv.common.util.BackOffFunction.BackOffFuncType;
+import org.tikv.common.util.ConcreteBackOffer;
+import org.tikv.kvproto.Coprocessor;
+import org.tikv.kvproto.Metapb;
+import org.tikv.kvproto.TikvGrpc;
+
+public class ClientMetricsTest extends MockServerTest {
+  private static final String RAW_GET = TikvGrpc.METHOD_RAW_GET.getFullMethodName();
+
+  private RegionStoreClient createClient() {
+    Metapb.Store store =
+        Metapb.Store.newBuilder()
+            .setAddress(LOCAL_ADDR + ":" + port)
+            .setId(1)
+            .setState(Metapb.StoreState.Up)
+            .build();
+    RegionStoreClientBuilder builder =
+        new RegionStoreClientBuilder(
+            session.getConf(),
+            session.getChannelFactory(),
+            new RegionManager(session.getPDClient()));
+    return builder.build(region, store);
+  }
+
+  @Test
+  public void rpcMetricsTest() throws Exception {
+    SimpleClientMetrics metrics = new SimpleClientMetrics();
+    session.getConf().setMetrics(metrics);
+    String target = LOCAL_ADDR + ":" + port;
+    try (RegionStoreClient client = createClient()) {
+      server.put("key1", "value1");
+      client.rawGet(ConcreteBackOffer.newRawKVBackOff(), ByteString.copyFromUtf8("key1"));
+      SimpleClientMetrics.CallStats stats = metrics.getCallStats(RAW_GET, target);
+      assertEquals(1, stats.getCount());
+      assertEquals(0, stats.getFailures());
+      assertEquals(0, stats.getRetries());
+      assertTrue(stats.getRequestBytes() > 0);
+      assertTrue(stats.getResponseBytes() > "value1".length());
+
+      server.putError("key1", KVMockServer.NOT_LEADER);
+      client.rawGet(ConcreteBackOffer.newRawKVBackOff(), ByteString.copyFromUtf8("key1"));
+      assertEquals(3, stats.getCount());
+      assertEquals(1, stats.getRetries());
+      assertEquals(1, metrics.getErrorCount(RAW_GET, target, "NotLeader"));
+
+      server.putError("key1", KVMockServer.STALE_EPOCH);
+      try {
+        client.rawGet(ConcreteBackOffer.newRawKVBackOff(), ByteString.copyFromUtf8("key1"));
+        fail();
+      } catch (RegionException e) {
+        assertEquals(1, metrics.getErrorCount(RAW_GET, target, "StaleEpoch"));
+      }
+    }
+    assertTrue(metrics.toString().contains(RAW_GET + "@" + target + " count=4"));
+  }
+
+  @Test
+  public void unrecoverableErrorTest() throws Exception {
+    SimpleClientMetrics metrics = new SimpleClientMetrics();
+    session.getConf().setMetrics(metrics);
+    String method = TikvGrpc.METHOD_KV_DELETE_RANGE.getFullMethodName();
+    String target = LOCAL_ADDR + ":" + port;
+    try (RegionStoreClient client = createClient()) {
+      // the mock store does not implement DeleteRange, which is not retried
+      client.deleteRange(
+          ConcreteBackOffer.newRawKVBackOff(),
+          ByteString.copyFromUtf8("a"),
+          ByteString.copyFromUtf8("b"));
+      fail();
+    } catch (GrpcException e) {
+      assertEquals(1, metrics.getErrorCount(method, target, "UNIMPLEMENTED"));
+      assertEquals(1, metrics.getCallStats(method, target).getFailures());
+    }
+  }
+
+  @Test
+  public void streamingResponseBytesTest() throws Exception {
+    SimpleClientMetrics metrics = new SimpleClientMetrics();
+    session.getConf().setMetrics(metrics);
+    String method = TikvGrpc.METHOD_COPROCESSOR_STREAM.getFullMethodName();
+    try (RegionStoreClient client = createClient()) {
+      server.put("key1", "value1");
+      StreamingResponse response =
+          client.coprocessStreaming(
+              ConcreteBackOffer.newCopNextMaxBackOff(),
+              103,
+              DAGRequest.newBuilder().setStartTs(1).build().toByteString(),
+              ImmutableList.of(
+                  Coprocessor.KeyRange.newBuilder()
+                      .setStart(ByteString.copyFromUtf8("a"))
+                      .setEnd(ByteString.copyFromUtf8("z"))
+                      .build()));
+      long size = 0;
+      for (Coprocessor.Response resp : response) {
+        size += resp.getSerializedSize();
+      }
+      assertTrue(size > "value1".length());
+      assertEquals(size, metrics.getCallStats(method, LOCAL_ADDR + ":" + port).getResponseBytes());
+    }
+  }
+
+  @Test
+  public void latencyHistogramTest() {
+    SimpleClientMetrics metrics = new SimpleClientMetrics();
+    for (int i = 1; i <= 100; i++) {
+      metrics.recordCall("m", "t", TimeUnit.MICROSECONDS.toNanos(i * 10), 1, 2, i != 100);
+    }
+    SimpleClientMetrics.CallStats stats = metrics.getCallStats("m", "t");
+    assertEquals(100, stats.getCount());
+    assertEquals(1, stats.getFailures());
+    assertEquals(100, stats.getRequestBytes());
+    assertEquals(200, stats.getResponseBytes());
+    assertEquals(50500, stats.getLatency().getTotalMicros());
+    // 500us is in [256, 512), 990us in [512, 1024)
+    assertEquals(512, stats.getLatency().getPercentileMicros(0.5));
+    assertEquals(1024, stats.getLatency().getPercentileMicros(0.99));
+    assertEquals(1024, stats.getLatency().getMaxMicros());
+    assertNull(metrics.getCallStats("m", "other"));
+  }
+
+  @Test
+  public void operationTraceTest() throws Exception {
+    session.getConf().setSlowOperationThresholdMs(1);
+    try (RegionStoreClient client = createClient();
+        OperationTrace trace = OperationTrace.start("test", session.getConf())) {
+      // nested operations are part of the outer one
+      try (OperationTrace inner = OperationTrace.start("inner", session.getConf())) {
+        assertSame(trace, inner);
+      }
+      assertSame(trace, OperationTrace.current());
+
+      new RegionManager(session.getPDClient()).getRegionByKey(ByteString.copyFromUtf8("key1"));
+      assertEquals(1, trace.getPdLookupCount());
+
+      server.put("key1", "value1");
+      server.putError("key1", KVMockServer.NOT_LEADER);
+      ConcreteBackOffer backOffer = ConcreteBackOffer.newRawKVBackOff();
+      assertSame(trace, backOffer.getTrace());
+      client.rawGet(backOffer, ByteString.copyFromUtf8("key1"));
+      assertEquals(2, trace.getRpcCount(RAW_GET));
+      assertEquals(1, trace.getBackOffCount(BackOffFuncType.BoRegionMiss));
+      assertEquals(
+          backOffer.getTotalSleep(), trace.getBackOffMillis(BackOffFuncType.BoRegionMiss));
+      assertEquals(
+          backOffer.getTotalSleep(),
+          (int) backOffer.getSleepByType().get(BackOffFuncType.BoRegionMiss));
+      assertEquals(1, backOffer.getErrors().size());
+      assertTrue(trace.toString().contains(RAW_GET + " 2 in "));
+    }
+    assertNull(OperationTrace.current());
+    assertNull(ConcreteBackOffer.newRawKVBackOff().getTrace());
+
+    session.getConf().setSlowOperationThresholdMs(0);
+    assertNull(OperationTrace.start("disabled", session.getConf()));
+    // tracing is off by default
+    assertNull(OperationTrace.start("default", TiConfiguration.createDefault(LOCAL_ADDR)));
+  }
+}
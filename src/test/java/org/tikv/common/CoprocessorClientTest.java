@@ -0,0 +1,141 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.common;
+
+import static org.junit.Assert.*;
+
+import com.google.protobuf.ByteString;
+import com.pingcap.tidb.tipb.ColumnInfo;
+import com.pingcap.tidb.tipb.DAGRequest;
+import com.pingcap.tidb.tipb.StreamResponse;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import org.tikv.common.codec.TableCodec;
+import org.tikv.coprocessor.CoprocessorClient;
+import org.tikv.coprocessor.CoprocessorClient.RegionTask;
+import org.tikv.coprocessor.DAGBuilder;
+import org.tikv.kvproto.Coprocessor;
+import org.tikv.kvproto.Kvrpcpb;
+import org.tikv.kvproto.Metapb;
+import org.tikv.kvproto.Pdpb;
+
+public class CoprocessorClientTest extends MockServerTest {
+  private static DAGRequest scan() {
+    return DAGBuilder.tableScan(
+            1, Collections.singletonList(ColumnInfo.newBuilder().setColumnId(1).build()))
+        .limit(10)
+        .build(START_TS);
+  }
+
+  private static String data(List<StreamResponse> responses) {
+    StringBuilder sb = new StringBuilder();
+    responses.forEach(response -> sb.append(response.getData().toStringUtf8()));
+    return sb.toString();
+  }
+
+  @Test
+  public void executeTest() throws Exception {
+    addStore();
+    for (int i = 0; i < 3; i++) {
+      server.put(TableCodec.encodeRowKey(1, i), ByteString.copyFromUtf8("abc".substring(i, i + 1)));
+    }
+    server.put(TableCodec.encodeRowKey(2, 0), ByteString.copyFromUtf8("x"));
+    try (CoprocessorClient client = session.createCoprocessorClient()) {
+      List<StreamResponse> responses =
+          client.execute(scan(), Collections.singletonList(TableCodec.recordRange(1)));
+      assertEquals("abc", data(responses));
+    }
+    List<Coprocessor.Request> requests = server.getCoprocessorStreamRequests();
+    assertEquals(1, requests.size());
+    assertEquals(CoprocessorClient.REQ_TYPE_DAG, requests.get(0).getTp());
+    assertEquals(
+        Collections.singletonList(TableCodec.recordRange(1)), requests.get(0).getRangesList());
+    DAGRequest dag = DAGRequest.parseFrom(requests.get(0).getData());
+    assertEquals(START_TS, dag.getStartTs());
+    assertEquals(Collections.singletonList(0), dag.getOutputOffsetsList());
+    server.clearAllMap();
+  }
+
+  @Test
+  public void regionErrorTest() {
+    addStore();
+    server.put("a1", "a");
+    server.put("b1", "b");
+    server.putError("b", KVMockServer.STALE_EPOCH);
+    // the region and its store are loaded again after the error
+    pdServer.addGetRegionResp(
+        Pdpb.GetRegionResponse.newBuilder().setRegion(region.getMeta()).build());
+    addStore();
+    try (CoprocessorClient client = session.createCoprocessorClient()) {
+      List<StreamResponse> responses =
+          client.execute(scan(), Arrays.asList(range("a", "b"), range("b", "c")));
+      // the response of the first range streamed before the error is not duplicated
+      assertEquals("ab", data(responses));
+    }
+    assertEquals(2, server.getCoprocessorStreamRequests().size());
+    server.clearAllMap();
+  }
+
+  @Test
+  public void lockTest() {
+    addStore();
+    server.put("a", "a");
+    server.put("b", "b");
+    server.putLock(
+        Kvrpcpb.LockInfo.newBuilder()
+            .setKey(ByteString.copyFromUtf8("b"))
+            .setPrimaryLock(ByteString.copyFromUtf8("b"))
+            .setLockVersion(1L << 18)
+            .build());
+    try (CoprocessorClient client = session.createCoprocessorClient()) {
+      assertEquals("ab", data(client.execute(scan(), Collections.singletonList(range("a", "c")))));
+    }
+    assertEquals(0, server.getLockCount());
+    assertEquals(1, server.getResolveLockRequests().size());
+    assertEquals(2, server.getCoprocessorStreamRequests().size());
+    server.clearAllMap();
+  }
+
+  @Test
+  public void splitRangesByRegionTest() {
+    List<Coprocessor.KeyRange> ranges =
+        Arrays.asList(range("a", "b"), range("c", "x"), range("y", ""));
+    try (CoprocessorClient client = session.createCoprocessorClient()) {
+      // all ranges are in the region of the mock server
+      List<RegionTask> tasks = client.splitRangesByRegion(ranges);
+      assertEquals(1, tasks.size());
+      assertEquals(region.getId(), tasks.get(0).getRegion().getId());
+      assertEquals(ranges, tasks.get(0).getRanges());
+    }
+
+    // PD returns encoded keys
+    ByteString m = GrpcUtils.encodeKey("m".getBytes());
+    Metapb.Region left = region.getMeta().toBuilder().setId(1).setEndKey(m).build();
+    Metapb.Region right = region.getMeta().toBuilder().setId(2).setStartKey(m).build();
+    pdServer.addGetRegionResp(Pdpb.GetRegionResponse.newBuilder().setRegion(left).build());
+    pdServer.addGetRegionResp(Pdpb.GetRegionResponse.newBuilder().setRegion(right).build());
+    try (CoprocessorClient client = session.createCoprocessorClient()) {
+      List<RegionTask> tasks = client.splitRangesByRegion(ranges);
+      assertEquals(2, tasks.size());
+      assertEquals(1, tasks.get(0).getRegion().getId());
+      assertEquals(Arrays.asList(range("a", "b"), range("c", "m")), tasks.get(0).getRanges());
+      assertEquals(2, tasks.get(1).getRegion().getId());
+      assertEquals(Arrays.asList(range("m", "x"), range("y", "")), tasks.get(1).getRanges());
+    }
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.common;
+
+import static org.junit.Assert.*;
+
+import com.google.protobuf.ByteString;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.function.BooleanSupplier;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tikv.importer.EngineImporter;
+import org.tikv.kvproto.ImportSstpb;
+
+public class EngineImporterTest extends MockServerTest {
+  private ImportKVMockServer importer;
+
+  @Before
+  public void startImporter() throws Exception {
+    importer = new ImportKVMockServer();
+    importer.start();
+  }
+
+  @After
+  public void stopImporter() {
+    importer.stop();
+  }
+
+  private EngineImporter createEngineImporter() {
+    return session.createEngineImporter(LOCAL_ADDR + ":" + importer.port);
+  }
+
+  private static ByteString key(int i) {
+    return ByteString.copyFromUtf8(String.format("key%08d", i));
+  }
+
+  private static ByteString value(int i) {
+    return ByteString.copyFromUtf8(String.format("%0100d", i));
+  }
+
+  @Test
+  public void importTest() {
+    // about 3 MB, several batches
+    int count = 25000;
+    ByteString uuid;
+    try (EngineImporter engine = createEngineImporter()) {
+      uuid = engine.getUuid();
+      for (int i = count - 1; i >= 0; i--) {
+        engine.put(key(i), value(i));
+      }
+      assertEquals(count, engine.importEngine());
+    }
+    assertEquals(count, importer.getImportedCount());
+    for (int i = 0; i < count; i++) {
+      assertEquals(value(i), importer.getImported(key(i)));
+    }
+    assertEquals(1, importer.getImportedCommitTs().size());
+    assertTrue(importer.getImportedCommitTs().iterator().next() > 0);
+    assertEquals(
+        Arrays.asList(ImportSstpb.SwitchMode.Import, ImportSstpb.SwitchMode.Normal),
+        importer.getSwitchModeRequests());
+    assertEquals(Collections.singletonList(uuid), importer.getCleanedEngines());
+  }
+
+  @Test
+  public void retryTest() {
+    importer.failWriteStreams(2);
+    try (EngineImporter engine = createEngineImporter()) {
+      for (int i = 0; i < 100; i++) {
+        engine.put(key(i), value(i));
+      }
+      assertEquals(100, engine.importEngine());
+    }
+    assertEquals(3, importer.getWriteStreamCount());
+    assertEquals(100, importer.getImportedCount());
+    assertEquals(value(42), importer.getImported(key(42)));
+  }
+
+  private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10_000;
+    while (!condition.getAsBoolean()) {
+      assertTrue(System.currentTimeMillis() < deadline);
+      Thread.sleep(10);
+    }
+  }
+
+  @Test
+  public void cancelTest() throws InterruptedException {
+    try (EngineImporter engine = createEngineImporter()) {
+      // a little over one batch, sent on a stream which is not completed yet
+      for (int i = 0; i < 10000; i++) {
+        engine.put(key(i), value(i));
+      }
+      waitFor(() -> importer.getReceivedBatchCount() == 1);
+    }
+    // the open stream is cancelled instead of being left half-open
+    waitFor(() -> importer.getCancelledStreamCount() == 1);
+    assertEquals(0, importer.getWriteStreamCount());
+    assertEquals(0, importer.getImportedCount());
+  }
+
+  @Test
+  public void closeTest() {
+    ByteString uuid;
+    try (EngineImporter engine = createEngineImporter()) {
+      uuid = engine.getUuid();
+      engine.put(key(1), value(1));
+    }
+    assertEquals(0, importer.getImportedCount());
+    assertEquals(Collections.singletonList(uuid), importer.getCleanedEngines());
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.common;
+
+import static org.junit.Assert.*;
+
+import com.google.protobuf.ByteString;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import org.tikv.common.meta.TiTimestamp;
+import org.tikv.kvproto.Kvrpcpb;
+import org.tikv.kvproto.Metapb;
+import org.tikv.txn.GCWorker;
+
+public class GCWorkerTest extends MockServerTest {
+  private static final long SAFE_POINT = 100L << 18;
+
+  @Test
+  public void gcTest() {
+    pdServer.addGetStoreResp(
+        GrpcUtils.makeGetStoreResponse(
+            pdServer.getClusterId(),
+            GrpcUtils.makeStore(13, LOCAL_ADDR + ":" + port, Metapb.StoreState.Up)));
+    // more locks than a single scan returns
+    for (int i = 0; i < 1500; i++) {
+      long txn = (i % 3 + 1L) << 18;
+      server.putLock(
+          Kvrpcpb.LockInfo.newBuilder()
+              .setKey(ByteString.copyFromUtf8(String.format("key%05d", i)))
+              .setPrimaryLock(ByteString.copyFromUtf8(String.format("key%05d", i % 3)))
+              .setLockVersion(txn)
+              .build());
+    }
+    server.putTxnStatus(1L << 18, (1L << 18) + 1);
+    // a lock newer than the safe point is kept
+    server.putLock(
+        Kvrpcpb.LockInfo.newBuilder()
+            .setKey(ByteString.copyFromUtf8("new"))
+            .setPrimaryLock(ByteString.copyFromUtf8("new"))
+            .setLockVersion(SAFE_POINT + 1)
+            .build());
+
+    GCWorker worker = session.createGCWorker();
+    List<String> progress = Collections.synchronizedList(new ArrayList<>());
+    worker.setProgressListener(
+        (phase, finished, total) -> progress.add(phase + ":" + finished + "/" + total));
+    assertEquals(SAFE_POINT, worker.gc(SAFE_POINT));
+    assertEquals(SAFE_POINT, pdServer.getGCSafePoint());
+    assertEquals(1, server.getLockCount());
+    assertEquals(Collections.singletonList(SAFE_POINT), server.getGCSafePoints());
+    assertEquals("[RESOLVE_LOCKS:1/1, GC:1/1]", progress.toString());
+    // one status check per txn
+    assertEquals(3, server.getCleanupRequests().size());
+
+    // an older safe point is skipped
+    assertEquals(SAFE_POINT, worker.gc(SAFE_POINT - 1));
+    assertEquals(1, server.getGCSafePoints().size());
+    server.clearAllMap();
+  }
+
+  @Test
+  public void liveLockTest() {
+    pdServer.addGetStoreResp(
+        GrpcUtils.makeGetStoreResponse(
+            pdServer.getClusterId(),
+            GrpcUtils.makeStore(13, LOCAL_ADDR + ":" + port, Metapb.StoreState.Up)));
+    long now = System.currentTimeMillis();
+    long liveTxn = new TiTimestamp(now, 0).getVersion();
+    long safePoint = new TiTimestamp(now + 60_000, 0).getVersion();
+    server.putLock(
+        Kvrpcpb.LockInfo.newBuilder()
+            .setKey(ByteString.copyFromUtf8("expired"))
+            .setPrimaryLock(ByteString.copyFromUtf8("expired"))
+            .setLockVersion(1L << 18)
+            .build());
+    // a big txn holding its locks for minutes
+    server.putLock(
+        Kvrpcpb.LockInfo.newBuilder()
+            .setKey(ByteString.copyFromUtf8("live"))
+            .setPrimaryLock(ByteString.copyFromUtf8("live"))
+            .setLockVersion(liveTxn)
+            .setLockTtl(600_000)
+            .build());
+
+    GCWorker worker = session.createGCWorker();
+    // the round runs right below the live txn instead of waiting for its locks
+    assertEquals(liveTxn - 1, worker.gc(safePoint));
+    assertEquals(liveTxn - 1, pdServer.getGCSafePoint());
+    assertEquals(Collections.singletonList(liveTxn - 1), server.getGCSafePoints());
+    assertEquals(1, server.getLockCount());
+    server.clearAllMap();
+  }
+}
@@ -24,7 +24,7 @@ import org.tikv.kvproto.Metapb.*;
 import org.tikv.kvproto.Pdpb.*;
 
 public class GrpcUtils {
-  private static ResponseHeader makeDefaultHeader(long clusterId) {
+  static ResponseHeader makeDefaultHeader(long clusterId) {
     return ResponseHeader.newBuilder().setClusterId(clusterId).build();
   }
 
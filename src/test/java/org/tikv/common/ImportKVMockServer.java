@@ -0,0 +1,234 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.common;
+
+import static org.tikv.common.key.Key.toRawKey;
+
+import com.google.protobuf.ByteString;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import org.tikv.common.key.Key;
+import org.tikv.kvproto.ImportKVGrpc;
+import org.tikv.kvproto.ImportKvpb;
+import org.tikv.kvproto.ImportSstpb;
+
+/**
+ * A tikv-importer keeping engines in memory. Imported pairs are kept with their commit timestamp
+ * instead of being ingested into a cluster.
+ */
+public class ImportKVMockServer extends ImportKVGrpc.ImportKVImplBase {
+  public int port;
+  private Server server;
+  // pairs written to each open engine
+  private final Map<ByteString, TreeMap<Key, ImportKvpb.Mutation>> engines = new HashMap<>();
+  private final Map<ByteString, Long> commitTsMap = new HashMap<>();
+  private final Set<ByteString> closedEngines = new HashSet<>();
+  private final List<ByteString> cleanedEngines = new ArrayList<>();
+  private final TreeMap<Key, ByteString> importedData = new TreeMap<>();
+  private final Set<Long> importedCommitTs = new HashSet<>();
+  private final List<ImportSstpb.SwitchMode> switchModeRequests = new ArrayList<>();
+  private int writeStreamCount;
+  private int receivedBatchCount;
+  private int cancelledStreamCount;
+  // number of the next write streams to fail
+  private int writeStreamFailures;
+
+  public synchronized ByteString getImported(ByteString key) {
+    return importedData.get(toRawKey(key));
+  }
+
+  public synchronized int getImportedCount() {
+    return importedData.size();
+  }
+
+  public synchronized Set<Long> getImportedCommitTs() {
+    return new HashSet<>(importedCommitTs);
+  }
+
+  public synchronized List<ByteString> getCleanedEngines() {
+    return new ArrayList<>(cleanedEngines);
+  }
+
+  public synchronized List<ImportSstpb.SwitchMode> getSwitchModeRequests() {
+    return new ArrayList<>(switchModeRequests);
+  }
+
+  public synchronized int getWriteStreamCount() {
+    return writeStreamCount;
+  }
+
+  public synchronized int getReceivedBatchCount() {
+    return receivedBatchCount;
+  }
+
+  public synchronized int getCancelledStreamCount() {
+    return cancelledStreamCount;
+  }
+
+  /** Makes the next count write streams fail once they are completed. */
+  public synchronized void failWriteStreams(int count) {
+    writeStreamFailures = count;
+  }
+
+  @Override
+  public synchronized void switchMode(
+      ImportKvpb.SwitchModeRequest request,
+      StreamObserver<ImportKvpb.SwitchModeResponse> responseObserver) {
+    switchModeRequests.add(request.getRequest().getMode());
+    responseObserver.onNext(ImportKvpb.SwitchModeResponse.getDefaultInstance());
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public synchronized void openEngine(
+      ImportKvpb.OpenEngineRequest request,
+      StreamObserver<ImportKvpb.OpenEngineResponse> responseObserver) {
+    engines.putIfAbsent(request.getUuid(), new TreeMap<>());
+    responseObserver.onNext(ImportKvpb.OpenEngineResponse.getDefaultInstance());
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public StreamObserver<ImportKvpb.WriteEngineRequest> writeEngine(
+      StreamObserver<ImportKvpb.WriteEngineResponse> responseObserver) {
+    return new StreamObserver<ImportKvpb.WriteEngineRequest>() {
+      private ByteString uuid;
+      private final List<ImportKvpb.WriteBatch> batches = new ArrayList<>();
+
+      @Override
+      public void onNext(ImportKvpb.WriteEngineRequest request) {
+        if (request.getChunkCase() == ImportKvpb.WriteEngineRequest.ChunkCase.HEAD) {
+          uuid = request.getHead().getUuid();
+        } else {
+          batches.add(request.getBatch());
+          synchronized (ImportKVMockServer.this) {
+            receivedBatchCount++;
+          }
+        }
+      }
+
+      @Override
+      public void onError(Throwable t) {
+        synchronized (ImportKVMockServer.this) {
+          cancelledStreamCount++;
+        }
+      }
+
+      @Override
+      public void onCompleted() {
+        ImportKvpb.WriteEngineResponse.Builder builder =
+            ImportKvpb.WriteEngineResponse.newBuilder();
+        synchronized (ImportKVMockServer.this) {
+          writeStreamCount++;
+          if (writeStreamFailures > 0) {
+            writeStreamFailures--;
+            responseObserver.onError(Status.UNAVAILABLE.asRuntimeException());
+            return;
+          }
+          TreeMap<Key, ImportKvpb.Mutation> engine = engines.get(uuid);
+          if (engine == null || closedEngines.contains(uuid)) {
+            builder.setError(engineNotFound(uuid));
+          } else {
+            for (ImportKvpb.WriteBatch batch : batches) {
+              for (ImportKvpb.Mutation mutation : batch.getMutationsList()) {
+                engine.put(toRawKey(mutation.getKey()), mutation);
+              }
+              commitTsMap.put(uuid, batch.getCommitTs());
+            }
+          }
+        }
+        responseObserver.onNext(builder.build());
+        responseObserver.onCompleted();
+      }
+    };
+  }
+
+  @Override
+  public synchronized void closeEngine(
+      ImportKvpb.CloseEngineRequest request,
+      StreamObserver<ImportKvpb.CloseEngineResponse> responseObserver) {
+    ImportKvpb.CloseEngineResponse.Builder builder = ImportKvpb.CloseEngineResponse.newBuilder();
+    if (engines.containsKey(request.getUuid())) {
+      closedEngines.add(request.getUuid());
+    } else {
+      builder.setError(engineNotFound(request.getUuid()));
+    }
+    responseObserver.onNext(builder.build());
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public synchronized void importEngine(
+      ImportKvpb.ImportEngineRequest request,
+      StreamObserver<ImportKvpb.ImportEngineResponse> responseObserver) {
+    ByteString uuid = request.getUuid();
+    if (!closedEngines.contains(uuid) || request.getPdAddr().isEmpty()) {
+      responseObserver.onError(Status.FAILED_PRECONDITION.asRuntimeException());
+      return;
+    }
+    for (Map.Entry<Key, ImportKvpb.Mutation> entry : engines.get(uuid).entrySet()) {
+      importedData.put(entry.getKey(), entry.getValue().getValue());
+    }
+    if (commitTsMap.containsKey(uuid)) {
+      importedCommitTs.add(commitTsMap.get(uuid));
+    }
+    responseObserver.onNext(ImportKvpb.ImportEngineResponse.getDefaultInstance());
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public synchronized void cleanupEngine(
+      ImportKvpb.CleanupEngineRequest request,
+      StreamObserver<ImportKvpb.CleanupEngineResponse> responseObserver) {
+    engines.remove(request.getUuid());
+    closedEngines.remove(request.getUuid());
+    cleanedEngines.add(request.getUuid());
+    responseObserver.onNext(ImportKvpb.CleanupEngineResponse.getDefaultInstance());
+    responseObserver.onCompleted();
+  }
+
+  private static ImportKvpb.Error engineNotFound(ByteString uuid) {
+    return ImportKvpb.Error.newBuilder()
+        .setEngineNotFound(ImportKvpb.Error.EngineNotFound.newBuilder().setUuid(uuid))
+        .build();
+  }
+
+  public void start() throws IOException {
+    try (ServerSocket s = new ServerSocket(0)) {
+      port = s.getLocalPort();
+    }
+    server = ServerBuilder.forPort(port).addService(this).build().start();
+
+    Runtime.getRuntime().addShutdownHook(new Thread(ImportKVMockServer.this::stop));
+  }
+
+  public void stop() {
+    if (server != null) {
+      server.shutdown();
+    }
+  }
+}
@@ -19,26 +19,47 @@ import static org.tikv.common.key.Key.toRawKey;
 
 import com.google.common.collect.ImmutableList;
 import com.google.protobuf.ByteString;
+import com.pingcap.tidb.tipb.AnalyzeColumnsResp;
+import com.pingcap.tidb.tipb.AnalyzeIndexResp;
+import com.pingcap.tidb.tipb.AnalyzeReq;
+import com.pingcap.tidb.tipb.AnalyzeType;
+import com.pingcap.tidb.tipb.Bucket;
+import com.pingcap.tidb.tipb.CMSketch;
+import com.pingcap.tidb.tipb.CMSketchRow;
+import com.pingcap.tidb.tipb.ChecksumRequest;
+import com.pingcap.tidb.tipb.ChecksumResponse;
 import com.pingcap.tidb.tipb.Chunk;
 import com.pingcap.tidb.tipb.DAGRequest;
+import com.pingcap.tidb.tipb.Histogram;
+import com.pingcap.tidb.tipb.SampleCollector;
 import com.pingcap.tidb.tipb.SelectResponse;
+import com.pingcap.tidb.tipb.StreamResponse;
 import io.grpc.Server;
 import io.grpc.ServerBuilder;
 import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.zip.CRC32;
 import org.tikv.common.key.Key;
 import org.tikv.common.region.TiRegion;
+import org.tikv.common.util.Pair;
+import org.tikv.coprocessor.CoprocessorClient;
+import org.tikv.importer.SstFileReader;
 import org.tikv.kvproto.Coprocessor;
 import org.tikv.kvproto.Errorpb;
 import org.tikv.kvproto.Errorpb.Error;
 import org.tikv.kvproto.Errorpb.NotLeader;
 import org.tikv.kvproto.Errorpb.ServerIsBusy;
 import org.tikv.kvproto.Errorpb.StaleEpoch;
+import org.tikv.kvproto.ImportSSTGrpc;
+import org.tikv.kvproto.ImportSstpb;
 import org.tikv.kvproto.Kvrpcpb;
 import org.tikv.kvproto.Kvrpcpb.Context;
+import org.tikv.kvproto.Metapb;
 import org.tikv.kvproto.TikvGrpc;
 
 public class KVMockServer extends TikvGrpc.TikvImplBase {
@@ -48,6 +69,27 @@ public class KVMockServer extends TikvGrpc.TikvImplBase {
   private TiRegion region;
   private TreeMap<Key, ByteString> dataMap = new TreeMap<>();
   private Map<ByteString, Integer> errorMap = new HashMap<>();
+  // commit version of each txn, 0 if it is rolled back
+  private Map<Long, Long> txnStatusMap = new HashMap<>();
+  private List<Kvrpcpb.CleanupRequest> cleanupRequests = new ArrayList<>();
+  private List<Kvrpcpb.ResolveLockRequest> resolveLockRequests = new ArrayList<>();
+  private TreeMap<Key, Kvrpcpb.LockInfo> lockMap = new TreeMap<>();
+  // commit version of the latest write of each key, prewrites of older txns conflict with it
+  private Map<Key, Long> commitTsMap = new HashMap<>();
+  private List<Long> gcSafePoints = new ArrayList<>();
+  private List<Kvrpcpb.PrewriteRequest> prewriteRequests = new ArrayList<>();
+  private List<Kvrpcpb.BatchRollbackRequest> batchRollbackRequests = new ArrayList<>();
+  private List<Coprocessor.Request> coprocessorStreamRequests = new ArrayList<>();
+  private List<Coprocessor.Request> checksumRequests = new ArrayList<>();
+  private List<Coprocessor.Request> analyzeRequests = new ArrayList<>();
+  private List<ImportSstpb.SwitchMode> switchModeRequests = new ArrayList<>();
+  // SST files uploaded, by uuid
+  private Map<ByteString, byte[]> uploadedSsts = new HashMap<>();
+  private List<ImportSstpb.IngestRequest> ingestRequests = new ArrayList<>();
+  // regions of the store by id as TiKV stores them, split by SplitRegion requests
+  private Map<Long, Metapb.Region> regions = new HashMap<>();
+  private long nextRegionId = 1000;
+  private List<ByteString> splitKeys = new ArrayList<>();
 
   // for KV error
   public static final int ABORT = 1;
@@ -70,6 +112,10 @@ public class KVMockServer extends TikvGrpc.TikvImplBase {
     dataMap.put(toRawKey(key), value);
   }
 
+  public synchronized ByteString get(ByteString key) {
+    return dataMap.get(toRawKey(key));
+  }
+
   public void remove(ByteString key) {
     dataMap.remove(toRawKey(key));
   }
@@ -86,9 +132,97 @@ public class KVMockServer extends TikvGrpc.TikvImplBase {
     errorMap.put(ByteString.copyFromUtf8(key), code);
   }
 
-  public void clearAllMap() {
+  public synchronized void putTxnStatus(long startVersion, long commitVersion) {
+    txnStatusMap.put(startVersion, commitVersion);
+  }
+
+  public synchronized void putLock(Kvrpcpb.LockInfo lock) {
+    lockMap.put(toRawKey(lock.getKey()), lock);
+  }
+
+  public synchronized void putCommitTs(String key, long commitVersion) {
+    commitTsMap.put(toRawKey(ByteString.copyFromUtf8(key)), commitVersion);
+  }
+
+  public synchronized int getLockCount() {
+    return lockMap.size();
+  }
+
+  public synchronized List<Long> getGCSafePoints() {
+    return new ArrayList<>(gcSafePoints);
+  }
+
+  public synchronized List<Kvrpcpb.CleanupRequest> getCleanupRequests() {
+    return new ArrayList<>(cleanupRequests);
+  }
+
+  public synchronized List<Kvrpcpb.ResolveLockRequest> getResolveLockRequests() {
+    return new ArrayList<>(resolveLockRequests);
+  }
+
+  public synchronized List<Kvrpcpb.PrewriteRequest> getPrewriteRequests() {
+    return new ArrayList<>(prewriteRequests);
+  }
+
+  public synchronized List<Kvrpcpb.BatchRollbackRequest> getBatchRollbackRequests() {
+    return new ArrayList<>(batchRollbackRequests);
+  }
+
+  public synchronized List<Coprocessor.Request> getCoprocessorStreamRequests() {
+    return new ArrayList<>(coprocessorStreamRequests);
+  }
+
+  public synchronized List<Coprocessor.Request> getChecksumRequests() {
+    return checksumRequests;
+  }
+
+  public synchronized List<Coprocessor.Request> getAnalyzeRequests() {
+    return analyzeRequests;
+  }
+
+  public synchronized List<ImportSstpb.SwitchMode> getSwitchModeRequests() {
+    return new ArrayList<>(switchModeRequests);
+  }
+
+  public synchronized int getUploadCount() {
+    return uploadedSsts.size();
+  }
+
+  public synchronized List<ImportSstpb.IngestRequest> getIngestRequests() {
+    return new ArrayList<>(ingestRequests);
+  }
+
+  public synchronized List<ByteString> getSplitKeys() {
+    return new ArrayList<>(splitKeys);
+  }
+
+  /** @return the region as TiKV stores it, null if there is no such region */
+  public synchronized Metapb.Region getRegion(long regionId) {
+    return regions.get(regionId);
+  }
+
+  public synchronized int getRegionCount() {
+    return regions.size();
+  }
+
+  public synchronized void clearAllMap() {
     dataMap.clear();
     errorMap.clear();
+    txnStatusMap.clear();
+    cleanupRequests.clear();
+    resolveLockRequests.clear();
+    lockMap.clear();
+    commitTsMap.clear();
+    gcSafePoints.clear();
+    prewriteRequests.clear();
+    batchRollbackRequests.clear();
+    coprocessorStreamRequests.clear();
+    checksumRequests.clear();
+    analyzeRequests.clear();
+    switchModeRequests.clear();
+    uploadedSsts.clear();
+    ingestRequests.clear();
+    splitKeys.clear();
   }
 
   private void verifyContext(Context context) throws Exception {
@@ -166,6 +300,67 @@ public class KVMockServer extends TikvGrpc.TikvImplBase {
     }
   }
 
+  @Override
+  public synchronized void rawScan(
+      Kvrpcpb.RawScanRequest request,
+      io.grpc.stub.StreamObserver<Kvrpcpb.RawScanResponse> responseObserver) {
+    try {
+      verifyContext(request.getContext());
+      ByteString key = request.getStartKey();
+      
+      Kvrpcpb.RawScanResponse.Builder builder = Kvrpcpb.RawScanResponse.newBuilder();
+      Integer errorCode = errorMap.remove(key);
+      if (errorCode != null) {
+        Error.Builder errBuilder = Error.newBuilder();
+        setErrorInfo(errorCode, errBuilder);
+        builder.setRegionError(errBuilder.build());
+      } else {
+        // an empty key is the maximum of Key but the start of the key space here
+        SortedMap<Key, ByteString> kvs = key.isEmpty() ? dataMap : dataMap.tailMap(toRawKey(key));
+        builder.addAllKvs(
+            kvs.entrySet()
+                .stream()
+                .limit(request.getLimit())
+                .map(
+                    kv ->
+                        Kvrpcpb.KvPair.newBuilder()
+                            .setKey(kv.getKey().toByteString())
+                            .setValue(kv.getValue())
+                            .build())
+                .collect(Collectors.toList()));
+      }
+      responseObserver.onNext(builder.build());
+      responseObserver.onCompleted();
+    } catch (Exception e) {
+      responseObserver.onError(Status.INTERNAL.asRuntimeException());
+    }
+  }
+
+  @Override
+  public synchronized void rawBatchPut(
+      Kvrpcpb.RawBatchPutRequest request,
+      io.grpc.stub.StreamObserver<Kvrpcpb.RawBatchPutResponse> responseObserver) {
+    try {
+      verifyContext(request.getContext());
+
+      Kvrpcpb.RawBatchPutResponse.Builder builder = Kvrpcpb.RawBatchPutResponse.newBuilder();
+      Integer errorCode = errorMap.remove(request.getPairs(0).getKey());
+      if (errorCode != null) {
+        Error.Builder errBuilder = Error.newBuilder();
+        setErrorInfo(errorCode, errBuilder);
+        builder.setRegionError(errBuilder.build());
+      } else {
+        for (Kvrpcpb.KvPair pair : request.getPairsList()) {
+          dataMap.put(toRawKey(pair.getKey()), pair.getValue());
+        }
+      }
+      responseObserver.onNext(builder.build());
+      responseObserver.onCompleted();
+    } catch (Exception e) {
+      responseObserver.onError(Status.INTERNAL.asRuntimeException());
+    }
+  }
+
   /** */
   public void rawDelete(
       Kvrpcpb.RawDeleteRequest request,
@@ -241,7 +436,7 @@ public class KVMockServer extends TikvGrpc.TikvImplBase {
         builder.setRegionError(errBuilder.build());
       } else {
         ByteString startKey = request.getStartKey();
-        SortedMap<Key, ByteString> kvs = dataMap.tailMap(toRawKey(startKey));
+        SortedMap<Key, ByteString> kvs = dataMap.tailMap(toRawKey(startKey, true));
         builder.addAllPairs(
             kvs.entrySet()
                 .stream()
@@ -295,12 +490,161 @@ public class KVMockServer extends TikvGrpc.TikvImplBase {
     }
   }
 
+  @Override
+  public void kvCleanup(
+      Kvrpcpb.CleanupRequest request,
+      io.grpc.stub.StreamObserver<Kvrpcpb.CleanupResponse> responseObserver) {
+    try {
+      verifyContext(request.getContext());
+      Kvrpcpb.CleanupResponse.Builder builder = Kvrpcpb.CleanupResponse.newBuilder();
+      synchronized (this) {
+        cleanupRequests.add(request);
+        Long commitVersion = txnStatusMap.get(request.getStartVersion());
+        if (commitVersion != null) {
+          builder.setCommitVersion(commitVersion);
+        }
+      }
+      responseObserver.onNext(builder.build());
+      responseObserver.onCompleted();
+    } catch (Exception e) {
+      responseObserver.onError(Status.INTERNAL.asRuntimeException());
+    }
+  }
+
+  @Override
+  public void kvResolveLock(
+      Kvrpcpb.ResolveLockRequest request,
+      io.grpc.stub.StreamObserver<Kvrpcpb.ResolveLockResponse> responseObserver) {
+    try {
+      verifyContext(request.getContext());
+      synchronized (this) {
+        resolveLockRequests.add(request);
+        Set<Long> txns = new HashSet<>();
+        txns.add(request.getStartVersion());
+        request.getTxnInfosList().forEach(txnInfo -> txns.add(txnInfo.getTxn()));
+        lockMap.values().removeIf(lock -> txns.contains(lock.getLockVersion()));
+      }
+      responseObserver.onNext(Kvrpcpb.ResolveLockResponse.getDefaultInstance());
+      responseObserver.onCompleted();
+    } catch (Exception e) {
+      responseObserver.onError(Status.INTERNAL.asRuntimeException());
+    }
+  }
+
+  @Override
+  public void kvPrewrite(
+      Kvrpcpb.PrewriteRequest request,
+      io.grpc.stub.StreamObserver<Kvrpcpb.PrewriteResponse> responseObserver) {
+    try {
+      verifyContext(request.getContext());
+      Kvrpcpb.PrewriteResponse.Builder builder = Kvrpcpb.PrewriteResponse.newBuilder();
+      synchronized (this) {
+        prewriteRequests.add(request);
+        for (Kvrpcpb.Mutation mutation : request.getMutationsList()) {
+          Long commitTs = commitTsMap.get(toRawKey(mutation.getKey()));
+          if (commitTs != null && commitTs > request.getStartVersion()) {
+            builder.addErrors(
+                Kvrpcpb.KeyError.newBuilder()
+                    .setConflict(
+                        Kvrpcpb.WriteConflict.newBuilder()
+                            .setStartTs(request.getStartVersion())
+                            .setConflictTs(commitTs)
+                            .setKey(mutation.getKey())
+                            .setPrimary(request.getPrimaryLock())));
+            continue;
+          }
+          putLock(
+              Kvrpcpb.LockInfo.newBuilder()
+                  .setKey(mutation.getKey())
+                  .setPrimaryLock(request.getPrimaryLock())
+                  .setLockVersion(request.getStartVersion())
+                  .setLockTtl(request.getLockTtl())
+                  .build());
+        }
+      }
+      responseObserver.onNext(builder.build());
+      responseObserver.onCompleted();
+    } catch (Exception e) {
+      responseObserver.onError(Status.INTERNAL.asRuntimeException());
+    }
+  }
+
+  @Override
+  public void kvBatchRollback(
+      Kvrpcpb.BatchRollbackRequest request,
+      io.grpc.stub.StreamObserver<Kvrpcpb.BatchRollbackResponse> responseObserver) {
+    try {
+      verifyContext(request.getContext());
+      synchronized (this) {
+        batchRollbackRequests.add(request);
+        for (ByteString key : request.getKeysList()) {
+          Kvrpcpb.LockInfo lock = lockMap.get(toRawKey(key));
+          if (lock != null && lock.getLockVersion() == request.getStartVersion()) {
+            lockMap.remove(toRawKey(key));
+          }
+        }
+      }
+      responseObserver.onNext(Kvrpcpb.BatchRollbackResponse.getDefaultInstance());
+      responseObserver.onCompleted();
+    } catch (Exception e) {
+      responseObserver.onError(Status.INTERNAL.asRuntimeException());
+    }
+  }
+
+  @Override
+  public void kvScanLock(
+      Kvrpcpb.ScanLockRequest request,
+      io.grpc.stub.StreamObserver<Kvrpcpb.ScanLockResponse> responseObserver) {
+    try {
+      verifyContext(request.getContext());
+      Kvrpcpb.ScanLockResponse.Builder builder = Kvrpcpb.ScanLockResponse.newBuilder();
+      synchronized (this) {
+        Key startKey = toRawKey(request.getStartKey(), true);
+        for (Kvrpcpb.LockInfo lock : lockMap.tailMap(startKey).values()) {
+          if (builder.getLocksCount() >= request.getLimit()) {
+            break;
+          }
+          if (lock.getLockVersion() <= request.getMaxVersion()) {
+            builder.addLocks(lock);
+          }
+        }
+      }
+      responseObserver.onNext(builder.build());
+      responseObserver.onCompleted();
+    } catch (Exception e) {
+      responseObserver.onError(Status.INTERNAL.asRuntimeException());
+    }
+  }
+
+  @Override
+  public void kvGC(
+      Kvrpcpb.GCRequest request, io.grpc.stub.StreamObserver<Kvrpcpb.GCResponse> responseObserver) {
+    try {
+      verifyContext(request.getContext());
+      synchronized (this) {
+        gcSafePoints.add(request.getSafePoint());
+      }
+      responseObserver.onNext(Kvrpcpb.GCResponse.getDefaultInstance());
+      responseObserver.onCompleted();
+    } catch (Exception e) {
+      responseObserver.onError(Status.INTERNAL.asRuntimeException());
+    }
+  }
+
   @Override
   public void coprocessor(
       Coprocessor.Request requestWrap,
       io.grpc.stub.StreamObserver<Coprocessor.Response> responseObserver) {
     try {
       verifyContext(requestWrap.getContext());
+      if (requestWrap.getTp() == CoprocessorClient.REQ_TYPE_CHECKSUM) {
+        checksum(requestWrap, responseObserver);
+        return;
+      }
+      if (requestWrap.getTp() == CoprocessorClient.REQ_TYPE_ANALYZE) {
+        analyze(requestWrap, responseObserver);
+        return;
+      }
 
       DAGRequest request = DAGRequest.parseFrom(requestWrap.getData());
       if (request.getStartTs() == 0) {
@@ -346,17 +690,313 @@ public class KVMockServer extends TikvGrpc.TikvImplBase {
     }
   }
 
+  /**
+   * Checksums the ranges, the checksum of a pair is the CRC32 of its key and value instead of the
+   * CRC64 of TiKV. A region error put on the start of a range is returned instead.
+   */
+  private synchronized void checksum(
+      Coprocessor.Request requestWrap,
+      io.grpc.stub.StreamObserver<Coprocessor.Response> responseObserver)
+      throws Exception {
+    ChecksumRequest request = ChecksumRequest.parseFrom(requestWrap.getData());
+    if (request.getStartTs() == 0) {
+      throw new Exception();
+    }
+    checksumRequests.add(requestWrap);
+    ChecksumResponse.Builder builder = ChecksumResponse.newBuilder();
+    for (Coprocessor.KeyRange keyRange : requestWrap.getRangesList()) {
+      Integer errorCode = errorMap.remove(keyRange.getStart());
+      if (errorCode != null) {
+        Error.Builder errBuilder = Error.newBuilder();
+        setErrorInfo(errorCode, errBuilder);
+        responseObserver.onNext(
+            Coprocessor.Response.newBuilder().setRegionError(errBuilder).build());
+        responseObserver.onCompleted();
+        return;
+      }
+      for (Map.Entry<Key, ByteString> kv :
+          dataMap.subMap(toRawKey(keyRange.getStart()), toRawKey(keyRange.getEnd())).entrySet()) {
+        CRC32 crc = new CRC32();
+        crc.update(kv.getKey().getBytes());
+        crc.update(kv.getValue().toByteArray());
+        builder
+            .setChecksum(builder.getChecksum() ^ crc.getValue())
+            .setTotalKvs(builder.getTotalKvs() + 1)
+            .setTotalBytes(
+                builder.getTotalBytes() + kv.getKey().getBytes().length + kv.getValue().size());
+      }
+    }
+    responseObserver.onNext(
+        Coprocessor.Response.newBuilder().setData(builder.build().toByteString()).build());
+    responseObserver.onCompleted();
+  }
+
+  /**
+   * Analyzes the ranges. An index is analyzed into a histogram with a bucket per key and a 1x1
+   * sketch counting them, columns into a collector per column sampling every value. A region error
+   * put on the start of a range is returned instead.
+   */
+  private synchronized void analyze(
+      Coprocessor.Request requestWrap,
+      io.grpc.stub.StreamObserver<Coprocessor.Response> responseObserver)
+      throws Exception {
+    AnalyzeReq request = AnalyzeReq.parseFrom(requestWrap.getData());
+    if (request.getStartTs() == 0) {
+      throw new Exception();
+    }
+    analyzeRequests.add(requestWrap);
+    List<Map.Entry<Key, ByteString>> kvs = new ArrayList<>();
+    for (Coprocessor.KeyRange keyRange : requestWrap.getRangesList()) {
+      Integer errorCode = errorMap.remove(keyRange.getStart());
+      if (errorCode != null) {
+        Error.Builder errBuilder = Error.newBuilder();
+        setErrorInfo(errorCode, errBuilder);
+        responseObserver.onNext(
+            Coprocessor.Response.newBuilder().setRegionError(errBuilder).build());
+        responseObserver.onCompleted();
+        return;
+      }
+      kvs.addAll(
+          dataMap.subMap(toRawKey(keyRange.getStart()), toRawKey(keyRange.getEnd())).entrySet());
+    }
+    ByteString data;
+    if (request.getTp() == AnalyzeType.TypeIndex) {
+      Histogram.Builder hist = Histogram.newBuilder().setNdv(kvs.size());
+      for (int i = 0; i < kvs.size(); i++) {
+        ByteString key = ByteString.copyFrom(kvs.get(i).getKey().getBytes());
+        hist.addBuckets(
+            Bucket.newBuilder()
+                .setLowerBound(key)
+                .setUpperBound(key)
+                .setCount(i + 1)
+                .setRepeats(1));
+      }
+      CMSketch cms =
+          CMSketch.newBuilder()
+              .addRows(CMSketchRow.newBuilder().addCounters(kvs.size()))
+              .build();
+      data = AnalyzeIndexResp.newBuilder().setHist(hist).setCms(cms).build().toByteString();
+    } else {
+      AnalyzeColumnsResp.Builder builder = AnalyzeColumnsResp.newBuilder();
+      for (int i = 0; i < request.getColReq().getColumnsInfoCount(); i++) {
+        SampleCollector.Builder collector = SampleCollector.newBuilder().setCount(kvs.size());
+        kvs.forEach(kv -> collector.addSamples(kv.getValue()));
+        builder.addCollectors(collector);
+      }
+      data = builder.build().toByteString();
+    }
+    responseObserver.onNext(Coprocessor.Response.newBuilder().setData(data).build());
+    responseObserver.onCompleted();
+  }
+
+  /**
+   * Streams a response per range, its data is the values in the range concatenated. A region
+   * error put on the start of a range, or a lock in it, ends the stream.
+   */
+  @Override
+  public void coprocessorStream(
+      Coprocessor.Request requestWrap,
+      io.grpc.stub.StreamObserver<Coprocessor.Response> responseObserver) {
+    try {
+      verifyContext(requestWrap.getContext());
+      DAGRequest request = DAGRequest.parseFrom(requestWrap.getData());
+      if (request.getStartTs() == 0) {
+        throw new Exception();
+      }
+      synchronized (this) {
+        coprocessorStreamRequests.add(requestWrap);
+        for (Coprocessor.KeyRange keyRange : requestWrap.getRangesList()) {
+          Integer errorCode = errorMap.remove(keyRange.getStart());
+          if (errorCode != null) {
+            Error.Builder errBuilder = Error.newBuilder();
+            setErrorInfo(errorCode, errBuilder);
+            responseObserver.onNext(
+                Coprocessor.Response.newBuilder().setRegionError(errBuilder).build());
+            break;
+          }
+          Key start = toRawKey(keyRange.getStart());
+          Key end = toRawKey(keyRange.getEnd());
+          Optional<Kvrpcpb.LockInfo> lock =
+              lockMap
+                  .subMap(start, end)
+                  .values()
+                  .stream()
+                  .filter(l -> l.getLockVersion() <= request.getStartTs())
+                  .findFirst();
+          if (lock.isPresent()) {
+            responseObserver.onNext(
+                Coprocessor.Response.newBuilder().setLocked(lock.get()).build());
+            break;
+          }
+          ByteString data = ByteString.EMPTY;
+          for (ByteString value : dataMap.subMap(start, end).values()) {
+            data = data.concat(value);
+          }
+          responseObserver.onNext(
+              Coprocessor.Response.newBuilder()
+                  .setData(StreamResponse.newBuilder().setData(data).build().toByteString())
+                  .setRange(keyRange)
+                  .build());
+        }
+      }
+      responseObserver.onCompleted();
+    } catch (Exception e) {
+      responseObserver.onError(Status.INTERNAL.asRuntimeException());
+    }
+  }
+
+  @Override
+  public synchronized void splitRegion(
+      Kvrpcpb.SplitRegionRequest request,
+      StreamObserver<Kvrpcpb.SplitRegionResponse> responseObserver) {
+    Kvrpcpb.SplitRegionResponse.Builder builder = Kvrpcpb.SplitRegionResponse.newBuilder();
+    Metapb.Region parent = regions.get(request.getContext().getRegionId());
+    Integer errorCode = errorMap.remove(request.getSplitKey());
+    if (errorCode != null || parent == null) {
+      Error.Builder errBuilder = Error.newBuilder();
+      setErrorInfo(errorCode == null ? REGION_NOT_FOUND : errorCode, errBuilder);
+      builder.setRegionError(errBuilder.build());
+    } else if (!parent.getRegionEpoch().equals(request.getContext().getRegionEpoch())) {
+      builder.setRegionError(Error.newBuilder().setStaleEpoch(StaleEpoch.getDefaultInstance()));
+    } else {
+      splitKeys.add(request.getSplitKey());
+      ByteString splitKey = GrpcUtils.encodeKey(request.getSplitKey().toByteArray());
+      Metapb.RegionEpoch epoch =
+          parent
+              .getRegionEpoch()
+              .toBuilder()
+              .setVersion(parent.getRegionEpoch().getVersion() + 1)
+              .build();
+      Metapb.Region left = parent.toBuilder().setEndKey(splitKey).setRegionEpoch(epoch).build();
+      Metapb.Region.Builder right =
+          parent.toBuilder().setId(nextRegionId++).setStartKey(splitKey).setRegionEpoch(epoch);
+      right.clearPeers();
+      for (Metapb.Peer peer : parent.getPeersList()) {
+        right.addPeers(peer.toBuilder().setId(nextRegionId++));
+      }
+      regions.put(left.getId(), left);
+      regions.put(right.getId(), right.build());
+      builder.setLeft(left).setRight(right);
+    }
+    responseObserver.onNext(builder.build());
+    responseObserver.onCompleted();
+  }
+
+  /**
+   * The ImportSST service of the store. Ingested SST files are checked against their meta and
+   * their pairs are put into the data of the store, the region error of the first key of the file
+   * is returned if any.
+   */
+  private class ImportSSTService extends ImportSSTGrpc.ImportSSTImplBase {
+    @Override
+    public void switchMode(
+        ImportSstpb.SwitchModeRequest request,
+        StreamObserver<ImportSstpb.SwitchModeResponse> responseObserver) {
+      synchronized (KVMockServer.this) {
+        switchModeRequests.add(request.getMode());
+      }
+      responseObserver.onNext(ImportSstpb.SwitchModeResponse.getDefaultInstance());
+      responseObserver.onCompleted();
+    }
+
+    @Override
+    public StreamObserver<ImportSstpb.UploadRequest> upload(
+        StreamObserver<ImportSstpb.UploadResponse> responseObserver) {
+      return new StreamObserver<ImportSstpb.UploadRequest>() {
+        private ImportSstpb.SSTMeta meta;
+        private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+
+        @Override
+        public void onNext(ImportSstpb.UploadRequest request) {
+          if (request.getChunkCase() == ImportSstpb.UploadRequest.ChunkCase.META) {
+            meta = request.getMeta();
+          } else {
+            data.write(request.getData().toByteArray(), 0, request.getData().size());
+          }
+        }
+
+        @Override
+        public void onError(Throwable t) {}
+
+        @Override
+        public void onCompleted() {
+          byte[] file = data.toByteArray();
+          CRC32 crc32 = new CRC32();
+          crc32.update(file);
+          if (meta == null
+              || meta.getLength() != file.length
+              || meta.getCrc32() != (int) crc32.getValue()) {
+            responseObserver.onError(Status.INVALID_ARGUMENT.asRuntimeException());
+            return;
+          }
+          synchronized (KVMockServer.this) {
+            uploadedSsts.put(meta.getUuid(), file);
+          }
+          responseObserver.onNext(ImportSstpb.UploadResponse.getDefaultInstance());
+          responseObserver.onCompleted();
+        }
+      };
+    }
+
+    @Override
+    public void ingest(
+        ImportSstpb.IngestRequest request,
+        StreamObserver<ImportSstpb.IngestResponse> responseObserver) {
+      try {
+        ImportSstpb.IngestResponse.Builder builder = ImportSstpb.IngestResponse.newBuilder();
+        synchronized (KVMockServer.this) {
+          verifyContext(request.getContext());
+          ingestRequests.add(request);
+          ImportSstpb.SSTMeta meta = request.getSst();
+          Integer errorCode = errorMap.remove(meta.getRange().getStart());
+          if (errorCode != null) {
+            Error.Builder errBuilder = Error.newBuilder();
+            setErrorInfo(errorCode, errBuilder);
+            builder.setError(errBuilder.build());
+          } else {
+            byte[] file = uploadedSsts.get(meta.getUuid());
+            if (file == null) {
+              throw new Exception("SST file not uploaded");
+            }
+            for (Pair<ByteString, ByteString> entry : new SstFileReader(file).getEntries()) {
+              // strips the data key prefix
+              put(entry.first.substring(1), entry.second);
+            }
+          }
+        }
+        responseObserver.onNext(builder.build());
+        responseObserver.onCompleted();
+      } catch (Exception e) {
+        responseObserver.onError(Status.INTERNAL.asRuntimeException());
+      }
+    }
+  }
+
   public int start(TiRegion region) throws IOException {
     try (ServerSocket s = new ServerSocket(0)) {
       port = s.getLocalPort();
     }
-    server = ServerBuilder.forPort(port).addService(this).build().start();
+    server =
+        ServerBuilder.forPort(port).addService(this).addService(new ImportSSTService()).build();
+    server.start();
 
     this.region = region;
+    Metapb.Region meta = region.getMeta();
+    // the region as TiKV stores it, with encoded keys
+    regions.put(
+        meta.getId(),
+        meta.toBuilder()
+            .setStartKey(encodeRegionKey(meta.getStartKey()))
+            .setEndKey(encodeRegionKey(meta.getEndKey()))
+            .build());
     Runtime.getRuntime().addShutdownHook(new Thread(KVMockServer.this::stop));
     return port;
   }
 
+  private static ByteString encodeRegionKey(ByteString key) {
+    return key.isEmpty() ? key : GrpcUtils.encodeKey(key.toByteArray());
+  }
+
   public void stop() {
     if (server != null) {
       server.shutdown();
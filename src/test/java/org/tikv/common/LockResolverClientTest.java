@@ -0,0 +1,99 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.common;
+
+import static org.junit.Assert.*;
+
+import com.google.protobuf.ByteString;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.tikv.common.region.RegionManager;
+import org.tikv.common.region.RegionStoreClient;
+import org.tikv.common.region.RegionStoreClient.RegionStoreClientBuilder;
+import org.tikv.common.util.ConcreteBackOffer;
+import org.tikv.kvproto.Kvrpcpb;
+import org.tikv.kvproto.Metapb;
+import org.tikv.txn.Lock;
+
+public class LockResolverClientTest extends MockServerTest {
+  // start ts with a physical time long ago, so the locks are expired
+  private static final long COMMITTED_TXN = 1L << 18;
+  private static final long ROLLED_BACK_TXN = 2L << 18;
+
+  private RegionStoreClientBuilder createBuilder() {
+    pdServer.addGetStoreResp(
+        GrpcUtils.makeGetStoreResponse(
+            pdServer.getClusterId(),
+            GrpcUtils.makeStore(13, LOCAL_ADDR + ":" + port, Metapb.StoreState.Up)));
+    return new RegionStoreClientBuilder(
+        session.getConf(), session.getChannelFactory(), new RegionManager(session.getPDClient()));
+  }
+
+  private static Lock makeLock(String key, String primary, long txnID) {
+    return new Lock(
+        Kvrpcpb.LockInfo.newBuilder()
+            .setKey(ByteString.copyFromUtf8(key))
+            .setPrimaryLock(ByteString.copyFromUtf8(primary))
+            .setLockVersion(txnID)
+            .setLockTtl(0)
+            .build());
+  }
+
+  @Test
+  public void resolveLocksTest() throws Exception {
+    server.putTxnStatus(COMMITTED_TXN, COMMITTED_TXN + 1);
+    server.putTxnStatus(ROLLED_BACK_TXN, 0);
+    List<Lock> locks = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      locks.add(makeLock("a" + i, "a0", COMMITTED_TXN));
+      locks.add(makeLock("b" + i, "b0", ROLLED_BACK_TXN));
+    }
+
+    RegionStoreClientBuilder builder = createBuilder();
+    try (RegionStoreClient client = builder.build(region)) {
+      assertTrue(
+          client.lockResolverClient.resolveLocks(ConcreteBackOffer.newGetBackOff(), locks));
+    }
+    // one status check per txn, one resolve request for the region
+    assertEquals(2, server.getCleanupRequests().size());
+    List<Kvrpcpb.ResolveLockRequest> requests = server.getResolveLockRequests();
+    assertEquals(1, requests.size());
+    List<Kvrpcpb.TxnInfo> txnInfos = requests.get(0).getTxnInfosList();
+    assertEquals(2, txnInfos.size());
+    for (Kvrpcpb.TxnInfo txnInfo : txnInfos) {
+      if (txnInfo.getTxn() == COMMITTED_TXN) {
+        assertEquals(COMMITTED_TXN + 1, txnInfo.getStatus());
+      } else {
+        assertEquals(ROLLED_BACK_TXN, txnInfo.getTxn());
+        assertEquals(0, txnInfo.getStatus());
+      }
+    }
+
+    // the status is cached for all the clients of the builder
+    try (RegionStoreClient client = builder.build(region)) {
+      assertTrue(
+          client.lockResolverClient.resolveLocks(
+              ConcreteBackOffer.newGetBackOff(), locks.subList(0, 1)));
+    }
+    assertEquals(2, server.getCleanupRequests().size());
+    requests = server.getResolveLockRequests();
+    assertEquals(2, requests.size());
+    assertEquals(COMMITTED_TXN, requests.get(1).getStartVersion());
+    assertEquals(COMMITTED_TXN + 1, requests.get(1).getCommitVersion());
+    server.clearAllMap();
+  }
+}
@@ -5,6 +5,8 @@ import org.junit.After;
 import org.junit.Before;
 import org.tikv.common.TiConfiguration.KVMode;
 import org.tikv.common.region.TiRegion;
+import org.tikv.common.util.KeyRangeUtils;
+import org.tikv.kvproto.Coprocessor;
 import org.tikv.kvproto.Kvrpcpb;
 import org.tikv.kvproto.Metapb;
 import org.tikv.kvproto.Pdpb;
@@ -14,6 +16,8 @@ public class MockServerTest {
   public PDMockServer pdServer;
   public static final String LOCAL_ADDR = "127.0.0.1";
   static final long CLUSTER_ID = 1024;
+  // start ts of the requests made by the tests
+  static final long START_TS = 100L << 18;
   public int port;
   public TiSession session;
   public TiRegion region;
@@ -54,4 +58,27 @@ public class MockServerTest {
     server.stop();
     session.close();
   }
+
+  /** Queues the store of the mock server for the next GetStore call to PD. */
+  protected void addStore() {
+    pdServer.addGetStoreResp(
+        GrpcUtils.makeGetStoreResponse(
+            pdServer.getClusterId(),
+            GrpcUtils.makeStore(13, LOCAL_ADDR + ":" + port, Metapb.StoreState.Up)));
+  }
+
+  /** Queues the region for the next GetRegion call to PD. */
+  protected void addRegion() {
+    pdServer.addGetRegionResp(
+        Pdpb.GetRegionResponse.newBuilder().setRegion(region.getMeta()).build());
+  }
+
+  protected static Coprocessor.KeyRange range(String start, String end) {
+    return KeyRangeUtils.makeCoprocRange(
+        ByteString.copyFromUtf8(start), ByteString.copyFromUtf8(end));
+  }
+
+  protected static ByteString bytes(String s) {
+    return ByteString.copyFromUtf8(s);
+  }
 }
@@ -21,9 +21,15 @@ import io.grpc.Status;
 import io.grpc.stub.StreamObserver;
 import java.io.IOException;
 import java.net.ServerSocket;
+import java.util.ArrayList;
 import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongFunction;
 import org.tikv.kvproto.PDGrpc;
 import org.tikv.kvproto.Pdpb.*;
 
@@ -50,6 +56,12 @@ public class PDMockServer extends PDGrpc.PDImplBase {
     }
   }
 
+  private final AtomicInteger tsoCount = new AtomicInteger();
+
+  public int getTsoCount() {
+    return tsoCount.get();
+  }
+
   @Override
   public StreamObserver<TsoRequest> tso(StreamObserver<TsoResponse> resp) {
     return new StreamObserver<TsoRequest>() {
@@ -64,6 +76,7 @@ public class PDMockServer extends PDGrpc.PDImplBase {
 
       @Override
       public void onCompleted() {
+        tsoCount.incrementAndGet();
         resp.onNext(GrpcUtils.makeTsoResponse(clusterId, physical++, logical++));
         resp.onCompleted();
       }
@@ -92,10 +105,21 @@ public class PDMockServer extends PDGrpc.PDImplBase {
 
   private final Deque<GetRegionResponse> getRegionByIDResp = new LinkedBlockingDeque<>();
 
+  // answers the GetRegionByID requests when no response is queued
+  private volatile LongFunction<GetRegionResponse> getRegionByIDHandler;
+
+  public void setGetRegionByIDHandler(LongFunction<GetRegionResponse> handler) {
+    getRegionByIDHandler = handler;
+  }
+
   @Override
   public void getRegionByID(GetRegionByIDRequest request, StreamObserver<GetRegionResponse> resp) {
     try {
-      resp.onNext(getRegionByIDResp.removeFirst());
+      GetRegionResponse r = getRegionByIDResp.pollFirst();
+      if (r == null && getRegionByIDHandler != null) {
+        r = getRegionByIDHandler.apply(request.getRegionId());
+      }
+      resp.onNext(Objects.requireNonNull(r));
       resp.onCompleted();
     } catch (Exception e) {
       resp.onError(Status.INTERNAL.asRuntimeException());
@@ -117,6 +141,52 @@ public class PDMockServer extends PDGrpc.PDImplBase {
     }
   }
 
+  private final List<Long> scatteredRegions = new CopyOnWriteArrayList<>();
+
+  public List<Long> getScatteredRegions() {
+    return new ArrayList<>(scatteredRegions);
+  }
+
+  @Override
+  public void scatterRegion(
+      ScatterRegionRequest request, StreamObserver<ScatterRegionResponse> resp) {
+    scatteredRegions.add(request.getRegionId());
+    resp.onNext(
+        ScatterRegionResponse.newBuilder()
+            .setHeader(GrpcUtils.makeDefaultHeader(clusterId))
+            .build());
+    resp.onCompleted();
+  }
+
+  private volatile long gcSafePoint;
+
+  public long getGCSafePoint() {
+    return gcSafePoint;
+  }
+
+  @Override
+  public void getGCSafePoint(
+      GetGCSafePointRequest request, StreamObserver<GetGCSafePointResponse> resp) {
+    resp.onNext(
+        GetGCSafePointResponse.newBuilder()
+            .setHeader(GrpcUtils.makeDefaultHeader(clusterId))
+            .setSafePoint(gcSafePoint)
+            .build());
+    resp.onCompleted();
+  }
+
+  @Override
+  public synchronized void updateGCSafePoint(
+      UpdateGCSafePointRequest request, StreamObserver<UpdateGCSafePointResponse> resp) {
+    gcSafePoint = Math.max(gcSafePoint, request.getSafePoint());
+    resp.onNext(
+        UpdateGCSafePointResponse.newBuilder()
+            .setHeader(GrpcUtils.makeDefaultHeader(clusterId))
+            .setNewSafePoint(gcSafePoint)
+            .build());
+    resp.onCompleted();
+  }
+
   public void start(long clusterId) throws IOException {
     try (ServerSocket s = new ServerSocket(0)) {
       port = s.getLocalPort();
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.common;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tikv.common.exception.TiClientInternalException;
+import org.tikv.raw.RawExporter;
+import org.tikv.raw.RawImporter;
+
+public class RawDumpTest extends MockServerTest {
+  private Path dir;
+
+  @Before
+  public void createDir() throws IOException {
+    dir = Files.createTempDirectory("raw-dump");
+  }
+
+  @After
+  public void deleteDir() throws IOException {
+    try (Stream<Path> files = Files.list(dir)) {
+      for (Path file : files.collect(Collectors.toList())) {
+        Files.delete(file);
+      }
+    }
+    Files.delete(dir);
+  }
+
+  // each exporter and importer has a region manager of its own, which loads the region and store
+  private long export(String start, String end) {
+    addRegion();
+    addStore();
+    try (RawExporter exporter = session.createRawExporter()) {
+      return exporter.export(bytes(start), bytes(end), dir.toFile());
+    }
+  }
+
+  private long importDir() {
+    addRegion();
+    addStore();
+    try (RawImporter importer = session.createRawImporter()) {
+      return importer.importFrom(dir.toFile());
+    }
+  }
+
+  private List<Path> dumpFiles() throws IOException {
+    try (Stream<Path> files = Files.list(dir)) {
+      return files
+          .filter(f -> f.getFileName().toString().endsWith(".dump"))
+          .collect(Collectors.toList());
+    }
+  }
+
+  @Test
+  public void roundTripTest() throws IOException {
+    for (int i = 0; i < 1000; i++) {
+      server.put(String.format("k%04d", i), "v" + i);
+    }
+    assertEquals(1000, export("", ""));
+    assertEquals(1, dumpFiles().size());
+
+    server.clearAllMap();
+    assertEquals(1000, importDir());
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(bytes("v" + i), server.get(bytes(String.format("k%04d", i))));
+    }
+  }
+
+  @Test
+  public void resumeTest() throws IOException {
+    server.put("a", "1");
+    server.put("m", "2");
+    server.put("z", "3");
+    assertEquals(1, export("a", "m"));
+    // a temporary file left by a failed export is removed
+    File temp = dir.resolve("failed.dump.tmp").toFile();
+    assertTrue(temp.createNewFile());
+    // only [m, +inf) is left to export
+    assertEquals(2, export("a", ""));
+    assertFalse(temp.exists());
+    assertEquals(2, dumpFiles().size());
+    // nothing is left
+    assertEquals(0, export("", "n"));
+
+    server.clearAllMap();
+    assertEquals(3, importDir());
+    assertEquals(bytes("1"), server.get(bytes("a")));
+    assertEquals(bytes("2"), server.get(bytes("m")));
+    assertEquals(bytes("3"), server.get(bytes("z")));
+  }
+
+  @Test
+  public void tornManifestTest() throws IOException {
+    server.put("a", "1");
+    server.put("m", "2");
+    assertEquals(1, export("a", "m"));
+    // the last line of the manifest is torn by a crash during its append
+    Path manifest = dir.resolve("MANIFEST");
+    Files.write(manifest, "6d\t".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    assertEquals(1, export("a", ""));
+    assertEquals(2, Files.readAllLines(manifest).size());
+
+    server.clearAllMap();
+    assertEquals(2, importDir());
+
+    // a complete line is checked
+    Files.write(manifest, "6d\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    try {
+      importDir();
+      fail();
+    } catch (TiClientInternalException e) {
+      assertTrue(e.getCause().getMessage().startsWith("Invalid manifest line"));
+    }
+  }
+
+  @Test
+  public void regionErrorTest() {
+    server.put("a", "1");
+    server.put("b", "2");
+    // the region is loaded again after the error
+    addRegion();
+    server.putError("a", KVMockServer.STALE_EPOCH);
+    assertEquals(2, export("a", ""));
+
+    server.clearAllMap();
+    addRegion();
+    server.putError("a", KVMockServer.STALE_EPOCH);
+    assertEquals(2, importDir());
+    assertEquals(bytes("1"), server.get(bytes("a")));
+    assertEquals(bytes("2"), server.get(bytes("b")));
+  }
+
+  @Test
+  public void corruptedFileTest() throws IOException {
+    server.put("a", "1");
+    export("", "");
+    Path file = dumpFiles().get(0);
+    byte[] data = Files.readAllBytes(file);
+    data[data.length - 1] ^= 1;
+    Files.write(file, data);
+    try {
+      importDir();
+      fail();
+    } catch (UncheckedIOException e) {
+      assertTrue(e.getCause().getMessage().startsWith("Checksum mismatch"));
+    }
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.common;
+
+import static org.junit.Assert.*;
+
+import com.google.protobuf.ByteString;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import org.junit.Before;
+import org.junit.Test;
+import org.tikv.common.region.RegionSplitter;
+import org.tikv.common.region.TiRegion;
+import org.tikv.common.util.ByteStrings;
+import org.tikv.kvproto.Metapb;
+import org.tikv.kvproto.Pdpb;
+
+public class RegionSplitterTest extends MockServerTest {
+  // regions PD has been asked for, it reports them before their last split the first time
+  private final Set<Long> requestedRegions = ConcurrentHashMap.newKeySet();
+
+  @Before
+  public void setUpPD() {
+    pdServer.addGetStoreResp(
+        GrpcUtils.makeGetStoreResponse(
+            pdServer.getClusterId(),
+            GrpcUtils.makeStore(13, LOCAL_ADDR + ":" + port, Metapb.StoreState.Up)));
+    pdServer.setGetRegionByIDHandler(
+        id -> {
+          Metapb.Region region = server.getRegion(id);
+          if (requestedRegions.add(id)) {
+            Metapb.RegionEpoch epoch = region.getRegionEpoch();
+            region =
+                region
+                    .toBuilder()
+                    .setRegionEpoch(epoch.toBuilder().setVersion(epoch.getVersion() - 1))
+                    .build();
+          }
+          return Pdpb.GetRegionResponse.newBuilder()
+              .setRegion(region)
+              .setLeader(region.getPeers(0))
+              .build();
+        });
+  }
+
+  private static Set<ByteString> keySet(String... keys) {
+    return Arrays.stream(keys).map(RegionSplitterTest::bytes).collect(Collectors.toSet());
+  }
+
+  @Test
+  public void splitKeysTest() {
+    List<ByteString> keys = RegionSplitter.splitKeys(bytes("a"), bytes("b"), 4);
+    assertEquals(3, keys.size());
+    ByteString prev = bytes("a");
+    for (ByteString key : keys) {
+      assertTrue(ByteStrings.compare(prev, key) < 0);
+      prev = key;
+    }
+    assertTrue(ByteStrings.compare(prev, bytes("b")) < 0);
+    assertEquals(ByteString.copyFrom(new byte[] {'a', 0x40, 0}), keys.get(0));
+    assertEquals(ByteString.copyFrom(new byte[] {'a', (byte) 0x80, 0}), keys.get(1));
+
+    keys = RegionSplitter.splitKeys(ByteString.EMPTY, ByteString.EMPTY, 2);
+    assertEquals(1, keys.size());
+    assertEquals(ByteString.copyFrom(new byte[] {(byte) 0x80, 0}), keys.get(0));
+
+    assertTrue(RegionSplitter.splitKeys(bytes("a"), bytes("b"), 1).isEmpty());
+  }
+
+  @Test
+  public void splitTest() {
+    List<TiRegion> regions;
+    try (RegionSplitter splitter = session.createRegionSplitter()) {
+      regions =
+          splitter.split(Arrays.asList(bytes("c"), bytes("a"), bytes("b"), bytes("b"), bytes("")));
+    }
+    assertEquals(keySet("a", "b", "c"), new HashSet<>(server.getSplitKeys()));
+    assertEquals(4, server.getRegionCount());
+    assertEquals(4, regions.size());
+    Set<Long> ids = regions.stream().map(TiRegion::getId).collect(Collectors.toSet());
+    assertEquals(ids, new HashSet<>(pdServer.getScatteredRegions()));
+    for (TiRegion region : regions) {
+      assertEquals(server.getRegion(region.getId()).getRegionEpoch(), region.getRegionEpoch());
+    }
+  }
+
+  @Test
+  public void regionErrorTest() {
+    // the region is located again after the error
+    pdServer.addGetRegionResp(
+        Pdpb.GetRegionResponse.newBuilder().setRegion(region.getMeta()).build());
+    server.putError("b", KVMockServer.STALE_EPOCH);
+    try (RegionSplitter splitter = session.createRegionSplitter()) {
+      splitter.split(Arrays.asList(bytes("a"), bytes("b"), bytes("c")));
+    }
+    assertEquals(keySet("a", "b", "c"), new HashSet<>(server.getSplitKeys()));
+    assertEquals(4, server.getRegionCount());
+  }
+
+  @Test
+  public void splitRangeTest() {
+    List<TiRegion> regions;
+    try (RegionSplitter splitter = session.createRegionSplitter()) {
+      regions = splitter.split(bytes("a"), bytes("b"), 4);
+    }
+    assertEquals(3, server.getSplitKeys().size());
+    assertEquals(4, regions.size());
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.common;
+
+import static org.junit.Assert.*;
+
+import com.google.protobuf.ByteString;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Test;
+import org.tikv.common.meta.TiTimestamp;
+import org.tikv.common.region.RegionManager;
+import org.tikv.common.region.RegionStoreClient.RegionStoreClientBuilder;
+import org.tikv.kvproto.Kvrpcpb;
+import org.tikv.kvproto.Metapb;
+
+public class SnapshotTest extends MockServerTest {
+  private Snapshot createSnapshot(ExecutorService executor) {
+    pdServer.addGetStoreResp(
+        GrpcUtils.makeGetStoreResponse(
+            pdServer.getClusterId(),
+            GrpcUtils.makeStore(13, LOCAL_ADDR + ":" + port, Metapb.StoreState.Up)));
+    RegionStoreClientBuilder builder =
+        new RegionStoreClientBuilder(
+            session.getConf(),
+            session.getChannelFactory(),
+            new RegionManager(session.getPDClient()));
+    return new Snapshot(
+        session.getConf(), session.getPDClient(), builder, new TiTimestamp(1, 0), executor);
+  }
+
+  private void verifyBatchGet(Snapshot snapshot, int count) {
+    List<ByteString> keys = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      server.put(String.format("key%05d", i), String.format("value%05d", i));
+      keys.add(ByteString.copyFromUtf8(String.format("key%05d", i)));
+    }
+    List<Kvrpcpb.KvPair> kvs = snapshot.batchGet(keys);
+    assertEquals(count, kvs.size());
+    kvs.forEach(
+        kv ->
+            assertEquals(
+                kv.getKey().toStringUtf8().replace("key", "value"), kv.getValue().toStringUtf8()));
+  }
+
+  @Test
+  public void batchGetTest() throws Exception {
+    verifyBatchGet(createSnapshot(null), 10);
+    server.clearAllMap();
+  }
+
+  @Test
+  public void concurrentBatchGetTest() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      // more keys than a single request carries, so batches are sent concurrently
+      verifyBatchGet(createSnapshot(executor), 12000);
+    } finally {
+      executor.shutdownNow();
+      server.clearAllMap();
+    }
+  }
+}
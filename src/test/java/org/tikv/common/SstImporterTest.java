@@ -0,0 +1,100 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.common;
+
+import static org.junit.Assert.*;
+
+import com.google.protobuf.ByteString;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import org.tikv.importer.SstImporter;
+import org.tikv.kvproto.ImportSstpb;
+
+public class SstImporterTest extends MockServerTest {
+  private void assertValue(String key, String value) {
+    assertEquals(bytes(value), server.get(bytes(key)));
+  }
+
+  @Test
+  public void importTest() {
+    addStore();
+    try (SstImporter importer = session.createSstImporter()) {
+      importer.put(bytes("c"), bytes("3"));
+      importer.put(bytes("a"), bytes("1"));
+      importer.put(bytes("b"), bytes("2"));
+      importer.put(bytes("a"), bytes("11"));
+      assertEquals(3, importer.importAll());
+      // the importer is emptied
+      assertEquals(0, importer.importAll());
+    }
+    List<ImportSstpb.IngestRequest> ingests = server.getIngestRequests();
+    assertEquals(1, ingests.size());
+    ImportSstpb.SSTMeta meta = ingests.get(0).getSst();
+    assertEquals(region.getId(), meta.getRegionId());
+    assertEquals(region.getRegionEpoch(), meta.getRegionEpoch());
+    assertEquals(bytes("a"), meta.getRange().getStart());
+    assertEquals(bytes("c"), meta.getRange().getEnd());
+    assertEquals(16, meta.getUuid().size());
+    assertEquals(1, server.getUploadCount());
+    assertEquals(ImportSstpb.SwitchMode.Import, server.getSwitchModeRequests().get(0));
+    assertEquals(ImportSstpb.SwitchMode.Normal, server.getSwitchModeRequests().get(1));
+
+    assertValue("a", "11");
+    assertValue("b", "2");
+    assertValue("c", "3");
+  }
+
+  @Test
+  public void largeFileTest() {
+    addStore();
+    // several upload chunks, sent as the stream becomes ready
+    byte[] value = new byte[1024];
+    Random random = new Random(1);
+    try (SstImporter importer = session.createSstImporter()) {
+      for (int i = 0; i < 4096; i++) {
+        random.nextBytes(value);
+        importer.put(bytes(String.format("k%05d", i)), ByteString.copyFrom(value));
+      }
+      assertEquals(4096, importer.importAll());
+    }
+    assertEquals(1, server.getUploadCount());
+    assertEquals(ByteString.copyFrom(value), server.get(bytes("k04095")));
+  }
+
+  @Test
+  public void regionErrorTest() {
+    addStore();
+    // the region is loaded again after the error
+    addRegion();
+    server.putError("a", KVMockServer.STALE_EPOCH);
+    try (SstImporter importer = session.createSstImporter()) {
+      importer.put(bytes("a"), bytes("1"));
+      importer.put(bytes("b"), bytes("2"));
+      assertEquals(2, importer.importAll());
+    }
+    assertEquals(2, server.getIngestRequests().size());
+    assertValue("a", "1");
+    assertValue("b", "2");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void emptyValueTest() {
+    try (SstImporter importer = session.createSstImporter()) {
+      importer.put(bytes("a"), ByteString.EMPTY);
+    }
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.common;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import org.junit.Test;
+import org.tikv.common.key.Key;
+import org.tikv.common.util.Pair;
+import org.tikv.kvproto.Metapb;
+import org.tikv.txn.CommitResult;
+import org.tikv.txn.ITransaction;
+import org.tikv.txn.TxnKVClient;
+
+public class TikvTransactionTest extends MockServerTest {
+  @Test
+  public void readOnlyCommitTest() throws Exception {
+    try (TxnKVClient client = session.createTxnClient()) {
+      ITransaction txn = client.begin();
+      assertTrue(txn.isReadOnly());
+      int tsoCount = pdServer.getTsoCount();
+      assertTrue(txn.commit());
+      assertEquals(CommitResult.Status.COMMITTED, txn.getCommitResult().getStatus());
+      assertEquals(0, txn.getCommitResult().getCommitTs());
+      // neither a commit ts nor a prewrite is needed
+      assertEquals(tsoCount, pdServer.getTsoCount());
+      assertTrue(server.getPrewriteRequests().isEmpty());
+
+      // a transaction writing and deleting the same key is not read-only
+      txn = client.begin();
+      txn.set("key".getBytes(), "value".getBytes());
+      txn.delete("key".getBytes());
+      assertFalse(txn.isReadOnly());
+    }
+  }
+
+  @Test
+  public void lockOnlyCommitTest() throws Exception {
+    pdServer.addGetStoreResp(
+        GrpcUtils.makeGetStoreResponse(
+            pdServer.getClusterId(),
+            GrpcUtils.makeStore(13, LOCAL_ADDR + ":" + port, Metapb.StoreState.Up)));
+    try (TxnKVClient client = session.createTxnClient()) {
+      ITransaction txn = client.begin();
+      txn.lockKeys(Key.toRawKey("a".getBytes()), Key.toRawKey("b".getBytes()));
+      assertFalse(txn.isReadOnly());
+      int tsoCount = pdServer.getTsoCount();
+      assertTrue(txn.commit());
+      // the locks are checked by the prewrite and rolled back without a commit ts
+      assertEquals(tsoCount, pdServer.getTsoCount());
+      assertEquals(1, server.getPrewriteRequests().size());
+      assertEquals(1, server.getBatchRollbackRequests().size());
+      assertEquals(0, server.getLockCount());
+      assertEquals(0, txn.getCommitResult().getCommitTs());
+    }
+    server.clearAllMap();
+  }
+
+  @Test
+  public void iteratorFromEmptyKeyTest() throws Exception {
+    pdServer.addGetStoreResp(
+        GrpcUtils.makeGetStoreResponse(
+            pdServer.getClusterId(),
+            GrpcUtils.makeStore(13, LOCAL_ADDR + ":" + port, Metapb.StoreState.Up)));
+    server.put("a", "1");
+    server.put("c", "3");
+    try (TxnKVClient client = session.createTxnClient()) {
+      ITransaction txn = client.begin();
+      txn.set("b".getBytes(), "2".getBytes());
+      // an empty start key scans from the first key
+      Iterator<Pair<byte[], byte[]>> iterator = txn.iterator(new byte[0], null);
+      List<String> keys = new ArrayList<>();
+      iterator.forEachRemaining(pair -> keys.add(new String(pair.first)));
+      assertEquals(Arrays.asList("a", "b", "c"), keys);
+      try {
+        txn.iteratorReverse(null);
+        fail();
+      } catch (IllegalArgumentException expected) {
+      }
+    }
+    server.clearAllMap();
+  }
+
+  @Test
+  public void bigTxnConflictTest() throws Exception {
+    pdServer.addGetStoreResp(
+        GrpcUtils.makeGetStoreResponse(
+            pdServer.getClusterId(),
+            GrpcUtils.makeStore(13, LOCAL_ADDR + ":" + port, Metapb.StoreState.Up)));
+    try (TxnKVClient client = session.createTxnClient()) {
+      ITransaction txn = client.beginBigTxn();
+      // a write committed after the txn started
+      server.putCommitTs("a", txn.getStartTS() + 1);
+      txn.set("a".getBytes(), "1".getBytes());
+      assertFalse(txn.commit());
+      // the retry policy sees the conflict, not a generic failure
+      CommitResult result = txn.getCommitResult();
+      assertEquals(CommitResult.Status.WRITE_CONFLICT, result.getStatus());
+      assertEquals(txn.getStartTS() + 1, result.getConflictCommitTs());
+      assertEquals(0, server.getLockCount());
+    }
+    server.clearAllMap();
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.common.codec;
+
+import static org.junit.Assert.*;
+
+import com.google.protobuf.ByteString;
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import org.junit.Test;
+import org.tikv.common.util.ByteStrings;
+
+public class CodecDataInputTest {
+  private static void readAll(CodecDataInput cdi) {
+    byte[] bytes = new byte[3];
+    cdi.readFully(bytes);
+    assertArrayEquals(new byte[] {1, 2, 3}, bytes);
+    assertTrue(cdi.readBoolean());
+    assertEquals(-1, cdi.readByte());
+    assertEquals(0x1234, cdi.readShort());
+    assertEquals('中', cdi.readChar());
+    assertEquals(Integer.MIN_VALUE + 7, cdi.readInt());
+    assertEquals(0x0102030405060708L, cdi.readLong());
+    assertEquals(1.5f, cdi.readFloat(), 0);
+    assertEquals(-2.25, cdi.readDouble(), 0);
+    assertEquals("utf\u0000é中", cdi.readUTF());
+    assertTrue(cdi.eof());
+  }
+
+  private static byte[] writeAll() {
+    CodecDataOutput cdo = new CodecDataOutput();
+    cdo.write(new byte[] {1, 2, 3});
+    cdo.writeBoolean(true);
+    cdo.writeByte(-1);
+    cdo.writeShort(0x1234);
+    cdo.writeChar('中');
+    cdo.writeInt(Integer.MIN_VALUE + 7);
+    cdo.writeLong(0x0102030405060708L);
+    cdo.writeFloat(1.5f);
+    cdo.writeDouble(-2.25);
+    cdo.writeUTF("utf\u0000é中");
+    return cdo.toBytes();
+  }
+
+  @Test
+  public void sourcesTest() {
+    byte[] bytes = writeAll();
+    readAll(new CodecDataInput(bytes));
+    readAll(new CodecDataInput(ByteStrings.wrap(bytes)));
+
+    // ranges inside larger arrays
+    byte[] padded = new byte[bytes.length + 10];
+    System.arraycopy(bytes, 0, padded, 5, bytes.length);
+    readAll(new CodecDataInput(padded, 5, bytes.length));
+    readAll(new CodecDataInput(ByteString.copyFrom(padded).substring(5, 5 + bytes.length)));
+    ByteBuffer heap = ByteBuffer.wrap(padded, 5, bytes.length).slice();
+    readAll(new CodecDataInput(heap));
+    assertEquals(bytes.length, heap.remaining());
+
+    // scattered ByteStrings and direct buffers are copied
+    ByteString rope =
+        ByteString.copyFrom(bytes, 0, 20).concat(ByteString.copyFrom(bytes, 20, bytes.length - 20));
+    readAll(new CodecDataInput(rope));
+    ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+    direct.put(bytes).flip();
+    readAll(new CodecDataInput(direct));
+  }
+
+  @Test
+  public void zeroCopyTest() {
+    byte[] bytes = {0, 1, 2, 3};
+    CodecDataInput cdi = new CodecDataInput(ByteStrings.wrap(bytes));
+    assertSame(bytes, cdi.toByteArray());
+    cdi.readByte();
+    ByteString view = cdi.readByteString(2);
+    assertSame(bytes, ByteStrings.arrayView(view).array());
+    assertEquals(ByteString.copyFrom(new byte[] {1, 2}), view);
+    assertArrayEquals(new byte[] {1, 2}, new CodecDataInput(bytes, 1, 2).toByteArray());
+  }
+
+  @Test
+  public void littleEndianTest() {
+    ByteBuffer buffer = ByteBuffer.allocate(64).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putInt(0x01020304).putLong(-5L).putFloat(0.5f).putDouble(3.25);
+    buffer.putInt(7).putInt(-8).putLong(9L).putLong(Long.MIN_VALUE);
+    buffer.flip();
+    CodecDataInput cdi = new CodecDataInput(buffer);
+    assertEquals(0x01020304, cdi.readIntLE());
+    assertEquals(-5L, cdi.readLongLE());
+    assertEquals(0.5f, cdi.readFloatLE(), 0);
+    assertEquals(3.25, cdi.readDoubleLE(), 0);
+    int[] ints = new int[3];
+    cdi.readInts(ints, 1, 2, ByteOrder.LITTLE_ENDIAN);
+    assertArrayEquals(new int[] {0, 7, -8}, ints);
+    long[] longs = new long[2];
+    cdi.readLongs(longs, 0, 2, ByteOrder.LITTLE_ENDIAN);
+    assertArrayEquals(new long[] {9L, Long.MIN_VALUE}, longs);
+    assertTrue(cdi.eof());
+  }
+
+  @Test
+  public void bulkBigEndianTest() {
+    CodecDataOutput cdo = new CodecDataOutput();
+    for (long i = -3; i < 3; i++) {
+      cdo.writeLong(i * 0x0101010101L);
+    }
+    CodecDataInput cdi = new CodecDataInput(cdo.toBytes());
+    long[] longs = new long[6];
+    cdi.readLongs(longs, 0, 6, ByteOrder.BIG_ENDIAN);
+    for (int i = 0; i < 6; i++) {
+      assertEquals((i - 3) * 0x0101010101L, longs[i]);
+    }
+  }
+
+  @Test
+  public void boundsTest() {
+    byte[] bytes = {1, 2, 3, 4, 5};
+    CodecDataInput cdi = new CodecDataInput(bytes, 1, 3);
+    assertEquals(3, cdi.size());
+    assertEquals(2, cdi.peekByte());
+    assertEquals(0x0203, cdi.readUnsignedShort());
+    assertEquals(1, cdi.available());
+    cdi.mark(cdi.currentPos());
+    try {
+      cdi.readShort();
+      fail();
+    } catch (RuntimeException e) {
+      assertTrue(e.getCause() instanceof EOFException);
+    }
+    cdi.reset();
+    // partial reads do not read past the range
+    assertEquals(0x0400, cdi.readPartialUnsignedShort());
+    assertTrue(cdi.eof());
+    cdi.reset();
+    assertEquals(0x0400000000000000L, cdi.readPartialLong());
+    cdi.reset();
+    assertEquals(1, cdi.skipBytes(5));
+    try {
+      cdi.readLongs(new long[1], 0, 1, ByteOrder.BIG_ENDIAN);
+      fail();
+    } catch (RuntimeException e) {
+      assertTrue(e.getCause() instanceof EOFException);
+    }
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.common.codec;
+
+import static org.junit.Assert.*;
+
+import com.google.protobuf.ByteString;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import org.junit.Test;
+
+public class CodecDataOutputTest {
+  private static void writeAll(DataOutput out) throws IOException {
+    out.write(0xab);
+    out.write(new byte[] {1, 2, 3});
+    out.write(new byte[] {4, 5, 6, 7}, 1, 2);
+    out.writeBoolean(true);
+    out.writeByte(-1);
+    out.writeShort(0x1234);
+    out.writeChar('中');
+    out.writeInt(Integer.MIN_VALUE + 7);
+    out.writeLong(0x0102030405060708L);
+    out.writeFloat(1.5f);
+    out.writeDouble(-2.25);
+    out.writeBytes("bytes");
+    out.writeChars("charsé");
+    out.writeUTF("utf\u0000é中");
+  }
+
+  @Test
+  public void sameAsDataOutputStreamTest() throws IOException {
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    writeAll(new DataOutputStream(expected));
+    // starts small to grow several times
+    CodecDataOutput cdo = new CodecDataOutput(1);
+    writeAll(cdo);
+    assertArrayEquals(expected.toByteArray(), cdo.toBytes());
+    assertEquals(expected.size(), cdo.size());
+    assertEquals(ByteString.copyFrom(expected.toByteArray()), cdo.toByteString());
+  }
+
+  @Test
+  public void toByteStringTest() {
+    CodecDataOutput cdo = new CodecDataOutput(4);
+    cdo.writeInt(1);
+    ByteString first = cdo.toByteString();
+    // writes after the buffer is shared do not change the ByteString
+    cdo.writeInt(2);
+    ByteString second = cdo.toByteString();
+    cdo.reset();
+    cdo.writeInt(3);
+    assertEquals(ByteString.copyFrom(new byte[] {0, 0, 0, 1}), first);
+    assertEquals(ByteString.copyFrom(new byte[] {0, 0, 0, 1, 0, 0, 0, 2}), second);
+    assertEquals(ByteString.copyFrom(new byte[] {0, 0, 0, 3}), cdo.toByteString());
+  }
+}
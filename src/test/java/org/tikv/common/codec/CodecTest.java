@@ -18,6 +18,8 @@ package org.tikv.common.codec;
 import static org.junit.Assert.*;
 import static org.tikv.common.codec.Codec.*;
 
+import java.io.EOFException;
+import java.util.Arrays;
 import org.junit.Test;
 import org.tikv.common.codec.Codec.*;
 
@@ -214,4 +216,47 @@ public class CodecTest {
     // byte[] result = BytesCodec.readBytes(cdi, false);
 
   }
+
+  @Test
+  public void bytesRoundTripTest() {
+    for (int len = 0; len <= 3 * 8 + 1; len++) {
+      byte[] data = new byte[len];
+      for (int i = 0; i < len; i++) {
+        data[i] = (byte) (i * 37 - 1);
+      }
+      CodecDataOutput cdo = new CodecDataOutput(1);
+      cdo.write(0x7f);
+      BytesCodec.writeBytes(cdo, data);
+      byte[] encoded = BytesCodec.encodeBytes(data);
+      assertEquals(BytesCodec.encodedLength(len), encoded.length);
+      assertEquals(1 + encoded.length, cdo.size());
+      assertArrayEquals(encoded, Arrays.copyOfRange(cdo.toBytes(), 1, cdo.size()));
+
+      // decodes in place after a prefix and leaves the bytes after it
+      byte[] framed = new byte[encoded.length + 3];
+      System.arraycopy(encoded, 0, framed, 2, encoded.length);
+      CodecDataInput cdi = new CodecDataInput(framed, 2, encoded.length + 1);
+      assertArrayEquals(data, BytesCodec.readBytes(cdi));
+      assertEquals(1, cdi.available());
+    }
+  }
+
+  @Test
+  public void readInvalidBytesTest() {
+    // padding bytes are not 0
+    byte[] badPadding = {1, 2, 3, 0, 0, 0, 1, 0, (byte) 250};
+    try {
+      BytesCodec.readBytes(new CodecDataInput(badPadding));
+      fail();
+    } catch (IllegalArgumentException e) {
+    }
+    // truncated after a full group
+    byte[] truncated = Arrays.copyOf(BytesCodec.encodeBytes(new byte[10]), 12);
+    try {
+      BytesCodec.readBytes(new CodecDataInput(truncated));
+      fail();
+    } catch (RuntimeException e) {
+      assertTrue(e.getCause() instanceof EOFException);
+    }
+  }
 }
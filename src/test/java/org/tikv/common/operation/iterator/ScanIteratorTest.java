@@ -0,0 +1,130 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.common.operation.iterator;
+
+import static org.junit.Assert.*;
+
+import com.google.protobuf.ByteString;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.NoSuchElementException;
+import org.junit.Test;
+import org.tikv.common.GrpcUtils;
+import org.tikv.common.TiConfiguration;
+import org.tikv.common.region.TiRegion;
+import org.tikv.kvproto.Kvrpcpb;
+import org.tikv.kvproto.Metapb;
+
+public class ScanIteratorTest {
+  private static ByteString bytes(String s) {
+    return ByteString.copyFromUtf8(s);
+  }
+
+  // region keys are encoded, except the empty ones
+  private static ByteString encode(String key) {
+    return key.isEmpty() ? ByteString.EMPTY : GrpcUtils.encodeKey(key.getBytes());
+  }
+
+  private static TiRegion region(String start, String end) {
+    Metapb.Region meta =
+        Metapb.Region.newBuilder()
+            .setId(1)
+            .setStartKey(encode(start))
+            .setEndKey(encode(end))
+            .addPeers(Metapb.Peer.newBuilder().setId(1).setStoreId(1))
+            .build();
+    return new TiRegion(
+        meta,
+        meta.getPeers(0),
+        Kvrpcpb.IsolationLevel.SI,
+        Kvrpcpb.CommandPri.Normal,
+        TiConfiguration.KVMode.TXN);
+  }
+
+  /** Scans a fixed list of regions, each with the pairs of its cache. */
+  private static final class FakeScanIterator extends ScanIterator {
+    private final Deque<TiRegion> regions = new ArrayDeque<>();
+    private final Deque<List<Kvrpcpb.KvPair>> caches = new ArrayDeque<>();
+
+    FakeScanIterator() {
+      this(bytes("a"));
+    }
+
+    FakeScanIterator(ByteString startKey) {
+      super(TiConfiguration.createDefault("127.0.0.1:2379"), null, startKey, ByteString.EMPTY, 100);
+    }
+
+    FakeScanIterator add(TiRegion region, String... keys) {
+      regions.add(region);
+      List<Kvrpcpb.KvPair> cache = new ArrayList<>();
+      for (String key : keys) {
+        cache.add(Kvrpcpb.KvPair.newBuilder().setKey(bytes(key)).build());
+      }
+      caches.add(cache);
+      return this;
+    }
+
+    @Override
+    TiRegion loadCurrentRegionToCache() {
+      currentCache = caches.poll();
+      return regions.poll();
+    }
+  }
+
+  @Test
+  public void emptyRegionsTest() {
+    FakeScanIterator iterator =
+        new FakeScanIterator()
+            .add(region("", "b"), "a")
+            .add(region("b", "c"))
+            .add(region("c", "d"))
+            .add(region("d", ""), "d", "e");
+    List<String> keys = new ArrayList<>();
+    while (iterator.hasNext()) {
+      keys.add(iterator.next().getKey().toStringUtf8());
+    }
+    assertEquals(Arrays.asList("a", "d", "e"), keys);
+    try {
+      iterator.next();
+      fail();
+    } catch (NoSuchElementException expected) {
+    }
+  }
+
+  @Test
+  public void allRegionsEmptyTest() {
+    FakeScanIterator iterator =
+        new FakeScanIterator().add(region("", "b")).add(region("b", ""));
+    assertFalse(iterator.hasNext());
+    assertEquals(Collections.emptyList(), new ArrayList<>(iterator.caches));
+  }
+
+  @Test
+  public void emptyStartKeyTest() {
+    // an empty start key is -INF, the scan stops after the last region
+    FakeScanIterator iterator =
+        new FakeScanIterator(ByteString.EMPTY)
+            .add(region("", "b"), "a")
+            .add(region("b", ""), "b");
+    List<String> keys = new ArrayList<>();
+    iterator.forEachRemaining(pair -> keys.add(pair.getKey().toStringUtf8()));
+    assertEquals(Arrays.asList("a", "b"), keys);
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.common.util;
+
+import static org.junit.Assert.*;
+
+import com.google.protobuf.ByteString;
+import java.lang.management.ManagementFactory;
+import java.util.function.Function;
+import org.junit.Test;
+import org.tikv.common.TiConfiguration;
+import org.tikv.common.key.Key;
+import org.tikv.common.region.TiRegion;
+import org.tikv.kvproto.Kvrpcpb;
+import org.tikv.kvproto.Metapb;
+
+public class ByteStringsTest {
+  private static final int VALUE_SIZE = 1024 * 1024;
+  private static final int OPS = 50;
+
+  @Test
+  public void wrapTest() {
+    byte[] bytes = {1, 2, 3};
+    ByteString wrapped = ByteStrings.wrap(bytes);
+    assertEquals(ByteString.copyFrom(bytes), wrapped);
+    assertSame(bytes, ByteStrings.unsafeGetBytes(wrapped));
+    assertSame(bytes, Key.toRawKey(wrapped).getBytes());
+    assertSame(bytes, ByteStrings.unsafeGetBytes(Key.toRawKey(bytes).toByteString()));
+
+    // partial and scattered ByteStrings are copied
+    assertArrayEquals(new byte[] {2, 3}, ByteStrings.unsafeGetBytes(wrapped.substring(1)));
+    ByteString rope = wrapped.concat(ByteString.copyFrom(new byte[200]));
+    assertArrayEquals(rope.toByteArray(), ByteStrings.unsafeGetBytes(rope));
+    assertEquals(0, ByteStrings.unsafeGetBytes(ByteString.EMPTY).length);
+  }
+
+  @Test
+  public void compareTest() {
+    ByteString a = ByteString.copyFrom(new byte[] {1, 2});
+    ByteString b = ByteString.copyFrom(new byte[] {1, (byte) 0xff});
+    assertTrue(ByteStrings.compare(a, b) < 0);
+    assertTrue(ByteStrings.compare(b, a) > 0);
+    ByteString bounded = ByteString.copyFrom(new byte[] {0, 1, 2}).substring(1);
+    assertEquals(0, ByteStrings.compare(a, bounded));
+    assertTrue(ByteStrings.compare(ByteString.EMPTY, a) < 0);
+    ByteString rope = a.concat(ByteString.copyFrom(new byte[200]));
+    assertTrue(ByteStrings.compare(a, rope) < 0);
+    assertTrue(ByteStrings.compare(rope, b) < 0);
+  }
+
+  @Test
+  public void regionContainsTest() {
+    Metapb.Region meta =
+        Metapb.Region.newBuilder()
+            .setStartKey(ByteString.copyFromUtf8("b"))
+            .setEndKey(ByteString.copyFromUtf8("d"))
+            .addPeers(Metapb.Peer.newBuilder().setId(1).setStoreId(1))
+            .build();
+    TiRegion region =
+        new TiRegion(
+            meta,
+            null,
+            Kvrpcpb.IsolationLevel.SI,
+            Kvrpcpb.CommandPri.Normal,
+            TiConfiguration.KVMode.RAW);
+    assertFalse(region.contains(ByteString.copyFromUtf8("a")));
+    assertTrue(region.contains(ByteString.copyFromUtf8("b")));
+    assertTrue(region.contains(ByteString.copyFromUtf8("c")));
+    assertFalse(region.contains(ByteString.copyFromUtf8("d")));
+  }
+
+  private static long allocatedBytesPerOp(Function<byte[], Object> op) {
+    com.sun.management.ThreadMXBean bean =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    byte[] value = new byte[VALUE_SIZE];
+    long id = Thread.currentThread().getId();
+    // warm up
+    for (int i = 0; i < OPS; i++) {
+      op.apply(value);
+    }
+    long start = bean.getThreadAllocatedBytes(id);
+    for (int i = 0; i < OPS; i++) {
+      op.apply(value);
+    }
+    return (bean.getThreadAllocatedBytes(id) - start) / OPS;
+  }
+
+  /** A value crossing the byte[] and ByteString layers and back, as a write and a read does. */
+  @Test
+  public void allocationTest() {
+    long copying =
+        allocatedBytesPerOp(
+            value ->
+                Key.toRawKey(ByteString.copyFrom(Key.toRawKey(value).getBytes()).toByteArray())
+                    .toByteString()
+                    .toByteArray());
+    long zeroCopy =
+        allocatedBytesPerOp(
+            value ->
+                ByteStrings.unsafeGetBytes(
+                    Key.toRawKey(ByteStrings.wrap(Key.toRawKey(value).getBytes())).toByteString()));
+    // the copies are gone, only the small wrapper objects are left
+    assertTrue("copying allocates " + copying, copying >= 3 * VALUE_SIZE);
+    assertTrue("zero copy allocates " + zeroCopy, zeroCopy < 1024);
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.coprocessor;
+
+import static org.junit.Assert.*;
+
+import com.google.protobuf.ByteString;
+import com.pingcap.tidb.tipb.Chunk;
+import com.pingcap.tidb.tipb.StreamResponse;
+import java.math.BigDecimal;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+import org.tikv.common.codec.Codec;
+import org.tikv.common.codec.Codec.*;
+import org.tikv.common.codec.CodecDataOutput;
+import org.tikv.common.exception.InvalidCodecFormatException;
+
+public class ChunkDecoderTest {
+  private static final DateTime TIME = new DateTime(2018, 5, 17, 10, 30, 15, DateTimeZone.UTC);
+
+  private static ChunkDecoder newDecoder() {
+    return new ChunkDecoder(
+        ColumnType.INT, ColumnType.REAL, ColumnType.DECIMAL, ColumnType.BYTES, ColumnType.TIME);
+  }
+
+  // writes rows (i, i / 2, i.25, "row<i>", TIME + i days), with nulls in the even rows but 0
+  private static void writeRows(CodecDataOutput cdo, int from, int to) {
+    for (int i = from; i < to; i++) {
+      if (i % 2 == 0 && i != 0) {
+        for (int c = 0; c < 5; c++) {
+          cdo.writeByte(Codec.NULL_FLAG);
+        }
+        continue;
+      }
+      IntegerCodec.writeLongFully(cdo, i, i % 3 == 0);
+      RealCodec.writeDoubleFully(cdo, i / 2.0);
+      DecimalCodec.writeDecimalFully(cdo, new BigDecimal(i + ".25"));
+      BytesCodec.writeCompactBytesFully(cdo, ("row" + i).getBytes());
+      DateTimeCodec.writeDateTimeFully(cdo, TIME.plusDays(i), DateTimeZone.UTC);
+    }
+  }
+
+  private static StreamResponse response(int from, int to) {
+    CodecDataOutput cdo = new CodecDataOutput();
+    writeRows(cdo, from, to);
+    Chunk chunk = Chunk.newBuilder().setRowsData(cdo.toByteString()).build();
+    return StreamResponse.newBuilder().setData(chunk.toByteString()).build();
+  }
+
+  private static void checkRows(ChunkDecoder decoder, int from, int to) {
+    assertEquals(to - from, decoder.numRows());
+    for (int i = from; i < to; i++) {
+      int row = i - from;
+      for (int c = 0; c < decoder.numColumns(); c++) {
+        assertEquals(i % 2 == 0 && i != 0, decoder.column(c).isNull(row));
+      }
+      if (decoder.column(0).isNull(row)) {
+        assertEquals(0, decoder.column(0).getLong(row));
+        assertNull(decoder.column(2).getDecimal(row));
+        assertNull(decoder.column(3).getBytes(row));
+        assertEquals(0, decoder.column(3).valueLength(row));
+        assertNull(decoder.column(4).getDateTime(row, DateTimeZone.UTC));
+        continue;
+      }
+      assertEquals(i, decoder.column(0).getLong(row));
+      assertEquals(i / 2.0, decoder.column(1).getDouble(row), 0);
+      assertEquals(new BigDecimal(i + ".25"), decoder.column(2).getDecimal(row));
+      assertArrayEquals(("row" + i).getBytes(), decoder.column(3).getBytes(row));
+      assertEquals(ByteString.copyFromUtf8("row" + i), decoder.column(3).getByteString(row));
+      assertEquals(TIME.plusDays(i), decoder.column(4).getDateTime(row, DateTimeZone.UTC));
+    }
+  }
+
+  @Test
+  public void decodeTest() {
+    ChunkDecoder decoder = newDecoder();
+    decoder.decode(response(0, 3));
+    decoder.decode(response(3, 1000));
+    checkRows(decoder, 0, 1000);
+    assertEquals(499, decoder.column(1).nullCount());
+
+    Column ints = decoder.column(0);
+    long[] longs = new long[4];
+    ints.getLongs(1, longs, 1, 3);
+    assertArrayEquals(new long[] {0, 1, 0, 3}, longs);
+    long[] sum = new long[1];
+    assertTrue(
+        ints.forEachLong(
+            v -> {
+              sum[0] += v;
+              return true;
+            }));
+    // the odd numbers below 1000
+    assertEquals(500 * 500, sum[0]);
+
+    Column bytes = decoder.column(3);
+    assertEquals(
+        "row999",
+        new String(bytes.valueArray(), bytes.valueOffset(999), bytes.valueLength(999)));
+  }
+
+  @Test
+  public void clearTest() {
+    ChunkDecoder decoder = newDecoder();
+    decoder.decode(response(0, 100));
+    decoder.clear();
+    assertEquals(0, decoder.numRows());
+    assertEquals(0, decoder.column(0).size());
+    assertEquals(0, decoder.column(0).nullCount());
+    decoder.decode(response(5, 10));
+    checkRows(decoder, 5, 10);
+  }
+
+  @Test
+  public void columnTypeTest() {
+    Column ints = newDecoder().column(0);
+    try {
+      ints.getDouble(0);
+      fail();
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    try {
+      ints.getLong(0);
+      fail();
+    } catch (IndexOutOfBoundsException e) {
+      // expected
+    }
+  }
+
+  @Test(expected = InvalidCodecFormatException.class)
+  public void invalidFlagTest() {
+    CodecDataOutput cdo = new CodecDataOutput();
+    RealCodec.writeDoubleFully(cdo, 1);
+    new ChunkDecoder(ColumnType.INT).decodeRows(cdo.toByteString());
+  }
+}
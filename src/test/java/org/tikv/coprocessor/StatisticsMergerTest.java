@@ -0,0 +1,149 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.coprocessor;
+
+import static org.junit.Assert.*;
+
+import com.google.protobuf.ByteString;
+import com.pingcap.tidb.tipb.Bucket;
+import com.pingcap.tidb.tipb.CMSketch;
+import com.pingcap.tidb.tipb.CMSketchRow;
+import com.pingcap.tidb.tipb.FMSketch;
+import com.pingcap.tidb.tipb.Histogram;
+import com.pingcap.tidb.tipb.SampleCollector;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class StatisticsMergerTest {
+  private static Bucket bucket(String lower, String upper, long count, long repeats) {
+    return Bucket.newBuilder()
+        .setLowerBound(ByteString.copyFromUtf8(lower))
+        .setUpperBound(ByteString.copyFromUtf8(upper))
+        .setCount(count)
+        .setRepeats(repeats)
+        .build();
+  }
+
+  private static Histogram histogram(long ndv, Bucket... buckets) {
+    return Histogram.newBuilder().setNdv(ndv).addAllBuckets(Arrays.asList(buckets)).build();
+  }
+
+  private static CMSketch sketch(int[]... rows) {
+    CMSketch.Builder builder = CMSketch.newBuilder();
+    for (int[] row : rows) {
+      CMSketchRow.Builder rowBuilder = CMSketchRow.newBuilder();
+      for (int counter : row) {
+        rowBuilder.addCounters(counter);
+      }
+      builder.addRows(rowBuilder);
+    }
+    return builder.build();
+  }
+
+  private static SampleCollector collector(long count, String prefix, long mask, Long... hashes) {
+    SampleCollector.Builder builder =
+        SampleCollector.newBuilder()
+            .setCount(count)
+            .setNullCount(1)
+            .setFmSketch(
+                FMSketch.newBuilder().setMask(mask).addAllHashset(Arrays.asList(hashes)));
+    for (int i = 0; i < 10; i++) {
+      builder.addSamples(ByteString.copyFromUtf8(prefix + i));
+    }
+    return builder.build();
+  }
+
+  @Test
+  public void mergeHistogramsTest() {
+    Histogram left = histogram(4, bucket("a", "b", 2, 1), bucket("c", "d", 5, 2));
+    Histogram right = histogram(3, bucket("d", "e", 3, 1), bucket("f", "g", 6, 1));
+    // d is in both, its buckets are merged
+    assertEquals(
+        histogram(6, bucket("a", "b", 2, 1), bucket("c", "e", 8, 1), bucket("f", "g", 11, 1)),
+        StatisticsMerger.mergeHistograms(left, right, 0));
+    assertEquals(
+        histogram(6, bucket("a", "e", 8, 1), bucket("f", "g", 11, 1)),
+        StatisticsMerger.mergeHistograms(left, right, 2));
+    assertEquals(right, StatisticsMerger.mergeHistograms(Histogram.getDefaultInstance(), right, 2));
+
+    // the buckets of the deeper side are kept, the others merged to about the same depth
+    Histogram shallow =
+        histogram(4, bucket("a", "a", 1, 1), bucket("b", "b", 2, 1), bucket("c", "c", 3, 1));
+    Histogram deep = histogram(1, bucket("x", "y", 30, 2));
+    assertEquals(
+        histogram(5, bucket("a", "c", 3, 1), bucket("x", "y", 33, 2)),
+        StatisticsMerger.mergeHistograms(shallow, deep, 0));
+  }
+
+  @Test
+  public void mergeCMSketchesTest() {
+    CMSketch left = sketch(new int[] {1, 2}, new int[] {3, 4});
+    CMSketch right = sketch(new int[] {10, 20}, new int[] {30, 40});
+    assertEquals(
+        sketch(new int[] {11, 22}, new int[] {33, 44}),
+        StatisticsMerger.mergeCMSketches(left, right));
+    assertEquals(left, StatisticsMerger.mergeCMSketches(CMSketch.getDefaultInstance(), left));
+    try {
+      StatisticsMerger.mergeCMSketches(left, sketch(new int[] {1}, new int[] {2}));
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void mergeCollectorsTest() {
+    List<SampleCollector> collectors =
+        Arrays.asList(collector(100, "x", 0, 1L, 2L, 3L), collector(10, "y", 1, 2L, 4L));
+    SampleCollector merged = StatisticsMerger.mergeCollectors(collectors, 0, 0, new Random(1));
+    assertEquals(110, merged.getCount());
+    assertEquals(2, merged.getNullCount());
+    assertEquals(20, merged.getSamplesCount());
+    // the larger mask drops the odd hashes
+    assertEquals(1, merged.getFmSketch().getMask());
+    assertEquals(
+        new HashSet<>(Arrays.asList(2L, 4L)), new HashSet<>(merged.getFmSketch().getHashsetList()));
+
+    // the mask grows when there are too many hashes
+    merged = StatisticsMerger.mergeCollectors(collectors, 0, 1, new Random(1));
+    assertEquals(3, merged.getFmSketch().getMask());
+    assertEquals(Arrays.asList(4L), merged.getFmSketch().getHashsetList());
+  }
+
+  @Test
+  public void mergeSamplesTest() {
+    List<SampleCollector> collectors =
+        Arrays.asList(collector(100, "x", 0), collector(10, "y", 0));
+    Random random = new Random(1);
+    int x = 0;
+    for (int i = 0; i < 100; i++) {
+      List<ByteString> samples =
+          StatisticsMerger.mergeCollectors(collectors, 10, 0, random).getSamplesList();
+      assertEquals(10, samples.size());
+      assertEquals(10, new HashSet<>(samples).size());
+      for (ByteString sample : samples) {
+        if (sample.byteAt(0) == 'x') {
+          x++;
+        }
+      }
+    }
+    // a sample of the first collector stands for 10 times more values
+    assertTrue("x samples: " + x, x > 750);
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.importer;
+
+import static org.tikv.common.codec.Codec.IntegerCodec.readUVarLong;
+
+import com.google.common.hash.Hashing;
+import com.google.protobuf.ByteString;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.tikv.common.codec.CodecDataInput;
+import org.tikv.common.util.Pair;
+
+/**
+ * Reads the SST files written by {@link SstFileWriter}, checking the checksum of every block. Only
+ * the parts of the format the writer uses are supported.
+ */
+public class SstFileReader {
+  private static final long LEGACY_MAGIC = 0xdb4775248b80fb57L;
+  private static final int FOOTER_LENGTH = 48;
+  private static final int TAG_LENGTH = 8;
+
+  private final byte[] file;
+  private final List<Pair<ByteString, ByteString>> entries = new ArrayList<>();
+  private final Map<String, ByteString> properties = new LinkedHashMap<>();
+
+  public SstFileReader(byte[] file) {
+    this.file = file;
+    CodecDataInput footer = new CodecDataInput(file, file.length - FOOTER_LENGTH, FOOTER_LENGTH);
+    long[] metaIndexHandle = {readUVarLong(footer), readUVarLong(footer)};
+    long[] indexHandle = {readUVarLong(footer), readUVarLong(footer)};
+    footer.skipBytes(footer.available() - 8);
+    if (footer.readLongLE() != LEGACY_MAGIC) {
+      throw new IllegalArgumentException("bad magic number");
+    }
+    for (Pair<byte[], byte[]> index : readBlock(indexHandle)) {
+      CodecDataInput handle = new CodecDataInput(index.second);
+      for (Pair<byte[], byte[]> entry :
+          readBlock(new long[] {readUVarLong(handle), readUVarLong(handle)})) {
+        byte[] key = entry.first;
+        if (!Arrays.equals(
+            Arrays.copyOfRange(key, key.length - TAG_LENGTH, key.length),
+            new byte[] {1, 0, 0, 0, 0, 0, 0, 0})) {
+          throw new IllegalArgumentException("bad internal key tag");
+        }
+        entries.add(
+            Pair.create(
+                ByteString.copyFrom(key, 0, key.length - TAG_LENGTH),
+                ByteString.copyFrom(entry.second)));
+      }
+    }
+    for (Pair<byte[], byte[]> metaIndex : readBlock(metaIndexHandle)) {
+      if (new String(metaIndex.first, StandardCharsets.UTF_8).equals("rocksdb.properties")) {
+        CodecDataInput handle = new CodecDataInput(metaIndex.second);
+        for (Pair<byte[], byte[]> property :
+            readBlock(new long[] {readUVarLong(handle), readUVarLong(handle)})) {
+          properties.put(
+              new String(property.first, StandardCharsets.UTF_8),
+              ByteString.copyFrom(property.second));
+        }
+      }
+    }
+  }
+
+  /** @return the keys, without their tag, and values of the file in order */
+  public List<Pair<ByteString, ByteString>> getEntries() {
+    return entries;
+  }
+
+  public Map<String, ByteString> getProperties() {
+    return properties;
+  }
+
+  /** @return the number of blocks referenced by the index */
+  public int getNumDataBlocks() {
+    long[] indexHandle = readIndexHandle();
+    return readBlock(indexHandle).size();
+  }
+
+  private long[] readIndexHandle() {
+    CodecDataInput footer = new CodecDataInput(file, file.length - FOOTER_LENGTH, FOOTER_LENGTH);
+    readUVarLong(footer);
+    readUVarLong(footer);
+    return new long[] {readUVarLong(footer), readUVarLong(footer)};
+  }
+
+  private List<Pair<byte[], byte[]>> readBlock(long[] handle) {
+    int offset = (int) handle[0];
+    int size = (int) handle[1];
+    if (file[offset + size] != 0) {
+      throw new IllegalArgumentException("compressed block");
+    }
+    int crc =
+        Hashing.crc32c().newHasher().putBytes(file, offset, size + 1).hash().asInt();
+    int masked = ((crc >>> 15) | (crc << 17)) + 0xa282ead8;
+    if (new CodecDataInput(file, offset + size + 1, 4).readIntLE() != masked) {
+      throw new IllegalArgumentException("bad block checksum");
+    }
+    CodecDataInput trailer = new CodecDataInput(file, offset + size - 4, 4);
+    int numRestarts = trailer.readIntLE();
+    CodecDataInput block = new CodecDataInput(file, offset, size - 4 - numRestarts * 4);
+    List<Pair<byte[], byte[]>> result = new ArrayList<>();
+    byte[] lastKey = new byte[0];
+    while (!block.eof()) {
+      int shared = (int) readUVarLong(block);
+      int nonShared = (int) readUVarLong(block);
+      int valueLength = (int) readUVarLong(block);
+      byte[] key = Arrays.copyOf(lastKey, shared + nonShared);
+      block.readFully(key, shared, nonShared);
+      byte[] value = new byte[valueLength];
+      block.readFully(value);
+      result.add(Pair.create(key, value));
+      lastKey = key;
+    }
+    return result;
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.importer;
+
+import static org.junit.Assert.*;
+
+import com.google.protobuf.ByteString;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.tikv.common.util.Pair;
+
+public class SstFileWriterTest {
+  private static ByteString bytes(String s) {
+    return ByteString.copyFromUtf8(s);
+  }
+
+  @Test
+  public void roundTripTest() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    SstFileWriter writer = new SstFileWriter(out);
+    writer.put(bytes("a"), bytes("1"));
+    writer.put(bytes("ab"), bytes("22"));
+    writer.put(bytes("b"), ByteString.EMPTY);
+    long size = writer.finish();
+    assertEquals(out.size(), size);
+    assertEquals(bytes("a"), writer.getFirstKey());
+    assertEquals(bytes("b"), writer.getLastKey());
+    assertEquals(3, writer.getNumEntries());
+
+    SstFileReader reader = new SstFileReader(out.toByteArray());
+    List<Pair<ByteString, ByteString>> entries = reader.getEntries();
+    assertEquals(3, entries.size());
+    assertEquals(bytes("a"), entries.get(0).first);
+    assertEquals(bytes("1"), entries.get(0).second);
+    assertEquals(bytes("ab"), entries.get(1).first);
+    assertEquals(bytes("22"), entries.get(1).second);
+    assertEquals(bytes("b"), entries.get(2).first);
+    assertEquals(ByteString.EMPTY, entries.get(2).second);
+    assertEquals(
+        ByteString.copyFrom(new byte[] {2, 0, 0, 0}),
+        reader.getProperties().get("rocksdb.external_sst_file.version"));
+    assertEquals(
+        ByteString.copyFrom(new byte[] {3}), reader.getProperties().get("rocksdb.num.entries"));
+  }
+
+  @Test
+  public void multipleBlocksTest() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    List<Pair<ByteString, ByteString>> expected = new ArrayList<>();
+    try (SstFileWriter writer = new SstFileWriter(out)) {
+      for (int i = 0; i < 10000; i++) {
+        ByteString key = bytes(String.format("key%08d", i));
+        ByteString value = bytes(String.format("value%08d", i * 7));
+        writer.put(key, value);
+        expected.add(Pair.create(key, value));
+      }
+    }
+    SstFileReader reader = new SstFileReader(out.toByteArray());
+    assertTrue(reader.getNumDataBlocks() > 1);
+    List<Pair<ByteString, ByteString>> entries = reader.getEntries();
+    assertEquals(expected.size(), entries.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.get(i).first, entries.get(i).first);
+      assertEquals(expected.get(i).second, entries.get(i).second);
+    }
+  }
+
+  @Test
+  public void orderTest() throws IOException {
+    SstFileWriter writer = new SstFileWriter(new ByteArrayOutputStream());
+    writer.put(bytes("b"), bytes("1"));
+    try {
+      writer.put(bytes("a"), bytes("2"));
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    try {
+      writer.put(bytes("b"), bytes("2"));
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void emptyFileTest() throws IOException {
+    new SstFileWriter(new ByteArrayOutputStream()).finish();
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.txn;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tikv.common.util.FastByteComparisons;
+import org.tikv.common.util.Pair;
+
+public class BigTxnBufferTest {
+  private File spillDir;
+
+  @Before
+  public void setUp() throws Exception {
+    spillDir = Files.createTempDirectory("big-txn-test").toFile();
+  }
+
+  @After
+  public void tearDown() {
+    File[] files = spillDir.listFiles();
+    assertNotNull(files);
+    for (File file : files) {
+      file.delete();
+    }
+    spillDir.delete();
+  }
+
+  private BigTxnBuffer createBuffer(long spillSize) {
+    return new BigTxnBuffer(
+        new MemBuffer(1024, Integer.MAX_VALUE, Long.MAX_VALUE), spillDir, spillSize);
+  }
+
+  @Test
+  public void spillAndMergeTest() {
+    BigTxnBuffer buffer = createBuffer(4096);
+    TreeMap<byte[], byte[]> expected = new TreeMap<>(FastByteComparisons::compareTo);
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    List<byte[]> keys = new ArrayList<>();
+    for (int i = 0; i < 20000; i++) {
+      byte[] key;
+      if (!keys.isEmpty() && random.nextInt(4) == 0) {
+        // overwrite or delete a key which is probably spilled already
+        key = keys.get(random.nextInt(keys.size()));
+      } else {
+        key = new byte[1 + random.nextInt(8)];
+        random.nextBytes(key);
+        keys.add(key);
+      }
+      byte[] value = new byte[random.nextInt(3) == 0 ? 0 : 1 + random.nextInt(32)];
+      random.nextBytes(value);
+      buffer.set(key, value);
+      expected.put(key, value);
+    }
+    assertTrue(buffer.runCount() > 1);
+
+    try (BigTxnBuffer.MergeIterator iterator = buffer.iterator(null, null)) {
+      for (Map.Entry<byte[], byte[]> entry : expected.entrySet()) {
+        assertTrue(iterator.hasNext());
+        Pair<byte[], byte[]> pair = iterator.next();
+        assertArrayEquals(entry.getKey(), pair.first);
+        assertArrayEquals(entry.getValue(), pair.second);
+      }
+      assertFalse(iterator.hasNext());
+    }
+    try (BigTxnBuffer.MergeIterator iterator = buffer.reverseIterator(null, null)) {
+      for (Map.Entry<byte[], byte[]> entry : expected.descendingMap().entrySet()) {
+        assertTrue(iterator.hasNext());
+        Pair<byte[], byte[]> pair = iterator.next();
+        assertArrayEquals(entry.getKey(), pair.first);
+        assertArrayEquals(entry.getValue(), pair.second);
+      }
+      assertFalse(iterator.hasNext());
+    }
+
+    for (int i = 0; i < 1000; i++) {
+      byte[] key = keys.get(random.nextInt(keys.size()));
+      assertArrayEquals(expected.get(key), buffer.get(key));
+    }
+    assertNull(buffer.get(new byte[9]));
+
+    buffer.close();
+    assertTrue(buffer.isEmpty());
+    File[] files = spillDir.listFiles();
+    assertNotNull(files);
+    assertEquals(0, files.length);
+  }
+
+  @Test
+  public void rangeIteratorTest() {
+    BigTxnBuffer buffer = createBuffer(4);
+    for (String key : new String[] {"a", "c", "e", "g", "b", "d", "f"}) {
+      buffer.set(key.getBytes(), key.getBytes());
+    }
+    buffer.delete("e".getBytes());
+    assertTrue(buffer.runCount() > 1);
+
+    List<String> keys = new ArrayList<>();
+    Iterator<Pair<byte[], byte[]>> iterator = buffer.iterator("b".getBytes(), "g".getBytes());
+    while (iterator.hasNext()) {
+      Pair<byte[], byte[]> pair = iterator.next();
+      keys.add(new String(pair.first) + "=" + new String(pair.second));
+    }
+    assertEquals("[b=b, c=c, d=d, e=, f=f]", keys.toString());
+
+    keys.clear();
+    iterator = buffer.reverseIterator("b".getBytes(), "g".getBytes());
+    while (iterator.hasNext()) {
+      Pair<byte[], byte[]> pair = iterator.next();
+      keys.add(new String(pair.first) + "=" + new String(pair.second));
+    }
+    assertEquals("[f=f, e=, d=d, c=c, b=b]", keys.toString());
+    buffer.close();
+  }
+
+  @Test
+  public void mutationIteratorTest() {
+    BigTxnBuffer buffer = createBuffer(4);
+    buffer.set("b".getBytes(), "1".getBytes());
+    buffer.set("d".getBytes(), "2".getBytes());
+    buffer.spill();
+
+    List<byte[]> lockKeys = Arrays.asList("a".getBytes(), "b".getBytes(), "c".getBytes());
+    List<String> mutations = new ArrayList<>();
+    try (BigTxnBuffer.MergeIterator iterator = buffer.mutationIterator(lockKeys)) {
+      while (iterator.hasNext()) {
+        Pair<byte[], byte[]> pair = iterator.next();
+        mutations.add(
+            new String(pair.first) + "=" + (pair.second == null ? "lock" : new String(pair.second)));
+      }
+    }
+    assertEquals("[a=lock, b=1, c=lock, d=2]", mutations.toString());
+    buffer.close();
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.txn;
+
+import static org.junit.Assert.*;
+
+import com.google.protobuf.ByteString;
+import java.util.Random;
+import org.junit.Test;
+import org.tikv.common.meta.TiTimestamp;
+import org.tikv.kvproto.Kvrpcpb;
+
+public class CommitRetryPolicyTest {
+  private static CommitResult writeConflict() {
+    return CommitResult.fromKeyError(
+        Kvrpcpb.KeyError.newBuilder()
+            .setConflict(
+                Kvrpcpb.WriteConflict.newBuilder()
+                    .setKey(ByteString.copyFromUtf8("counter"))
+                    .setConflictTs(42))
+            .build());
+  }
+
+  private static CommitResult locked(long lockVersion, long ttl) {
+    return CommitResult.fromKeyError(
+        Kvrpcpb.KeyError.newBuilder()
+            .setLocked(
+                Kvrpcpb.LockInfo.newBuilder()
+                    .setKey(ByteString.copyFromUtf8("counter"))
+                    .setLockVersion(lockVersion)
+                    .setLockTtl(ttl))
+            .build());
+  }
+
+  @Test
+  public void fromKeyErrorTest() {
+    CommitResult conflict = writeConflict();
+    assertEquals(CommitResult.Status.WRITE_CONFLICT, conflict.getStatus());
+    assertEquals(ByteString.copyFromUtf8("counter"), conflict.getConflictKey());
+    assertEquals(42, conflict.getConflictCommitTs());
+    assertTrue(conflict.isConflict());
+
+    CommitResult locked = locked(7, 3000);
+    assertEquals(CommitResult.Status.LOCKED, locked.getStatus());
+    assertEquals(7, locked.getConflictStartTs());
+    assertEquals(3000, locked.getLockTtl());
+
+    CommitResult retryable =
+        CommitResult.fromKeyError(Kvrpcpb.KeyError.newBuilder().setRetryable("conflict").build());
+    assertEquals(CommitResult.Status.WRITE_CONFLICT, retryable.getStatus());
+
+    CommitResult aborted =
+        CommitResult.fromKeyError(Kvrpcpb.KeyError.newBuilder().setAbort("abort").build());
+    assertEquals(CommitResult.Status.FAILED, aborted.getStatus());
+    assertFalse(aborted.isConflict());
+  }
+
+  @Test
+  public void conflictBackoffTest() {
+    // the upper bound of each jitter is returned
+    Random maxRandom =
+        new Random() {
+          @Override
+          public int nextInt(int bound) {
+            return bound - 1;
+          }
+        };
+    CommitRetryPolicy policy = new CommitRetryPolicy(maxRandom);
+    long last = 0;
+    for (int i = 0; i < 5; i++) {
+      long sleep = policy.nextSleep(writeConflict());
+      assertTrue(sleep > last);
+      last = sleep;
+    }
+    assertEquals(5, policy.getConflicts());
+    // a failure for other reasons starts over
+    assertTrue(policy.nextSleep(CommitResult.failed("error")) < last);
+    assertTrue(policy.nextSleep(writeConflict()) < last);
+  }
+
+  @Test
+  public void giveUpTest() {
+    CommitRetryPolicy policy = new CommitRetryPolicy();
+    for (int i = 1; i < CommitRetryPolicy.MAX_FAILED_ATTEMPTS; i++) {
+      assertTrue(policy.nextSleep(CommitResult.failed("error")) >= 0);
+    }
+    assertEquals(-1, policy.nextSleep(CommitResult.failed("error")));
+
+    policy = new CommitRetryPolicy();
+    for (int i = 1; i < CommitRetryPolicy.MAX_ATTEMPTS; i++) {
+      assertTrue(policy.nextSleep(CommitResult.stale()) >= 0);
+    }
+    assertEquals(-1, policy.nextSleep(CommitResult.stale()));
+  }
+
+  @Test
+  public void waitForLockTest() {
+    long lockVersion = new TiTimestamp(System.currentTimeMillis(), 0).getVersion();
+    CommitRetryPolicy policy = new CommitRetryPolicy();
+    // waits until the lock expires, at most as long as a conflict backs off
+    long sleep = policy.nextSleep(locked(lockVersion, 60_000));
+    assertTrue(sleep >= 900 && sleep <= 1000);
+
+    long start = System.currentTimeMillis();
+    assertTrue(policy.backoff(locked(lockVersion, 200)));
+    assertTrue(System.currentTimeMillis() - start < 500);
+    assertTrue(policy.getBackoffMs() < 500);
+
+    // an expired lock is retried at once
+    long expired = new TiTimestamp(System.currentTimeMillis() - 10_000, 0).getVersion();
+    policy = new CommitRetryPolicy(new Random(0));
+    assertTrue(policy.nextSleep(locked(expired, 3000)) < 8);
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.txn;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.Test;
+
+public class LatchesTest {
+  private static List<byte[]> keys(String... keys) {
+    byte[][] bytes = new byte[keys.length][];
+    for (int i = 0; i < keys.length; i++) {
+      bytes[i] = keys[i].getBytes();
+    }
+    return Arrays.asList(bytes);
+  }
+
+  @Test
+  public void staleTest() {
+    Latches latches = new Latches(256);
+    Latches.Latch first = latches.acquire(1, keys("a", "b"));
+    assertFalse(first.isStale());
+    latches.release(first, 3);
+
+    // started before "b" is committed
+    Latches.Latch second = latches.acquire(2, keys("b", "c"));
+    assertTrue(second.isStale());
+    latches.release(second, 0);
+
+    Latches.Latch third = latches.acquire(4, keys("b", "c"));
+    assertFalse(third.isStale());
+    latches.release(third, 5);
+
+    // an uncommitted transaction leaves no trace
+    Latches.Latch fourth = latches.acquire(4, keys("c"));
+    assertTrue(fourth.isStale());
+    latches.release(fourth, 0);
+    Latches.Latch fifth = latches.acquire(6, keys("c"));
+    assertFalse(fifth.isStale());
+    latches.release(fifth, 0);
+  }
+
+  @Test
+  public void collisionTest() {
+    // every key shares the only slot, but staleness is still tracked per key
+    Latches latches = new Latches(1);
+    Latches.Latch first = latches.acquire(1, keys("a"));
+    latches.release(first, 3);
+    Latches.Latch second = latches.acquire(2, keys("b"));
+    assertFalse(second.isStale());
+    latches.release(second, 0);
+    Latches.Latch empty = latches.acquire(2, Collections.emptyList());
+    assertFalse(empty.isStale());
+    latches.release(empty, 0);
+  }
+
+  @Test
+  public void waitTest() throws Exception {
+    Latches latches = new Latches(256);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Latches.Latch first = latches.acquire(1, keys("a", "b"));
+      CountDownLatch started = new CountDownLatch(1);
+      Future<Boolean> second =
+          executor.submit(
+              () -> {
+                started.countDown();
+                Latches.Latch latch = latches.acquire(2, keys("b", "c"));
+                latches.release(latch, 0);
+                return latch.isStale();
+              });
+      started.await();
+      try {
+        second.get(100, TimeUnit.MILLISECONDS);
+        fail("the second transaction should wait for the first one");
+      } catch (TimeoutException e) {
+        // expected
+      }
+      latches.release(first, 3);
+      assertTrue(second.get(10, TimeUnit.SECONDS));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.txn;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import org.junit.Test;
+import org.tikv.common.util.FastByteComparisons;
+import org.tikv.common.util.Pair;
+import org.tikv.txn.exception.TxnTooLargeException;
+
+public class MemBufferTest {
+  private static byte[] bytes(String s) {
+    return s.getBytes();
+  }
+
+  private static List<String> keys(Iterator<Pair<byte[], byte[]>> iterator) {
+    List<String> keys = new ArrayList<>();
+    while (iterator.hasNext()) {
+      keys.add(new String(iterator.next().first));
+    }
+    return keys;
+  }
+
+  @Test
+  public void setGetDeleteTest() {
+    MemBuffer buffer = new MemBuffer(1024, 1024, 1024 * 1024);
+    assertTrue(buffer.isEmpty());
+    assertNull(buffer.get(bytes("a")));
+    assertEquals(-1, buffer.valueLength(bytes("a")));
+
+    buffer.set(bytes("a"), bytes("v1"));
+    buffer.set(bytes("b"), bytes("v2"));
+    // lookups must compare contents, not array identity
+    assertArrayEquals(bytes("v1"), buffer.get(bytes("a")));
+    assertEquals(2, buffer.valueLength(bytes("b")));
+    assertEquals(2, buffer.len());
+    assertEquals(6, buffer.size());
+
+    buffer.set(bytes("a"), bytes("longer value"));
+    assertArrayEquals(bytes("longer value"), buffer.get(bytes("a")));
+    buffer.set(bytes("a"), bytes("s"));
+    assertArrayEquals(bytes("s"), buffer.get(bytes("a")));
+    assertEquals(2, buffer.len());
+    assertEquals(5, buffer.size());
+
+    buffer.delete(bytes("b"));
+    assertTrue(buffer.contains(bytes("b")));
+    assertArrayEquals(new byte[0], buffer.get(bytes("b")));
+    assertEquals(2, buffer.len());
+
+    buffer.reset();
+    assertTrue(buffer.isEmpty());
+    assertEquals(0, buffer.size());
+    assertFalse(buffer.contains(bytes("a")));
+  }
+
+  @Test
+  public void iteratorTest() {
+    MemBuffer buffer = new MemBuffer(1024, 1024, 1024 * 1024);
+    for (String key : new String[] {"d", "b", "e", "a", "c"}) {
+      buffer.set(bytes(key), bytes(key));
+    }
+    buffer.delete(bytes("c"));
+
+    assertEquals("[a, b, c, d, e]", keys(buffer.iterator()).toString());
+    assertEquals("[b, c, d]", keys(buffer.iterator(bytes("b"), bytes("e"))).toString());
+    assertEquals("[c, d, e]", keys(buffer.iterator(bytes("bb"), null)).toString());
+    assertEquals("[e, d, c, b, a]", keys(buffer.reverseIterator(null, null)).toString());
+    assertEquals("[d, c, b]", keys(buffer.reverseIterator(bytes("b"), bytes("e"))).toString());
+    assertEquals("[]", keys(buffer.iterator(bytes("f"), null)).toString());
+  }
+
+  @Test
+  public void randomOrderTest() {
+    MemBuffer buffer = new MemBuffer(1024, 100000, 64L * 1024 * 1024);
+    TreeMap<byte[], byte[]> expected = new TreeMap<>(FastByteComparisons::compareTo);
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    for (int i = 0; i < 20000; i++) {
+      byte[] key = new byte[1 + random.nextInt(16)];
+      random.nextBytes(key);
+      byte[] value = new byte[random.nextInt(64)];
+      random.nextBytes(value);
+      buffer.set(key, value);
+      expected.put(key, value);
+    }
+    assertEquals(expected.size(), buffer.len());
+
+    Iterator<Pair<byte[], byte[]>> iterator = buffer.iterator();
+    for (byte[] key : expected.keySet()) {
+      Pair<byte[], byte[]> entry = iterator.next();
+      assertArrayEquals(key, entry.first);
+      assertArrayEquals(expected.get(key), entry.second);
+    }
+    assertFalse(iterator.hasNext());
+  }
+
+  @Test
+  public void limitTest() {
+    MemBuffer buffer = new MemBuffer(8, 2, 12);
+    try {
+      buffer.set(bytes("key"), bytes("too large"));
+      fail();
+    } catch (TxnTooLargeException e) {
+      assertTrue(buffer.isEmpty());
+    }
+
+    buffer.set(bytes("a"), bytes("1"));
+    buffer.set(bytes("b"), bytes("2"));
+    try {
+      buffer.set(bytes("c"), bytes("3"));
+      fail();
+    } catch (TxnTooLargeException e) {
+      assertFalse(buffer.contains(bytes("c")));
+    }
+
+    buffer.set(bytes("a"), bytes("123456"));
+    try {
+      buffer.set(bytes("b"), bytes("1234567"));
+      fail();
+    } catch (TxnTooLargeException e) {
+      assertArrayEquals(bytes("2"), buffer.get(bytes("b")));
+    }
+  }
+
+  @Test
+  public void overwriteTest() {
+    MemBuffer buffer = new MemBuffer(64, 2, 100);
+    // values fitting in the slot of the first one are written over it
+    for (int i = 0; i < 100; i++) {
+      buffer.set(bytes("a"), new byte[32 - i % 32]);
+    }
+    buffer.set(bytes("a"), new byte[32]);
+    assertEquals(33, buffer.size());
+    // the slots left by growing values count against the limit
+    try {
+      for (int i = 33; i < 64; i++) {
+        buffer.set(bytes("a"), new byte[i]);
+      }
+      fail();
+    } catch (TxnTooLargeException e) {
+      assertEquals(35, buffer.size());
+    }
+  }
+}
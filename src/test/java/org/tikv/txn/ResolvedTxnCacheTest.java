@@ -0,0 +1,70 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.txn;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+
+public class ResolvedTxnCacheTest {
+  @Test
+  public void evictionTest() {
+    ResolvedTxnCache cache = new ResolvedTxnCache(3);
+    cache.put(1, 10);
+    cache.put(2, 0);
+    cache.put(3, 30);
+    // the status of a resolved txn never changes
+    cache.put(1, 11);
+    assertEquals(Long.valueOf(10), cache.get(1));
+    assertEquals(Long.valueOf(0), cache.get(2));
+
+    cache.put(4, 40);
+    assertNull(cache.get(1));
+    assertEquals(Long.valueOf(40), cache.get(4));
+    assertEquals(3, cache.size());
+  }
+
+  @Test
+  public void concurrentTest() throws Exception {
+    ResolvedTxnCache cache = new ResolvedTxnCache(100);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 8; t++) {
+        futures.add(
+            executor.submit(
+                () -> {
+                  for (long i = 0; i < 10000; i++) {
+                    cache.put(i, i + 1);
+                    Long status = cache.get(i);
+                    assertTrue(status == null || status == i + 1);
+                  }
+                }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertTrue(cache.size() <= 100);
+  }
+}
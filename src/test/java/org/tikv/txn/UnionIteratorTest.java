@@ -0,0 +1,112 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.txn;
+
+import static org.junit.Assert.*;
+
+import com.google.common.collect.Lists;
+import com.google.protobuf.ByteString;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import org.junit.Test;
+import org.tikv.common.util.Pair;
+import org.tikv.kvproto.Kvrpcpb;
+
+public class UnionIteratorTest {
+  private static List<Kvrpcpb.KvPair> snapshot(String... keys) {
+    List<Kvrpcpb.KvPair> pairs = new ArrayList<>();
+    for (String key : keys) {
+      pairs.add(
+          Kvrpcpb.KvPair.newBuilder()
+              .setKey(ByteString.copyFromUtf8(key))
+              .setValue(ByteString.copyFromUtf8("s" + key))
+              .build());
+    }
+    return pairs;
+  }
+
+  private static MemBuffer buffer() {
+    MemBuffer buffer = new MemBuffer(1024, 1024, 1024 * 1024);
+    buffer.set("b".getBytes(), "bb".getBytes());
+    buffer.set("d".getBytes(), "bd".getBytes());
+    buffer.delete("c".getBytes());
+    buffer.delete("f".getBytes());
+    return buffer;
+  }
+
+  private static List<String> collect(Iterator<Pair<byte[], byte[]>> iterator) {
+    List<String> result = new ArrayList<>();
+    while (iterator.hasNext()) {
+      Pair<byte[], byte[]> pair = iterator.next();
+      result.add(new String(pair.first) + "=" + new String(pair.second));
+    }
+    return result;
+  }
+
+  @Test
+  public void forwardTest() {
+    UnionIterator iterator =
+        new UnionIterator(
+            buffer().iterator(), snapshot("a", "c", "d", "e").iterator(), false);
+    assertEquals("[a=sa, b=bb, d=bd, e=se]", collect(iterator).toString());
+  }
+
+  @Test
+  public void reverseTest() {
+    UnionIterator iterator =
+        new UnionIterator(
+            buffer().reverseIterator(null, null),
+            Lists.reverse(snapshot("a", "c", "d", "e")).iterator(),
+            true);
+    assertEquals("[e=se, d=bd, b=bb, a=sa]", collect(iterator).toString());
+  }
+
+  @Test
+  public void bigBufferReverseTest() throws Exception {
+    File spillDir = Files.createTempDirectory("union-test").toFile();
+    BigTxnBuffer buffer = new BigTxnBuffer(new MemBuffer(1024, 1024, 1024 * 1024), spillDir, 4);
+    buffer.set("b".getBytes(), "bb".getBytes());
+    buffer.set("d".getBytes(), "bd".getBytes());
+    buffer.spill();
+    buffer.delete("c".getBytes());
+    buffer.delete("f".getBytes());
+    try (UnionIterator iterator =
+        new UnionIterator(
+            buffer.reverseIterator(null, null),
+            Lists.reverse(snapshot("a", "c", "d", "e")).iterator(),
+            true)) {
+      assertEquals("e", new String(iterator.next().first));
+      assertEquals("d", new String(iterator.next().first));
+    }
+    buffer.close();
+    assertTrue(spillDir.delete());
+  }
+
+  @Test
+  public void emptyInputTest() {
+    MemBuffer empty = new MemBuffer(1024, 1024, 1024 * 1024);
+    assertFalse(new UnionIterator(empty.iterator(), snapshot().iterator(), false).hasNext());
+    assertEquals(
+        "[a=sa]",
+        collect(new UnionIterator(empty.iterator(), snapshot("a").iterator(), false)).toString());
+    assertEquals(
+        "[b=bb, d=bd]",
+        collect(new UnionIterator(buffer().iterator(), snapshot().iterator(), false)).toString());
+  }
+}